@@ -0,0 +1,149 @@
+package ci553.happyshop.benchmark;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.diagnostics.Diagnostics;
+import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.DerbyMode;
+import ci553.happyshop.storageAccess.StorageType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * StorageBenchmark measures how fast the DatabaseRW calls used by the tills are with each kind of storage:
+ * embedded Derby, Derby through the network server, and the in-memory store (a baseline with no storage cost).
+ *
+ * Each worker thread plays a busy till for a fixed time, in a loop of:
+ * - 70% searchByProductId of a random catalogue product,
+ * - 20% searchProduct by a random word of a product description,
+ * - 10% purchaseStocks of a random product with quantity 0, a real write transaction that leaves stock unchanged,
+ *   so the benchmark can be run against the shop database without changing it.
+ * The product cache is turned off, so every call reaches the storage. The network run searches with LIKE,
+ * since a shared database cannot use the in-process search index (see DatabaseRWFactory.isDatabaseShared).
+ *
+ * Usage (the network run starts a Derby network server inside this JVM):
+ *     java ... ci553.happyshop.benchmark.StorageBenchmark [threads] [secondsPerRun]
+ * Close any running HappyShop first, embedded Derby cannot open a database another process has open.
+ */
+
+public class StorageBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        DatabaseRWFactory.productCacheEnabled = false;
+        DatabaseRWFactory.inMemorySeedFromDatabase = true;
+        DatabaseRWFactory.networkServerAutoStart = true; // nothing else uses the server, it can live in this JVM
+
+        List<Result> results = new ArrayList<>();
+        results.add(run("embedded Derby", StorageType.DERBY, DerbyMode.EMBEDDED, threads, seconds));
+        results.add(run("network Derby", StorageType.DERBY, DerbyMode.NETWORK, threads, seconds));
+        results.add(run("in-memory", StorageType.IN_MEMORY, DerbyMode.EMBEDDED, threads, seconds));
+        DatabaseRWFactory.stopNetworkServer();
+        Diagnostics.flush(1000); // so log lines do not land in the middle of the table
+
+        System.out.println();
+        System.out.printf("%d threads, %d seconds per run%n", threads, seconds);
+        System.out.printf("%-16s %12s %10s %10s %10s%n", "storage", "ops/sec", "p50 (us)", "p99 (us)", "max (us)");
+        for (Result result : results) {
+            System.out.println(result);
+        }
+        System.exit(0);
+    }
+
+    private static Result run(String name, StorageType storageType, DerbyMode derbyMode, int threads, int seconds)
+            throws Exception {
+        DatabaseRWFactory.closeConnectionPool(); // the next pool uses the URL of the new mode
+        DatabaseRWFactory.storageType = storageType;
+        DatabaseRWFactory.derbyMode = derbyMode;
+
+        // the catalogue to pick products and search words from
+        List<Product> catalogue = new ArrayList<>();
+        DatabaseRW setup = DatabaseRWFactory.createDatabaseRW();
+        for (Product product : setup.searchProduct(" ")) { // every description with a space, ie the whole catalogue
+            catalogue.add(product);
+        }
+        if (catalogue.isEmpty()) {
+            throw new IllegalStateException("ProductTable is empty, run SetDatabase first");
+        }
+
+        System.out.println("Running " + name + " ...");
+        long endAt = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            DatabaseRW databaseRW = DatabaseRWFactory.createDatabaseRW(); // one per till, like the real clients
+            futures.add(executor.submit(() -> runTill(databaseRW, catalogue, endAt)));
+        }
+
+        List<long[]> latencies = new ArrayList<>();
+        for (Future<long[]> future : futures) {
+            latencies.add(future.get());
+        }
+        executor.shutdown();
+        return new Result(name, latencies, seconds);
+    }
+
+    // Returns the latency of every call in nanoseconds
+    private static long[] runTill(DatabaseRW databaseRW, List<Product> catalogue, long endAt) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latencies = new long[1024];
+        int count = 0;
+
+        while (System.nanoTime() < endAt) {
+            Product product = catalogue.get(random.nextInt(catalogue.size()));
+            int operation = random.nextInt(100);
+            long start = System.nanoTime();
+            if (operation < 70) {
+                databaseRW.searchByProductId(product.getProductId());
+            } else if (operation < 90) {
+                String[] words = product.getProductDescription().split(" ");
+                databaseRW.searchProduct(words[random.nextInt(words.length)]);
+            } else {
+                Product line = new Product(product.getProductId(), "", "", 0, 0);
+                line.setOrderedQuantity(0);
+                databaseRW.purchaseStocks(new ArrayList<>(List.of(line)));
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static class Result {
+        private final String name;
+        private final double opsPerSecond;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        Result(String name, List<long[]> latenciesPerThread, int seconds) {
+            this.name = name;
+            long[] all = latenciesPerThread.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            this.opsPerSecond = (double) all.length / seconds;
+            this.p50Micros = percentile(all, 0.50) / 1000;
+            this.p99Micros = percentile(all, 0.99) / 1000;
+            this.maxMicros = all.length == 0 ? 0 : all[all.length - 1] / 1000;
+        }
+
+        private static long percentile(long[] sorted, double fraction) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %12.0f %10d %10d %10d", name, opsPerSecond, p50Micros, p99Micros, maxMicros);
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package ci553.happyshop.catalogue;
 
+import ci553.happyshop.utility.Money;
+
 /**
  * The Product class used to hold the information about a product:
  *
  * Fields:
  * - productId: Unique identifier for the product (eg 0001).
  * - description: Textual description of the product.
- * - unitPrice: Price per single unit of the product.
+ * - unitPricePence: Price per single unit of the product, in pence (eg 2999 for £29.99), so totals are exact.
  * - orderedQuantity: Quantity involved in a customer's order.
  * - stockQuantity: Quantity currently available in stock.
  */
@@ -15,7 +17,7 @@ public class Product implements Comparable<Product> {
     private String proId;
     private String proDescription;
     private String proImageName;
-    private double unitPrice;
+    private long unitPricePence;
     private int orderedQuantity =1; //The quantity of this product in the customer's order.
     private int stockQuantity;//
 
@@ -24,22 +26,39 @@ public class Product implements Comparable<Product> {
      * @param id Product ID
      * @param des Description of product
      * @param image image name of product, eg 0001.jpg (0001 is product ID)
-     * @param aPrice The price of the product
+     * @param unitPricePence The price of the product in pence, eg 2999 for £29.99
      * @param stockQuantity The Quantity of the product in stock
      */
-    public Product(String id, String des, String image, double aPrice, int stockQuantity) {
+    public Product(String id, String des, String image, long unitPricePence, int stockQuantity) {
         proId = id;
         proDescription = des;
         proImageName = image;
-        unitPrice = aPrice;
+        this.unitPricePence = unitPricePence;
         this.stockQuantity = stockQuantity;
     }
 
+    /**
+     * A product priced in pence, eg ofPence("0001", "40 inch TV", "0001.jpg", 26900, 5) for £269.00.
+     * The same as the constructor; the name says which unit the price is in.
+     */
+    public static Product ofPence(String id, String des, String image, long unitPricePence, int stockQuantity) {
+        return new Product(id, des, image, unitPricePence, stockQuantity);
+    }
+
+    /**
+     * A product priced in pounds, eg ofPounds("0001", "40 inch TV", "0001.jpg", 269, 5) for £269.00,
+     * rounded to the nearest penny.
+     */
+    public static Product ofPounds(String id, String des, String image, double unitPrice, int stockQuantity) {
+        return new Product(id, des, image, Money.toPence(unitPrice), stockQuantity);
+    }
+
     // a set of getter methods
     public String getProductId() { return proId;}
     public String getProductDescription() { return proDescription;}
     public String getProductImageName() { return proImageName;}
-    public double getUnitPrice() { return unitPrice;}
+    public long getUnitPricePence() { return unitPricePence;}
+    public double getUnitPrice() { return Money.toPounds(unitPricePence);} // in pounds, for display only
     public int getOrderedQuantity() { return orderedQuantity;}
     public int getStockQuantity() { return stockQuantity;}
 
@@ -58,9 +77,10 @@ public class Product implements Comparable<Product> {
     // Creates a formatted string containing ID, price (with 2 decimal places), stock amount, and description
     // Used in the Warehouse search page to display searched product information
     public String toString() {
-        String productInfo = String.format("Id: %s, £%.2f/uint, stock: %d \n%s",
-                          proId, unitPrice,stockQuantity,proDescription);
-        return productInfo;
+        StringBuilder productInfo = new StringBuilder(64).append("Id: ").append(proId).append(", £");
+        Money.appendPounds(productInfo, unitPricePence)
+                .append("/uint, stock: ").append(stockQuantity).append(" \n").append(proDescription);
+        return productInfo.toString();
     }
 
     /** alternative constructors retained for possible future use.
@@ -68,7 +88,7 @@ public class Product implements Comparable<Product> {
     public Product(String id, String des, double aPrice, int orderedQuantity, int stockQuantity) {
         proId = id;
         proDescription = des;
-        unitPrice = aPrice;
+        unitPricePence = Money.toPence(aPrice);
         this.orderedQuantity = orderedQuantity;
         this.stockQuantity = stockQuantity;
     }
@@ -76,7 +96,7 @@ public class Product implements Comparable<Product> {
     public Product(String id, String des, double aPrice, int orderedQuantity) {
         proId = id;
         proDescription = des;
-        unitPrice = aPrice;
+        unitPricePence = Money.toPence(aPrice);
         this.orderedQuantity = orderedQuantity;
     }
      */
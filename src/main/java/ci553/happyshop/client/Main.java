@@ -12,7 +12,9 @@ import ci553.happyshop.client.warehouse.*;
 import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.storageAccess.DatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.ProductChangeFeed;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 import java.io.IOException;
 
@@ -60,6 +62,14 @@ public class Main extends Application {
         startEmergencyExit();
     }
 
+    //called by JavaFX when the last window is closed: the catalogue snapshot makes the next start a warm one,
+    //and the order store is closed, eg the order journal forced to disk
+    @Override
+    public void stop() {
+        DatabaseRWFactory.writeCatalogueSnapshotOnShutdown();
+        OrderHub.closeOrderHub();
+    }
+
     /** The customer GUI -search prodduct, add to trolley, cancel/submit trolley, view receipt
      *
      * Creates the Model, View, and Controller objects, links them together so they can communicate with each other.
@@ -79,7 +89,18 @@ public class Main extends Application {
         cusController.cusModel = cusModel;
         cusModel.cusView = cusView;
         cusModel.databaseRW = databaseRW;
-        cusView.start(new Stage());
+        cusModel.asyncDatabaseRW = DatabaseRWFactory.createAsyncDatabaseRW(databaseRW);
+        cusModel.reservations = DatabaseRWFactory.getStockReservations();
+        Stage window = new Stage();
+        cusView.start(window);
+
+        // the product on show is refreshed when it changes, until the window is closed
+        ProductChangeFeed.Subscription changes = DatabaseRWFactory.getChangeFeed()
+                .subscribe(cusModel.changeListener(), Platform::runLater, DatabaseRWFactory.changeFeedMaxPending);
+        window.setOnHidden(event -> {
+            changes.close();
+            cusModel.releaseHolds(); // the trolley's held stock goes back on sale
+        });
 
         //RemoveProductNotifier removeProductNotifier = new RemoveProductNotifier();
         //removeProductNotifier.cusView = cusView;
@@ -92,7 +113,7 @@ public class Main extends Application {
      * Links them together so they can communicate with each other.
      * Starts the Picker interface.
      *
-     * Also registers the PickerModel with the OrderHub to receive order notifications.
+     * Also registers the PickerModel with the OrderHub to receive order notifications, until its window is closed.
      */
     private void startPickerClient(){
         PickerModel pickerModel = new PickerModel();
@@ -101,8 +122,10 @@ public class Main extends Application {
         pickerView.pickerController = pickerController;
         pickerController.pickerModel = pickerModel;
         pickerModel.pickerView = pickerView;
-        pickerModel.registerWithOrderHub();
-        pickerView.start(new Stage());
+        Stage window = new Stage();
+        pickerView.start(window);
+        pickerModel.registerWithOrderHub(); // after start, so the view exists when the orders arrive
+        window.setOnHidden(event -> pickerModel.unregisterFromOrderHub());
     }
 
     //The OrderTracker GUI - for customer to track their order's state(Ordered, Progressing, Collected)
@@ -139,7 +162,16 @@ public class Main extends Application {
         controller.model = model;
         model.view = view;
         model.databaseRW = databaseRW;
-        view.start(new Stage());
+        model.asyncDatabaseRW = DatabaseRWFactory.createAsyncDatabaseRW(databaseRW);
+        model.productImporter = DatabaseRWFactory.createProductImporter(databaseRW);
+        model.reservations = DatabaseRWFactory.getStockReservations();
+        Stage window = new Stage();
+        view.start(window);
+
+        // the search results are refreshed row by row when their products change, until the window is closed
+        ProductChangeFeed.Subscription changes = DatabaseRWFactory.getChangeFeed()
+                .subscribe(model.changeListener(), Platform::runLater, DatabaseRWFactory.changeFeedMaxPending);
+        window.setOnHidden(event -> changes.close());
 
         //create dependent views that need window info
         HistoryWindow historyWindow = new HistoryWindow();
@@ -1,8 +1,11 @@
 package ci553.happyshop.client.customer;
 
+import ci553.happyshop.orderManagement.OrderHub;
 import ci553.happyshop.storageAccess.DatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.ProductChangeFeed;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
 /**
@@ -26,6 +29,9 @@ public class CustomerClient extends Application {
      */
     @Override
     public void start(Stage window) {
+        // the order store is opened now rather than at the first checkout, so a store this process cannot use
+        // (eg an order journal another process has open) stops the client at startup
+        OrderHub.getOrderHub();
         CustomerView cusView = new CustomerView();
         CustomerController cusController = new CustomerController();
         CustomerModel cusModel = new CustomerModel();
@@ -35,10 +41,28 @@ public class CustomerClient extends Application {
         cusController.cusModel = cusModel;
         cusModel.cusView = cusView;
         cusModel.databaseRW = databaseRW;
+        cusModel.asyncDatabaseRW = DatabaseRWFactory.createAsyncDatabaseRW(databaseRW);
+        cusModel.reservations = DatabaseRWFactory.getStockReservations();
         cusView.start(window);
 
+        // the product on show is refreshed when it changes, until the window is closed
+        ProductChangeFeed.Subscription changes = DatabaseRWFactory.getChangeFeed()
+                .subscribe(cusModel.changeListener(), Platform::runLater, DatabaseRWFactory.changeFeedMaxPending);
+        window.setOnHidden(event -> {
+            changes.close();
+            cusModel.releaseHolds(); // the trolley's held stock goes back on sale
+        });
+
         //RemoveProductNotifier removeProductNotifier = new RemoveProductNotifier();
         //removeProductNotifier.cusView = cusView;
         //cusModel.removeProductNotifier = removeProductNotifier;
     }
+
+    //called by JavaFX when the window is closed: the catalogue snapshot makes the next start a warm one,
+    //and the order store is closed, eg the order journal forced to disk
+    @Override
+    public void stop() {
+        DatabaseRWFactory.writeCatalogueSnapshotOnShutdown();
+        OrderHub.closeOrderHub();
+    }
 }
@@ -5,9 +5,16 @@ import ci553.happyshop.catalogue.InvalidOrderQuantityException;
 import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.catalogue.Product;
 import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRW;
+import ci553.happyshop.storageAccess.ProductChangeEvent;
+import ci553.happyshop.storageAccess.ProductChangeFeed;
+import ci553.happyshop.storageAccess.StockReservations;
+import ci553.happyshop.storageAccess.StockReservations.Reservation;
+import ci553.happyshop.utility.Money;
 import ci553.happyshop.utility.ProductListFormatter;
 import ci553.happyshop.utility.StorageLocation;
+import javafx.application.Platform;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -16,7 +23,10 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 /**
  * CustomerModel holds the customer-side logic for search, trolley and checkout.
@@ -24,6 +34,12 @@ import java.util.Map;
 public class CustomerModel {
     public CustomerView cusView;
     public DatabaseRW databaseRW;
+    public AsyncDatabaseRW asyncDatabaseRW; // when set, search runs off the FX thread; null in unit tests
+
+    public StockReservations reservations; // when set, adding to the trolley holds the stock; null in unit tests
+
+    private CompletableFuture<Product> pendingSearch; // the search still running, replaced by a newer search
+    private final Map<String, List<Reservation>> holds = new HashMap<>(); // productID -> holds for the trolley
 
     private Product theProduct = null; // product found from search
     private ArrayList<Product> trolley = new ArrayList<>(); // a list of products in trolley
@@ -37,27 +53,20 @@ public class CustomerModel {
     // Notifier for removed products at checkout
     private RemoveProductNotifier removeNotifier = new RemoveProductNotifier();
 
-    // SELECT productID, description, image, unitPrice, inStock quantity
+    // SELECT productID, description, image, unitPricePence, inStock quantity
     void search() throws SQLException {
         String productId = cusView.tfId.getText().trim();
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true); // an older search is no longer wanted
+            pendingSearch = null;
+        }
 
         if (!productId.isEmpty()) {
-            theProduct = databaseRW.searchByProductId(productId);
-
-            if (theProduct != null && theProduct.getStockQuantity() > 0) {
-                double unitPrice = theProduct.getUnitPrice();
-                String description = theProduct.getProductDescription();
-                int stock = theProduct.getStockQuantity();
-
-                String baseInfo = String.format("Product_Id: %s\n%s,\nPrice: £%.2f", productId, description, unitPrice);
-                String quantityInfo = stock < 100 ? String.format("\n%d units left.", stock) : "";
-                displayLaSearchResult = baseInfo + quantityInfo;
-                System.out.println(displayLaSearchResult);
-            } else {
-                theProduct = null;
-                displayLaSearchResult = "No Product was found with ID " + productId;
-                System.out.println("No Product was found with ID " + productId);
+            if (asyncDatabaseRW != null) {
+                searchAsync(productId);
+                return;
             }
+            showSearchResult(productId, databaseRW.searchByProductId(productId));
         } else {
             theProduct = null;
             displayLaSearchResult = "Please type ProductID";
@@ -67,8 +76,111 @@ public class CustomerModel {
         updateView();
     }
 
+    // Looks the product up on a database thread, the window stays responsive while it runs.
+    // The result is shown on the FX thread, unless a newer search was started in the meantime.
+    private void searchAsync(String productId) {
+        theProduct = null;
+        displayLaSearchResult = "Searching for " + productId + " ...";
+        updateView();
+
+        CompletableFuture<Product> search = asyncDatabaseRW.searchByProductId(productId);
+        pendingSearch = search;
+        search.whenComplete((product, error) -> Platform.runLater(() -> {
+            if (search != pendingSearch) {
+                return; // cancelled or replaced by a newer search
+            }
+            pendingSearch = null;
+            if (error != null) {
+                theProduct = null;
+                displayLaSearchResult = error instanceof TimeoutException
+                        ? "The search for " + productId + " took too long, please try again"
+                        : "Search failed: " + error.getMessage();
+            } else {
+                showSearchResult(productId, product);
+            }
+            updateView();
+        }));
+    }
+
+    private void showSearchResult(String productId, Product product) {
+        theProduct = product;
+        if (theProduct != null && theProduct.getStockQuantity() > 0) {
+            long unitPricePence = theProduct.getUnitPricePence();
+            String description = theProduct.getProductDescription();
+            int stock = theProduct.getStockQuantity();
+
+            String baseInfo = String.format("Product_Id: %s\n%s,\nPrice: £%s", productId, description,
+                    Money.format(unitPricePence));
+            String quantityInfo = stock < 100 ? String.format("\n%d units left.", stock) : "";
+            displayLaSearchResult = baseInfo + quantityInfo;
+            System.out.println(displayLaSearchResult);
+        } else {
+            theProduct = null;
+            displayLaSearchResult = "No Product was found with ID " + productId;
+            System.out.println("No Product was found with ID " + productId);
+        }
+    }
+
+    // Keeps the product on show up to date when it is bought, edited or deleted elsewhere,
+    // without searching again. CustomerClient subscribes it to the ProductChangeFeed on the FX thread.
+    public ProductChangeFeed.Listener changeListener() {
+        return new ProductChangeFeed.Listener() {
+            @Override
+            public void onChanges(List<ProductChangeEvent> changes) {
+                for (ProductChangeEvent change : changes) {
+                    if (theProduct != null && theProduct.getProductId().equals(change.getProductId())) {
+                        showSearchResult(change.getProductId(), change.getNewProduct()); // null if deleted
+                        updateView();
+                    }
+                }
+            }
+
+            @Override
+            public void onOverflow() {
+                // too much changed to patch: read the product on show again
+                if (theProduct == null || pendingSearch != null) {
+                    return; // nothing on show, or a search is running that reads it anyway
+                }
+                String productId = theProduct.getProductId();
+                if (asyncDatabaseRW != null) {
+                    refreshAsync(productId);
+                    return;
+                }
+                try {
+                    showSearchResult(productId, databaseRW.searchByProductId(productId));
+                } catch (SQLException e) {
+                    System.out.println("Could not refresh product " + productId + ": " + e.getMessage());
+                }
+                updateView();
+            }
+        };
+    }
+
+    // Reads the product on show again on a database thread, like searchAsync but without clearing it meanwhile.
+    // If it fails the product stays on show as it was.
+    private void refreshAsync(String productId) {
+        CompletableFuture<Product> refresh = asyncDatabaseRW.searchByProductId(productId);
+        pendingSearch = refresh;
+        refresh.whenComplete((product, error) -> Platform.runLater(() -> {
+            if (refresh != pendingSearch) {
+                return; // replaced by a search of the customer's
+            }
+            pendingSearch = null;
+            if (error != null) {
+                System.out.println("Could not refresh product " + productId + ": " + error.getMessage());
+                return;
+            }
+            showSearchResult(productId, product);
+            updateView();
+        }));
+    }
+
     void addToTrolley() {
-        if (theProduct != null) {
+        if (theProduct != null && !holdStock(theProduct)) {
+            theProduct = null;
+            displayLaSearchResult = "Sorry, there is not enough stock left to add this product";
+            System.out.println("could not hold stock, product not added to trolley");
+        } else if (theProduct != null) {
 
             // Merge duplicates by product ID
             addOrMergeProduct(theProduct);
@@ -99,13 +211,15 @@ public class CustomerModel {
         ArrayList<Product> groupedTrolley = groupProductsById(trolley);
 
         try {
-            // Step 1: Validate stock (no DB update here)
-            validateStockAvailability(groupedTrolley);
+            // Step 1: Validate stock of the units not held by the trolley (no DB update here)
+            ArrayList<Product> unheld = withoutHeldUnits(groupedTrolley, trolleyHolds());
+            if (!unheld.isEmpty()) {
+                validateStockAvailability(unheld);
+            }
 
             // Step 2: Commit purchase (update DB stock)
             // Defensive: stock could change after validation
-            ArrayList<Product> purchaseFailed = databaseRW.purchaseStocks(groupedTrolley);
-
+            ArrayList<Product> purchaseFailed = purchase(groupedTrolley);
             if (!purchaseFailed.isEmpty()) {
                 throw new InsufficientStockException("Stock changed during checkout.", purchaseFailed);
             }
@@ -140,22 +254,23 @@ public class CustomerModel {
         } catch (InsufficientStockException e) {
             ArrayList<Product> insufficientProducts = e.getInsufficientProducts();
 
-            // Remove items that cannot be bought
-            removeInsufficientProductsFromTrolley(insufficientProducts);
-
-            // Update trolley display after removal
-            Collections.sort(trolley);
-            displayTaTrolley = ProductListFormatter.buildString(trolley);
-
             // Build message for notifier
             StringBuilder msg = new StringBuilder();
+            // The lines may only be the units not held, so the trolley's held units are added back for the customer
             for (Product p : insufficientProducts) {
                 msg.append("\u2022 ").append(p.getProductId()).append(", ")
                         .append(p.getProductDescription()).append(" (Only ")
-                        .append(p.getStockQuantity()).append(" available, ")
-                        .append(p.getOrderedQuantity()).append(" requested)\n");
+                        .append(p.getStockQuantity() + heldQuantity(p.getProductId())).append(" available, ")
+                        .append(requestedQuantity(groupedTrolley, p)).append(" requested)\n");
             }
 
+            // Remove items (and give back their holds) that cannot be bought
+            removeInsufficientProductsFromTrolley(insufficientProducts);
+
+            // Update trolley display after removal
+            Collections.sort(trolley);
+            displayTaTrolley = ProductListFormatter.buildString(trolley);
+
             theProduct = null;
             displayLaSearchResult = "Checkout failed due to insufficient stock.";
             System.out.println("Checkout blocked: insufficient stock");
@@ -187,7 +302,7 @@ public class CustomerModel {
                         p.getProductId(),
                         p.getProductDescription(),
                         p.getProductImageName(),
-                        p.getUnitPrice(),
+                        p.getUnitPricePence(),
                         p.getStockQuantity()
                 );
 
@@ -208,21 +323,31 @@ public class CustomerModel {
             throws SQLException, InvalidOrderQuantityException, InsufficientStockException {
 
         ArrayList<Product> insufficient = new ArrayList<>();
+        ArrayList<String> ids = new ArrayList<>();
 
+        // Quantity check (domain rule), before touching the database
         for (Product requested : groupedTrolley) {
             if (requested == null) {
                 continue;
             }
+            if (requested.getOrderedQuantity() <= 0) {
+                throw new InvalidOrderQuantityException(requested.getProductId(), requested.getOrderedQuantity());
+            }
+            ids.add(requested.getProductId());
+        }
 
-            String id = requested.getProductId();
-            int requestedQty = requested.getOrderedQuantity();
+        // Read every trolley line in one batched lookup instead of one query per line
+        Map<String, Product> dbProducts = databaseRW.searchByProductIds(ids);
 
-            // Quantity check (domain rule)
-            if (requestedQty <= 0) {
-                throw new InvalidOrderQuantityException(id, requestedQty);
+        for (Product requested : groupedTrolley) {
+            if (requested == null) {
+                continue;
             }
 
-            Product dbProduct = databaseRW.searchByProductId(id);
+            String id = requested.getProductId();
+            int requestedQty = requested.getOrderedQuantity();
+
+            Product dbProduct = dbProducts.get(id);
 
             if (dbProduct == null) {
                 // Treat missing product as unavailable
@@ -230,7 +355,7 @@ public class CustomerModel {
                         id,
                         "Unknown product",
                         requested.getProductImageName(),
-                        requested.getUnitPrice(),
+                        requested.getUnitPricePence(),
                         0
                 );
                 missing.setOrderedQuantity(requestedQty);
@@ -262,7 +387,7 @@ public class CustomerModel {
                     productToAdd.getProductId(),
                     productToAdd.getProductDescription(),
                     productToAdd.getProductImageName(),
-                    productToAdd.getUnitPrice(),
+                    productToAdd.getUnitPricePence(),
                     productToAdd.getStockQuantity()
             );
             copy.setOrderedQuantity(productToAdd.getOrderedQuantity());
@@ -290,6 +415,125 @@ public class CustomerModel {
         return -1;
     }
 
+    // Stock reservations: holds the stock of a product being added to the trolley.
+    // Returns false only if there is not enough stock to hold; if the database cannot be reached
+    // the product is added without a hold and its stock is checked at checkout as before.
+    private boolean holdStock(Product product) {
+        if (reservations == null) {
+            return true;
+        }
+        try {
+            Reservation reservation = reservations.reserve(product.getProductId(), product.getOrderedQuantity());
+            if (reservation == null) {
+                return false;
+            }
+            holds.computeIfAbsent(product.getProductId(), id -> new ArrayList<>()).add(reservation);
+        } catch (SQLException e) {
+            System.out.println("Could not hold stock for " + product.getProductId() + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    // Every hold of the trolley, including any that expired since
+    private List<Reservation> trolleyHolds() {
+        ArrayList<Reservation> all = new ArrayList<>();
+        for (List<Reservation> productHolds : holds.values()) {
+            all.addAll(productHolds);
+        }
+        return all;
+    }
+
+    // Buys the grouped trolley. With stock reservations the hold rows are deleted and the units not held are taken
+    // in one transaction, so a failed or interrupted checkout never loses the held units; a short line leaves
+    // every hold in place for the trolley.
+    private ArrayList<Product> purchase(ArrayList<Product> groupedTrolley) throws SQLException {
+        if (reservations == null || holds.isEmpty()) {
+            return databaseRW.purchaseStocks(groupedTrolley);
+        }
+        ArrayList<Product> purchaseFailed = reservations.purchase(trolleyHolds(), groupedTrolley);
+        if (purchaseFailed.isEmpty()) {
+            holds.clear(); // bought, there is nothing left to hold
+        }
+        return purchaseFailed;
+    }
+
+    // The units of a product this trolley holds that are still held, for the insufficient-stock message
+    private int heldQuantity(String productId) {
+        int held = 0;
+        if (reservations != null) {
+            for (Reservation reservation : holds.getOrDefault(productId, List.of())) {
+                if (reservations.isActive(reservation)) {
+                    held += reservation.getQuantity();
+                }
+            }
+        }
+        return held;
+    }
+
+    // The quantity of a product in the trolley, the short line may only carry the units that were not held
+    private static int requestedQuantity(ArrayList<Product> groupedTrolley, Product shortLine) {
+        for (Product line : groupedTrolley) {
+            if (line.getProductId().equals(shortLine.getProductId())) {
+                return line.getOrderedQuantity();
+            }
+        }
+        return shortLine.getOrderedQuantity();
+    }
+
+    //Called when the customer window is closed: the trolley is gone, so its stock goes back on sale now
+    //rather than when the holds expire
+    public void releaseHolds() {
+        releaseHolds(null);
+    }
+
+    // Gives back the holds of one product, or of the whole trolley if productId is null
+    private void releaseHolds(String productId) {
+        if (reservations == null || holds.isEmpty()) {
+            return;
+        }
+        ArrayList<Reservation> released = new ArrayList<>();
+        if (productId == null) {
+            for (List<Reservation> productHolds : holds.values()) {
+                released.addAll(productHolds);
+            }
+            holds.clear();
+        } else if (holds.containsKey(productId)) {
+            released.addAll(holds.remove(productId));
+        }
+        if (released.isEmpty()) {
+            return;
+        }
+        try {
+            reservations.release(released);
+        } catch (SQLException e) {
+            // the sweeper returns them to stock when they expire
+            System.out.println("Could not release stock holds: " + e.getMessage());
+        }
+    }
+
+    // The trolley lines minus the units covered by holds
+    private ArrayList<Product> withoutHeldUnits(ArrayList<Product> groupedTrolley, List<Reservation> held) {
+        if (held.isEmpty()) {
+            return groupedTrolley;
+        }
+        Map<String, Integer> heldQuantities = new HashMap<>();
+        for (Reservation reservation : held) {
+            heldQuantities.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+        }
+
+        ArrayList<Product> unheld = new ArrayList<>();
+        for (Product p : groupedTrolley) {
+            int remaining = p.getOrderedQuantity() - heldQuantities.getOrDefault(p.getProductId(), 0);
+            if (remaining > 0) {
+                Product copy = new Product(p.getProductId(), p.getProductDescription(), p.getProductImageName(),
+                        p.getUnitPricePence(), p.getStockQuantity());
+                copy.setOrderedQuantity(remaining);
+                unheld.add(copy);
+            }
+        }
+        return unheld;
+    }
+
     // Remove products from trolley that do not have enough stock
     private void removeInsufficientProductsFromTrolley(ArrayList<Product> insufficientProducts) {
         if (insufficientProducts == null || insufficientProducts.isEmpty()) {
@@ -302,6 +546,7 @@ public class CustomerModel {
             }
 
             String badId = insufficient.getProductId();
+            releaseHolds(badId);
 
             // Remove any matching items
             for (int i = trolley.size() - 1; i >= 0; i--) {
@@ -314,6 +559,7 @@ public class CustomerModel {
     }
 
     void cancel() {
+        releaseHolds(null);
         trolley.clear();
         displayTaTrolley = "";
 
@@ -353,6 +599,11 @@ public class CustomerModel {
         return trolley;
     }
 
+    // For unit tests only: shows a product as if the customer had searched for it, ready for addToTrolley()
+    void showProductForTest(Product product) {
+        theProduct = product;
+    }
+
     // For unit tests only: adds a product without using the UI flow
     void addProductToTrolleyForTest(Product product) {
         if (product == null) {
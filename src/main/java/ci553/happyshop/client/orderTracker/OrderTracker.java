@@ -1,9 +1,13 @@
 package ci553.happyshop.client.orderTracker;
 
+import ci553.happyshop.orderManagement.OrderChange;
 import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.orderManagement.OrderListener;
+import ci553.happyshop.orderManagement.OrderUpdateCoalescer;
 import ci553.happyshop.orderManagement.OrderState;
 import ci553.happyshop.utility.UIStyle;
 import ci553.happyshop.utility.WinPosManager;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
@@ -11,22 +15,28 @@ import javafx.scene.control.TextArea;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
  * OrderTracker class is for tracking orders and their states.
  * It displays an ordersMap(a list of orders with their associated states) in a TextArea.
- * The ordersMap data is received from the OrderHub.
+ * The ordersMap data is received from the OrderHub: a snapshot when it subscribes, then each change.
+ * The changes pass through an OrderUpdateCoalescer, so the display is redrawn at most once per frame
+ * on the FX thread, however many orders change in that frame.
  */
 
-public class OrderTracker {
+public class OrderTracker implements OrderListener {
     private final int WIDTH = UIStyle.trackerWinWidth;
     private final int HEIGHT = UIStyle.trackerWinHeight;
 
     // TreeMap (orderID,state) holding order IDs and their corresponding states.
-    private static final TreeMap<Integer, OrderState> ordersMap = new TreeMap<>();
+    private final TreeMap<Integer, OrderState> ordersMap = new TreeMap<>();
+    private long lastSequence = 0; // the sequence number of the last snapshot or change applied
     private final TextArea taDisplay; //area to show all orderId and their state on the GUI
+    private final Stage window;
+    private OrderUpdateCoalescer orderUpdates;
 
      //Constructor initializes the UI, a title Label, and a TextArea for displaying the order details.
     public OrderTracker() {
@@ -42,7 +52,7 @@ public class OrderTracker {
         vbox.setStyle(UIStyle. rootStyleGray);
 
         Scene scene = new Scene(vbox, WIDTH, HEIGHT);
-        Stage window = new Stage();
+        window = new Stage();
         window.setScene(scene);
         window.setTitle("🛒Order Tracker");
 
@@ -57,19 +67,61 @@ public class OrderTracker {
      */
     public void registerWithOrderHub(){
         OrderHub orderHub = OrderHub.getOrderHub();
-        orderHub.registerOrderTracker(this);
+        orderUpdates = new OrderUpdateCoalescer(orderHub, this, Platform::runLater,
+                OrderUpdateCoalescer.defaultMaxPending);
+        orderHub.subscribe(orderUpdates);
+        window.setOnHidden(event -> orderUpdates.close());
     }
 
     /**
-     * Sets the order map with new data and refreshes the display.
-     * This method is called by OrderHub when order states are updated.
+     * Replaces the order map with a snapshot from OrderHub and refreshes the display.
      */
-    public void setOrderMap(TreeMap<Integer, OrderState> om) {
+    @Override
+    public void onSnapshot(TreeMap<Integer, OrderState> orders, long sequence) {
         ordersMap.clear(); // Clears the current map to replace it with the new data.
-        ordersMap.putAll(om);// Adds all new order data to the map.
+        ordersMap.putAll(orders);// Adds all new order data to the map.
+        lastSequence = sequence;
         displayOrderMap();// Updates the display with the new order map.
     }
 
+    /**
+     * Applies one change from OrderHub to the order map and refreshes the display.
+     */
+    @Override
+    public void onChange(OrderChange change) {
+        if (applyChange(change)) {
+            displayOrderMap();
+        }
+    }
+
+    /**
+     * Applies a batch of changes to the order map, then refreshes the display once.
+     */
+    @Override
+    public void onChanges(List<OrderChange> changes) {
+        boolean changed = false;
+        for (OrderChange change : changes) {
+            changed |= applyChange(change);
+        }
+        if (changed) {
+            displayOrderMap();
+        }
+    }
+
+    // false if the change is already in the snapshot
+    private boolean applyChange(OrderChange change) {
+        if (change.getSequence() <= lastSequence) {
+            return false;
+        }
+        lastSequence = change.getSequence();
+        if (change.getType() == OrderChange.Type.REMOVED) {
+            ordersMap.remove(change.getOrderId());
+        } else {
+            ordersMap.put(change.getOrderId(), change.getState());
+        }
+        return true;
+    }
+
      //Displays the current order map in the TextArea.
      //Iterates over the ordersMap and formats each order ID and state for display.
     private void displayOrderMap() {
@@ -1,5 +1,6 @@
 package ci553.happyshop.client.orderTracker;
 
+import ci553.happyshop.orderManagement.OrderHub;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
@@ -22,4 +23,10 @@ public class OrderTrackerClient extends Application {
         OrderTracker orderTracker = new OrderTracker();
         orderTracker.registerWithOrderHub();
     }
+
+    //called by JavaFX when the window is closed: the order store is closed, eg the order journal forced to disk
+    @Override
+    public void stop() {
+        OrderHub.closeOrderHub();
+    }
 }
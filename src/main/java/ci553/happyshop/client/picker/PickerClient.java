@@ -1,5 +1,6 @@
 package ci553.happyshop.client.picker;
 
+import ci553.happyshop.orderManagement.OrderHub;
 import javafx.application.Application;
 import javafx.stage.Stage;
 
@@ -19,7 +20,7 @@ public class PickerClient extends Application {
      * Links them together so they can communicate with each other.
      * Starts the Picker interface.
      *
-     * Also registers the PickerModel with the OrderHub to receive order notifications.
+     * Also registers the PickerModel with the OrderHub to receive order notifications, until the window is closed.
      */
     @Override
     public void start(Stage window) {
@@ -31,7 +32,14 @@ public class PickerClient extends Application {
         pickerController.pickerModel = pickerModel;
         pickerModel.pickerView = pickerView;
 
-        pickerModel.registerWithOrderHub();
         pickerView.start(window);
+        pickerModel.registerWithOrderHub(); // after start, so the view exists when the orders arrive
+        window.setOnHidden(event -> pickerModel.unregisterFromOrderHub());
+    }
+
+    //called by JavaFX when the window is closed: the order store is closed, eg the order journal forced to disk
+    @Override
+    public void stop() {
+        OrderHub.closeOrderHub();
     }
 }
@@ -1,12 +1,18 @@
 package ci553.happyshop.client.picker;
 
+import ci553.happyshop.orderManagement.OrderChange;
 import ci553.happyshop.orderManagement.OrderHub;
+import ci553.happyshop.orderManagement.OrderListener;
+import ci553.happyshop.orderManagement.OrderUpdateCoalescer;
 import ci553.happyshop.orderManagement.OrderState;
+import javafx.application.Platform;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * PickerModel represents the logic order picker.
@@ -15,7 +21,9 @@ import java.util.TreeSet;
  * 2. Notifying PickerView to Updates user interface.
  *
  * 1. Observing OrderHub.
- * PickerModel is an observer of  OrderHub, receiving orderMap from OrderHub.
+ * PickerModel is an observer of  OrderHub, receiving a snapshot of the orderMap and then each change from OrderHub,
+ * and keeping only the orders in the "ordered" or "progressing" states. The changes pass through an
+ * OrderUpdateCoalescer, so the order list is redrawn at most once per frame on the FX thread.
  * When a picker claims a task, PickerModel:
  * - Retrieves the first unlocked order from the orderMap.
  * - Locks the selected order to prevent other pickers from accessing it.
@@ -39,17 +47,19 @@ import java.util.TreeSet;
  * in response to centralized changes made by the OrderHub.
  */
 
-public class PickerModel {
+public class PickerModel implements OrderListener {
     public PickerView pickerView;
     private OrderHub orderHub = OrderHub.getOrderHub();
+    private OrderUpdateCoalescer orderUpdates; // between OrderHub and this model, set by registerWithOrderHub
 
     //two elements that need to be passed to PickerView for updating.
     private String displayTaOrderMap="";
     private String displayTaOrderDetail ="";
 
     // TreeMap (orderID,state) holding order IDs and their corresponding states.
-    private static TreeMap<Integer, OrderState> orderMap = new TreeMap<>();
-    private static TreeSet<Integer> lockedOrderIds = new TreeSet<>(); // Track locked orders by orderId
+    private final TreeMap<Integer, OrderState> orderMap = new TreeMap<>();
+    private long lastSequence = 0; // the sequence number of the last snapshot or change applied
+    private static final Set<Integer> lockedOrderIds = ConcurrentHashMap.newKeySet(); // Track locked orders by orderId
 
     private int theOrderId=0; //Order ID assigned to a picker;
                               // 0 means no order is currently assigned.
@@ -59,29 +69,38 @@ public class PickerModel {
      * Attempts to find an unlocked order for this picker and mark it as progressing.
      * The order will be locked to prevent other pickers from accessing it.
      * Only the first unlocked order found will be processed.
+     * OrderHub moves an order to Progressing with a compare-and-set, so if another picker (eg on another thread)
+     * took the order first, this picker moves on to the next one.
      */
     public void doProgressing() throws IOException {
         for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
             int orderId = entry.getKey();
-            if (!isOrderLocked(orderId)) { // Find the first unlocked order
-                lockOrder(orderId);// Lock the order to prevent other pickers from taking it
-                theOrderId = orderId; // Save the assigned orderId to this picker and update its state
-                theOrderState = OrderState.Progressing;
-                notifyOrderHub();// Notify the OrderHub about the state change
-                updatePickerView(); // Refresh picker view
-                return; // Exit after handling one order
+            if (lockOrder(orderId)) { // Find the first unlocked order, and lock it
+                boolean taken = false;
+                try {
+                    // an unlocked Progressing order was being prepared before a restart, this picker carries on with it
+                    taken = entry.getValue() == OrderState.Progressing
+                            || orderHub.changeOrderStateMoveFile(orderId, OrderState.Progressing);
+                } finally {
+                    if (!taken) {
+                        unlockOrder(orderId); // someone else took it first, or the change could not be stored
+                    }
+                }
+                if (taken) {
+                    theOrderId = orderId; // Save the assigned orderId to this picker and update its state
+                    theOrderState = OrderState.Progressing;
+                    // Read order file, ie. order details
+                    displayTaOrderDetail = orderHub.getOrderDetailForPicker(theOrderId);
+                    updatePickerView(); // Refresh picker view
+                    return; // Exit after handling one order
+                }
             }
         }
     }
 
-    // Lock an order
+    // Lock an order, false if it is already locked
     private boolean lockOrder(int orderId) {
-        if (lockedOrderIds.contains(orderId)) {
-            return false; // Order is already locked
-        } else {
-            lockedOrderIds.add(orderId);
-            return true; // Successfully locked the order
-        }
+        return lockedOrderIds.add(orderId);
     }
 
     // Unlock an order
@@ -100,8 +119,8 @@ public class PickerModel {
             notifyOrderHub(); // Notify the OrderHub about the state change
             displayTaOrderDetail = "";
             updatePickerView(); // update picker view
-            theOrderId=0;  //reset to no order is with the picker
             unlockOrder(theOrderId);//remove the order from locked orderId set
+            theOrderId=0;  //reset to no order is with the picker
         }
     }
 
@@ -109,29 +128,70 @@ public class PickerModel {
     //so it can receive updates about orderMap changes.
     public void registerWithOrderHub(){
         OrderHub orderHub = OrderHub.getOrderHub();
-        orderHub.registerPickerModel(this);
+        orderUpdates = new OrderUpdateCoalescer(orderHub, this, Platform::runLater,
+                OrderUpdateCoalescer.defaultMaxPending);
+        orderHub.subscribe(orderUpdates);
+    }
+
+    // Stops the updates from OrderHub, eg when the picker window is closed
+    public void unregisterFromOrderHub(){
+        if (orderUpdates != null) {
+            orderUpdates.close();
+            orderUpdates = null;
+        }
     }
 
     //Notifies the OrderHub of a change in the order state.
-    //If the order is moving to the 'Progressing' state, asks OrderHub to read the order detail
-    // from the file system for displaying in the pickerView.
     private void notifyOrderHub() throws IOException {
         orderHub.changeOrderStateMoveFile(theOrderId, theOrderState);
-        if (theOrderState == OrderState.Progressing) {
-            // Read order file, ie. order details
-            displayTaOrderDetail = orderHub.getOrderDetailForPicker(theOrderId);
-        }
     }
 
-    // Sets the order map with new data and refreshes the display.
-    // This method is called by OrderHub to set orderMap for picker.
-    public void setOrderMap(TreeMap<Integer,OrderState> om) {
+    // Replaces the order map with a snapshot from OrderHub (without collected orders) and refreshes the display.
+    @Override
+    public void onSnapshot(TreeMap<Integer,OrderState> orders, long sequence) {
         orderMap.clear();
-        orderMap.putAll(om);
+        for (Map.Entry<Integer, OrderState> entry : orders.entrySet()) {
+            if (entry.getValue() != OrderState.Collected) {
+                orderMap.put(entry.getKey(), entry.getValue());
+            }
+        }
+        lastSequence = sequence;
         displayTaOrderMap= buildOrderMapString();
         updatePickerView();
     }
 
+    // Applies one change from OrderHub to the order map and refreshes the display.
+    @Override
+    public void onChange(OrderChange change) {
+        onChanges(List.of(change));
+    }
+
+    // Applies a batch of changes from OrderHub to the order map, then refreshes the display once.
+    @Override
+    public void onChanges(List<OrderChange> changes) {
+        boolean changed = false;
+        for (OrderChange change : changes) {
+            changed |= applyChange(change);
+        }
+        if (changed) {
+            displayTaOrderMap= buildOrderMapString();
+            updatePickerView();
+        }
+    }
+
+    // A collected order leaves the picker's map straight away.
+    // false if nothing shown changed, eg the change is already in the snapshot
+    private boolean applyChange(OrderChange change) {
+        if (change.getSequence() <= lastSequence) {
+            return false;
+        }
+        lastSequence = change.getSequence();
+        if (change.getType() == OrderChange.Type.REMOVED || change.getState() == OrderState.Collected) {
+            return orderMap.remove(change.getOrderId()) != null;
+        }
+        return orderMap.put(change.getOrderId(), change.getState()) != change.getState();
+    }
+
     //Builds a formatted string representing the current order map.
     //Each line contains the order ID followed by its state, aligned with spacing.
     private String buildOrderMapString() {
@@ -2,7 +2,9 @@ package ci553.happyshop.client.warehouse;
 
 import ci553.happyshop.storageAccess.DatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.ProductChangeFeed;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.stage.Stage;
 
 /**
@@ -36,8 +38,16 @@ public class WarehouseClient extends Application {
         controller.model = model;
         model.view = view;
         model.databaseRW = databaseRW;
+        model.asyncDatabaseRW = DatabaseRWFactory.createAsyncDatabaseRW(databaseRW);
+        model.productImporter = DatabaseRWFactory.createProductImporter(databaseRW);
+        model.reservations = DatabaseRWFactory.getStockReservations();
         view.start(window);
 
+        // the search results are refreshed row by row when their products change, until the window is closed
+        ProductChangeFeed.Subscription changes = DatabaseRWFactory.getChangeFeed()
+                .subscribe(model.changeListener(), Platform::runLater, DatabaseRWFactory.changeFeedMaxPending);
+        window.setOnHidden(event -> changes.close());
+
         HistoryWindow historyWindow = new HistoryWindow();
         AlertSimulator alertSimulator = new AlertSimulator();
 
@@ -47,4 +57,10 @@ public class WarehouseClient extends Application {
         historyWindow.warehouseView = view;
         alertSimulator.warehouseView = view;
     }
+
+    //called by JavaFX when the window is closed: the catalogue snapshot makes the next start a warm one
+    @Override
+    public void stop() {
+        DatabaseRWFactory.writeCatalogueSnapshotOnShutdown();
+    }
 }
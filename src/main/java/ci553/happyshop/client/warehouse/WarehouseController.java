@@ -11,6 +11,9 @@ public class WarehouseController {
             case "🔍":
                 model.doSearch();
                 break;
+            case "More":
+                model.doSearchMore();
+                break;
             case "Edit":
                 model.doEdit();
                 break;
@@ -29,6 +32,9 @@ public class WarehouseController {
             case "Cancel":  // clear the editChild
                 model.doCancel();
                 break;
+            case "Import CSV":
+                model.doImportCsv();
+                break;
         }
     }
 }
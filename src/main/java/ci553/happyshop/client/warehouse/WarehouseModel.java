@@ -1,10 +1,18 @@
 package ci553.happyshop.client.warehouse;
 
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.AsyncDatabaseRW;
 import ci553.happyshop.storageAccess.DatabaseRW;
 import ci553.happyshop.storageAccess.DerbyRW;
 import ci553.happyshop.storageAccess.ImageFileManager;
+import ci553.happyshop.storageAccess.ProductChangeEvent;
+import ci553.happyshop.storageAccess.ProductChangeFeed;
+import ci553.happyshop.storageAccess.ProductImporter;
+import ci553.happyshop.storageAccess.ProductPage;
+import ci553.happyshop.storageAccess.StockReservations;
+import ci553.happyshop.utility.Money;
 import ci553.happyshop.utility.StorageLocation;
+import javafx.application.Platform;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -13,15 +21,29 @@ import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class WarehouseModel {
     public WarehouseView view;
     public DatabaseRW databaseRW; //Interface type, not specific implementation
                          //Benefits: Flexibility: Easily change the database implementation.
+    public AsyncDatabaseRW asyncDatabaseRW; // when set, searches run off the FX thread
+    public ProductImporter productImporter; // bulk imports new products from a CSV file
+    public StockReservations reservations; // when set, the edit form shows held units as part of the stock on hand
 
     private ArrayList<Product> productList = new ArrayList<>(); // search results fetched from the database
+    private static final int SEARCH_PAGE_SIZE = 50; // search results are fetched one page at a time
+    private String searchKeyword = "";   // the keyword of the current search, used to fetch its next page
+    private String searchNextCursor;     // where the next page starts (productID of the last product shown)
+    private boolean searchHasMore = false;
+    private CompletableFuture<ProductPage> pendingSearch; // the page still being fetched, if any
     private Product theSelectedPro; // the product selected from the ListView before the user edits or deletes
     private String theNewProId;
+    private String theImportSummary; // eg "120 products imported from autumn.csv, 2 rejected"
+    private String theGoodsInSummary; // eg "delivery of 3 lines (+72 units) posted"
 
     //information used to update editProduct child in WarehouseView
     String displayIdEdit="";
@@ -38,12 +60,15 @@ public class WarehouseModel {
     private enum ManageProductType{
         Edited,
         Deleted,
-        New
+        New,
+        Imported,
+        GoodsIn
     }
 
     private enum UpdateForAction{
         //actions in Search Page
         BtnSearch,  //actually its updating the Observable ProductList
+        BtnMore,    //appends the next page of search results to the Observable ProductList
         BtnEdit,
         BtnDelete,
 
@@ -56,20 +81,129 @@ public class WarehouseModel {
         BtnCancelNew,
         BtnSummitNew,
 
+        // actions in Goods-in page
+        BtnCancelGoodsIn,
+        BtnSummitGoodsIn,
+
         //show user input error message in alertSimulator
         ShowInputErrorMsg
     }
 
+    //shows the first page of results, so a broad search shows its first products straight away
     void doSearch() throws SQLException {
         String keyword = view.tfSearchKeyword.getText().trim();
-        if (!keyword.equals("")) {
-            productList = databaseRW.searchProduct(keyword);
-        }
-        else{
+        cancelPendingSearch();
+        if (keyword.equals("")) {
             productList.clear();
+            searchHasMore = false;
             System.out.println("please type product ID or name to search");
+            updateView(UpdateForAction.BtnSearch);
+            return;
+        }
+
+        searchKeyword = keyword;
+        if (asyncDatabaseRW != null) {
+            fetchPageAsync(keyword, null, UpdateForAction.BtnSearch); // the window stays responsive meanwhile
+        } else {
+            showPage(databaseRW.searchProductPage(keyword, null, SEARCH_PAGE_SIZE), UpdateForAction.BtnSearch);
+        }
+    }
+
+    //adds the next page of the current search to the results
+    void doSearchMore() throws SQLException {
+        if (searchHasMore && pendingSearch == null) {
+            if (asyncDatabaseRW != null) {
+                fetchPageAsync(searchKeyword, searchNextCursor, UpdateForAction.BtnMore);
+            } else {
+                showPage(databaseRW.searchProductPage(searchKeyword, searchNextCursor, SEARCH_PAGE_SIZE), UpdateForAction.BtnMore);
+            }
+        }
+    }
+
+    //fetches a page on a database thread and shows it on the FX thread,
+    //unless a newer search was started in the meantime
+    private void fetchPageAsync(String keyword, String afterProductId, UpdateForAction updateFor) {
+        CompletableFuture<ProductPage> search = asyncDatabaseRW.searchProductPage(keyword, afterProductId, SEARCH_PAGE_SIZE);
+        pendingSearch = search;
+        search.whenComplete((page, error) -> Platform.runLater(() -> {
+            if (search != pendingSearch) {
+                return; // cancelled or replaced by a newer search
+            }
+            pendingSearch = null;
+            if (error != null) {
+                System.out.println("Search for " + keyword + " failed: " + error);
+                return;
+            }
+            showPage(page, updateFor);
+        }));
+    }
+
+    private void cancelPendingSearch() {
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true);
+            pendingSearch = null;
+        }
+    }
+
+    //BtnSearch replaces the results with the page, BtnMore appends it
+    private void showPage(ProductPage page, UpdateForAction updateFor) {
+        if (updateFor == UpdateForAction.BtnSearch) {
+            productList = new ArrayList<>(page.getProducts());
+        } else {
+            productList.addAll(page.getProducts());
+        }
+        searchNextCursor = page.getNextCursor();
+        searchHasMore = page.hasMore();
+        updateView(updateFor);
+    }
+
+    //keeps the search results up to date when products are bought, edited or deleted elsewhere,
+    //row by row instead of searching again. WarehouseClient subscribes it to the ProductChangeFeed on the FX thread.
+    public ProductChangeFeed.Listener changeListener() {
+        return new ProductChangeFeed.Listener() {
+            @Override
+            public void onChanges(List<ProductChangeEvent> changes) {
+                for (ProductChangeEvent change : changes) {
+                    int index = indexOfResult(change.getProductId());
+                    if (index < 0) {
+                        continue; // not shown; new products only appear when they are searched for
+                    }
+                    if (change.getNewProduct() == null) {
+                        productList.remove(index);
+                        view.removeProductAt(index, searchHasMore);
+                    } else {
+                        productList.set(index, change.getNewProduct());
+                        view.updateProductAt(index, change.getNewProduct());
+                    }
+                }
+            }
+
+            @Override
+            public void onOverflow() {
+                // too much changed to patch row by row: fetch the first page of the current search again
+                if (productList.isEmpty() || pendingSearch != null) {
+                    return;
+                }
+                if (asyncDatabaseRW != null) {
+                    fetchPageAsync(searchKeyword, null, UpdateForAction.BtnSearch);
+                    return;
+                }
+                try {
+                    showPage(databaseRW.searchProductPage(searchKeyword, null, SEARCH_PAGE_SIZE), UpdateForAction.BtnSearch);
+                } catch (SQLException e) {
+                    System.out.println("Could not refresh the search for " + searchKeyword + ": " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    private int indexOfResult(String productId) {
+        for (int i = 0; i < productList.size(); i++) {
+            if (productList.get(i).getProductId().equals(productId)) {
+                return i;
+            }
         }
-        updateView(UpdateForAction.BtnSearch);
+        return -1;
     }
 
     void doDelete() throws SQLException, IOException {
@@ -100,8 +234,8 @@ public class WarehouseModel {
         if (pro != null) {
             theSelectedPro = pro;
             displayIdEdit = theSelectedPro.getProductId();
-            displayPriceEdit = String.format("%.2f", theSelectedPro.getUnitPrice());
-            displayStockEdit = String.valueOf (theSelectedPro.getStockQuantity());
+            displayPriceEdit = Money.format(theSelectedPro.getUnitPricePence());
+            displayStockEdit = String.valueOf (stockOnHand(theSelectedPro));
             displayDescriptionEdit = theSelectedPro.getProductDescription();
 
             String relativeImageUri = StorageLocation.imageFolder + theSelectedPro.getProductImageName();
@@ -117,6 +251,19 @@ public class WarehouseModel {
 
     }
 
+    //the units of a product on hand: its stock plus the units held in trolleys, which updateProduct expects back
+    private int stockOnHand(Product product) {
+        if (reservations == null) {
+            return product.getStockQuantity();
+        }
+        try {
+            return product.getStockQuantity() + reservations.getReservedQuantity(product.getProductId());
+        } catch (SQLException e) {
+            System.out.println("Could not read the held stock of " + product.getProductId() + ": " + e.getMessage());
+            return product.getStockQuantity();
+        }
+    }
+
     void doCancel(){
        if(view.theProFormMode.equals("EDIT")){
            updateView(UpdateForAction.BtnCancelEdit);
@@ -126,6 +273,9 @@ public class WarehouseModel {
            updateView(UpdateForAction.BtnCancelNew);
            theNewProId = null;
        }
+       if(view.theProFormMode.equals("GOODSIN")){
+           updateView(UpdateForAction.BtnCancelGoodsIn);
+       }
     }
     void doSummit() throws SQLException, IOException {
         if(view.theProFormMode.equals("EDIT")){
@@ -134,6 +284,9 @@ public class WarehouseModel {
         if(view.theProFormMode.equals("NEW")){
             doSubmitNew();
         }
+        if(view.theProFormMode.equals("GOODSIN")){
+            doSubmitGoodsIn();
+        }
     }
 
     private void doSubmitEdit() throws IOException, SQLException {
@@ -159,10 +312,10 @@ public class WarehouseModel {
                 updateView(UpdateForAction.ShowInputErrorMsg);
             }
             else{
-                double price = Double.parseDouble(textPrice);
+                long pricePence = Money.parsePence(textPrice);
                 int stock= Integer.parseInt(textStock);
                 //update datbase
-                databaseRW.updateProduct(id,description,price,imageName,stock);
+                databaseRW.updateProduct(id,description,pricePence,imageName,stock);
 
                 updateView(UpdateForAction.BtnSummitEdit);
                 theSelectedPro=null;
@@ -229,17 +382,98 @@ public class WarehouseModel {
             //copy the user selected image to project image folder and using productId as image name
             //and get the image extension from the source image, we write this name to database
             String imageNameWithExtension = ImageFileManager.copyFileToDestination(view.imageUriNewPro, StorageLocation.imageFolder,theNewProId);
-            double price = Double.parseDouble(textPrice);
+            long pricePence = Money.parsePence(textPrice);
             int stock = Integer.parseInt(textStock);
 
-            //insertNewProduct to databse (String id, String des,double price,String image,int stock)
-            //a record in databse looks like ('0001', '40 inch TV', 269.00,'0001TV.jpg',100)"
-            databaseRW.insertNewProduct(theNewProId,description,price,imageNameWithExtension,stock);
+            //insertNewProduct to databse (String id, String des,long pricePence,String image,int stock)
+            //a record in databse looks like ('0001', '40 inch TV', 26900,'0001TV.jpg',100)"
+            databaseRW.insertNewProduct(theNewProId,description,pricePence,imageNameWithExtension,stock);
             updateView(UpdateForAction.BtnSummitNew);
             theNewProId = null;
         }
     }
 
+    //posts a whole delivery in one transaction: every line is a relative stock change, so checkouts
+    //happening meanwhile are not overwritten. Nothing is changed unless every line can be applied.
+    private void doSubmitGoodsIn() throws SQLException {
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        StringBuilder errorMessage = new StringBuilder();
+        String[] lines = view.taGoodsIn.getText().split("\\R");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("[\\s,]+");
+            if (fields.length != 2 || !fields[0].matches("\\d{4}") || !fields[1].matches("[+-]?\\d{1,6}")) {
+                errorMessage.append("\u2022 Line " + (i + 1) + " is not \"productID quantity\": " + line + "\n");
+                continue;
+            }
+            deltas.merge(fields[0], Integer.parseInt(fields[1]), Integer::sum); // the same product twice is added up
+        }
+        if (deltas.isEmpty() && errorMessage.length() == 0) {
+            errorMessage.append("\u2022 Type at least one delivery line, eg 0001 24");
+        }
+        if (errorMessage.length() > 0) {
+            displayInputErrorMsg = errorMessage.toString();
+            updateView(UpdateForAction.ShowInputErrorMsg);
+            return;
+        }
+
+        Map<String, Integer> refused = databaseRW.adjustStock(deltas);
+        if (!refused.isEmpty()) {
+            StringBuilder msg = new StringBuilder("\u2022 Delivery not posted, no stock was changed.\n");
+            for (Map.Entry<String, Integer> line : refused.entrySet()) {
+                msg.append("\u2022 ").append(line.getKey()).append(" (").append(line.getValue())
+                        .append("): no such product, or stock would go below zero\n");
+            }
+            displayInputErrorMsg = msg.toString();
+            updateView(UpdateForAction.ShowInputErrorMsg);
+            return;
+        }
+
+        int units = 0;
+        for (int delta : deltas.values()) {
+            units += delta;
+        }
+        theGoodsInSummary = String.format("delivery of %d lines (%+d units) posted", deltas.size(), units);
+        updateView(UpdateForAction.BtnSummitGoodsIn);
+    }
+
+    //bulk import of the CSV file the user picked in the view. It runs on its own thread so the window
+    //stays responsive; progress is shown after every chunk and the result goes into the history.
+    //Rows that are not imported are written next to the CSV file, eg autumn.csv -> autumn.rejects.csv
+    void doImportCsv() {
+        Path csvFile = view.csvFileToImport;
+        if (csvFile == null || productImporter == null) {
+            return;
+        }
+        String fileName = csvFile.getFileName().toString();
+        Path rejectFile = csvFile.resolveSibling(fileName.replaceFirst("(?i)\\.csv$", "") + ".rejects.csv");
+        view.updateImportProgress("Importing " + fileName + " ...", true);
+
+        Thread importer = new Thread(() -> {
+            try {
+                ProductImporter.Progress result = productImporter.importCsv(csvFile, rejectFile, progress ->
+                        Platform.runLater(() -> view.updateImportProgress(String.format("%d imported, %d rejected",
+                                progress.getImported(), progress.getRejected()), !progress.isFinished())));
+                theImportSummary = String.format("%d products imported from %s, %d rejected%s",
+                        result.getImported(), fileName, result.getRejected(),
+                        result.getRejected() > 0 ? " (see " + rejectFile.getFileName() + ")" : "");
+                Platform.runLater(() -> showManageStockHistory(ManageProductType.Imported));
+            } catch (IOException | SQLException e) {
+                Platform.runLater(() -> {
+                    view.updateImportProgress("Import failed", false);
+                    displayInputErrorMsg = "\u2022 Import of " + fileName + " failed: " + e.getMessage();
+                    updateView(UpdateForAction.ShowInputErrorMsg);
+                });
+            }
+        }, "Warehouse-import");
+        importer.setDaemon(true);
+        importer.start();
+        view.csvFileToImport = null;
+    }
+
     private  boolean validateInputEditChild(String txPrice, String txStock,
                                          String description) throws SQLException {
 
@@ -252,6 +486,8 @@ public class WarehouseModel {
             // Validate: Ensure at most two decimal places
             if (!txPrice.matches("^[0-9]+(\\.[0-9]{0,2})?$")) {
                 errorMessage.append("\u2022 Price can have at most two decimal places.\n");
+            } else {
+                Money.parsePence(txPrice); // the price is stored in pence; throws if it has too many digits
             }
 
             if (price <= 0) {
@@ -308,6 +544,8 @@ public class WarehouseModel {
             // Validate: Ensure at most two decimal places
             if (!txPrice.matches("^[0-9]+(\\.[0-9]{0,2})?$")) {
                 errorMessage.append("\u2022 Price can have at most two decimal places.\n");
+            } else {
+                Money.parsePence(txPrice); // the price is stored in pence; throws if it has too many digits
             }
 
             if (price <= 0) {
@@ -349,13 +587,16 @@ public class WarehouseModel {
     private void updateView(UpdateForAction updateFor){
         switch (updateFor) {
             case UpdateForAction.BtnSearch:
-                view.updateObservableProductList(productList);
+                view.updateObservableProductList(productList, searchHasMore);
+                break;
+            case UpdateForAction.BtnMore:
+                view.appendObservableProductList(productList, searchHasMore);
                 break;
             case UpdateForAction.BtnEdit:
                 view.updateEditProductChild(displayIdEdit,displayPriceEdit,displayStockEdit,displayDescriptionEdit,displayImageUrlEdit);
                 break;
             case UpdateForAction.BtnDelete:
-                view.updateObservableProductList(productList); //update search page in view
+                view.updateObservableProductList(productList, searchHasMore); //update search page in view
                 showManageStockHistory(ManageProductType.Deleted);
                 view.resetEditChild();
                 alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
@@ -388,6 +629,17 @@ public class WarehouseModel {
                 alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
                 break;
 
+            case UpdateForAction.BtnCancelGoodsIn:
+                view.resetGoodsInChild();
+                alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
+                break;
+
+            case UpdateForAction.BtnSummitGoodsIn:
+                showManageStockHistory(ManageProductType.GoodsIn);
+                view.resetGoodsInChild();
+                alertSimulator.closeAlertSimulatorWindow();//close AlertSimulatorWindow if exists
+                break;
+
             case UpdateForAction.ShowInputErrorMsg:
                 alertSimulator.showErrorMsg(displayInputErrorMsg);
         }
@@ -405,6 +657,12 @@ public class WarehouseModel {
                 break;
             case ManageProductType.New :
                 record = theNewProId + " added to database successfully, " + dateTime;
+                break;
+            case ManageProductType.Imported:
+                record = theImportSummary + ", " + dateTime;
+                break;
+            case ManageProductType.GoodsIn:
+                record = theGoodsInSummary + ", " + dateTime;
         }
         if(!record.equals(""))
             displayManageHistory.add(record);
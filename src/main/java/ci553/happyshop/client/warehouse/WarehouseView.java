@@ -77,6 +77,7 @@ public class WarehouseView  {
     //some elements in searchPage
     TextField tfSearchKeyword; //user typing in it
     private Label laSearchSummary; //eg. the lable shows "3 products found" after search
+    private Button btnMore; //shows the next page of search results, only visible when there are more
     private ObservableList<Product> obeProductList; //observable product list
     ListView<Product> obrLvProducts; //A ListView observes the product list
 
@@ -84,16 +85,19 @@ public class WarehouseView  {
     ComboBox<String> cbProductFormMode; //the first child
     private VBox vbEditProduct; //the seceond child
     private VBox vbNewProduct; //another second child
+    private VBox vbGoodsIn; //the third second child
     String theProFormMode ="EDIT";
     /** productFormPage has two children at a time,
      * 1. cbProductFormMode: A ComboBox that holds two action types for the product form:
      *    - "EDIT": For editing an existing product
      *    - "NEW": For adding a new product to stock
-     * The action mode (either "EDIT" or "NEW") is stored in the 'theProFormMode' variable to keep track of the current mode.
+     *    - "GOODSIN": For posting a delivery, the stock changes of many products at once
+     * The action mode (either "EDIT", "NEW" or "GOODSIN") is stored in the 'theProFormMode' variable to keep track of the current mode.
      *
      * The following two second childeren swap based on the selected value of the ComboBox:
      * 2. vbEditProduct: contains the UI elements for editing an existing product (visible when "EDIT" is selected)
      * 2. vbNewProduct: contains the UI elements for adding a new product to stock (visible when "NEW" is selected)
+     * 2. vbGoodsIn: contains the UI elements for posting a delivery (visible when "GOODSIN" is selected)
      */
 
     //some elements in vbEditProduct, we need to getValue from them and setValue for them
@@ -129,6 +133,12 @@ public class WarehouseView  {
     private ImageView ivProNewPro;
     String imageUriNewPro; //user slected image Uri
     // URI of the image selected by the user for a new product. This value is retrieved from the image chooser.
+    private Button btnImport; //imports many new products from a CSV file, disabled while an import runs
+    private Label laImportProgress; //eg. "1500 imported, 3 rejected"
+    Path csvFileToImport; //the CSV file selected by the user for a bulk import
+
+    //the element in vbGoodsIn, one delivery line per row, eg "0001 24"
+    TextArea taGoodsIn;
 
     public void start(Stage window) {
         VBox vbSearchPage = createSearchPage();
@@ -187,7 +197,13 @@ public class WarehouseView  {
         btnDelete.setStyle(UIStyle.grayFillBtnStyle);
         btnDelete.setOnAction(this::buttonClick);
 
-        HBox hbLaBtns = new HBox(10, laSearchSummary, btnEdit,btnDelete);
+        btnMore = new Button("More");
+        btnMore.setStyle(UIStyle.buttonStyle);
+        btnMore.setOnAction(this::buttonClick);
+        btnMore.setVisible(false);
+        btnMore.setManaged(false); //takes no space in the layout while hidden
+
+        HBox hbLaBtns = new HBox(10, laSearchSummary, btnMore, btnEdit,btnDelete);
         hbLaBtns.setAlignment(Pos.CENTER);
         hbLaBtns.setPadding(new Insets(5)); //setPadding only works on Layout manager
         //hbLaBtns.setStyle("-fx-padding: 5px;"); //setStyle works on any Node (eg. layout manager, controls)
@@ -256,13 +272,15 @@ public class WarehouseView  {
     private VBox createProductFormPage() {
         cbProductFormMode = new ComboBox<>();
         cbProductFormMode.setStyle(UIStyle.comboBoxStyle);
-        cbProductFormMode.getItems().addAll("Edit Existing Product in Stock", "Add New Product to Stock");
+        cbProductFormMode.getItems().addAll("Edit Existing Product in Stock", "Add New Product to Stock",
+                "Goods In (Delivery)");
         // Set default selected value, so only when value changed trigger setOnAction
         cbProductFormMode.setValue("Edit Existing Product in Stock");
 
         vbEditProduct = createEditProdcutChild();
         disableEditProductChild(true); //disable editable component until user selects a product and cilck btnEdit
         vbNewProduct = createNewProductChild();
+        vbGoodsIn = createGoodsInChild();
 
         // Initially set the second child (after ComboBox) to editProduct
         VBox vbProductFormPage = new VBox(10, cbProductFormMode, vbEditProduct);
@@ -278,6 +296,10 @@ public class WarehouseView  {
                 vbProductFormPage.getChildren().set(1,vbNewProduct);
                 theProFormMode = "NEW";
             }
+            if (cbProductFormMode.getValue().equals("Goods In (Delivery)")) {
+                vbProductFormPage.getChildren().set(1,vbGoodsIn);
+                theProFormMode = "GOODSIN";
+            }
         });
 
         vbProductFormPage.setPrefWidth(COLUMN_WIDTH+20);
@@ -449,12 +471,51 @@ public class WarehouseView  {
         hbOkCancelBtns.setAlignment(Pos.CENTER);
         //hbOkCancelBtns.setPadding(new Insets(5));
 
+        // Bulk import: many new products from a CSV file
+        btnImport = new Button("Import CSV");
+        btnImport.setStyle(UIStyle.buttonStyle);
+        btnImport.setOnAction(this::buttonClick);
+        laImportProgress = new Label("");
+        laImportProgress.setStyle(UIStyle.labelStyle);
+        laImportProgress.setWrapText(true);
+        HBox hbImport = new HBox(10, btnImport, laImportProgress);
+        hbImport.setAlignment(Pos.CENTER_LEFT);
+
         // Main Layout
-        VBox vbAddNewProductToStockChild = new VBox(10, hbIdPriceStockImage, vbDescription, hbOkCancelBtns);
+        VBox vbAddNewProductToStockChild = new VBox(10, hbIdPriceStockImage, vbDescription, hbOkCancelBtns, hbImport);
         vbAddNewProductToStockChild.setStyle(UIStyle.manageStockChildStyle1);
         return vbAddNewProductToStockChild;
     }
 
+    //goods-in: the user types or pastes the delivery note, one "productID quantity" line per product,
+    //and the whole delivery is posted in one go
+    private VBox createGoodsInChild() {
+        Label laGoodsIn = new Label("Delivery lines: productID quantity");
+        laGoodsIn.setStyle(UIStyle.labelStyle);
+        Label laHint = new Label("eg 0001 24  (a negative quantity takes stock away)");
+
+        taGoodsIn = new TextArea();
+        taGoodsIn.setPrefSize(COLUMN_WIDTH-20, 200);
+        taGoodsIn.setStyle(UIStyle.textFiledStyle);
+
+        // Cancel & Submit Buttons
+        Button btnClear = new Button("Cancel");
+        btnClear.setStyle(UIStyle.grayFillBtnStyle);
+        btnClear.setPrefWidth(100);
+        btnClear.setOnAction(this::buttonClick);
+
+        Button btnPost = new Button("Submit");
+        btnPost.setStyle(UIStyle.blueFillBtnStyle);
+        btnPost.setPrefWidth(100);
+        btnPost.setOnAction(this::buttonClick);
+        HBox hbOkCancelBtns = new HBox(15, btnClear, btnPost);
+        hbOkCancelBtns.setAlignment(Pos.CENTER);
+
+        VBox vbGoodsInChild = new VBox(10, laGoodsIn, laHint, taGoodsIn, hbOkCancelBtns);
+        vbGoodsInChild.setStyle(UIStyle.manageStockChildStyle1);
+        return vbGoodsInChild;
+    }
+
     //disable editable controls before user select a product and click the button edit
     private void disableEditProductChild(boolean disable) {
         tfPriceEdit.setDisable(disable);
@@ -478,6 +539,17 @@ public class WarehouseView  {
             cbProductFormMode.setValue("Edit Existing Product in Stock"); //show EditChild
         }
 
+        //the user picks the CSV file first, nothing to do if the chooser is cancelled
+        if(action.equals("Import CSV")) {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+            File file = fileChooser.showOpenDialog(viewWindow);
+            if (file == null) {
+                return;
+            }
+            csvFileToImport = file.toPath();
+        }
+
         try{
             controller.process(action);
         }
@@ -515,13 +587,40 @@ public class WarehouseView  {
     }
 
     //update the product listVew of serachPage
-    void updateObservableProductList( ArrayList<Product> productList) {
-        int proCounter = productList.size();
-        System.out.println(proCounter);
-        laSearchSummary.setText(proCounter + " products found");
-        laSearchSummary.setVisible(true);
+    void updateObservableProductList( ArrayList<Product> productList, boolean hasMore) {
         obeProductList.clear();
         obeProductList.addAll(productList);
+        updateSearchSummary(productList.size(), hasMore);
+    }
+
+    //adds only the products that are not shown yet (the next page), so the rows already shown stay in place
+    void appendObservableProductList(ArrayList<Product> productList, boolean hasMore) {
+        obeProductList.addAll(productList.subList(obeProductList.size(), productList.size()));
+        updateSearchSummary(productList.size(), hasMore);
+    }
+
+    //one product of the results changed elsewhere (eg a checkout changed its stock): only its row is redrawn
+    void updateProductAt(int index, Product product) {
+        obeProductList.set(index, product);
+    }
+
+    //one product of the results was deleted elsewhere
+    void removeProductAt(int index, boolean hasMore) {
+        obeProductList.remove(index);
+        updateSearchSummary(obeProductList.size(), hasMore);
+    }
+
+    private void updateSearchSummary(int proCounter, boolean hasMore) {
+        laSearchSummary.setText(hasMore ? "first " + proCounter + " products" : proCounter + " products found");
+        laSearchSummary.setVisible(true);
+        btnMore.setVisible(hasMore);
+        btnMore.setManaged(hasMore);
+    }
+
+    //shows how far a bulk import has got; the import button is disabled until it has finished
+    void updateImportProgress(String progress, boolean running) {
+        laImportProgress.setText(progress);
+        btnImport.setDisable(running);
     }
 
     void updateBtnAddSub(String stock){
@@ -565,6 +664,10 @@ public class WarehouseView  {
        System.out.println("resetNewProChild in view called");
     }
 
+    void resetGoodsInChild() {
+        taGoodsIn.clear();
+    }
+
     WindowBounds getWindowBounds() {
         return new WindowBounds(viewWindow.getX(),
                                 viewWindow.getY(),
@@ -0,0 +1,24 @@
+package ci553.happyshop.diagnostics;
+
+/**
+ * Writes diagnostics to the console: WARN and ERROR to System.err, everything else to System.out.
+ * This keeps the console output the system always had, just off the calling thread.
+ */
+
+public class ConsoleDiagnosticSink implements DiagnosticSink {
+
+    @Override
+    public void write(DiagnosticRecord record) {
+        if (record.getLevel().isAtLeast(DiagnosticLevel.WARN)) {
+            System.err.println(record.format());
+        } else {
+            System.out.println(record.format());
+        }
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+        System.err.flush();
+    }
+}
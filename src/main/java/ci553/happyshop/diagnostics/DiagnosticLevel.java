@@ -0,0 +1,19 @@
+package ci553.happyshop.diagnostics;
+
+/**
+ * The severity of a diagnostic message, from the most detailed (DEBUG) to the most serious (ERROR).
+ * Diagnostics only keeps messages at or above its current level, eg at INFO the DEBUG messages
+ * are thrown away before they are even formatted.
+ */
+
+public enum DiagnosticLevel {
+    DEBUG, // row by row detail, eg every product read from the database
+    INFO,  // normal events, eg an order file created, the search index built
+    WARN,  // something unexpected that the system can continue from, eg a file not found
+    ERROR, // an operation failed, eg a database update error
+    OFF;   // used only as a level setting, turns all diagnostics off
+
+    public boolean isAtLeast(DiagnosticLevel other) {
+        return ordinal() >= other.ordinal();
+    }
+}
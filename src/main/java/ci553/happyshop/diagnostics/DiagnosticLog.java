@@ -0,0 +1,55 @@
+package ci553.happyshop.diagnostics;
+
+/**
+ * A named handle for writing diagnostics from one class, eg
+ *
+ *     private static final DiagnosticLog log = Diagnostics.getLog(DerbyRW.class);
+ *     log.info("Product " + id + " deleted from database.");
+ *
+ * Messages below the current Diagnostics level are ignored. When building the message itself is costly
+ * (eg one line per row read), check isDebugEnabled() first so nothing is built when DEBUG is off.
+ */
+
+public class DiagnosticLog {
+    private final String source;
+
+    DiagnosticLog(String source) {
+        this.source = source;
+    }
+
+    public boolean isEnabled(DiagnosticLevel level) {
+        return Diagnostics.isEnabled(level);
+    }
+
+    public boolean isDebugEnabled() {
+        return Diagnostics.isEnabled(DiagnosticLevel.DEBUG);
+    }
+
+    public void debug(String message) {
+        Diagnostics.log(DiagnosticLevel.DEBUG, source, message, null);
+    }
+
+    public void info(String message) {
+        Diagnostics.log(DiagnosticLevel.INFO, source, message, null);
+    }
+
+    public void warn(String message) {
+        Diagnostics.log(DiagnosticLevel.WARN, source, message, null);
+    }
+
+    public void warn(String message, Throwable error) {
+        Diagnostics.log(DiagnosticLevel.WARN, source, message, error);
+    }
+
+    public void error(String message) {
+        Diagnostics.log(DiagnosticLevel.ERROR, source, message, null);
+    }
+
+    public void error(String message, Throwable error) {
+        Diagnostics.log(DiagnosticLevel.ERROR, source, message, error);
+    }
+
+    public String getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,59 @@
+package ci553.happyshop.diagnostics;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One diagnostic message, captured on the calling thread and written later by the background writer.
+ * It keeps only cheap values (time, thread name, text); formatting happens on the writer thread.
+ */
+
+public class DiagnosticRecord {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final long timestampMillis;
+    private final DiagnosticLevel level;
+    private final String source;
+    private final String threadName;
+    private final String message;
+    private final Throwable error;
+
+    public DiagnosticRecord(long timestampMillis, DiagnosticLevel level, String source, String threadName,
+                            String message, Throwable error) {
+        this.timestampMillis = timestampMillis;
+        this.level = level;
+        this.source = source;
+        this.threadName = threadName;
+        this.message = message;
+        this.error = error;
+    }
+
+    public long getTimestampMillis() { return timestampMillis; }
+    public DiagnosticLevel getLevel() { return level; }
+    public String getSource() { return source; }
+    public String getThreadName() { return threadName; }
+    public String getMessage() { return message; }
+    public Throwable getError() { return error; }
+
+    /**
+     * eg "14:03:21.507 INFO  [DerbyRW] (JavaFX Application Thread) Search index built for 25 products."
+     * followed by the stack trace if the record carries an error.
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(TIME_FORMAT.format(Instant.ofEpochMilli(timestampMillis)))
+                .append(' ').append(String.format("%-5s", level))
+                .append(" [").append(source).append("] (").append(threadName).append(") ")
+                .append(message);
+        if (error != null) {
+            StringWriter trace = new StringWriter();
+            error.printStackTrace(new PrintWriter(trace));
+            sb.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package ci553.happyshop.diagnostics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue of diagnostic records: many threads add (offer), one thread removes (poll).
+ *
+ * The buffer is an array of slots used in a circle. Every slot has a sequence number that says whose turn it is:
+ * - sequence == position       the slot is free for the producer that claims this position
+ * - sequence == position + 1   the slot holds a record for the consumer at this position
+ * A producer claims a position with one compareAndSet on tail, writes the record, then publishes it by
+ * setting the sequence. The consumer frees a slot by setting its sequence one lap (capacity) ahead.
+ *
+ * No thread ever waits for a lock: if the buffer is full, offer() returns false at once
+ * and the caller drops the record, so a slow console or disk can never slow down a database call.
+ */
+
+class DiagnosticRingBuffer {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<DiagnosticRecord> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); // next position to claim by a producer
+    private volatile long head = 0;                   // next position to read, only written by the consumer thread
+
+    /**
+     * @param capacity rounded up to a power of two, so a position maps to a slot with a bit mask
+     */
+    DiagnosticRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds a record; safe to call from any number of threads.
+     * @return false if the buffer is full
+     */
+    boolean offer(DiagnosticRecord record) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, record);
+                    sequences.set(index, position + 1); // publish to the consumer
+                    return true;
+                }
+                position = tail.get(); // another producer claimed it first, try the next position
+            } else if (difference < 0) {
+                return false; // the slot still holds a record from one lap ago: full
+            } else {
+                position = tail.get(); // we are behind other producers, catch up
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest record; must only be called from the single consumer thread.
+     * @return the record, or null if there is none (or the next one is not published yet)
+     */
+    DiagnosticRecord poll() {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        DiagnosticRecord record = slots.get(index);
+        slots.set(index, null);
+        sequences.set(index, head + capacity); // free the slot for the producer one lap later
+        head++;
+        return record;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    // Approximate, records may be added or removed while counting
+    int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+}
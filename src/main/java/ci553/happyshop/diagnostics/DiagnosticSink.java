@@ -0,0 +1,20 @@
+package ci553.happyshop.diagnostics;
+
+import java.io.IOException;
+
+/**
+ * Where diagnostic records end up, eg the console or a log file.
+ * A sink is only ever called from the Diagnostics background writer thread, so it does not need to be thread-safe.
+ */
+
+public interface DiagnosticSink {
+
+    void write(DiagnosticRecord record) throws IOException;
+
+    // Called after each drained batch, so buffered output is not held back for long
+    void flush() throws IOException;
+
+    default void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,220 @@
+package ci553.happyshop.diagnostics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Diagnostics replaces System.out.println for the storage and order management code.
+ *
+ * Printing to the console is slow and blocks the thread that prints: a product search that printed five lines
+ * per row spent more time printing than querying. Here the calling thread only:
+ *   1. checks the level (a message below the level costs almost nothing), and
+ *   2. puts a small DiagnosticRecord into a bounded lock-free DiagnosticRingBuffer.
+ * A single background daemon thread ("Diagnostics-writer") takes the records out and writes them to the
+ * current DiagnosticSink (console by default, or a RollingFileDiagnosticSink).
+ *
+ * If the buffer is full (messages arrive faster than the sink can write them) the new message is dropped and
+ * counted, rather than making the caller wait. getStatistics() shows how many were dropped.
+ *
+ * Settings (system properties, read once at start-up):
+ *   happyshop.diagnostics.level       DEBUG, INFO (default), WARN, ERROR or OFF
+ *   happyshop.diagnostics.bufferSize  ring buffer capacity, default 8192
+ * The level and sink can also be changed at any time with setLevel() and setSink().
+ *
+ * Pending records are written out by a shutdown hook when the JVM exits.
+ */
+
+public final class Diagnostics {
+    private static final long IDLE_PARK_NANOS = 5_000_000L; // writer checks for new records every 5ms when idle
+
+    private static volatile DiagnosticLevel level = parseLevel(System.getProperty("happyshop.diagnostics.level"));
+
+    private static final DiagnosticRingBuffer buffer =
+            new DiagnosticRingBuffer(Integer.getInteger("happyshop.diagnostics.bufferSize", 8192));
+
+    // a new sink waiting to be taken over by the writer thread, which is the only thread that uses sinks
+    private static final AtomicReference<DiagnosticSink> pendingSink = new AtomicReference<>();
+    private static DiagnosticSink sink = new ConsoleDiagnosticSink();
+
+    // Statistics
+    private static final LongAdder accepted = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static final AtomicLong written = new AtomicLong(); // also used by flush() to see when the writer caught up
+    private static final LongAdder sinkErrors = new LongAdder();
+
+    private static final Thread writer;
+
+    static {
+        writer = new Thread(Diagnostics::drainLoop, "Diagnostics-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(2000), "Diagnostics-shutdown"));
+    }
+
+    private Diagnostics() {
+    }
+
+    public static DiagnosticLog getLog(Class<?> owner) {
+        return new DiagnosticLog(owner.getSimpleName());
+    }
+
+    public static DiagnosticLog getLog(String source) {
+        return new DiagnosticLog(source);
+    }
+
+    public static boolean isEnabled(DiagnosticLevel messageLevel) {
+        return messageLevel != DiagnosticLevel.OFF && messageLevel.isAtLeast(level);
+    }
+
+    public static DiagnosticLevel getLevel() {
+        return level;
+    }
+
+    public static void setLevel(DiagnosticLevel newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * Replaces the sink. Records already buffered may still go to the old sink;
+     * the old sink is closed by the writer thread once it has switched over.
+     */
+    public static void setSink(DiagnosticSink newSink) {
+        DiagnosticSink replaced = pendingSink.getAndSet(newSink);
+        if (replaced != null) {
+            closeQuietly(replaced); // set twice before the writer switched, the first one is never used
+        }
+        LockSupport.unpark(writer);
+    }
+
+    static void log(DiagnosticLevel messageLevel, String source, String message, Throwable error) {
+        if (!isEnabled(messageLevel)) {
+            return;
+        }
+        DiagnosticRecord record = new DiagnosticRecord(System.currentTimeMillis(), messageLevel, source,
+                Thread.currentThread().getName(), message, error);
+        if (buffer.offer(record)) {
+            accepted.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Waits until every record accepted before this call has been written and the sink flushed.
+     * @return false if that did not happen within timeoutMillis
+     */
+    public static boolean flush(long timeoutMillis) {
+        long target = accepted.sum();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (written.get() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000L);
+        }
+        return true;
+    }
+
+    // Runs on the writer thread for the life of the JVM
+    private static void drainLoop() {
+        while (true) {
+            DiagnosticSink next = pendingSink.getAndSet(null);
+            if (next != null) {
+                closeQuietly(sink);
+                sink = next;
+            }
+
+            int count = 0;
+            DiagnosticRecord record;
+            while ((record = buffer.poll()) != null) {
+                try {
+                    sink.write(record);
+                } catch (IOException | RuntimeException e) {
+                    sinkErrors.increment(); // the record is lost, but the writer keeps going
+                }
+                count++;
+            }
+
+            if (count > 0) {
+                try {
+                    sink.flush();
+                } catch (IOException | RuntimeException e) {
+                    sinkErrors.increment();
+                }
+                written.addAndGet(count);
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static void closeQuietly(DiagnosticSink oldSink) {
+        try {
+            oldSink.close();
+        } catch (IOException | RuntimeException e) {
+            sinkErrors.increment();
+        }
+    }
+
+    private static DiagnosticLevel parseLevel(String value) {
+        if (value == null) {
+            return DiagnosticLevel.INFO;
+        }
+        try {
+            return DiagnosticLevel.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return DiagnosticLevel.INFO;
+        }
+    }
+
+    /**
+     * @return a snapshot of the diagnostics counters
+     */
+    public static Statistics getStatistics() {
+        return new Statistics(level, buffer.capacity(), buffer.size(), accepted.sum(), written.get(),
+                dropped.sum(), sinkErrors.sum());
+    }
+
+    /**
+     * A point-in-time snapshot of the diagnostics counters.
+     */
+    public static class Statistics {
+        private final DiagnosticLevel level;
+        private final int bufferCapacity;
+        private final int buffered;
+        private final long accepted;
+        private final long written;
+        private final long dropped;
+        private final long sinkErrors;
+
+        private Statistics(DiagnosticLevel level, int bufferCapacity, int buffered, long accepted, long written,
+                           long dropped, long sinkErrors) {
+            this.level = level;
+            this.bufferCapacity = bufferCapacity;
+            this.buffered = buffered;
+            this.accepted = accepted;
+            this.written = written;
+            this.dropped = dropped;
+            this.sinkErrors = sinkErrors;
+        }
+
+        public DiagnosticLevel getLevel() { return level; }
+        public int getBufferCapacity() { return bufferCapacity; }
+        public int getBuffered() { return buffered; }
+        public long getAccepted() { return accepted; }
+        public long getWritten() { return written; }
+        public long getDropped() { return dropped; }
+        public long getSinkErrors() { return sinkErrors; }
+
+        @Override
+        public String toString() {
+            return String.format("Diagnostics[level=%s, buffered=%d/%d, accepted=%d, written=%d, dropped=%d, " +
+                            "sink errors=%d]",
+                    level, buffered, bufferCapacity, accepted, written, dropped, sinkErrors);
+        }
+    }
+}
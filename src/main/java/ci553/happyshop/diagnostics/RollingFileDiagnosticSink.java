@@ -0,0 +1,92 @@
+package ci553.happyshop.diagnostics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes diagnostics to a log file that rolls over when it gets too big.
+ *
+ * When happyshop.log reaches maxFileBytes it is renamed to happyshop.log.1 (the old .1 becomes .2, and so on)
+ * and a new happyshop.log is started. At most maxBackupFiles old files are kept, the oldest is deleted,
+ * so the logs never use more than about (maxBackupFiles + 1) * maxFileBytes of disk.
+ */
+
+public class RollingFileDiagnosticSink implements DiagnosticSink {
+    private final Path logFile;
+    private final long maxFileBytes;
+    private final int maxBackupFiles;
+
+    private BufferedWriter writer;
+    private long currentBytes;
+
+    public RollingFileDiagnosticSink(Path logFile, long maxFileBytes, int maxBackupFiles) throws IOException {
+        if (maxFileBytes <= 0 || maxBackupFiles < 0) {
+            throw new IllegalArgumentException("maxFileBytes must be positive and maxBackupFiles not negative");
+        }
+        this.logFile = logFile;
+        this.maxFileBytes = maxFileBytes;
+        this.maxBackupFiles = maxBackupFiles;
+        Path dir = logFile.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        open();
+    }
+
+    @Override
+    public void write(DiagnosticRecord record) throws IOException {
+        String line = record.format() + System.lineSeparator();
+        long lineBytes = line.getBytes(StandardCharsets.UTF_8).length;
+        if (currentBytes > 0 && currentBytes + lineBytes > maxFileBytes) {
+            roll();
+        }
+        writer.write(line);
+        currentBytes += lineBytes;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    public Path getLogFile() {
+        return logFile;
+    }
+
+    private void open() throws IOException {
+        writer = Files.newBufferedWriter(logFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        currentBytes = Files.size(logFile);
+    }
+
+    // happyshop.log.(n-1) -> happyshop.log.n, ..., happyshop.log -> happyshop.log.1
+    private void roll() throws IOException {
+        writer.close();
+        if (maxBackupFiles == 0) {
+            Files.deleteIfExists(logFile);
+        } else {
+            Files.deleteIfExists(backup(maxBackupFiles));
+            for (int i = maxBackupFiles - 1; i >= 1; i--) {
+                if (Files.exists(backup(i))) {
+                    Files.move(backup(i), backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(logFile, backup(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    private Path backup(int index) {
+        return logFile.resolveSibling(logFile.getFileName() + "." + index);
+    }
+}
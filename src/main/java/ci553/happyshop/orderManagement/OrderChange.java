@@ -0,0 +1,58 @@
+package ci553.happyshop.orderManagement;
+
+/**
+ * OrderChange describes one change to OrderHub's order map, sent to every OrderListener.
+ *
+ * - ADDED: a new order, or an order loaded at startup; state is its state.
+ * - STATE_CHANGED: the order moved to state.
+ * - REMOVED: a collected order left the order map; state is null.
+ *
+ * Every change carries the order's state at the moment the change was numbered, not the state it moved from,
+ * so applying the changes in sequence order (put the state, or remove the order) always ends with the hub's map,
+ * even when two threads change the same order at nearly the same time and a change is reported twice.
+ * Sequence numbers increase by one per change and follow on from the sequence of the last snapshot.
+ */
+
+public class OrderChange {
+
+    public enum Type {
+        ADDED,
+        STATE_CHANGED,
+        REMOVED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final int orderId;
+    private final OrderState state;
+
+    public OrderChange(long sequence, Type type, int orderId, OrderState state) {
+        this.sequence = sequence;
+        this.type = type;
+        this.orderId = orderId;
+        this.state = state;
+    }
+
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+    public int getOrderId() { return orderId; }
+    public OrderState getState() { return state; }
+
+    /**
+     * Combines this change with a later change of the same order into one change with the same net effect,
+     * numbered as the later change.
+     * @return the combined change, or null if the two cancel out (added, then removed)
+     */
+    OrderChange mergeWith(OrderChange later) {
+        if (later.type == Type.REMOVED) {
+            return type == Type.ADDED ? null : later;
+        }
+        // a state change after an add is still an add, to a listener that saw neither
+        return new OrderChange(later.sequence, type == Type.ADDED ? Type.ADDED : later.type, orderId, later.state);
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " " + orderId + (state == null ? "" : " " + state);
+    }
+}
@@ -1,5 +1,7 @@
 package ci553.happyshop.orderManagement;
 
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
 import ci553.happyshop.utility.StorageLocation;
 
 import java.io.IOException;
@@ -8,14 +10,25 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * OrderCounter is responsible for generating unique, sequential orderIDs for new orders.
  *
  * <p>This class manages a persistent counter stored in an external text file:(ie,"orders/orderCounter.txt").
- * On first use, it creates the file and starts the counter at 1.
- * For subsequent calls, it reads the current number, increments it by 1, writes the updated value
- * back to the file, and returns the new order ID.</p>
+ * The file holds the highest order ID handed out (or reserved) so far.</p>
+ *
+ * <p>By default every order ID costs one file round trip under the file lock, so IDs are handed out without
+ * gaps, in the order the orders were created, even when several processes share the file.</p>
+ *
+ * <p>Hi/lo allocation (opt-in, idBlockSize above 1): instead of reading and rewriting the file for every order,
+ * OrderCounter reserves a block of idBlockSize IDs at a time. It adds idBlockSize to the number in the file,
+ * under the file lock, and then hands out the IDs of that block from an AtomicLong in memory, so most orders
+ * only cost an atomic increment. IDs stay unique across restarts and across processes sharing the file, because
+ * the file always holds the end of the last reserved block. But:
+ * - the IDs of a block that is not used up before the shop stops are skipped, so order numbers have gaps;
+ * - processes sharing the file each hand out IDs from their own block, so across processes a later order
+ *   may get a lower ID. Only use blocks when order IDs need not follow creation order, eg one process (Main).</p>
  *
  * <p>File access is synchronized using a file lock to ensure safe operation in a multi-threaded
  * or multi-process environment. The method is simple to use by OrderHub
@@ -31,12 +44,41 @@ import java.nio.channels.FileLock;
  */
 
 public class OrderCounter {
+    private static final DiagnosticLog log = Diagnostics.getLog(OrderCounter.class);
+
+    // How many IDs are reserved per file lock, 1 for none reserved ahead (see above).
+    // Set per process with eg -Dhappyshop.orders.idBlockSize=1000
+    public static int idBlockSize = Integer.getInteger("happyshop.orders.idBlockSize", 1);
+
+    static Path counterPath = StorageLocation.orderCounterPath;
+
+    private static volatile IdBlock block = new IdBlock(1, 0); // empty, so the first call reserves a block
 
     public static int generateOrderId() throws IOException {
-        Path path = StorageLocation.orderCounterPath;
+        while (true) {
+            IdBlock current = block;
+            long id = current.next.getAndIncrement();
+            if (id <= current.last) {
+                return (int) id;
+            }
+            // used up: one thread reserves the next block, the others then take their IDs from it
+            synchronized (OrderCounter.class) {
+                if (block == current) {
+                    block = reserveBlock(Math.max(1, idBlockSize));
+                }
+            }
+        }
+    }
 
+    // Forgets the IDs left in the current block, as a restart would
+    static synchronized void discardBlock() {
+        block = new IdBlock(1, 0);
+    }
+
+    // Adds size to the counter file, under the file lock, and returns the IDs in between
+    private static IdBlock reserveBlock(int size) throws IOException {
         // Lock and increment the ID
-        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (FileChannel channel = FileChannel.open(counterPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
              FileLock lock = channel.lock()) {
 
             //creates a ByteBuffer of the same size as the file — so you can read the whole thing.
@@ -53,15 +95,30 @@ public class OrderCounter {
             //Gets the raw byte array from the buffer so you can convert it to a string or number.
             String content = new String(buffer.array()).trim();
             int currentId = Integer.parseInt(content);
-            int newId = currentId + 1;
+            int newId = Math.addExact(currentId, size);
 
             channel.position(0); // Move to the start of the file
             channel.truncate(0); // Clear all content in the file (file size becomes 0)
             //This wraps an existing byte array into a buffer — so you can write it with channel.write().
             channel.write(ByteBuffer.wrap(String.valueOf(newId).getBytes()));
 
-            System.out.println("OrderId was generated for now: " + newId);
-            return newId;
+            if (size == 1) {
+                log.info("OrderId was generated for now: " + newId);
+            } else {
+                log.info("OrderIds " + (currentId + 1) + " to " + newId + " were reserved");
+            }
+            return new IdBlock(currentId + 1, newId);
+        }
+    }
+
+    // The IDs first..last, handed out by incrementing next
+    private static class IdBlock {
+        private final AtomicLong next;
+        private final long last;
+
+        private IdBlock(long first, long last) {
+            this.next = new AtomicLong(first);
+            this.last = last;
         }
     }
 }
@@ -1,26 +1,29 @@
 package ci553.happyshop.orderManagement;
 
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
 import ci553.happyshop.catalogue.Order;
 import ci553.happyshop.catalogue.Product;
-import ci553.happyshop.client.orderTracker.OrderTracker;
-import ci553.happyshop.client.picker.PickerModel;
-import ci553.happyshop.storageAccess.OrderFileManager;
+import ci553.happyshop.storageAccess.FileOrderStore;
+import ci553.happyshop.storageAccess.OrderJournal;
+import ci553.happyshop.storageAccess.OrderStore;
+import ci553.happyshop.storageAccess.OrderStoreType;
 import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.utility.SystemProperties;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Stream;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>{@code OrderHub} serves as the heart of the ordering system.
@@ -30,46 +33,112 @@ import java.util.stream.Stream;
  * <p> It is the central coordinator responsible for managing all orders. It handles:
  *   Creating and tracking orders
  *   Maintaining and updating the internal order map, <OrderId, OrderState>
- *   Delegating file-related operations (e.g., updating state and moving files) to OrderFileManager class
+ *   Delegating storage (e.g., updating state and moving files) to an OrderStore, chosen by orderStoreType
  *   Loading orders in the "ordered" and "progressing" states from storage during system startup
  *
- * <p> OrderHub also follows the Observer pattern: it notifies registered observers such as OrderTracker
- * and PickerModel whenever the order data changes, keeping the UI and business logic in sync.</p>
+ * <p> OrderHub also follows the Observer pattern: observers such as OrderTracker and PickerModel subscribe
+ * as OrderListeners. A new listener first receives a snapshot of the whole order map, then one OrderChange
+ * (added / state changed / removed) per change, numbered in sequence, so it updates its own copy of the map
+ * instead of receiving and redrawing the whole map every time. A listener that lost track (eg missed changes)
+ * calls requestSnapshot() to start again from a full snapshot.</p>
+ *
+ * <p>Thread safety: many tills and pickers may create and advance orders at the same time, on any thread.
+ * - The order map is a ConcurrentSkipListMap (sorted by orderId, like the TreeMap it replaces).
+ * - A state change is a compare-and-set on the map (replace(orderId, expectedState, newState)), so an order
+ *   only moves Ordered -> Progressing -> Collected, and when two pickers take the same order only one succeeds.
+ * - The listener list is a CopyOnWriteArrayList, so listeners can subscribe while changes are sent.
+ * - Only numbering and sending changes is serialized (notifyLock), so listeners receive the changes in
+ *   sequence order, and a snapshot always fits the changes after it. Creating and advancing orders never waits for it.</p>
  *
  * <p>As the heart of the ordering system, OrderHub connects customers, pickers, and tracker,
  * managementing logic into a unified workflow.</p>
  */
 
 public class OrderHub  {
-    private static OrderHub orderHub; //singleton instance
+    private static final DiagnosticLog log = Diagnostics.getLog(OrderHub.class);
+
+    // Where orders are kept, see OrderStoreType. Set per process with -Dhappyshop.orders.store=JOURNAL.
+    // A JOURNAL can only be open in one process, so with JOURNAL every client must run in the same process (Main)
+    public static final String ORDER_STORE_PROPERTY = "happyshop.orders.store";
+    public static OrderStoreType orderStoreType = SystemProperties.enumProperty(ORDER_STORE_PROPERTY,
+            OrderStoreType.class, OrderStoreType.FILES); // null if the property names no store, see createOrderStore
+    public static long journalSegmentMaxBytes = 8 * 1024 * 1024; // JOURNAL: a new segment file after this many bytes
+    public static boolean journalSyncEveryWrite = true;           // JOURNAL: every order is on disk before it is shown
 
-    private final Path orderedPath = StorageLocation.orderedPath;
-    private final Path progressingPath = StorageLocation.progressingPath;
-    private final Path collectedPath = StorageLocation.collectedPath;
+    private final OrderStore orderStore;
 
-    private TreeMap<Integer,OrderState> orderMap = new TreeMap<>();
-    private TreeMap<Integer,OrderState> OrderedOrderMap = new TreeMap<>();
-    private TreeMap<Integer,OrderState> progressingOrderMap = new TreeMap<>();
+    private final ConcurrentSkipListMap<Integer,OrderState> orderMap = new ConcurrentSkipListMap<>();
 
     /**
-     * Two Lists to hold all registered OrderTracker and PickerModel observers.
-     * These observers are notified whenever the orderMap is updated,
-     * but each observer is only notified of the parts of the orderMap that are relevant to them.
-     * - OrderTrackers will be notified of the full orderMap, including all orders (ordered, progressing, collected),
-     *   but collected orders are shown for a limited time (10 seconds).
-     * - PickerModels will be notified only of orders in the "ordered" or "progressing" states, filtering out collected orders.
+     * The subscribed observers, eg OrderTrackers and PickerModels.
+     * Every listener receives every change and keeps the orders that are relevant to it:
+     * - OrderTrackers show all orders (ordered, progressing, collected),
+     *   but collected orders are removed after a limited time (10 seconds).
+     * - PickerModels show only orders in the "ordered" or "progressing" states, dropping collected orders.
      */
-    private ArrayList<OrderTracker> orderTrackerList = new ArrayList<>();
-    private ArrayList<PickerModel> pickerModelList = new ArrayList<>();
+    private final CopyOnWriteArrayList<OrderListener> listenerList = new CopyOnWriteArrayList<>();
+    private final ReentrantLock notifyLock = new ReentrantLock(); // one notification at a time, see above
+    private long sequence = 0; // the sequence number of the last change sent, guarded by notifyLock
 
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OrderHub-collected-removal");
+        thread.setDaemon(true); // must not keep the JVM alive on exit
+        return thread;
+    });
 
-    //Singleton pattern
-    private OrderHub() {}
+    //Singleton pattern: created on the first getOrderHub() call. If its order store cannot be opened, every call
+    //fails with the same IllegalStateException saying why, and a later call may try again.
+    private static volatile OrderHub orderHub; // guarded by OrderHub.class for writes
+
+    // package-private so tests can run an OrderHub on their own store
+    OrderHub(OrderStore orderStore) {
+        this.orderStore = orderStore;
+    }
+
+    /**
+     * @throws IllegalStateException if the order store cannot be opened, eg orderStoreType is JOURNAL
+     * and another process has the journal open
+     */
     public static OrderHub getOrderHub() {
-        if (orderHub == null)
-            orderHub = new OrderHub();
-            return orderHub;
+        OrderHub hub = orderHub;
+        if (hub == null) {
+            synchronized (OrderHub.class) {
+                if (orderHub == null) {
+                    orderHub = new OrderHub(createOrderStore());
+                }
+                hub = orderHub;
+            }
+        }
+        return hub;
+    }
+
+    /**
+     * Closes the order store of the OrderHub, if one was created, eg forcing the order journal to disk.
+     * Called when the shop shuts down cleanly; a failure is only logged. A later getOrderHub() opens it again.
+     */
+    public static synchronized void closeOrderHub() {
+        if (orderHub == null) {
+            return;
+        }
+        orderHub.scheduler.shutdownNow();
+        try {
+            orderHub.orderStore.close();
+        } catch (IOException e) {
+            log.error("Could not close the order store", e);
+        }
+        orderHub = null;
+    }
+
+    private static OrderStore createOrderStore() {
+        OrderStoreType type = SystemProperties.requireEnum(orderStoreType, ORDER_STORE_PROPERTY, OrderStoreType.class);
+        if (type == OrderStoreType.JOURNAL) {
+            try {
+                return new OrderJournal(StorageLocation.orderJournalPath, journalSegmentMaxBytes, journalSyncEveryWrite);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open the order journal: " + e.getMessage(), e);
+            }
+        }
+        return new FileOrderStore();
     }
 
     //Creates a new order using the provided list of products.
@@ -80,81 +149,111 @@ public class OrderHub  {
         //make an Order Object: id, Ordered_state, orderedDateTime, and productsList(trolley)
         Order theOrder = new Order(orderId,OrderState.Ordered,orderedDateTime,trolley);
 
-        //write order details to file for the orderId in orderedPath (ie. orders/ordered)
+        //store the order details, eg as a file in orders/ordered
         String orderDetail = theOrder.orderDetails();
-        Path path = orderedPath;
-        OrderFileManager.createOrderFile(path, orderId, orderDetail);
+        orderStore.createOrder(orderId, orderDetail);
 
         orderMap.put(orderId, theOrder.getState()); //add the order to orderMap,state is Ordered initially
-        notifyOrderTrackers(); //notify OrderTrackers
-        notifyPickerModels();//notify pickers
-        
+        publish(OrderChange.Type.ADDED, orderId); //notify OrderTrackers and pickers
+
         return theOrder;
     }
 
-    //Registers an OrderTracker to receive updates about changes.
-    public void registerOrderTracker(OrderTracker orderTracker){
-        orderTrackerList.add(orderTracker);
-    }
-     //Notifies all registered observer_OrderTrackers to update and display the latest orderMap.
-    public void notifyOrderTrackers(){
-        for(OrderTracker orderTracker : orderTrackerList){
-            orderTracker.setOrderMap(orderMap);
+    /**
+     * Subscribes a listener: it receives a snapshot of the order map now, then every change after it.
+     */
+    public void subscribe(OrderListener listener) {
+        notifyLock.lock();
+        try {
+            listener.onSnapshot(new TreeMap<>(orderMap), sequence);
+            listenerList.add(listener);
+        } finally {
+            notifyLock.unlock();
         }
     }
 
-    //Registers a PickerModel to receive updates about changes.
-    public void registerPickerModel(PickerModel pickerModel){
-        pickerModelList.add(pickerModel);
+    public void unsubscribe(OrderListener listener) {
+        listenerList.remove(listener);
     }
 
-    //notify all pickers to show orderMap (only ordered and progressing states orders)
-    public void notifyPickerModels(){
-        TreeMap<Integer,OrderState> orderMapForPicker = new TreeMap<>();
-        progressingOrderMap = filterOrdersByState(OrderState.Progressing);
-        OrderedOrderMap = filterOrdersByState(OrderState.Ordered);
-        orderMapForPicker.putAll(progressingOrderMap);
-        orderMapForPicker.putAll(OrderedOrderMap);
-        for(PickerModel pickerModel : pickerModelList){
-            pickerModel.setOrderMap(orderMapForPicker);
+    /**
+     * Sends a subscribed listener a fresh snapshot of the order map, eg after it missed changes.
+     * The changes after it follow on from the snapshot's sequence number as usual.
+     */
+    public void requestSnapshot(OrderListener listener) {
+        notifyLock.lock();
+        try {
+            listener.onSnapshot(new TreeMap<>(orderMap), sequence);
+        } finally {
+            notifyLock.unlock();
         }
     }
 
-    // Filters orderMap that match the specified state, a helper class used by notifyPickerModel()
-    private TreeMap<Integer, OrderState> filterOrdersByState(OrderState state) {
-        TreeMap<Integer, OrderState> filteredOrderMap = new TreeMap<>(); // New map to hold filtered orders
-        // Loop through the orderMap and add matching orders to filteredOrders
-        for (Map.Entry<Integer, OrderState> entry : orderMap.entrySet()) {
-            if (entry.getValue() == state) {
-                filteredOrderMap.put(entry.getKey(), entry.getValue());
+    /**
+     * Numbers a change to an order and sends it to every listener.
+     * The change carries the state the order has now (REMOVED if it is gone), read under notifyLock,
+     * so when two threads change the same order, a late change repeats the latest state instead of undoing it.
+     */
+    private void publish(OrderChange.Type type, int orderId) {
+        notifyLock.lock();
+        try {
+            OrderState state = orderMap.get(orderId);
+            OrderChange change = new OrderChange(++sequence, state == null ? OrderChange.Type.REMOVED : type,
+                    orderId, state);
+            for (OrderListener listener : listenerList) {
+                listener.onChange(change);
             }
+        } finally {
+            notifyLock.unlock();
         }
-        return filteredOrderMap;
     }
 
-    //Changes the state of the specified order, updates its file, and moves it to the appropriate folder.
-    //trigger by PickerModel
-    public void changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
-        if(orderMap.containsKey(orderId) && !orderMap.get(orderId).equals(newState))
-        {
-            //change orderState in OrderMap, notify OrderTrackers and pickers
-            orderMap.put(orderId, newState);
-            notifyOrderTrackers();
-            notifyPickerModels();
-
-            //change orderState in order file and move the file to new state folder
-            switch(newState){
-                case OrderState.Progressing:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,orderedPath,progressingPath);
-                    break;
-                case OrderState.Collected:
-                    OrderFileManager.updateAndMoveOrderFile(orderId, newState,progressingPath,collectedPath);
-                    removeCollectedOrder(orderId); //Scheduled removal
-                    break;
-            }
+    // The state an order must be in to move to the given state, null if no order can move to it
+    private static OrderState previousState(OrderState newState) {
+        switch (newState) {
+            case Progressing:
+                return OrderState.Ordered;
+            case Collected:
+                return OrderState.Progressing;
+            default:
+                return null;
         }
     }
 
+    /**
+     * Changes the state of the specified order, and stores the change (eg updates its file and moves it
+     * to the state folder). Triggered by PickerModel.
+     * The change is a compare-and-set: it only happens if the order is in the state before newState,
+     * so when several pickers try to take the same order, exactly one of them gets it.
+     * @return true if this call changed the state, false if the order is unknown or not in the state before newState
+     * @throws IOException if the order store could not store the change (or refused it); the state is then unchanged
+     */
+    public boolean changeOrderStateMoveFile(int orderId, OrderState newState) throws IOException {
+        OrderState expectedState = previousState(newState);
+        if (expectedState == null || !orderMap.replace(orderId, expectedState, newState)) {
+            return false;
+        }
+
+        boolean stored;
+        try {
+            stored = orderStore.changeOrderState(orderId, newState);
+        } catch (IOException e) {
+            orderMap.replace(orderId, newState, expectedState); // not stored, so not done
+            throw e;
+        }
+        if (!stored) { // the store does not have the order in the state before newState
+            orderMap.replace(orderId, newState, expectedState);
+            throw new IOException("Order " + orderId + " could not be moved to " + newState + " in the order store");
+        }
+
+        //notify OrderTrackers and pickers of the new state
+        publish(OrderChange.Type.STATE_CHANGED, orderId);
+        if (newState == OrderState.Collected) {
+            removeCollectedOrder(orderId); //Scheduled removal
+        }
+        return true;
+    }
+
     /**
      * Removes collected orders from the system after they have been collected for 10 seconds.
      *
@@ -164,80 +263,52 @@ public class OrderHub  {
      * The 10-second delay gives enough time for any final updates, and providing a short window for review of completed orders.
      */
     private void removeCollectedOrder(int orderId) {
-        if (orderMap.containsKey(orderId)) {
-            // Schedule removal after a few seconds
-            scheduler.schedule(() -> {
-                orderMap.remove(orderId); //remove collected order
-                System.out.println("Order " + orderId + " removed from tracker and OrdersMap.");
-                notifyOrderTrackers();
-            }, 10, TimeUnit.SECONDS );
-        }
+        // Schedule removal after a few seconds
+        scheduler.schedule(() -> {
+            if (orderMap.remove(orderId, OrderState.Collected)) { //remove collected order
+                log.info("Order " + orderId + " removed from tracker and OrdersMap.");
+                publish(OrderChange.Type.REMOVED, orderId);
+            }
+        }, 10, TimeUnit.SECONDS );
     }
 
     // Reads details of an order for display in the picker once they started preparing the order.
     public String  getOrderDetailForPicker(int orderId) throws IOException {
         OrderState state = orderMap.get(orderId);
-        if(state.equals(OrderState.Progressing)) {
-            return OrderFileManager.readOrderFile(progressingPath,orderId);
+        if(state == OrderState.Progressing) {
+            return orderStore.readOrder(orderId);
         }else{
             return "the fuction is only for picker";
         }
     }
 
-    //Initializes the internal order map by loading the uncollected orders from the file system.
-    // Called during system startup by the Main class.
-    public void initializeOrderMap(){
-        ArrayList<Integer> orderedIds = orderIdsLoader(orderedPath);
-        ArrayList<Integer> progressingIds = orderIdsLoader(progressingPath);
-        if(orderedIds.size()>0){
-            for(Integer orderId : orderedIds){
-                orderMap.put(orderId, OrderState.Ordered);
-            }
-        }
-        if(progressingIds.size()>0){
-            for(Integer orderId : progressingIds){
-                orderMap.put(orderId, OrderState.Progressing);
-            }
-        }
-        notifyOrderTrackers();
-        notifyPickerModels();
-        System.out.println("orderMap initilized. "+ orderMap.size() + " orders in total, including:");
-        System.out.println( orderedIds.size() + " Ordered orders, " +progressingIds.size() + " Progressing orders " );
+    // The current state of an order, null if OrderHub does not know it (any more)
+    public OrderState getOrderState(int orderId) {
+        return orderMap.get(orderId);
     }
 
-    // Loads a list of order IDs from the specified directory.
-    // Used internally by initializeOrderMap().
-    private ArrayList<Integer> orderIdsLoader(Path dir) {
-        ArrayList<Integer> orderIds = new ArrayList<>();
-
-        if (Files.exists(dir) && Files.isDirectory(dir)) {
-            try (Stream<Path> fileStream = Files.list(dir)) {
-                // Process the stream without checking it separately
-                List<Path> files = fileStream.filter(Files::isRegularFile).toList();
-
-                if (files.isEmpty()) {
-                    System.out.println(dir + " is empty");
-                } else {
-                    for (Path file : files) {
-                        String fileName = file.getFileName().toString();
-                        if (fileName.endsWith(".txt")) { // Ensure it's a .txt file
-                            try {
-                                int orderId = Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.')));
-                                orderIds.add(orderId);
-                                System.out.println(orderId);
-                            } catch (NumberFormatException e) {
-                                System.out.println("Invalid file name: " + fileName);
-                            }
-                        }
+    //Initializes the internal order map by loading the uncollected orders from the order store.
+    // Called during system startup by the Main class.
+    public void initializeOrderMap(){
+        int ordered = 0;
+        int progressing = 0;
+        try {
+            for (Map.Entry<Integer, OrderState> entry : orderStore.loadUncollectedOrders().entrySet()) {
+                // an order created or advanced since startup already has a newer state
+                if (orderMap.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                    publish(OrderChange.Type.ADDED, entry.getKey());
+                    if (entry.getValue() == OrderState.Ordered) {
+                        ordered++;
+                    } else {
+                        progressing++;
                     }
                 }
-            } catch (IOException e) {
-                System.out.println("Error reading " + dir + ", " + e.getMessage());
             }
-        } else {
-            System.out.println(dir + " does not exist.");
+        } catch (IOException e) {
+            log.error("Error loading orders, " + e.getMessage());
         }
-        return orderIds;
+        log.info("orderMap initilized. "+ orderMap.size() + " orders in total, including: "
+                + ordered + " Ordered orders, " + progressing + " Progressing orders");
     }
 
 }
@@ -0,0 +1,32 @@
+package ci553.happyshop.orderManagement;
+
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Receives the orders of OrderHub: one full snapshot when it subscribes (or asks for a resync),
+ * then each change as it happens. Calls are made one at a time, in sequence order,
+ * on the thread that changed the order.
+ */
+
+public interface OrderListener {
+
+    /**
+     * The whole order map, replacing whatever the listener held.
+     * @param sequence the sequence number of the last change included; the next change has sequence + 1
+     */
+    void onSnapshot(TreeMap<Integer, OrderState> orders, long sequence);
+
+    // One change since the snapshot, see OrderChange
+    void onChange(OrderChange change);
+
+    /**
+     * Several changes at once, in sequence order, eg from an OrderUpdateCoalescer.
+     * Override it to redraw once for all of them instead of once per change.
+     */
+    default void onChanges(List<OrderChange> changes) {
+        for (OrderChange change : changes) {
+            onChange(change);
+        }
+    }
+}
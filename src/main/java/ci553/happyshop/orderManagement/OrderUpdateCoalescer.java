@@ -0,0 +1,205 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OrderUpdateCoalescer sits between OrderHub and a view that shows orders, eg OrderTracker or PickerModel,
+ * so a burst of checkouts does not redraw the view once per order.
+ * It subscribes to OrderHub in the view's place, collects the changes, and hands them to the view in batches
+ * on the view's executor, eg Platform::runLater:
+ *     orderHub.subscribe(new OrderUpdateCoalescer(orderHub, this, Platform::runLater, maxPending));
+ *
+ * Coalescing: only one delivery is queued on the executor at a time. Changes that arrive before it runs
+ * (for the FX thread: within the same frame) wait in a queue holding at most one change per order;
+ * a later change of a waiting order is merged into it (OrderChange.mergeWith), so an order that is added
+ * and taken by a picker in the same frame reaches the view as one change, or not at all if it was also removed.
+ * The view then receives one onChanges() call per delivery and redraws once.
+ * A snapshot (on subscribing, or a resync) replaces everything waiting; those changes are dropped.
+ *
+ * Bounded: if more than maxPending orders are waiting, they are dropped and the next delivery asks OrderHub
+ * for a fresh snapshot instead. So a view that falls behind never holds more than maxPending changes,
+ * and OrderHub never waits for the view.
+ */
+
+public class OrderUpdateCoalescer implements OrderListener {
+    private static final DiagnosticLog log = Diagnostics.getLog(OrderUpdateCoalescer.class);
+
+    public static int defaultMaxPending = 10_000; // most orders waiting per view before it resyncs
+
+    private final OrderHub orderHub;
+    private final OrderListener view;
+    private final Executor executor;
+    private final int maxPending;
+
+    // guarded by this
+    private final LinkedHashMap<Integer, OrderChange> pending = new LinkedHashMap<>();
+    private TreeMap<Integer, OrderState> pendingSnapshot = null;
+    private long pendingSnapshotSequence;
+    private boolean overflowed = false;
+    private boolean deliveryQueued = false;
+
+    // Statistics
+    private final LongAdder received = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * @param orderHub   asked for a snapshot after an overflow
+     * @param view       receives the snapshots and batches of changes, on the executor
+     * @param executor   runs the view, eg Platform::runLater for a JavaFX view
+     * @param maxPending the most orders that may wait for the view before it resyncs
+     */
+    public OrderUpdateCoalescer(OrderHub orderHub, OrderListener view, Executor executor, int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending must be positive: " + maxPending);
+        }
+        this.orderHub = orderHub;
+        this.view = view;
+        this.executor = executor;
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public void onSnapshot(TreeMap<Integer, OrderState> orders, long sequence) {
+        boolean queueDelivery;
+        synchronized (this) {
+            dropped.add(pending.size()); // all older than the snapshot
+            pending.clear();
+            overflowed = false;
+            pendingSnapshot = orders;
+            pendingSnapshotSequence = sequence;
+            queueDelivery = !deliveryQueued;
+            deliveryQueued = true;
+        }
+        if (queueDelivery) {
+            executor.execute(this::deliver);
+        }
+    }
+
+    @Override
+    public void onChange(OrderChange change) {
+        received.increment();
+        boolean queueDelivery;
+        synchronized (this) {
+            OrderChange waiting = pending.remove(change.getOrderId());
+            if (overflowed) {
+                dropped.increment(); // a snapshot is read anyway
+            } else if (waiting != null) {
+                OrderChange combined = waiting.mergeWith(change);
+                if (combined != null) {
+                    pending.put(change.getOrderId(), combined); // moves to the end, so the queue stays in sequence order
+                }
+                merged.increment();
+            } else if (pending.size() >= maxPending) {
+                dropped.add(pending.size() + 1);
+                pending.clear();
+                overflowed = true;
+                overflows.increment();
+            } else {
+                pending.put(change.getOrderId(), change);
+            }
+            queueDelivery = !deliveryQueued;
+            deliveryQueued = true;
+        }
+        if (queueDelivery) {
+            executor.execute(this::deliver);
+        }
+    }
+
+    private void deliver() {
+        TreeMap<Integer, OrderState> snapshot;
+        long snapshotSequence;
+        List<OrderChange> changes;
+        boolean overflow;
+        synchronized (this) {
+            snapshot = pendingSnapshot;
+            snapshotSequence = pendingSnapshotSequence;
+            pendingSnapshot = null;
+            changes = new ArrayList<>(pending.values());
+            pending.clear();
+            overflow = overflowed;
+            deliveryQueued = false;
+        }
+        deliveries.increment();
+        try {
+            if (overflow) {
+                // stays overflowed until the snapshot arrives, which queues the next delivery
+                log.warn("More than " + maxPending + " order changes waiting, resyncing from a snapshot");
+                orderHub.requestSnapshot(this);
+                return;
+            }
+            if (snapshot != null) {
+                view.onSnapshot(snapshot, snapshotSequence);
+            }
+            if (!changes.isEmpty()) {
+                delivered.add(changes.size());
+                view.onChanges(changes);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Order view update failed", e); // must not stop later deliveries
+        }
+    }
+
+    // Stops the updates, eg when the view's window closes, and logs how much was coalesced
+    public void close() {
+        orderHub.unsubscribe(this);
+        synchronized (this) {
+            pending.clear();
+            pendingSnapshot = null;
+        }
+        log.info(getStatistics().toString());
+    }
+
+    /**
+     * @return a snapshot of the coalescer counters
+     */
+    public Statistics getStatistics() {
+        return new Statistics(received.sum(), delivered.sum(), merged.sum(), dropped.sum(), deliveries.sum(),
+                overflows.sum());
+    }
+
+    /**
+     * A point-in-time snapshot of the coalescer counters.
+     */
+    public static class Statistics {
+        private final long received;
+        private final long delivered;
+        private final long merged;
+        private final long dropped;
+        private final long deliveries;
+        private final long overflows;
+
+        private Statistics(long received, long delivered, long merged, long dropped, long deliveries, long overflows) {
+            this.received = received;
+            this.delivered = delivered;
+            this.merged = merged;
+            this.dropped = dropped;
+            this.deliveries = deliveries;
+            this.overflows = overflows;
+        }
+
+        public long getReceived() { return received; }     // changes from OrderHub
+        public long getDelivered() { return delivered; }   // changes passed on to the view
+        public long getMerged() { return merged; }         // changes merged into a waiting change of the same order
+        public long getDropped() { return dropped; }       // changes replaced by a snapshot
+        public long getDeliveries() { return deliveries; } // batches, ie redraws
+        public long getOverflows() { return overflows; }
+
+        @Override
+        public String toString() {
+            return String.format("OrderUpdateCoalescer[received=%d, delivered=%d, merged=%d, dropped=%d, " +
+                    "deliveries=%d, overflows=%d]", received, delivered, merged, dropped, deliveries, overflows);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncDatabaseRW is the non-blocking version of DatabaseRW: every call returns at once with a CompletableFuture,
+ * and the database work runs on another thread. It is meant for the JavaFX clients, whose event handlers
+ * run on the FX application thread: a slow query must not freeze the window.
+ *
+ * Futures:
+ * - complete normally with the same value the DatabaseRW method would return;
+ * - complete exceptionally with the SQLException (or other exception) the DatabaseRW method threw;
+ * - of reads, complete exceptionally with a java.util.concurrent.TimeoutException if the call took longer than
+ *   the timeout, in which case the database call is interrupted;
+ * - of reads, can be cancelled with cancel(true), which also interrupts the database call (best effort:
+ *   a statement already sent to the database may still finish).
+ * Writes (purchaseStocks, updateProduct, adjustStock, deleteProduct, insertNewProduct(s)) have no timeout and are
+ * not interrupted, so their future reports what the write really did. Cancelling a write's future only stops
+ * waiting for it: the write may still commit, so its outcome is unknown.
+ *
+ * Callbacks (thenAccept, whenComplete, ...) run on a database thread, so code that touches the UI must hand
+ * the result to the FX thread with Platform.runLater().
+ *
+ * VirtualThreadDatabaseRW is the implementation; DatabaseRWFactory.createAsyncDatabaseRW() creates one.
+ */
+
+public interface AsyncDatabaseRW {
+
+    CompletableFuture<ArrayList<Product>> searchProduct(String keyword);
+
+    CompletableFuture<Product> searchByProductId(String productId);
+
+    CompletableFuture<Map<String, Product>> searchByProductIds(Collection<String> productIds);
+
+    CompletableFuture<ProductPage> searchProductPage(String keyword, String afterProductId, int pageSize);
+
+    CompletableFuture<ArrayList<Product>> purchaseStocks(ArrayList<Product> proList);
+
+    CompletableFuture<Void> updateProduct(String id, String des, long pricePence, String imageName, int stock);
+
+    CompletableFuture<Map<String, Integer>> adjustStock(Map<String, Integer> deltas);
+
+    CompletableFuture<Void> deleteProduct(String id);
+
+    CompletableFuture<Void> insertNewProduct(String id, String des, long pricePence, String image, int stock);
+
+    CompletableFuture<Void> insertNewProducts(List<Product> products);
+
+    CompletableFuture<Boolean> isProIdAvailable(String productId);
+
+    /**
+     * Returns a view of this AsyncDatabaseRW whose calls use a different timeout,
+     * eg asyncDatabaseRW.withTimeout(500).searchByProductId(id) for a lookup that must be quick.
+     * The view shares the same threads and DatabaseRW.
+     */
+    AsyncDatabaseRW withTimeout(long timeoutMillis);
+
+    long getTimeoutMillis();
+
+    // The blocking DatabaseRW the calls run on
+    DatabaseRW getDatabaseRW();
+}
@@ -0,0 +1,189 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * CachingDatabaseRW is a decorator: it implements DatabaseRW by wrapping another DatabaseRW (eg DerbyRW)
+ * and answering product lookups from a ProductCache whenever it can.
+ *
+ * - Reads (searchByProductId, searchByProductIds, searchProduct, isProIdAvailable) check the cache first (read-through),
+ *   and only go to the wrapped DatabaseRW on a miss. Products read from the database are added to the cache.
+ * - Paged search results are added to the cache too; streamed results are not, since a broad stream
+ *   would push every hot product out of the LRU cache.
+ * - Writes (purchaseStocks, adjustStock, updateProduct, deleteProduct, insertNewProduct(s)) always go to the wrapped
+ *   DatabaseRW, and the products they touch are removed from the cache (write-through invalidation),
+ *   even if the write fails, because its outcome is then unknown.
+ *
+ * Because it is a DatabaseRW itself, the models (CustomerModel, WarehouseModel) do not know it is there.
+ * DatabaseRWFactory installs it and shares one ProductCache between all clients.
+ */
+
+public class CachingDatabaseRW implements DatabaseRW {
+    private final DatabaseRW delegate;
+    private final ProductCache cache;
+
+    public CachingDatabaseRW(DatabaseRW delegate, ProductCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        // the keyword is tried as a product ID first, just like DerbyRW does
+        Product cached = cache.get(keyword);
+        if (cached != null) {
+            ArrayList<Product> productList = new ArrayList<>();
+            productList.add(cached);
+            return productList;
+        }
+
+        long loadToken = cache.beginLoad();
+        ArrayList<Product> productList = delegate.searchProduct(keyword);
+        for (Product product : productList) {
+            cache.put(product, loadToken);
+        }
+        return productList;
+    }
+
+    @Override
+    public Product searchByProductId(String productId) throws SQLException {
+        Product cached = cache.get(productId);
+        if (cached != null) {
+            return cached;
+        }
+
+        long loadToken = cache.beginLoad();
+        Product product = delegate.searchByProductId(productId);
+        cache.put(product, loadToken);
+        return product;
+    }
+
+    @Override
+    public ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        long loadToken = cache.beginLoad();
+        ProductPage page = delegate.searchProductPage(keyword, afterProductId, pageSize);
+        for (Product product : page.getProducts()) {
+            cache.put(product, loadToken);
+        }
+        return page;
+    }
+
+    @Override
+    public int streamSearchProduct(String keyword, Consumer<Product> consumer) throws SQLException {
+        return delegate.streamSearchProduct(keyword, consumer);
+    }
+
+    @Override
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        Map<String, Product> cached = new LinkedHashMap<>();
+        LinkedHashSet<String> missingIds = new LinkedHashSet<>();
+        for (String productId : productIds) {
+            Product product = cache.get(productId);
+            if (product != null) {
+                cached.put(productId, product);
+            } else {
+                missingIds.add(productId);
+            }
+        }
+
+        Map<String, Product> loaded = Map.of();
+        if (!missingIds.isEmpty()) {
+            long loadToken = cache.beginLoad();
+            loaded = delegate.searchByProductIds(missingIds); // only the misses go to the database, in one batch
+            for (Product product : loaded.values()) {
+                cache.put(product, loadToken);
+            }
+        }
+
+        // return the products in the order they were asked for
+        Map<String, Product> products = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            Product product = cached.containsKey(productId) ? cached.get(productId) : loaded.get(productId);
+            if (product != null) {
+                products.put(productId, product);
+            }
+        }
+        return products;
+    }
+
+    @Override
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        try {
+            return delegate.purchaseStocks(proList);
+        } finally {
+            for (Product product : proList) {
+                cache.invalidate(product.getProductId());
+            }
+        }
+    }
+
+    @Override
+    public void updateProduct(String id, String des, long pricePence, String imageName, int stock) throws SQLException {
+        try {
+            delegate.updateProduct(id, des, pricePence, imageName, stock);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> adjustStock(Map<String, Integer> deltas) throws SQLException {
+        try {
+            return delegate.adjustStock(deltas);
+        } finally {
+            for (String productId : deltas.keySet()) {
+                cache.invalidate(productId);
+            }
+        }
+    }
+
+    @Override
+    public void deleteProduct(String id) throws SQLException {
+        try {
+            delegate.deleteProduct(id);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public void insertNewProduct(String id, String des, long pricePence, String image, int stock) throws SQLException {
+        try {
+            delegate.insertNewProduct(id, des, pricePence, image, stock);
+        } finally {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public void insertNewProducts(List<Product> products) throws SQLException {
+        try {
+            delegate.insertNewProducts(products);
+        } finally {
+            for (Product product : products) {
+                cache.invalidate(product.getProductId());
+            }
+        }
+    }
+
+    @Override
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        if (cache.contains(productId)) {
+            return false; // a cached product certainly exists
+        }
+        return delegate.isProIdAvailable(productId);
+    }
+
+    public ProductCache getCache() {
+        return cache;
+    }
+}
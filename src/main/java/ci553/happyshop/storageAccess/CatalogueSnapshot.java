@@ -0,0 +1,238 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * CatalogueSnapshot is a read-only copy of ProductTable in one binary file, so a restarted shop can answer
+ * product lookups and build its search index straight away instead of with thousands of queries to a cold Derby.
+ * open() maps the file into memory (FileChannel.map); products are read from the mapping when asked for.
+ *
+ * File layout (big-endian):
+ *     header   magic "HSCS", format version, clean flag, product count, written at (millis), heap size, CRC32
+ *     records  one fixed-width record per product, sorted by productID:
+ *              productID, description and image as (offset, length) into the heap, unitPricePence, inStock
+ *     heap     the UTF-8 bytes of all the strings
+ *
+ * A snapshot is rejected (open() throws IOException) if:
+ * - it was written by another format version, or is not a snapshot at all,
+ * - the CRC32 of the records and heap does not match (a torn or damaged file),
+ * - it is marked stale: whoever may change ProductTable after loading or writing a snapshot calls markStale(),
+ *   so only a snapshot that still matches ProductTable is clean (see DatabaseRWFactory).
+ */
+
+public class CatalogueSnapshot {
+    private static final int MAGIC = 0x48534353; // "HSCS"
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int CLEAN_FLAG_OFFSET = 8;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 36; // 3 strings * (offset + length) + long price + int stock
+
+    private final ByteBuffer records; // the records, read with absolute gets so any thread may read
+    private final ByteBuffer heap;
+    private final int productCount;
+    private final long writtenAtMillis;
+
+    private CatalogueSnapshot(ByteBuffer records, ByteBuffer heap, int productCount, long writtenAtMillis) {
+        this.records = records;
+        this.heap = heap;
+        this.productCount = productCount;
+        this.writtenAtMillis = writtenAtMillis;
+    }
+
+    /**
+     * Writes the products to a new snapshot file, marked clean. The file is written next to the old one
+     * and then moved over it, so a crash while writing never leaves a half-written snapshot behind.
+     */
+    public static void write(Path file, List<Product> products) throws IOException {
+        ArrayList<Product> sorted = new ArrayList<>(products);
+        sorted.sort(Comparator.comparing(Product::getProductId));
+
+        // the strings of each product, then one heap holding them all
+        byte[][] strings = new byte[sorted.size() * 3][];
+        int heapSize = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            Product product = sorted.get(i);
+            strings[i * 3] = utf8(product.getProductId());
+            strings[i * 3 + 1] = utf8(product.getProductDescription());
+            strings[i * 3 + 2] = utf8(product.getProductImageName());
+            heapSize += strings[i * 3].length + strings[i * 3 + 1].length + strings[i * 3 + 2].length;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(sorted.size() * RECORD_SIZE + heapSize);
+        int heapOffset = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            for (int s = 0; s < 3; s++) {
+                body.putInt(heapOffset).putInt(strings[i * 3 + s].length);
+                heapOffset += strings[i * 3 + s].length;
+            }
+            body.putLong(sorted.get(i).getUnitPricePence()).putInt(sorted.get(i).getStockQuantity());
+        }
+        for (byte[] string : strings) {
+            body.put(string);
+        }
+        body.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC).putInt(FORMAT_VERSION).putInt(1).putInt(sorted.size())
+                .putLong(System.currentTimeMillis()).putInt(heapSize).putInt((int) crc.getValue())
+                .flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining() || body.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, body});
+            }
+            channel.force(true); // on disk before it replaces the old snapshot
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a snapshot file and checks it.
+     * @throws IOException if the file cannot be read, or is not a clean snapshot of this format version
+     */
+    public static CatalogueSnapshot open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a catalogue snapshot: " + file);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // stays valid after closing
+        }
+
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IOException("Not a catalogue snapshot: " + file);
+        }
+        int version = mapped.getInt(4);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Catalogue snapshot has format version " + version + ", expected " + FORMAT_VERSION);
+        }
+        if (mapped.getInt(CLEAN_FLAG_OFFSET) != 1) {
+            throw new IOException("Catalogue snapshot is stale, ProductTable may have changed since it was written");
+        }
+        int productCount = mapped.getInt(12);
+        long writtenAtMillis = mapped.getLong(16);
+        int heapSize = mapped.getInt(24);
+        int expectedCrc = mapped.getInt(28);
+
+        long recordsSize = (long) productCount * RECORD_SIZE;
+        if (productCount < 0 || heapSize < 0 || HEADER_SIZE + recordsSize + heapSize != mapped.capacity()) {
+            throw new IOException("Catalogue snapshot is truncated or damaged: " + file);
+        }
+        ByteBuffer body = mapped.slice(HEADER_SIZE, mapped.capacity() - HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Catalogue snapshot checksum does not match: " + file);
+        }
+        return new CatalogueSnapshot(body.slice(0, (int) recordsSize), body.slice((int) recordsSize, heapSize),
+                productCount, writtenAtMillis);
+    }
+
+    /**
+     * Marks a snapshot file stale so it is never opened again, eg as soon as ProductTable may change.
+     * Does nothing if there is no such file.
+     */
+    public static void markStale(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0).flip(), CLEAN_FLAG_OFFSET);
+            channel.force(false);
+        }
+    }
+
+    public int size() {
+        return productCount;
+    }
+
+    public long getWrittenAtMillis() {
+        return writtenAtMillis;
+    }
+
+    /**
+     * @return the product as it was when the snapshot was written, or null if it was not in ProductTable then
+     */
+    public Product searchByProductId(String productId) {
+        // records are sorted by productID, compared the same way as String.compareTo
+        int low = 0;
+        int high = productCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compared = productIdAt(mid).compareTo(productId);
+            if (compared < 0) {
+                low = mid + 1;
+            } else if (compared > 0) {
+                high = mid - 1;
+            } else {
+                return productAt(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gives every product to the consumer in productID order.
+     * @return the number of products
+     */
+    public int forEachProduct(Consumer<Product> consumer) {
+        for (int i = 0; i < productCount; i++) {
+            consumer.accept(productAt(i));
+        }
+        return productCount;
+    }
+
+    /**
+     * @return productID -> description of every product, eg to build the ProductSearchIndex
+     */
+    public Map<String, String> descriptions() {
+        Map<String, String> descriptions = new HashMap<>();
+        for (int i = 0; i < productCount; i++) {
+            descriptions.put(productIdAt(i), stringAt(i * RECORD_SIZE + 8));
+        }
+        return descriptions;
+    }
+
+    private String productIdAt(int index) {
+        return stringAt(index * RECORD_SIZE);
+    }
+
+    private Product productAt(int index) {
+        int record = index * RECORD_SIZE;
+        return new Product(stringAt(record), stringAt(record + 8), stringAt(record + 16),
+                records.getLong(record + 24), records.getInt(record + 32));
+    }
+
+    // the string whose (offset, length) starts at this position of the records
+    private String stringAt(int position) {
+        byte[] bytes = new byte[records.getInt(position + 4)];
+        heap.get(records.getInt(position), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String text) {
+        return (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,449 @@
+package ci553.happyshop.storageAccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConnectionPool keeps a bounded set of open JDBC connections that DerbyRW borrows from,
+ * instead of opening a brand-new connection (DriverManager.getConnection) for every query.
+ *
+ * Responsibilities:
+ * - Limits the number of connections open at the same time (maxSize).
+ * - Hands out idle connections first, and only opens a new one when none is idle.
+ * - Validates a connection before handing it out (validation-on-borrow), replacing broken ones.
+ * - Makes callers wait at most maxWaitMillis for a free connection, then fails with an SQLException.
+ * - Closes connections that have been idle for longer than idleTimeoutMillis (idle eviction),
+ *   and keeps at least minIdle connections open and idle, opening them in the background ahead of demand.
+ * - Records statistics (active/idle connections, borrow count, wait time) used to size the pool.
+ * - Keeps a StatementCache per connection, so repeated SQL is prepared once per connection (hits/misses recorded).
+ *
+ * How borrowing works:
+ * getConnection() returns a proxy of java.sql.Connection. Calling close() on the proxy does not close
+ * the real connection, it returns it to the pool. So DerbyRW keeps using try-with-resources as before:
+ *     try (Connection conn = pool.getConnection()) { ... }   // close() = give it back
+ *
+ * The pool is owned by DatabaseRWFactory, so all DerbyRW instances in the JVM share it.
+ */
+
+public class ConnectionPool {
+    private final String dbURL;
+    private final int maxSize;
+    private final int minIdle;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final int statementCacheSize;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 20;
+
+    // One permit per connection that may be in use, this is what bounds the pool
+    private final Semaphore permits;
+    // Idle connections, most recently returned at the front (hot connections are reused first)
+    private final LinkedBlockingDeque<PooledEntry> idleEntries = new LinkedBlockingDeque<>();
+
+    // Statistics
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger peakActiveConnections = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    /**
+     * @param dbURL             the JDBC URL used to open physical connections
+     * @param maxSize           the maximum number of connections open at the same time
+     * @param minIdle           the number of idle connections the evictor keeps open, opening them if needed
+     * @param maxWaitMillis     how long getConnection() waits for a free connection before failing
+     * @param idleTimeoutMillis how long a connection may stay idle before it is closed
+     */
+    public ConnectionPool(String dbURL, int maxSize, int minIdle, long maxWaitMillis, long idleTimeoutMillis) {
+        this(dbURL, maxSize, minIdle, maxWaitMillis, idleTimeoutMillis, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * @param statementCacheSize the number of prepared statements cached per connection (0 disables the cache)
+     */
+    public ConnectionPool(String dbURL, int maxSize, int minIdle, long maxWaitMillis, long idleTimeoutMillis,
+                          int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.dbURL = dbURL;
+        this.maxSize = maxSize;
+        this.minIdle = Math.max(0, Math.min(minIdle, maxSize));
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true); // fair, so waiting tills are served in arrival order
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ConnectionPool-evictor");
+            thread.setDaemon(true); // must not keep the JVM alive on exit
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::maintainIdleConnections, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool. Close the returned connection to give it back.
+     * @return a validated connection
+     * @throws SQLException if no connection becomes free within maxWaitMillis, or a new one cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                throw new SQLException("Timed out after " + maxWaitMillis + "ms waiting for a database connection "
+                        + "(pool size " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        recordWait(System.nanoTime() - waitStart);
+
+        try {
+            PooledEntry entry = takeValidIdleEntry();
+            if (entry == null) {
+                entry = openEntry();
+            }
+            borrowCount.increment();
+            int active = activeConnections.incrementAndGet();
+            peakActiveConnections.accumulateAndGet(active, Math::max);
+            return entry.lend();
+        } catch (SQLException | RuntimeException e) {
+            permits.release(); // we did not hand out a connection, so give the permit back
+            throw e;
+        }
+    }
+
+    // Polls idle connections until a valid one is found, discarding broken ones on the way
+    private PooledEntry takeValidIdleEntry() {
+        PooledEntry entry;
+        while ((entry = idleEntries.pollFirst()) != null) {
+            if (isValid(entry)) {
+                return entry;
+            }
+            validationFailures.increment();
+            discard(entry);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledEntry entry) {
+        try {
+            return !entry.physical.isClosed() && entry.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledEntry openEntry() throws SQLException {
+        Connection physical = DriverManager.getConnection(dbURL);
+        openConnections.incrementAndGet();
+        createdCount.increment();
+        return new PooledEntry(physical);
+    }
+
+    // Called when the borrower closes its proxy
+    private void giveBack(PooledEntry entry) {
+        activeConnections.decrementAndGet();
+        try {
+            if (entry.statementCache != null) {
+                entry.statementCache.releaseAll(); // statements the borrower forgot to close
+            }
+            if (!closed && resetForReuse(entry)) {
+                entry.lastReturnedAt = System.currentTimeMillis();
+                idleEntries.offerFirst(entry);
+            } else {
+                discard(entry);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Puts the connection back into a clean state: no open transaction, auto-commit on
+    private boolean resetForReuse(PooledEntry entry) {
+        try {
+            if (entry.physical.isClosed()) {
+                return false;
+            }
+            if (!entry.physical.getAutoCommit()) {
+                entry.physical.rollback(); // abandon anything the borrower did not commit
+                entry.physical.setAutoCommit(true);
+            }
+            entry.physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        openConnections.decrementAndGet();
+        try {
+            entry.physical.close();
+        } catch (SQLException e) {
+            // nothing useful to do, the connection is being thrown away anyway
+        }
+    }
+
+    // Runs on the evictor: closes connections idle for too long, then tops the idle connections up to minIdle
+    private void maintainIdleConnections() {
+        evictIdleConnections();
+        fillIdleConnections();
+    }
+
+    // Closes connections that have been idle for too long, but keeps minIdle of them open
+    private void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledEntry> it = idleEntries.descendingIterator(); // oldest idle connections are at the back
+        while (it.hasNext() && idleEntries.size() > minIdle) {
+            PooledEntry entry = it.next();
+            if (now - entry.lastReturnedAt >= idleTimeoutMillis && idleEntries.remove(entry)) {
+                evictedCount.increment();
+                discard(entry);
+            }
+        }
+    }
+
+    // Opens connections until minIdle are idle. Each one is opened holding a permit and only while fewer than
+    // maxSize are open, so together with the borrowers no more than maxSize connections are ever open.
+    private void fillIdleConnections() {
+        while (!closed && idleEntries.size() < minIdle && permits.tryAcquire()) {
+            try {
+                if (openConnections.get() >= maxSize) {
+                    return;
+                }
+                PooledEntry entry = openEntry();
+                if (closed) {
+                    discard(entry);
+                    return;
+                }
+                idleEntries.offerLast(entry); // behind the connections returned by borrowers
+            } catch (SQLException e) {
+                return; // the database is not reachable yet, try again on the next run
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.add(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Closes all idle connections and stops the evictor.
+     * Connections still borrowed are closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idleEntries.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * @return a snapshot of the current pool statistics
+     */
+    public Statistics getStatistics() {
+        return new Statistics(this);
+    }
+
+    /**
+     * Clears the counters (borrows, waits, timeouts, ...). Current active/idle numbers are not affected.
+     */
+    public void resetStatistics() {
+        borrowCount.reset();
+        createdCount.reset();
+        evictedCount.reset();
+        validationFailures.reset();
+        timeoutCount.reset();
+        totalWaitNanos.reset();
+        maxWaitNanos.set(0);
+        statementCacheHits.reset();
+        statementCacheMisses.reset();
+        peakActiveConnections.set(activeConnections.get());
+    }
+
+    /**
+     * One physical connection, plus the bookkeeping the pool needs for it.
+     */
+    private class PooledEntry {
+        private final Connection physical;
+        private final StatementCache statementCache; // null when statement caching is disabled
+        private volatile long lastReturnedAt = System.currentTimeMillis();
+
+        PooledEntry(Connection physical) {
+            this.physical = physical;
+            this.statementCache = statementCacheSize > 0
+                    ? new StatementCache(physical, statementCacheSize, statementCacheHits, statementCacheMisses)
+                    : null;
+        }
+
+        // Wraps the physical connection in a proxy whose close() returns it to the pool
+        Connection lend() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new BorrowedConnectionHandler(this));
+        }
+    }
+
+    /**
+     * Forwards every call to the physical connection, except close(), isClosed()
+     * and prepareStatement(sql), which is answered from the connection's StatementCache.
+     * Each borrow gets its own handler, so a connection closed twice is only returned once,
+     * and a borrower cannot keep using a connection after giving it back.
+     */
+    private class BorrowedConnectionHandler implements InvocationHandler {
+        private final PooledEntry entry;
+        private volatile boolean returned = false; // close() may come from another thread than later calls
+
+        BorrowedConnectionHandler(PooledEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(entry);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned;
+                case "toString":
+                    return "Pooled" + entry.physical;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            // only the plain prepareStatement(String) is cached, variants with extra options are prepared as usual
+            if (entry.statementCache != null && method.getName().equals("prepareStatement") && args.length == 1) {
+                return entry.statementCache.prepare((String) args[0], (Connection) proxy);
+            }
+            try {
+                return method.invoke(entry.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause(); // rethrow the real SQLException, not the reflection wrapper
+            }
+        }
+    }
+
+    /**
+     * A point-in-time snapshot of the pool's state and counters.
+     */
+    public static class Statistics {
+        private final int maxSize;
+        private final int openConnections;
+        private final int activeConnections;
+        private final int idleConnections;
+        private final int peakActiveConnections;
+        private final int threadsWaiting;
+        private final long borrowCount;
+        private final long createdCount;
+        private final long evictedCount;
+        private final long validationFailures;
+        private final long timeoutCount;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        private final long statementCacheHits;
+        private final long statementCacheMisses;
+
+        private Statistics(ConnectionPool pool) {
+            maxSize = pool.maxSize;
+            openConnections = pool.openConnections.get();
+            activeConnections = pool.activeConnections.get();
+            idleConnections = pool.idleEntries.size();
+            peakActiveConnections = pool.peakActiveConnections.get();
+            threadsWaiting = pool.permits.getQueueLength();
+            borrowCount = pool.borrowCount.sum();
+            createdCount = pool.createdCount.sum();
+            evictedCount = pool.evictedCount.sum();
+            validationFailures = pool.validationFailures.sum();
+            timeoutCount = pool.timeoutCount.sum();
+            totalWaitNanos = pool.totalWaitNanos.sum();
+            maxWaitNanos = pool.maxWaitNanos.get();
+            statementCacheHits = pool.statementCacheHits.sum();
+            statementCacheMisses = pool.statementCacheMisses.sum();
+        }
+
+        public int getMaxSize() { return maxSize; }
+        public int getOpenConnections() { return openConnections; }
+        public int getActiveConnections() { return activeConnections; }
+        public int getIdleConnections() { return idleConnections; }
+        public int getPeakActiveConnections() { return peakActiveConnections; }
+        public int getThreadsWaiting() { return threadsWaiting; }
+        public long getBorrowCount() { return borrowCount; }
+        public long getCreatedCount() { return createdCount; }
+        public long getEvictedCount() { return evictedCount; }
+        public long getValidationFailures() { return validationFailures; }
+        public long getTimeoutCount() { return timeoutCount; }
+        public long getTotalWaitNanos() { return totalWaitNanos; }
+        public long getMaxWaitNanos() { return maxWaitNanos; }
+        public long getStatementCacheHits() { return statementCacheHits; }
+        public long getStatementCacheMisses() { return statementCacheMisses; }
+
+        // Fraction of prepareStatement calls answered from the cache, 0.0 - 1.0
+        public double getStatementCacheHitRate() {
+            long total = statementCacheHits + statementCacheMisses;
+            return total == 0 ? 0 : (double) statementCacheHits / total;
+        }
+
+        // Average time a borrower waited for a permit, in microseconds
+        public double getAverageWaitMicros() {
+            return borrowCount == 0 ? 0 : totalWaitNanos / 1000.0 / borrowCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ConnectionPool[max=%d, open=%d, active=%d (peak %d), idle=%d, waiting=%d, " +
+                            "borrows=%d, created=%d, evicted=%d, invalid=%d, timeouts=%d, " +
+                            "avgWait=%.1fus, maxWait=%.1fus, stmtCache hits=%d misses=%d (%.1f%%)]",
+                    maxSize, openConnections, activeConnections, peakActiveConnections, idleConnections,
+                    threadsWaiting, borrowCount, createdCount, evictedCount, validationFailures, timeoutCount,
+                    getAverageWaitMicros(), maxWaitNanos / 1000.0,
+                    statementCacheHits, statementCacheMisses, getStatementCacheHitRate() * 100);
+        }
+    }
+}
@@ -4,15 +4,21 @@ import ci553.happyshop.catalogue.Product;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * The DatabaseRW interface defines the contract for interacting with the product database.
  * It is currently implemented by the DerbyRW class, which provides the actual functionality.
  *
  * Responsibilities:
- * - Searching for products by keyword or product ID.
- * - Performing stock updates and validations during purchases.
- * - Updating, deleting, or inserting products.
+ * - Searching for products by keyword or product ID, all at once, a page at a time, or streamed.
+ * - Performing stock updates and validations during purchases, and relative stock adjustments (eg goods-in).
+ * - Updating, deleting, or inserting products, one at a time or in bulk.
  * - Checking whether a product ID is available before insertion.
  *
  * Why use this interface:
@@ -37,6 +43,57 @@ public interface DatabaseRW {
      */
     ArrayList<Product> searchProduct(String keyword) throws SQLException;
 
+    /**
+     * Searches for one page of the products that match a keyword, in ascending productID order.
+     * A keyword that is an existing product ID returns just that product, like searchProduct.
+     * The default implementation pages through the full searchProduct result;
+     * DerbyRW overrides it so only one page of rows is read from the database.
+     *
+     * @param keyword        the keyword to search for
+     * @param afterProductId the cursor: the next cursor of the previous page, or null for the first page
+     * @param pageSize       the maximum number of products on the page
+     * @return the page, see ProductPage
+     */
+    default ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        List<Product> matches = new ArrayList<>(searchProduct(keyword));
+        Collections.sort(matches); // Product is Comparable by productID
+        List<Product> page = new ArrayList<>();
+        boolean hasMore = false;
+        for (Product product : matches) {
+            if (afterProductId != null && product.getProductId().compareTo(afterProductId) <= 0) {
+                continue;
+            }
+            if (page.size() == pageSize) {
+                hasMore = true;
+                break;
+            }
+            page.add(product);
+        }
+        return new ProductPage(page, hasMore);
+    }
+
+    /**
+     * Searches for the products that match a keyword and hands each one to the consumer as it is read,
+     * in ascending productID order, instead of collecting them all into a list first.
+     * The default implementation walks the full searchProduct result;
+     * DerbyRW overrides it so only a small batch of rows is held in memory at a time.
+     *
+     * @param keyword  the keyword to search for
+     * @param consumer called once per matching product, on the calling thread
+     * @return the number of products passed to the consumer
+     */
+    default int streamSearchProduct(String keyword, Consumer<Product> consumer) throws SQLException {
+        List<Product> matches = new ArrayList<>(searchProduct(keyword));
+        Collections.sort(matches);
+        for (Product product : matches) {
+            consumer.accept(product);
+        }
+        return matches.size();
+    }
+
     /**
      * Searches for a product by its unique product ID.
      * @param productId the product ID
@@ -44,6 +101,27 @@ public interface DatabaseRW {
      */
     Product searchByProductId(String productId) throws SQLException;
 
+    /**
+     * Searches for many products by their IDs in one go, eg to check every line of a trolley at checkout.
+     * The default implementation calls searchByProductId once per ID; DerbyRW overrides it
+     * with a single batched query so a large trolley costs one round trip.
+     *
+     * @param productIds the product IDs (duplicates are ignored)
+     * @return the products found, keyed by product ID, in the order of productIds; IDs not found are left out
+     */
+    default Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        Map<String, Product> products = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            if (!products.containsKey(productId)) {
+                Product product = searchByProductId(productId);
+                if (product != null) {
+                    products.put(productId, product);
+                }
+            }
+        }
+        return products;
+    }
+
     /**
      * Attempts to purchase (reduce stocks of) the given list of products.
      * Behavior:
@@ -60,11 +138,40 @@ public interface DatabaseRW {
      *
      * @param id         the product ID
      * @param des        the new description
-     * @param price      the new price
+     * @param pricePence the new price in pence, eg 2999 for £29.99
      * @param imageName  the new image file name
-     * @param stock      the updated stock quantity
+     * @param stock      the units on hand; DerbyRW takes the units held in trolleys off it (see StockReservations)
+     */
+    void updateProduct(String id, String des, long pricePence, String imageName, int stock) throws SQLException;
+
+    /**
+     * Changes the stock of many products by relative amounts, eg +24 for a delivery or -2 for damaged goods.
+     * Only inStock is written, and only by the given amount, so checkouts running at the same time are not overwritten.
+     * All or nothing: if any product does not exist, or its stock would go below zero, nothing is changed.
+     * The default implementation reads every product and writes it back with updateProduct, so it is not atomic;
+     * DerbyRW overrides it with one batched transaction and InMemoryRW with atomic counters.
+     *
+     * @param deltas productID -> the amount to add to its stock (negative to take stock away)
+     * @return the deltas that could not be applied (empty if every delta was applied)
      */
-    void updateProduct(String id, String des, double price, String imageName, int stock) throws SQLException;
+    default Map<String, Integer> adjustStock(Map<String, Integer> deltas) throws SQLException {
+        Map<String, Product> current = searchByProductIds(deltas.keySet());
+        Map<String, Integer> failed = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            Product product = current.get(delta.getKey());
+            if (product == null || product.getStockQuantity() + delta.getValue() < 0) {
+                failed.put(delta.getKey(), delta.getValue());
+            }
+        }
+        if (failed.isEmpty()) {
+            for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                Product p = current.get(delta.getKey());
+                updateProduct(p.getProductId(), p.getProductDescription(), p.getUnitPricePence(), p.getProductImageName(),
+                        p.getStockQuantity() + delta.getValue());
+            }
+        }
+        return failed;
+    }
 
 
     // Deletes a product identified by its ID.
@@ -74,11 +181,25 @@ public interface DatabaseRW {
      * Inserts a new product into the database.
      * @param id      the product ID
      * @param des     the product description
-     * @param price   the product price
+     * @param pricePence the product price in pence
      * @param image   the image file name
      * @param stock   the initial stock quantity
      */
-    void insertNewProduct(String id, String des, double price, String image, int stock) throws SQLException;
+    void insertNewProduct(String id, String des, long pricePence, String image, int stock) throws SQLException;
+
+    /**
+     * Inserts many new products in one go, eg a catalogue loaded by ProductImporter.
+     * The default implementation calls insertNewProduct once per product, so a failure leaves the products before it
+     * inserted; DerbyRW overrides it with one JDBC batch in one transaction, so either all of them are inserted or none.
+     *
+     * @param products the new products (productId, description, unitPricePence, imageName and stockQuantity are used)
+     */
+    default void insertNewProducts(List<Product> products) throws SQLException {
+        for (Product product : products) {
+            insertNewProduct(product.getProductId(), product.getProductDescription(), product.getUnitPricePence(),
+                    product.getProductImageName(), product.getStockQuantity());
+        }
+    }
 
     /**
      * Checks whether the given product ID is available for use (i.e., not already in use).
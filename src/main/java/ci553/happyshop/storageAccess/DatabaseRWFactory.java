@@ -1,12 +1,38 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+import ci553.happyshop.utility.StorageLocation;
+import ci553.happyshop.utility.SystemProperties;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The DatabaseRWFactory class centralizes database configuration and object creation.
  * It acts as a factory pattern to provide flexible instantiation of the DatabaseRW interface.
  *
  * Responsibilities:
- * - Holds the database URL used to connect to the database.
- * - Creates instances of DatabaseRW (e.g., DerbyRW, MySQLRW, SQLiteRW).
+ * - Holds the database URL used to connect to the database, either embedded (one process only)
+ *   or through a Derby network server shared by several processes (see DerbyMode).
+ * - Creates instances of DatabaseRW (e.g., DerbyRW, MySQLRW, SQLiteRW), or hands out the shared InMemoryRW
+ *   when storageType is IN_MEMORY.
+ * - Owns the shared ConnectionPool that every DerbyRW instance borrows connections from.
+ * - Owns the shared ProductCache, and wraps each DerbyRW in a CachingDatabaseRW that reads through it.
+ * - Owns the shared StorageMetrics, and wraps every DatabaseRW it creates in an InstrumentedDatabaseRW
+ *   that records the latency of each call into it.
+ * - Owns the shared ProductSearchIndex used by DerbyRW to search products by name.
+ * - Owns the shared ProductLockStripes, the per-product locks DerbyRW takes before writing a product.
+ * - Owns the shared ProductChangeFeed on which DerbyRW publishes every product change it commits.
+ * - Owns the shared GroupCommitPurchaser used when purchaseMode is GROUP_COMMIT.
+ * - Owns the shared StockReservations that hold stock while it sits in a customer's trolley.
+ * - Warms up the first DerbyRW from the CatalogueSnapshot written on the last clean shutdown, and writes it.
+ * - Creates the ProductImporter the warehouse uses to add many products from a CSV file.
+ * - Wraps a DatabaseRW in an AsyncDatabaseRW for clients that must not block the JavaFX thread.
  *
  * Benefits:
  * - Database Abstraction: Keeps the system decoupled from specific database implementations.
@@ -21,14 +47,420 @@ package ci553.happyshop.storageAccess;
  */
 
 public class DatabaseRWFactory {
+    private static final DiagnosticLog log = Diagnostics.getLog(DatabaseRWFactory.class);
 
     public static String dbURL = "jdbc:derby:happyShopDB"; //or other database URL in the future (eg MySQLRW or SQLiteRW)
 
+    // Embedded or network server, see DerbyMode. Set per process with -Dhappyshop.derby.mode=NETWORK
+    // (null if the property names no mode; the first database connection then fails saying so)
+    public static final String DERBY_MODE_PROPERTY = "happyshop.derby.mode";
+    public static DerbyMode derbyMode = SystemProperties.enumProperty(DERBY_MODE_PROPERTY, DerbyMode.class,
+            DerbyMode.EMBEDDED);
+    public static String networkHost = System.getProperty("happyshop.derby.host", "localhost");
+    public static int networkPort = Integer.getInteger("happyshop.derby.port", 1527);
+    public static String networkDatabaseName = "happyShopDB";
+    // NETWORK: start a server inside this JVM if none is running (-Dhappyshop.derby.autoStart=true).
+    // Off by default: the other processes would lose the database when this one exits, see DerbyServer
+    public static boolean networkServerAutoStart = Boolean.getBoolean("happyshop.derby.autoStart");
+
+    // Where products are kept, see StorageType
+    public static StorageType storageType = StorageType.DERBY;
+    public static boolean inMemorySeedFromDatabase = true; // IN_MEMORY starts with a copy of ProductTable
+
+    // Connection pool settings, tune these using ConnectionPool.getStatistics() under real load
+    public static int poolMaxSize = 10;               // max connections open at the same time
+    public static int poolMinIdle = 2;                // idle connections kept open by the evictor
+    public static long poolMaxWaitMillis = 5000;      // how long a till waits for a free connection
+    public static long poolIdleTimeoutMillis = 60000; // idle connections older than this are closed
+    public static int statementCacheSize = ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE; // prepared statements kept per connection
+
+    // How DerbyRW reduces stock at checkout, see PurchaseMode. CONDITIONAL and GROUP_COMMIT are opt-in
+    public static PurchaseMode purchaseMode = PurchaseMode.LOCKED;
+    public static int lockStripeCount = 64; // number of per-product locks, see ProductLockStripes
+    public static long groupCommitWindowMillis = 2; // GROUP_COMMIT: how long baskets are collected for one commit
+    public static int groupCommitMaxBaskets = 64;   // GROUP_COMMIT: the most baskets in one commit
+    public static long groupCommitTimeoutMillis = 10000; // GROUP_COMMIT: how long a till waits for its group
+
+    // Stock reservations, see StockReservations. Only available when storageType is DERBY
+    public static boolean stockReservationsEnabled = true;
+    public static long reservationTtlMillis = 10 * 60 * 1000;     // how long a trolley holds its stock
+    public static long reservationSweepIntervalMillis = 5000;      // how often expired holds go back into stock
+
+    // Bulk product import, see ProductImporter
+    public static int importChunkSize = 500;        // products inserted in one transaction
+    public static int importImageCopyThreads = 4;   // images copied at the same time
+
+    public static long asyncTimeoutMillis = 5000; // how long an AsyncDatabaseRW read may take before it times out, writes have no timeout
+
+    // Storage latency metrics, see StorageMetrics
+    public static boolean metricsEnabled = true;
+    public static long metricsSummaryIntervalMillis = 60_000; // how often a latency summary is logged, 0 for never
+
+    // Catalogue snapshot, see CatalogueSnapshot. Only used when derbyMode is EMBEDDED,
+    // since in NETWORK mode other processes change ProductTable without marking the snapshot stale
+    public static boolean catalogueSnapshotEnabled = true;
+    public static Path catalogueSnapshotPath = StorageLocation.catalogueSnapshotPath;
+
+    // Product change feed, see ProductChangeFeed
+    public static int changeFeedMaxPending = 256; // products waiting for one window before it reloads everything
+
+    // Product cache settings
+    public static boolean productCacheEnabled = true;
+    public static int productCacheMaxSize = 1000;        // max products kept in memory
+    public static long productCacheStockTtlMillis = 2000; // how long a cached stock level is trusted
+
+    private static volatile ConnectionPool connectionPool; // shared by all DerbyRW instances, created on first use
+    private static ProductCache productCache;     // shared by all clients, created on first use
+    private static StorageMetrics storageMetrics; // shared by all clients, created on first use
+    private static final ProductSearchIndex searchIndex = new ProductSearchIndex(); // built by the first DerbyRW
+    private static final ProductChangeFeed changeFeed = new ProductChangeFeed();    // DerbyRW publishes, views subscribe
+    private static ProductLockStripes lockStripes;  // shared by all DerbyRW instances, created on first use
+    private static InMemoryRW inMemoryStore;        // shared by all clients when storageType is IN_MEMORY
+    private static DerbyServer derbyServer;         // only set if this JVM started the network server
+    private static GroupCommitPurchaser groupCommitPurchaser; // shared by all DerbyRW instances in GROUP_COMMIT mode
+    private static StockReservations stockReservations;       // shared by all customer clients, created on first use
+    private static CatalogueSnapshot catalogueSnapshot;        // the snapshot loaded at startup, null if there was none
+    private static boolean catalogueSnapshotTried;             // whether loading it was tried already
+    private static volatile boolean catalogueSnapshotClean;      // a snapshot was written and nothing changed since
+
     /**
      * Creates an instance of DatabaseRW (currently returning DerbyRW, but can be modified to return other implementations).
+     * When the product cache is enabled, the DerbyRW is wrapped in a CachingDatabaseRW.
+     * When storageType is IN_MEMORY every client gets the same InMemoryRW, which needs no cache.
      */
     public static DatabaseRW createDatabaseRW() {
-        return new DerbyRW(); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+        DatabaseRW databaseRW;
+        if (storageType == StorageType.IN_MEMORY) {
+            databaseRW = getInMemoryStore();
+        } else {
+            warmUpFromCatalogueSnapshot(); // before the first DerbyRW, so it need not build the search index itself
+            databaseRW = new DerbyRW(); // or other database implementations in the future (eg MySQLRW or SQLiteRW)
+            if (productCacheEnabled) {
+                databaseRW = new CachingDatabaseRW(databaseRW, getProductCache());
+            }
+        }
+        if (metricsEnabled) {
+            // outermost, so the time measured is the time the client waits, cache hits included
+            databaseRW = new InstrumentedDatabaseRW(databaseRW, getStorageMetrics());
+        }
+        return databaseRW;
+    }
+
+    /**
+     * Wraps a DatabaseRW (usually one from createDatabaseRW()) so its calls run on virtual threads
+     * and return CompletableFutures, with asyncTimeoutMillis as the default timeout.
+     */
+    public static AsyncDatabaseRW createAsyncDatabaseRW(DatabaseRW databaseRW) {
+        return new VirtualThreadDatabaseRW(databaseRW, asyncTimeoutMillis);
+    }
+
+    /**
+     * Creates a ProductImporter that inserts through the given DatabaseRW and copies images
+     * into the working image folder.
+     */
+    public static ProductImporter createProductImporter(DatabaseRW databaseRW) {
+        return new ProductImporter(databaseRW, StorageLocation.imageFolder, importChunkSize, importImageCopyThreads);
+    }
+
+    /**
+     * Returns the in-memory product store shared by all clients, creating it on first use.
+     * If inMemorySeedFromDatabase is set, it starts with a copy of every product in ProductTable,
+     * otherwise it starts empty.
+     */
+    public static synchronized InMemoryRW getInMemoryStore() {
+        if (inMemoryStore == null) {
+            InMemoryRW store = new InMemoryRW();
+            if (inMemorySeedFromDatabase) {
+                ArrayList<Product> catalogue = new ArrayList<>();
+                try {
+                    new DerbyRW().forEachProduct(catalogue::add);
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Could not copy ProductTable into memory", e);
+                }
+                store.loadProducts(catalogue);
+            }
+            inMemoryStore = store;
+        }
+        return inMemoryStore;
+    }
+
+    /**
+     * Returns the catalogue snapshot loaded at startup, a read-only copy of ProductTable as it was then.
+     * @return null if no clean snapshot was found, or none was looked for yet
+     */
+    public static synchronized CatalogueSnapshot getCatalogueSnapshot() {
+        return catalogueSnapshot;
+    }
+
+    /**
+     * Loads the catalogue snapshot once, if it is enabled and clean, and builds the search index
+     * and fills the product cache from it instead of from ProductTable.
+     * The snapshot is marked stale first, since this process may now change ProductTable;
+     * a clean shutdown writes a new one.
+     */
+    private static synchronized void warmUpFromCatalogueSnapshot() {
+        if (catalogueSnapshotTried || !isCatalogueSnapshotUsed()) {
+            return;
+        }
+        catalogueSnapshotTried = true;
+        if (!catalogueSnapshotPath.toFile().exists()) {
+            return; // a cold start
+        }
+        CatalogueSnapshot snapshot;
+        try {
+            snapshot = CatalogueSnapshot.open(catalogueSnapshotPath);
+            CatalogueSnapshot.markStale(catalogueSnapshotPath);
+            if (!searchIndex.isBuilt()) {
+                searchIndex.build(snapshot::descriptions);
+            }
+        } catch (IOException | SQLException e) {
+            log.warn("Catalogue snapshot not used: " + e.getMessage());
+            return;
+        }
+        if (productCacheEnabled) {
+            ProductCache cache = getProductCache();
+            long loadToken = cache.beginLoad();
+            snapshot.forEachProduct(product -> cache.put(product, loadToken)); // the cache keeps the last maxSize
+        }
+        catalogueSnapshot = snapshot;
+        log.info("Warm start from the catalogue snapshot (" + snapshot.size() + " products)");
+    }
+
+    /**
+     * Writes every product in ProductTable to the catalogue snapshot, eg on a clean shutdown.
+     * The snapshot is marked stale again by the next write to ProductTable, see productTableChanged().
+     * @return the number of products written
+     */
+    public static synchronized int writeCatalogueSnapshot() throws SQLException, IOException {
+        // set before ProductTable is read, so a write committed while it is read still marks the snapshot stale.
+        // productTableChanged() takes the class lock too, so it waits for the snapshot to be written first
+        catalogueSnapshotClean = true;
+        List<Product> catalogue = new ArrayList<>();
+        try {
+            new DerbyRW().forEachProduct(catalogue::add);
+            CatalogueSnapshot.write(catalogueSnapshotPath, catalogue);
+        } catch (SQLException | IOException e) {
+            catalogueSnapshotClean = false;
+            throw e;
+        }
+        return catalogue.size();
+    }
+
+    /**
+     * Writes the catalogue snapshot if it is used, for the next start to be a warm one.
+     * Called when a client shuts down cleanly, by Main or by a client started on its own;
+     * a failure is only logged.
+     */
+    public static void writeCatalogueSnapshotOnShutdown() {
+        if (!isCatalogueSnapshotUsed()) {
+            return;
+        }
+        try {
+            int products = writeCatalogueSnapshot();
+            log.info("Catalogue snapshot written (" + products + " products)");
+        } catch (SQLException | IOException e) {
+            log.warn("Catalogue snapshot could not be written, the next start is a cold one", e);
+        }
+    }
+
+    private static boolean isCatalogueSnapshotUsed() {
+        return catalogueSnapshotEnabled && storageType == StorageType.DERBY && !isDatabaseShared();
+    }
+
+    /**
+     * Called by every writer of ProductTable (DerbyRW, GroupCommitPurchaser, StockReservations through DerbyRW)
+     * after it committed, or may have committed, a change. Marks a snapshot written by this process stale,
+     * whether or not anybody subscribes to the change feed. Costs one volatile read while there is no such snapshot.
+     */
+    static void productTableChanged() {
+        if (!catalogueSnapshotClean) {
+            return;
+        }
+        synchronized (DatabaseRWFactory.class) {
+            if (!catalogueSnapshotClean) {
+                return;
+            }
+            catalogueSnapshotClean = false;
+            try {
+                CatalogueSnapshot.markStale(catalogueSnapshotPath);
+            } catch (IOException e) {
+                log.error("Catalogue snapshot could not be marked stale", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the description search index shared by all DerbyRW instances.
+     */
+    public static ProductSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Returns the storage metrics shared by all clients, creating them on first use
+     * and starting the periodic summary if metricsSummaryIntervalMillis is set.
+     */
+    public static synchronized StorageMetrics getStorageMetrics() {
+        if (storageMetrics == null) {
+            storageMetrics = new StorageMetrics();
+            storageMetrics.startSummaryDump(metricsSummaryIntervalMillis);
+        }
+        return storageMetrics;
+    }
+
+    /**
+     * Returns the product change feed shared by all DerbyRW instances and their subscribers.
+     */
+    public static ProductChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Returns the per-product locks shared by all DerbyRW instances, creating them on first use.
+     */
+    public static synchronized ProductLockStripes getLockStripes() {
+        if (lockStripes == null) {
+            lockStripes = new ProductLockStripes(lockStripeCount);
+        }
+        return lockStripes;
+    }
+
+    /**
+     * Returns the group commit stage shared by all DerbyRW instances, creating it on first use.
+     */
+    public static synchronized GroupCommitPurchaser getGroupCommitPurchaser() {
+        if (groupCommitPurchaser == null) {
+            groupCommitPurchaser = new GroupCommitPurchaser(getConnectionPool(), groupCommitWindowMillis,
+                    groupCommitMaxBaskets);
+        }
+        return groupCommitPurchaser;
+    }
+
+    /**
+     * Returns the stock reservations shared by all customer clients, creating them on first use.
+     * @return null if reservations are disabled or storageType is not DERBY; customers then buy without holds
+     */
+    public static synchronized StockReservations getStockReservations() {
+        if (!stockReservationsEnabled || storageType != StorageType.DERBY) {
+            return null;
+        }
+        if (stockReservations == null) {
+            try {
+                // holds change inStock too, DerbyRW publishes those changes like its own, and they take
+                // DerbyRW's product locks so a stock count in updateProduct sees a steady set of holds
+                stockReservations = new StockReservations(getConnectionPool(),
+                        productCacheEnabled ? getProductCache() : null, getLockStripes(),
+                        new DerbyRW()::publishStockChanges, reservationTtlMillis, reservationSweepIntervalMillis);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not set up ReservationTable", e);
+            }
+        }
+        return stockReservations;
+    }
+
+    /**
+     * Returns the product cache shared by all clients, creating it on first use.
+     */
+    public static synchronized ProductCache getProductCache() {
+        if (productCache == null) {
+            productCache = new ProductCache(productCacheMaxSize, productCacheStockTtlMillis);
+        }
+        return productCache;
+    }
+
+    /**
+     * Returns the connection pool shared by all DerbyRW instances, creating it on first use.
+     * DerbyRW calls it for every query, so once the pool exists it is returned without taking the class lock.
+     */
+    public static ConnectionPool getConnectionPool() {
+        ConnectionPool pool = connectionPool;
+        return pool != null ? pool : createConnectionPool();
+    }
+
+    private static synchronized ConnectionPool createConnectionPool() {
+        if (connectionPool == null) {
+            if (SystemProperties.requireEnum(derbyMode, DERBY_MODE_PROPERTY, DerbyMode.class) == DerbyMode.NETWORK) {
+                ensureNetworkServer();
+            }
+            connectionPool = new ConnectionPool(getDatabaseURL(), poolMaxSize, poolMinIdle, poolMaxWaitMillis,
+                    poolIdleTimeoutMillis, statementCacheSize);
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Returns the JDBC URL for the current derbyMode:
+     * dbURL when EMBEDDED, eg jdbc:derby://localhost:1527/happyShopDB when NETWORK.
+     */
+    public static String getDatabaseURL() {
+        if (derbyMode == DerbyMode.NETWORK) {
+            return "jdbc:derby://" + networkHost + ":" + networkPort + "/" + networkDatabaseName;
+        }
+        return dbURL;
+    }
+
+    /**
+     * Whether other processes may change ProductTable at the same time (derbyMode is NETWORK).
+     * Then whatever this JVM keeps about ProductTable would not see their changes, so DerbyRW does without
+     * the in-process ProductSearchIndex (searches use LIKE) and relies on row locks instead of ProductLockStripes,
+     * and no CatalogueSnapshot is used.
+     */
+    public static boolean isDatabaseShared() {
+        return derbyMode == DerbyMode.NETWORK;
+    }
+
+    // Checks that a network server is running, and starts one in this JVM if none is and networkServerAutoStart is on
+    private static void ensureNetworkServer() {
+        if (derbyServer != null || DerbyServer.isRunning(networkHost, networkPort)) {
+            return;
+        }
+        if (!networkServerAutoStart) {
+            // the pool is still created: connections work as soon as the server is started
+            log.error("No Derby network server answers on " + networkHost + ":" + networkPort
+                    + ". Start one in its own process with ci553.happyshop.storageAccess.DerbyServer");
+            return;
+        }
+        DerbyServer server = new DerbyServer(networkHost, networkPort);
+        try {
+            server.start();
+            derbyServer = server;
+            log.warn("Started the Derby network server inside this process. The other HappyShop processes lose "
+                    + "the database when this one exits; run DerbyServer as its own process instead");
+        } catch (SQLException e) {
+            // another process may have started one at the same moment; connecting will tell
+            if (!DerbyServer.isRunning(networkHost, networkPort)) {
+                throw new IllegalStateException("No Derby network server on " + networkHost + ":" + networkPort, e);
+            }
+        }
+    }
+
+    /**
+     * Stops the network server if this JVM started it (other processes then lose their connections).
+     */
+    public static synchronized void stopNetworkServer() {
+        if (derbyServer != null) {
+            derbyServer.stop();
+            derbyServer = null;
+        }
+    }
+
+    /**
+     * Closes the shared connection pool (e.g. when the system shuts down).
+     * A new pool is created the next time getConnectionPool() is called.
+     */
+    public static synchronized void closeConnectionPool() {
+        if (stockReservations != null) {
+            stockReservations.close(); // its sweeper writes through the pool
+            stockReservations = null;
+        }
+        if (groupCommitPurchaser != null) {
+            groupCommitPurchaser.close(); // it writes through the pool
+            groupCommitPurchaser = null;
+        }
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
     }
 }
 
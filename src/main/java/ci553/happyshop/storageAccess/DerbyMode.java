@@ -0,0 +1,21 @@
+package ci553.happyshop.storageAccess;
+
+/**
+ * How DerbyRW reaches the Derby database.
+ *
+ * - EMBEDDED: Derby runs inside this JVM and opens the happyShopDB files directly (jdbc:derby:happyShopDB).
+ *   Fastest, but only one process at a time can open the database.
+ * - NETWORK: Derby runs as a network server (see DerbyServer) and this JVM connects over TCP with the client
+ *   driver (jdbc:derby://host:port/happyShopDB). Any number of customer, picker and warehouse processes
+ *   can share the same catalogue, at the cost of a network round trip per statement. What one process keeps in
+ *   memory cannot see the others' changes, so searches use LIKE instead of ProductSearchIndex, purchases lock
+ *   rows instead of relying on ProductLockStripes, and no CatalogueSnapshot is used.
+ *
+ * The mode is chosen in DatabaseRWFactory.derbyMode (-Dhappyshop.derby.mode=network, case ignored);
+ * StorageBenchmark compares the two.
+ */
+
+public enum DerbyMode {
+    EMBEDDED,
+    NETWORK
+}
@@ -1,17 +1,30 @@
 package ci553.happyshop.storageAccess;
 
 import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
 
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 /** ProductTable definition
  * "CREATE TABLE ProductTable(" +
  *         "productID CHAR(4) PRIMARY KEY," +
  *         "description VARCHAR(100)," +
- *         "unitPrice DOUBLE," +
+ *         "unitPricePence BIGINT," +
  *         "image VARCHAR(100)," +
  *         "inStock INT," +
  *         "CHECK (inStock >= 0)" +
@@ -19,8 +32,46 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 
 public class DerbyRW implements DatabaseRW {
-    private static String dbURL = DatabaseRWFactory.dbURL; // Shared by all instances
-    private  Lock lock = new ReentrantLock(); // Each instance has its own lock
+    private static final DiagnosticLog log = Diagnostics.getLog(DerbyRW.class);
+
+    private final ProductSearchIndex searchIndex = DatabaseRWFactory.getSearchIndex(); // Shared by all instances
+    // NETWORK mode: other processes write ProductTable too, so searches use LIKE and LOCKED purchases lock rows,
+    // since the search index and the lock stripes only know about this JVM (see DatabaseRWFactory.isDatabaseShared)
+    private final boolean databaseShared = DatabaseRWFactory.isDatabaseShared();
+    private final PurchaseMode purchaseMode = DatabaseRWFactory.purchaseMode;
+    private final ProductLockStripes lockStripes = DatabaseRWFactory.getLockStripes(); // per-product locks, shared by all instances
+    private final ProductChangeFeed changeFeed = DatabaseRWFactory.getChangeFeed(); // every committed change is published here
+
+    // searchByProductIds reads products in chunks of this many IDs with one IN-list query per chunk
+    private static final int BATCH_LOOKUP_SIZE = 50;
+    private static final String BATCH_LOOKUP_QUERY = "SELECT * FROM ProductTable WHERE productID IN ("
+            + String.join(", ", Collections.nCopies(BATCH_LOOKUP_SIZE, "?")) + ")";
+    // the columns are named: in a migrated table unitPricePence is the last column, in a new one the third
+    private static final String INSERT_SQL =
+            "INSERT INTO ProductTable(productID, description, unitPricePence, image, inStock) VALUES(?, ?, ?, ?, ?)";
+
+    // The first DerbyRW created migrates an old ProductTable (see ProductTableMigration)
+    // and builds the shared search index from ProductTable
+    public DerbyRW() {
+        try {
+            ProductTableMigration.migrateOnce(connectionPool());
+        } catch (SQLException e) {
+            log.error("ProductTable could not be migrated", e);
+        }
+        if (!databaseShared && !searchIndex.isBuilt()) {
+            try {
+                buildSearchIndex();
+            } catch (SQLException e) {
+                // searches fall back to a LIKE query, and building is tried again on the next search
+                log.warn("Search index could not be built: " + e.getMessage());
+            }
+        }
+    }
+
+    // The shared pool, looked up on every use so a DerbyRW never keeps a pool that has since been closed
+    private static ConnectionPool connectionPool() {
+        return DatabaseRWFactory.getConnectionPool();
+    }
 
     //search product by product Id or name, return a list of products or null
     //search by Id at first, if get null, search by product name
@@ -37,9 +88,9 @@ public class DerbyRW implements DatabaseRW {
             productList = searchByProName(keyword);
         }
 
-        // If still no products found, print a message
+        // If still no products found, log a message
         if (productList.isEmpty()) {
-            System.out.println("Product " + keyword + " not found.");
+            log.info("Product " + keyword + " not found.");
         }
         return productList;
     }
@@ -49,7 +100,7 @@ public class DerbyRW implements DatabaseRW {
         Product product = null;
         String query = "SELECT * FROM ProductTable WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
+        try (Connection conn = connectionPool().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(query)) {
             // Set the productId parameter
             pstmt.setString(1, proId);
@@ -57,25 +108,61 @@ public class DerbyRW implements DatabaseRW {
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()){
                     product= makeProObjFromDbRecord(rs);
-                    System.out.println("Product " + proId + " found.");
+                    log.debug("Product " + proId + " found.");
                 }else{
-                    System.out.println("Product " + proId + " not found.");
+                    log.debug("Product " + proId + " not found.");
                 }
 
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.error("Database query error, search by ID: " + proId, e);
         }
         return product;
     }
 
     //helper method
     //search  by product name, return a List of products or null
+    //uses the in-memory search index, so only the matching rows are read from the database
     private ArrayList<Product> searchByProName(String name) {
         ArrayList<Product> productList = new ArrayList<>();
+
+        try {
+            if (!canUseSearchIndex(name)) {
+                return searchByProNameScan(name);
+            }
+
+            productList = new ArrayList<>(searchByProductIds(searchIndex.search(name)).values());
+            if (productList.isEmpty()) {
+                log.debug("Product " + name + " not found.");
+            }
+        } catch (SQLException e) {
+            log.error("Database query error, search by name: " + name + " " + e.getMessage());
+        }
+
+        return productList; // could be empty if no matches
+    }
+
+    //helper method
+    //whether the search index can answer a name search, building it first if needed.
+    //not when the database is shared (the index would miss other processes' changes),
+    //nor for a query with no letters or digits to look up (eg "-"), only a LIKE scan can answer those
+    private boolean canUseSearchIndex(String name) throws SQLException {
+        if (databaseShared || ProductSearchIndex.tokenize(name).isEmpty()) {
+            return false;
+        }
+        if (!searchIndex.isBuilt()) {
+            buildSearchIndex();
+        }
+        return true;
+    }
+
+    //helper method
+    //search by product name with a full table scan, used when the search index cannot answer the query
+    private ArrayList<Product> searchByProNameScan(String name) throws SQLException {
+        ArrayList<Product> productList = new ArrayList<>();
         String query = "SELECT * FROM ProductTable WHERE LOWER(description) LIKE LOWER(?)";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
+        try (Connection conn = connectionPool().getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
 
             stmt.setString(1, "%" + name.toLowerCase() + "%");
@@ -84,17 +171,199 @@ public class DerbyRW implements DatabaseRW {
                 while (rs.next()) {
                     productList.add(makeProObjFromDbRecord(rs)); // Add all matching products to list
                 }
+            }
+        }
+        return productList;
+    }
+
+    //search one page of products by product Id or name, in productID order (keyset pagination)
+    //only the rows of the requested page are read from the database
+    public ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        // searching by product ID at first, an exact ID match is a one-product result
+        if (afterProductId == null) {
+            Product product = searchByProductId(keyword);
+            if (product != null) {
+                return new ProductPage(List.of(product), false);
+            }
+        }
+
+        if (!canUseSearchIndex(keyword)) {
+            return searchProNameScanPage(keyword, afterProductId, pageSize);
+        }
+
+        // the index gives every matching ID in order, only the IDs of this page are read from the database
+        NavigableSet<String> matchingIds = searchIndex.search(keyword);
+        if (afterProductId != null) {
+            matchingIds = matchingIds.tailSet(afterProductId, false);
+        }
+        List<String> pageIds = new ArrayList<>();
+        boolean hasMore = false;
+        for (String proId : matchingIds) {
+            if (pageIds.size() == pageSize) {
+                hasMore = true;
+                break;
+            }
+            pageIds.add(proId);
+        }
+        // the cursor is the last ID scanned: if the products of this page were deleted meanwhile,
+        // the page is empty but the next one still starts after it
+        String nextCursor = pageIds.isEmpty() ? afterProductId : pageIds.get(pageIds.size() - 1);
+        return new ProductPage(new ArrayList<>(searchByProductIds(pageIds).values()), nextCursor, hasMore);
+    }
+
+    //helper method
+    //one page of the LIKE scan, for queries the search index cannot answer
+    private ProductPage searchProNameScanPage(String name, String afterProductId, int pageSize) throws SQLException {
+        List<Product> productList = new ArrayList<>();
+        boolean hasMore = false;
+        String query = "SELECT * FROM ProductTable WHERE LOWER(description) LIKE LOWER(?) AND productID > ? " +
+                "ORDER BY productID FETCH FIRST ? ROWS ONLY";
+
+        try (Connection conn = connectionPool().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, "%" + name.toLowerCase() + "%");
+            stmt.setString(2, afterProductId == null ? "" : afterProductId);
+            stmt.setInt(3, pageSize + 1); // one extra row tells us there is another page
 
-                if (productList.isEmpty()) {
-                    System.out.println("Product " + name + " not found.");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (productList.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    productList.add(makeProObjFromDbRecord(rs));
                 }
             }
+        }
+        return new ProductPage(productList, hasMore);
+    }
 
-        } catch (SQLException e) {
-            System.out.println("Database query error, search by name: " + name + " " + e.getMessage());
+    //search by product Id or name and hand each product to the consumer in productID order as it is read,
+    //holding at most BATCH_LOOKUP_SIZE products in memory at a time
+    public int streamSearchProduct(String keyword, Consumer<Product> consumer) throws SQLException {
+        Product product = searchByProductId(keyword);
+        if (product != null) {
+            consumer.accept(product);
+            return 1;
         }
 
-        return productList; // could be empty if no matches
+        if (!canUseSearchIndex(keyword)) {
+            return streamProNameScan(keyword, consumer);
+        }
+
+        int count = 0;
+        List<String> chunk = new ArrayList<>();
+        for (String proId : searchIndex.search(keyword)) {
+            chunk.add(proId);
+            if (chunk.size() == BATCH_LOOKUP_SIZE) {
+                count += acceptAll(searchByProductIds(chunk).values(), consumer);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            count += acceptAll(searchByProductIds(chunk).values(), consumer);
+        }
+        return count;
+    }
+
+    //helper method
+    //streams the LIKE scan straight from the ResultSet
+    private int streamProNameScan(String name, Consumer<Product> consumer) throws SQLException {
+        int count = 0;
+        String query = "SELECT * FROM ProductTable WHERE LOWER(description) LIKE LOWER(?) ORDER BY productID";
+
+        try (Connection conn = connectionPool().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, "%" + name.toLowerCase() + "%");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(makeProObjFromDbRecord(rs));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int acceptAll(Collection<Product> products, Consumer<Product> consumer) {
+        for (Product product : products) {
+            consumer.accept(product);
+        }
+        return products.size();
+    }
+
+    //reads every product in ProductTable in productID order, eg to copy the catalogue into an InMemoryRW
+    public int forEachProduct(Consumer<Product> consumer) throws SQLException {
+        int count = 0;
+        String query = "SELECT * FROM ProductTable ORDER BY productID";
+        try (Connection conn = connectionPool().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                consumer.accept(makeProObjFromDbRecord(rs));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //search many products by their IDs with batched IN-list queries, return a map of productID -> product
+    //used by checkout validation, so a trolley of 50 lines costs one query instead of 50
+    public Map<String, Product> searchByProductIds(Collection<String> proIds) throws SQLException {
+        // remove duplicates but keep the caller's order
+        ArrayList<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(proIds));
+        Map<String, Product> found = new HashMap<>();
+
+        if (!uniqueIds.isEmpty()) {
+            try (Connection conn = connectionPool().getConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(BATCH_LOOKUP_QUERY)) {
+
+                for (int start = 0; start < uniqueIds.size(); start += BATCH_LOOKUP_SIZE) {
+                    List<String> chunk = uniqueIds.subList(start, Math.min(start + BATCH_LOOKUP_SIZE, uniqueIds.size()));
+                    // the query always has BATCH_LOOKUP_SIZE placeholders (so it is prepared once),
+                    // a short chunk is padded by repeating its last ID
+                    for (int i = 0; i < BATCH_LOOKUP_SIZE; i++) {
+                        pstmt.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Product product = makeProObjFromDbRecord(rs);
+                            found.put(product.getProductId(), product);
+                        }
+                    }
+                }
+            }
+        }
+
+        // return the products in the order they were asked for
+        Map<String, Product> products = new LinkedHashMap<>();
+        for (String proId : uniqueIds) {
+            Product product = found.get(proId);
+            if (product != null) {
+                products.put(proId, product);
+            }
+        }
+        return products;
+    }
+
+    //reads every productID and description from ProductTable into the shared search index
+    private void buildSearchIndex() throws SQLException {
+        searchIndex.build(() -> {
+            Map<String, String> descriptions = new HashMap<>();
+            String query = "SELECT productID, description FROM ProductTable";
+            try (Connection conn = connectionPool().getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(query);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    descriptions.put(rs.getString("productID"), rs.getString("description"));
+                }
+            }
+            log.info("Search index built for " + descriptions.size() + " products.");
+            return descriptions;
+        });
     }
 
     //make a Product object from the database record
@@ -103,40 +372,166 @@ public class DerbyRW implements DatabaseRW {
         String productId = rs.getString("productID");
         String description = rs.getString("description");
         String imagePath = rs.getString("image");
-        double unitPrice = rs.getDouble("unitPrice");
+        long unitPricePence = rs.getLong("unitPricePence");
         int inStock = rs.getInt("inStock");
-        product =new Product(productId,description,imagePath,unitPrice,inStock);
+        product =new Product(productId,description,imagePath,unitPricePence,inStock);
+
+        // Show product details, only built when DEBUG is on because this runs for every row read
+        if (log.isDebugEnabled()) {
+            String availability;
+            if (inStock <= 0) {
+                availability = "is NOT in stock";
+            } else if (inStock < 10) {
+                availability = "low stock warning! " + inStock + " units left.";
+            } else {
+                availability = "is available";
+            }
+            log.debug("Product " + productId + " (" + description + ", image " + imagePath
+                    + ", unitPricePence " + unitPricePence + ") " + availability);
+        }
+        return product;
+    }
 
-        // Show product details
-        System.out.println("Product ID: " + productId);
-        System.out.println("Description: " + description);
-        System.out.println("Image: " + imagePath);
-        System.out.println("unitPrice: " + unitPrice);
+    //one line summary of the current ProductTable row, for debug output
+    private static String describeRecord(ResultSet rs) throws SQLException {
+        return "ID " + rs.getString("productID")
+                + ", description " + rs.getString("description")
+                + ", unit price (pence) " + rs.getLong("unitPricePence")
+                + ", stock " + rs.getInt("inStock")
+                + ", image " + rs.getString("image");
+    }
 
-        // Check availability and display message
-        if(inStock <= 0){
-            System.out.println("Product " + productId+ " is NOT in stock");
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        if (purchaseMode == PurchaseMode.CONDITIONAL) {
+            return purchaseStocksConditional(proList);
         }
-        else if(inStock < 10) {
-            System.out.println("Product " + productId+ "low stock warning!" + inStock + " units left.");
+        if (purchaseMode == PurchaseMode.GROUP_COMMIT) {
+            return purchaseStocksGroupCommit(proList);
         }
-        else {
-            System.out.println("Product " + productId+ " is available");
+        return purchaseStocksLocked(proList);
+    }
+
+    //PurchaseMode.GROUP_COMMIT: the basket is committed together with other concurrent checkouts,
+    //see GroupCommitPurchaser. This till waits until its group has been committed.
+    private ArrayList<Product> purchaseStocksGroupCommit(ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> insufficientProducts;
+        try {
+            insufficientProducts = DatabaseRWFactory.getGroupCommitPurchaser().submit(proList)
+                    .get(DatabaseRWFactory.groupCommitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // The group may still commit later, so the basket's stock may or may not be taken
+            throw new SQLException("Timed out waiting for the purchase to be committed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the purchase to be committed", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            throw new SQLException("Purchase failed", e.getCause());
         }
 
-        System.out.println("-----"); // Divider for readability
-        return product;
+        if (insufficientProducts.isEmpty()) {
+            publishStockChanges(purchaseDeltas(proList));
+            return insufficientProducts;
+        }
+        log.info("Insufficient stock for some products, basket rolled back.");
+        return withCurrentStock(insufficientProducts);
     }
 
-    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
-        lock.lock();  // Lock the critical section to prevent concurrent access
+    //PurchaseMode.CONDITIONAL: one guarded UPDATE per product in one transaction, no JVM lock.
+    //The WHERE clause only matches if there is enough stock, so the update count tells us whether it worked,
+    //and the check and the decrement happen atomically inside the database.
+    private ArrayList<Product> purchaseStocksConditional(ArrayList<Product> proList) throws SQLException {
+        ArrayList<Product> insufficientProducts = new ArrayList<>();
+        String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?";
+
+        // Update rows in productID order, so two checkouts sharing products lock their rows in the same order
+        // and cannot deadlock each other
+        ArrayList<Product> sortedList = new ArrayList<>(proList);
+        Collections.sort(sortedList);
+
+        try (Connection conn = connectionPool().getConnection()) {
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+                for (Product product : sortedList) {
+                    updateStmt.setInt(1, product.getOrderedQuantity());
+                    updateStmt.setString(2, product.getProductId());
+                    updateStmt.setInt(3, product.getOrderedQuantity());
+                    updateStmt.addBatch();
+                }
+
+                int[] updateCounts = updateStmt.executeBatch();
+                for (int i = 0; i < updateCounts.length; i++) {
+                    if (updateCounts[i] == 0) { // no row matched: not enough stock, or no such product
+                        insufficientProducts.add(sortedList.get(i));
+                    }
+                }
+
+                if (insufficientProducts.isEmpty()) {
+                    conn.commit();
+                    log.debug("Database update successful.");
+                } else {
+                    conn.rollback(); // all or nothing: undo the lines that did succeed
+                    log.info("Insufficient stock for some products, all updates rolled back.");
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        if (insufficientProducts.isEmpty()) {
+            publishStockChanges(purchaseDeltas(proList));
+            return insufficientProducts;
+        }
+        return withCurrentStock(insufficientProducts);
+    }
+
+    //Replaces failed trolley lines with the current database record (so callers can show how many are left),
+    //keeping the requested quantity. Lines whose product no longer exists are returned unchanged.
+    private ArrayList<Product> withCurrentStock(ArrayList<Product> failedLines) throws SQLException {
+        ArrayList<String> ids = new ArrayList<>();
+        for (Product product : failedLines) {
+            ids.add(product.getProductId());
+        }
+        Map<String, Product> current = searchByProductIds(ids);
+
+        ArrayList<Product> result = new ArrayList<>();
+        for (Product requested : failedLines) {
+            Product dbProduct = current.get(requested.getProductId());
+            if (dbProduct == null) {
+                result.add(requested);
+            } else {
+                dbProduct.setOrderedQuantity(requested.getOrderedQuantity());
+                result.add(dbProduct);
+            }
+        }
+        return result;
+    }
+
+    //PurchaseMode.LOCKED: SELECT then UPDATE for each product, serialized by per-product JVM locks.
+    //When the database is shared with other processes the JVM locks do not reach them, so the SELECT also
+    //locks the row until commit (FOR UPDATE), and the rows are read in productID order so checkouts cannot deadlock.
+    private ArrayList<Product> purchaseStocksLocked(ArrayList<Product> proList) throws SQLException {
+        if (databaseShared) {
+            proList = new ArrayList<>(proList);
+            Collections.sort(proList);
+        }
+        ArrayList<String> ids = new ArrayList<>();
+        for (Product product : proList) {
+            ids.add(product.getProductId());
+        }
+        lockStripes.lockAll(ids);  // Lock only the products in this trolley, in a fixed order (no deadlock)
         ArrayList<Product> insufficientProducts = new ArrayList<>();
+        boolean committed = false;
 
-        String checkSql = "SELECT inStock FROM ProductTable WHERE productId = ?";
+        String checkSql = "SELECT inStock FROM ProductTable WHERE productId = ?" + (databaseShared ? " FOR UPDATE" : "");
         String updateSql = "UPDATE ProductTable SET inStock = inStock - ? WHERE productId = ?";
 
         // Use try-with-resources for Connection and PreparedStatements
-        try (Connection conn = DriverManager.getConnection(dbURL)) {
+        try (Connection conn = connectionPool().getConnection()) {
             conn.setAutoCommit(false); // Turn off auto-commit for transaction
 
             // Use a second try-with-resources for the PreparedStatements
@@ -147,31 +542,34 @@ public class DerbyRW implements DatabaseRW {
 
                 for (Product product : proList) {
                     checkStmt.setString(1, product.getProductId());
-                    ResultSet rs = checkStmt.executeQuery();
-
-                    if (rs.next()) {
-                        int currentStock = rs.getInt("inStock");
-                        int newStock = currentStock - product.getOrderedQuantity();
-
-                        // Debugging: Print values before update
-                        System.out.println("Product ID: " + product.getProductId());
-                        System.out.println("Before change: " + currentStock);
-                        System.out.println("Quantity Ordered: " + product.getOrderedQuantity());
-
-                        if (newStock >= 0) { // Ensure stock doesn't go negative
-                            updateStmt.setInt(1, product.getOrderedQuantity());
-                            updateStmt.setString(2, product.getProductId());
-                            updateStmt.addBatch();
-
-                            // Debugging: Print values after update
-                            System.out.println("After change: " + newStock);
-                            System.out.println("Update successful for Product ID: " + product.getProductId());
-                        } else {
-                            insufficientProducts.add(product);
-                            allSufficient = false; // Mark that there's at least one insufficient product
-                            System.out.println("Not enough stock for Product ID: " + product.getProductId());
+                    int currentStock;
+                    try (ResultSet rs = checkStmt.executeQuery()) {
+                        if (!rs.next()) {
+                            // No such product (eg deleted while in the trolley), it cannot be bought
+                            Product missing = new Product(product.getProductId(), product.getProductDescription(),
+                                    product.getProductImageName(), product.getUnitPricePence(), 0);
+                            missing.setOrderedQuantity(product.getOrderedQuantity());
+                            insufficientProducts.add(missing);
+                            allSufficient = false;
+                            log.debug("Product ID " + product.getProductId() + " not found");
+                            continue;
                         }
-                        System.out.println("--------------------------------");
+                        currentStock = rs.getInt("inStock");
+                    }
+
+                    int newStock = currentStock - product.getOrderedQuantity();
+
+                    if (newStock >= 0) { // Ensure stock doesn't go negative
+                        updateStmt.setInt(1, product.getOrderedQuantity());
+                        updateStmt.setString(2, product.getProductId());
+                        updateStmt.addBatch();
+                        log.debug("Product " + product.getProductId() + " stock " + currentStock + " -> " + newStock
+                                + " (ordered " + product.getOrderedQuantity() + ")");
+                    } else {
+                        insufficientProducts.add(product);
+                        allSufficient = false; // Mark that there's at least one insufficient product
+                        log.debug("Not enough stock for Product ID: " + product.getProductId() + " (stock "
+                                + currentStock + ", ordered " + product.getOrderedQuantity() + ")");
                     }
                 }
 
@@ -179,115 +577,197 @@ public class DerbyRW implements DatabaseRW {
                     // If all products have sufficient stock, execute the batch and commit
                     updateStmt.executeBatch();
                     conn.commit();  // Commit all updates if all updates succeed
-                    System.out.println("Database update successful.");
+                    committed = true;
+                    log.debug("Database update successful.");
                 } else {
                     // If there's insufficient stock for any product, rollback the entire transaction
                     conn.rollback();
-                    System.out.println("Insufficient stock for some products, all updates rolled back.");
+                    log.info("Insufficient stock for some products, all updates rolled back.");
                 }
 
             } catch (SQLException e) {
                 conn.rollback();  // Rollback if anything failed inside
-                System.out.println("Database update error, update failed");
+                log.error("Database update error, update failed", e);
+                throw e; // nothing was bought, the caller must not take this for success
             }
         } finally {
-            lock.unlock(); // Always release the lock after the operation
+            lockStripes.unlockAll(ids); // Always release the locks after the operation
         }
 
+        if (committed) {
+            publishStockChanges(purchaseDeltas(proList));
+        }
         return insufficientProducts;
     }
 
+    //the stock change of each product in a trolley, eg 0001 -> -2
+    private static Map<String, Integer> purchaseDeltas(List<Product> proList) {
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        for (Product product : proList) {
+            deltas.merge(product.getProductId(), -product.getOrderedQuantity(), Integer::sum);
+        }
+        return deltas;
+    }
 
-    //warehouse edits an existing product
-    public void updateProduct(String id, String des, double price, String iName, int stock) throws SQLException {
-        lock.lock();
-        String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
+    //publishes STOCK_CHANGED events after stock was changed by the given deltas and committed,
+    //by this class or by StockReservations (package-private for that).
+    //The new stock levels are read back, which costs one query, so this is skipped while nobody subscribes.
+    //Checkouts publish after their commit, so two checkouts of one product can commit in one order and reach
+    //this point in the other. The read and the publish are therefore done under the products' locks: whichever
+    //checkout reads last also publishes last, and it reads a level that includes every change committed before
+    //it, so the last event of a product carries its latest stock. Writes that publish under the same lock
+    //(updateProduct) fit into that order too.
+    //The old stock level is the new one minus the delta, which is only exact if no other change came in between.
+    void publishStockChanges(Map<String, Integer> deltas) {
+        DatabaseRWFactory.productTableChanged(); // even while nobody subscribes
+        if (!changeFeed.hasSubscribers()) {
+            return;
+        }
+        lockStripes.lockAll(deltas.keySet());
+        try {
+            for (Product current : searchByProductIds(deltas.keySet()).values()) {
+                int delta = deltas.get(current.getProductId());
+                Product before = new Product(current.getProductId(), current.getProductDescription(),
+                        current.getProductImageName(), current.getUnitPricePence(), current.getStockQuantity() - delta);
+                changeFeed.publish(new ProductChangeEvent(ProductChangeEvent.Type.STOCK_CHANGED,
+                        current.getProductId(), before, current));
+            }
+        } catch (SQLException e) {
+            // the change is committed, only the subscribers miss it until the product is read again
+            log.warn("Stock change of " + deltas.keySet() + " could not be published: " + e.getMessage());
+        } finally {
+            lockStripes.unlockAll(deltas.keySet());
+        }
+    }
+
+
+    //warehouse edits an existing product.
+    //stock is the units on hand, including units held in customers' trolleys (StockReservations): the held units
+    //are already out of inStock and go back in when their hold is released or expires, so inStock is set to
+    //stock minus the held units. If fewer units are on hand than are held, the holds are dropped and inStock
+    //is the count; those trolleys then buy from the counted stock at checkout.
+    //Holds of this JVM take the same product lock, so none comes or goes between the read and the write.
+    public void updateProduct(String id, String des, long pricePence, String iName, int stock) throws SQLException {
+        lockStripes.lock(id); // only this product is locked, other products can still be written
+        String selectSql = "SELECT * FROM ProductTable WHERE productID = ?" + (databaseShared ? " FOR UPDATE" : "");
         String updateSql = "UPDATE ProductTable SET " +
                 "description = ?, " +
-                "unitPrice = ?, " +
+                "unitPricePence = ?, " +
                 "image = ?, "+
                 "inStock = ? " +
                 "WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+        try (Connection conn = connectionPool().getConnection()) {
+            conn.setAutoCommit(false);
+            Product before;
+            int inStock = stock;
 
-            // Print Before Update
-            selectStmt.setString(1, id);
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    System.out.println("Before Update:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                    System.out.println("Image: " + rs.getString("image"));
+            try (PreparedStatement selectStmt = conn.prepareStatement(selectSql);
+                 PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+
+                // Check the product exists, and keep it as it was before the update
+                selectStmt.setString(1, id);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        log.debug("Before update: " + describeRecord(rs));
+                        before = makeProObjFromDbRecord(rs);
+                    } else {
+                        log.warn("Product not found: " + id);
+                        conn.rollback();
+                        return; // Exit if product doesn't exist
+                    }
+                }
+
+                int reserved = StockReservations.reservedQuantity(conn, id);
+                if (reserved > stock) {
+                    int dropped = StockReservations.dropHolds(conn, id);
+                    log.warn("Product " + id + ": " + stock + " units on hand but " + reserved + " held, "
+                            + dropped + " hold(s) dropped");
                 } else {
-                    System.out.println("Product not found: " + id);
-                    return; // Exit if product doesn't exist
+                    inStock = stock - reserved;
                 }
+
+                // Perform Update
+                updateStmt.setString(1, des);
+                updateStmt.setLong(2, pricePence);
+                updateStmt.setString(3, iName);
+                updateStmt.setInt(4, inStock);
+                updateStmt.setString(5, id);
+                updateStmt.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
 
-            // Perform Update
-            updateStmt.setString(1, des);
-            updateStmt.setDouble(2, price);
-            updateStmt.setString(3, iName);
-            updateStmt.setInt(4, stock);
-            updateStmt.setString(5, id);
-            updateStmt.executeUpdate();
-
-            // Print After Update
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    System.out.println("After Update:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                    System.out.println("image: " + rs.getString("image"));
+            DatabaseRWFactory.productTableChanged();
+            searchIndex.addOrUpdate(id, des); // keep the search index in step with the table
+            // published while the product is still locked, so the events of one product come in commit order
+            changeFeed.publish(new ProductChangeEvent(ProductChangeEvent.Type.UPDATED, id, before,
+                    new Product(id, des, iName, pricePence, inStock)));
+
+            // Log After Update, the record is only read again when DEBUG is on
+            if (log.isDebugEnabled()) {
+                try (PreparedStatement selectStmt = conn.prepareStatement("SELECT * FROM ProductTable WHERE productID = ?")) {
+                    selectStmt.setString(1, id);
+                    try (ResultSet rs = selectStmt.executeQuery()) {
+                        if (rs.next()) {
+                            log.debug("After update: " + describeRecord(rs));
+                        }
+                    }
                 }
             }
         }
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            lockStripes.unlock(id); // Always release the lock after the operation
         }
     }
 
 //warehouse delete an existing product
     public void deleteProduct(String proId) throws SQLException {
-        lock.lock();
+        lockStripes.lock(proId);
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
         String deleteSql = "DELETE FROM ProductTable WHERE productID = ?";
 
-        try (Connection conn = DriverManager.getConnection(dbURL);
-             PreparedStatement selectStmt = conn.prepareStatement(selectSql);
-             PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
-            conn.setAutoCommit(true); // Set auto-commit to true immediately
+        try (Connection conn = connectionPool().getConnection()) {
+            conn.setAutoCommit(false);
+            Product before;
 
-            // print product details before deletion
-            selectStmt.setString(1, proId);
-            try (ResultSet rs = selectStmt.executeQuery()) {
-                if (rs.next()) {
-                    System.out.println("Before delete:");
-                    System.out.println("ID: " + rs.getString("productID"));
-                    System.out.println("Description: " + rs.getString("description"));
-                    System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                    System.out.println("Stock: " + rs.getInt("inStock"));
-                } else {
-                    System.out.println("Product not found: " + proId);
-                    return; // Exit if product does not exist
+            try (PreparedStatement selectStmt = conn.prepareStatement(selectSql);
+                 PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
+
+                // check the product exists, and keep its details before deletion
+                selectStmt.setString(1, proId);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        log.debug("Before delete: " + describeRecord(rs));
+                        before = makeProObjFromDbRecord(rs);
+                    } else {
+                        log.warn("Product not found: " + proId);
+                        conn.rollback();
+                        return; // Exit if product does not exist
+                    }
                 }
+
+                // delete from database, with its holds: a trolley must not buy it through a hold,
+                // and a hold released later must not add stock to a new product given the same ID
+                deleteStmt.setString(1, proId);
+                deleteStmt.executeUpdate();
+                StockReservations.dropHolds(conn, proId);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
 
-            // delete from database
-            deleteStmt.setString(1, proId);
-            deleteStmt.executeUpdate();
-            System.out.println("Product " + proId + " deleted from database.");
+            DatabaseRWFactory.productTableChanged();
+            searchIndex.remove(proId);
+            changeFeed.publish(new ProductChangeEvent(ProductChangeEvent.Type.DELETED, proId, before, null));
+            log.info("Product " + proId + " deleted from database.");
         }
 
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            lockStripes.unlock(proId); // Always release the lock after the operation
         }
     }
 
@@ -296,7 +776,7 @@ public class DerbyRW implements DatabaseRW {
     public boolean isProIdAvailable(String proId) throws SQLException {
         String query = "SELECT COUNT(*) FROM ProductTable WHERE productID = ?";
                              //the count of records that match the given proId.
-        try (Connection conn = DriverManager.getConnection(dbURL);
+        try (Connection conn = connectionPool().getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, proId);
             ResultSet rs = stmt.executeQuery();
@@ -312,35 +792,134 @@ public class DerbyRW implements DatabaseRW {
         }
     }
 
+    //warehouse goods-in: relative stock changes for many products in one batched transaction.
+    //"inStock = inStock + ?" only adds the delta, so checkouts committed meanwhile are kept (updateProduct would
+    //overwrite them), and the WHERE clause refuses any delta that would take the stock below zero.
+    @Override
+    public Map<String, Integer> adjustStock(Map<String, Integer> deltas) throws SQLException {
+        Map<String, Integer> failed = new LinkedHashMap<>();
+        if (deltas.isEmpty()) {
+            return failed;
+        }
+        // productID order, so adjustments and checkouts sharing products lock their rows in the same order
+        TreeMap<String, Integer> sorted = new TreeMap<>(deltas);
+        ArrayList<String> ids = new ArrayList<>(sorted.keySet());
+        String updateSql = "UPDATE ProductTable SET inStock = inStock + ? WHERE productID = ? AND inStock + ? >= 0";
+
+        lockStripes.lockAll(ids);
+        try (Connection conn = connectionPool().getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement updateStmt = conn.prepareStatement(updateSql)) {
+                for (Map.Entry<String, Integer> delta : sorted.entrySet()) {
+                    updateStmt.setInt(1, delta.getValue());
+                    updateStmt.setString(2, delta.getKey());
+                    updateStmt.setInt(3, delta.getValue());
+                    updateStmt.addBatch();
+                }
+
+                int[] updateCounts = updateStmt.executeBatch();
+                for (int i = 0; i < updateCounts.length; i++) {
+                    if (updateCounts[i] == 0) { // no such product, or the stock would go below zero
+                        failed.put(ids.get(i), sorted.get(ids.get(i)));
+                    }
+                }
+
+                if (failed.isEmpty()) {
+                    conn.commit();
+                    log.info("Stock adjusted for " + ids.size() + " products");
+                } else {
+                    conn.rollback(); // all or nothing
+                    log.info("Stock adjustment refused for " + failed.keySet() + ", nothing changed");
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            lockStripes.unlockAll(ids);
+        }
+        if (failed.isEmpty()) {
+            publishStockChanges(sorted);
+        }
+        return failed;
+    }
+
     //   /images/0001TV.jpg
     //warehouse adds a new product to database
-    public void insertNewProduct(String id, String des,double price,String image,int stock) throws SQLException {
-        lock.lock();
-        String insertSql = "INSERT INTO ProductTable VALUES(?, ?, ?, ?, ?)";
+    public void insertNewProduct(String id, String des,long pricePence,String image,int stock) throws SQLException {
+        lockStripes.lock(id);
         String selectSql = "SELECT * FROM ProductTable WHERE productID = ?";
-        try (Connection conn = DriverManager.getConnection(dbURL);
-        PreparedStatement insertStmt = conn.prepareStatement(insertSql);
+        try (Connection conn = connectionPool().getConnection();
+        PreparedStatement insertStmt = conn.prepareStatement(INSERT_SQL);
         PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
             conn.setAutoCommit(true); // Set auto-commit to true immediately
             insertStmt.setString(1, id);
             insertStmt.setString(2, des);
-            insertStmt.setDouble(3, price);
+            insertStmt.setLong(3, pricePence);
             insertStmt.setString(4, image);
             insertStmt.setInt(5, stock);
             selectStmt.setString(1, id);
             insertStmt.executeUpdate();
-            ResultSet rs = selectStmt.executeQuery();
-            if (rs.next()) { //print the inserted record
-                System.out.println("Insert successful for Product ID: \" + id");
-                System.out.println("ID: " + rs.getString("productID"));
-                System.out.println("Description: " + rs.getString("description"));
-                System.out.println("Unit Price: " + rs.getDouble("unitPrice"));
-                System.out.println("Stock: " + rs.getInt("inStock"));
+            DatabaseRWFactory.productTableChanged();
+            searchIndex.addOrUpdate(id, des);
+            changeFeed.publish(new ProductChangeEvent(ProductChangeEvent.Type.INSERTED, id, null,
+                    new Product(id, des, image, pricePence, stock)));
+            log.info("Insert successful for Product ID: " + id);
+            if (log.isDebugEnabled()) { //log the inserted record, only read back when DEBUG is on
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (rs.next()) {
+                        log.debug("Inserted: " + describeRecord(rs));
+                    }
+                }
             }
         }
         finally {
-            lock.unlock(); // Always release the lock after the operation
+            lockStripes.unlock(id); // Always release the lock after the operation
+        }
+    }
+
+    //warehouse bulk import: all the products in one JDBC batch and one transaction (one commit, one log flush),
+    //instead of one connection and one commit per product. Either every product is inserted or none is.
+    @Override
+    public void insertNewProducts(List<Product> products) throws SQLException {
+        if (products.isEmpty()) {
+            return;
+        }
+        ArrayList<String> ids = new ArrayList<>();
+        for (Product product : products) {
+            ids.add(product.getProductId());
+        }
+
+        lockStripes.lockAll(ids);
+        try (Connection conn = connectionPool().getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement insertStmt = conn.prepareStatement(INSERT_SQL)) {
+                for (Product product : products) {
+                    insertStmt.setString(1, product.getProductId());
+                    insertStmt.setString(2, product.getProductDescription());
+                    insertStmt.setLong(3, product.getUnitPricePence());
+                    insertStmt.setString(4, product.getProductImageName());
+                    insertStmt.setInt(5, product.getStockQuantity());
+                    insertStmt.addBatch();
+                }
+                insertStmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback(); // eg a duplicate productID: none of the batch is kept
+                throw e;
+            }
+        } finally {
+            lockStripes.unlockAll(ids);
+        }
+
+        // only index and publish the products once they are committed
+        DatabaseRWFactory.productTableChanged();
+        for (Product product : products) {
+            searchIndex.addOrUpdate(product.getProductId(), product.getProductDescription());
+            changeFeed.publish(new ProductChangeEvent(ProductChangeEvent.Type.INSERTED, product.getProductId(),
+                    null, product));
         }
+        log.info("Batch insert successful for " + products.size() + " products");
     }
 
 }
@@ -0,0 +1,125 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+import org.apache.derby.drda.NetworkServerControl;
+
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * DerbyServer runs Derby's network server, so several HappyShop processes can use one database at the same time.
+ *
+ * The embedded URL (jdbc:derby:happyShopDB) opens the database files inside the calling JVM, and Derby lets
+ * only one JVM do that. In NETWORK mode (see DatabaseRWFactory.derbyMode) one process runs this server,
+ * which owns the files, and every customer, picker and warehouse process connects to it with the client driver
+ * (jdbc:derby://localhost:1527/happyShopDB).
+ *
+ * Usage, from the project folder (the server finds happyShopDB relative to its working directory):
+ *     java ... ci553.happyshop.storageAccess.DerbyServer [port]              runs until Ctrl+C
+ *     java -Dhappyshop.derby.mode=NETWORK ... ci553.happyshop.client.customer.CustomerClient
+ * Start the server first: a NETWORK mode process that finds none logs an error, and its database calls fail
+ * until one is running.
+ * With -Dhappyshop.derby.autoStart=true (DatabaseRWFactory.networkServerAutoStart) a NETWORK mode process that
+ * finds no server starts one inside itself instead. That server stops when its process exits, and every other
+ * process loses the database with it, so it suits a single process (eg StorageBenchmark), not a running shop.
+ */
+
+public class DerbyServer {
+    private static final DiagnosticLog log = Diagnostics.getLog(DerbyServer.class);
+    private static final int START_TIMEOUT_MILLIS = 10_000;
+
+    private final String host;
+    private final int port;
+    private NetworkServerControl server;
+
+    public DerbyServer(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Starts the network server in this JVM and waits until it answers.
+     * @throws SQLException if it could not be started (eg the port is in use)
+     */
+    public synchronized void start() throws SQLException {
+        if (server != null) {
+            return;
+        }
+        try {
+            NetworkServerControl control = new NetworkServerControl(InetAddress.getByName(host), port);
+            control.start(new PrintWriter(System.err, true)); // the server's own console messages
+            long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+            while (!ping(control)) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new SQLException("Derby network server did not start on " + host + ":" + port);
+                }
+                Thread.sleep(100);
+            }
+            server = control;
+            log.info("Derby network server started on " + host + ":" + port);
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("Could not start the Derby network server on " + host + ":" + port, e);
+        }
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.shutdown();
+            log.info("Derby network server on " + host + ":" + port + " stopped");
+        } catch (Exception e) {
+            log.warn("Derby network server did not shut down cleanly: " + e.getMessage());
+        }
+        server = null;
+    }
+
+    public synchronized boolean isStartedHere() {
+        return server != null;
+    }
+
+    /**
+     * Whether a network server (started by any process) is answering on host:port.
+     */
+    public static boolean isRunning(String host, int port) {
+        try {
+            return ping(new NetworkServerControl(InetAddress.getByName(host), port));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static boolean ping(NetworkServerControl control) {
+        try {
+            control.ping();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    public String getHost() { return host; }
+    public int getPort() { return port; }
+
+    // Runs a dedicated database server process until it is stopped with Ctrl+C
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DatabaseRWFactory.networkPort;
+        DerbyServer derbyServer = new DerbyServer(DatabaseRWFactory.networkHost, port);
+        derbyServer.start();
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            derbyServer.stop();
+            stopped.countDown();
+        }));
+        System.out.println("HappyShop database server running on " + derbyServer.getHost() + ":" + port
+                + ", press Ctrl+C to stop.");
+        stopped.await();
+    }
+}
@@ -0,0 +1,102 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+import ci553.happyshop.orderManagement.OrderState;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * FileOrderStore is the original OrderStore: each order is a text file, "<orderId>.txt",
+ * in the folder of its state (orders/ordered, orders/progressing or orders/collected).
+ * The file operations themselves are done by OrderFileManager.
+ */
+
+public class FileOrderStore implements OrderStore {
+    private static final DiagnosticLog log = Diagnostics.getLog(FileOrderStore.class);
+
+    private final Path orderedPath = StorageLocation.orderedPath;
+    private final Path progressingPath = StorageLocation.progressingPath;
+    private final Path collectedPath = StorageLocation.collectedPath;
+
+    @Override
+    public void createOrder(int orderId, String orderDetail) throws IOException {
+        OrderFileManager.createOrderFile(orderedPath, orderId, orderDetail);
+    }
+
+    @Override
+    public boolean changeOrderState(int orderId, OrderState newState) throws IOException {
+        //change orderState in order file and move the file to new state folder
+        switch (newState) {
+            case Progressing:
+                return OrderFileManager.updateAndMoveOrderFile(orderId, newState, orderedPath, progressingPath);
+            case Collected:
+                return OrderFileManager.updateAndMoveOrderFile(orderId, newState, progressingPath, collectedPath);
+            default:
+                return false; // no order goes back to Ordered
+        }
+    }
+
+    @Override
+    public String readOrder(int orderId) throws IOException {
+        for (Path dir : new Path[]{progressingPath, orderedPath, collectedPath}) {
+            if (Files.exists(dir.resolve(orderId + ".txt"))) {
+                return OrderFileManager.readOrderFile(dir, orderId);
+            }
+        }
+        throw new IOException("Order file not found: " + orderId + ".txt");
+    }
+
+    @Override
+    public TreeMap<Integer, OrderState> loadUncollectedOrders() {
+        TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        for (Integer orderId : orderIdsLoader(orderedPath)) {
+            orders.put(orderId, OrderState.Ordered);
+        }
+        for (Integer orderId : orderIdsLoader(progressingPath)) {
+            orders.put(orderId, OrderState.Progressing);
+        }
+        return orders;
+    }
+
+    // Loads a list of order IDs from the specified directory.
+    private ArrayList<Integer> orderIdsLoader(Path dir) {
+        ArrayList<Integer> orderIds = new ArrayList<>();
+
+        if (Files.exists(dir) && Files.isDirectory(dir)) {
+            try (Stream<Path> fileStream = Files.list(dir)) {
+                // Process the stream without checking it separately
+                List<Path> files = fileStream.filter(Files::isRegularFile).toList();
+
+                if (files.isEmpty()) {
+                    log.info(dir + " is empty");
+                } else {
+                    for (Path file : files) {
+                        String fileName = file.getFileName().toString();
+                        if (fileName.endsWith(".txt")) { // Ensure it's a .txt file
+                            try {
+                                int orderId = Integer.parseInt(fileName.substring(0, fileName.lastIndexOf('.')));
+                                orderIds.add(orderId);
+                                log.debug("Loaded order " + orderId + " from " + dir);
+                            } catch (NumberFormatException e) {
+                                log.warn("Invalid file name: " + fileName);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Error reading " + dir + ", " + e.getMessage());
+            }
+        } else {
+            log.warn(dir + " does not exist.");
+        }
+        return orderIds;
+    }
+}
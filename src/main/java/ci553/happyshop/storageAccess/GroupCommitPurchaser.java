@@ -0,0 +1,304 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GroupCommitPurchaser applies the stock decrements of many concurrent checkouts in one database transaction.
+ *
+ * Every commit makes Derby flush its log to disk, and that flush, not the UPDATEs, is what limits how many
+ * checkouts per second one-transaction-per-checkout (PurchaseMode.CONDITIONAL) can do. Here:
+ * 1. A till calls submit(basket) and gets a CompletableFuture; DerbyRW waits on it (PurchaseMode.GROUP_COMMIT).
+ * 2. A single writer thread takes the first waiting basket, then keeps collecting baskets for up to windowMillis
+ *    (or until maxBaskets are collected).
+ * 3. It runs all of them in one transaction. Each basket gets its own savepoint and the same guarded UPDATE as
+ *    CONDITIONAL mode ("... SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?"). If any line of a
+ *    basket finds too little stock, only that basket is rolled back to its savepoint; the others stay.
+ * 4. One commit (one log flush) for the whole group, then every future is completed:
+ *    an empty list if the basket was bought, or the lines that had too little stock.
+ * So each basket is still all or nothing, but a burst of N checkouts costs one commit instead of N.
+ *
+ * If the group transaction itself fails before its commit (eg a deadlock with another process), it is rolled back
+ * and each basket is tried again in a transaction of its own, so one bad basket cannot fail the others.
+ * If the commit call fails, the group may or may not have been committed (eg the connection dropped after the
+ * database committed), so trying the baskets again could take their stock twice: every basket of the group is
+ * failed instead. Any other error while writing a group fails that group's baskets and the writer carries on.
+ */
+
+public class GroupCommitPurchaser {
+    private static final DiagnosticLog log = Diagnostics.getLog(GroupCommitPurchaser.class);
+    private static final String UPDATE_SQL =
+            "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?";
+
+    private final ConnectionPool connectionPool;
+    private final long windowNanos;
+    private final int maxBaskets;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    // Statistics
+    private final LongAdder groupCount = new LongAdder();
+    private final LongAdder basketCount = new LongAdder();
+    private final LongAdder failedBasketCount = new LongAdder();
+    private final LongAdder fallbackCount = new LongAdder();
+    private final LongAdder failedCommitCount = new LongAdder();
+    private final AtomicLong largestGroup = new AtomicLong();
+
+    /**
+     * @param windowMillis how long the writer keeps collecting baskets after the first one arrives
+     * @param maxBaskets   the most baskets put in one transaction
+     */
+    public GroupCommitPurchaser(ConnectionPool connectionPool, long windowMillis, int maxBaskets) {
+        if (windowMillis < 0 || maxBaskets <= 0) {
+            throw new IllegalArgumentException("windowMillis must not be negative and maxBaskets must be positive");
+        }
+        this.connectionPool = connectionPool;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBaskets = maxBaskets;
+        writer = new Thread(this::writeLoop, "GroupCommitPurchaser-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a basket for the next group.
+     * @return a future completed with the lines that had too little stock (empty if the basket was bought),
+     * or completed exceptionally with the SQLException if the basket could not be written at all
+     */
+    public CompletableFuture<ArrayList<Product>> submit(List<Product> basket) {
+        Request request = new Request(basket);
+        if (closed) {
+            request.result.completeExceptionally(new SQLException("GroupCommitPurchaser is closed"));
+            return request.result;
+        }
+        queue.add(request);
+        // close() may have drained the queue between the check above and the add. If the request is still
+        // queued nobody will take it, so it is failed here; if it is gone, the writer or close() completes it.
+        if (closed && queue.remove(request)) {
+            request.result.completeExceptionally(new SQLException("GroupCommitPurchaser is closed"));
+        }
+        return request.result;
+    }
+
+    /**
+     * Stops the writer thread. Baskets still waiting are failed with an SQLException.
+     */
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new SQLException("GroupCommitPurchaser is closed"));
+        }
+    }
+
+    private void writeLoop() {
+        while (!closed) {
+            List<Request> group = new ArrayList<>();
+            try {
+                group.add(queue.take()); // wait for the first basket
+                long deadline = System.nanoTime() + windowNanos;
+                while (group.size() < maxBaskets) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                failAll(group, new SQLException("GroupCommitPurchaser is closed"));
+                return;
+            }
+            try {
+                writeGroup(group);
+            } catch (Throwable t) {
+                // This is the only writer thread: it must outlive a bad group, or every later checkout waits forever
+                log.error("Group of " + group.size() + " baskets failed unexpectedly: " + t);
+                failAll(group, new SQLException("Group commit failed", t));
+            }
+        }
+    }
+
+    private void writeGroup(List<Request> group) {
+        groupCount.increment();
+        basketCount.add(group.size());
+        largestGroup.accumulateAndGet(group.size(), Math::max);
+
+        List<ArrayList<Product>> results = new ArrayList<>();
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement updateStmt = conn.prepareStatement(UPDATE_SQL)) {
+                for (Request request : group) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    ArrayList<Product> insufficient = applyBasket(updateStmt, request.basket);
+                    if (insufficient.isEmpty()) {
+                        conn.releaseSavepoint(savepoint);
+                    } else {
+                        conn.rollback(savepoint); // undo only this basket
+                    }
+                    results.add(insufficient);
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            try {
+                conn.commit(); // one log flush for the whole group
+            } catch (SQLException e) {
+                // The commit may have reached the database before the error did, so the baskets must not be
+                // written again: they are failed, and the stock is left for a person to check.
+                log.error("Commit of a group of " + group.size() + " baskets failed, whether it was applied "
+                        + "is unknown: " + e.getMessage());
+                failedCommitCount.increment();
+                DatabaseRWFactory.productTableChanged(); // it may have been applied
+                failAll(group, new SQLException("Could not confirm the stock update was committed", e));
+                return;
+            }
+        } catch (SQLException e) {
+            // Nothing was committed, so each basket can safely be tried again on its own
+            log.warn("Group of " + group.size() + " baskets failed, retrying them one by one: " + e.getMessage());
+            fallbackCount.increment();
+            for (Request request : group) {
+                writeSingle(request);
+            }
+            return;
+        }
+        for (int i = 0; i < group.size(); i++) {
+            completeWith(group.get(i), results.get(i));
+        }
+    }
+
+    // Used when a group transaction fails: the basket in a transaction of its own
+    private void writeSingle(Request request) {
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement updateStmt = conn.prepareStatement(UPDATE_SQL)) {
+                ArrayList<Product> insufficient = applyBasket(updateStmt, request.basket);
+                if (insufficient.isEmpty()) {
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+                completeWith(request, insufficient);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            request.result.completeExceptionally(e);
+        }
+    }
+
+    // Runs the guarded UPDATEs of one basket in productID order, returns the lines that matched no row
+    private static ArrayList<Product> applyBasket(PreparedStatement updateStmt, List<Product> basket)
+            throws SQLException {
+        ArrayList<Product> sortedBasket = new ArrayList<>(basket);
+        Collections.sort(sortedBasket);
+        for (Product product : sortedBasket) {
+            updateStmt.setInt(1, product.getOrderedQuantity());
+            updateStmt.setString(2, product.getProductId());
+            updateStmt.setInt(3, product.getOrderedQuantity());
+            updateStmt.addBatch();
+        }
+        int[] updateCounts = updateStmt.executeBatch();
+
+        ArrayList<Product> insufficient = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                insufficient.add(sortedBasket.get(i));
+            }
+        }
+        return insufficient;
+    }
+
+    private void completeWith(Request request, ArrayList<Product> insufficient) {
+        if (!insufficient.isEmpty()) {
+            failedBasketCount.increment();
+        }
+        request.result.complete(insufficient);
+    }
+
+    private static void failAll(List<Request> group, SQLException e) {
+        for (Request request : group) {
+            request.result.completeExceptionally(e);
+        }
+    }
+
+    private static class Request {
+        private final List<Product> basket;
+        private final CompletableFuture<ArrayList<Product>> result = new CompletableFuture<>();
+
+        Request(List<Product> basket) {
+            this.basket = basket;
+        }
+    }
+
+    /**
+     * @return a snapshot of the group commit counters
+     */
+    public Statistics getStatistics() {
+        return new Statistics(groupCount.sum(), basketCount.sum(), failedBasketCount.sum(), fallbackCount.sum(),
+                failedCommitCount.sum(), largestGroup.get(), queue.size());
+    }
+
+    /**
+     * A point-in-time snapshot of the group commit counters.
+     */
+    public static class Statistics {
+        private final long groups;
+        private final long baskets;
+        private final long failedBaskets;
+        private final long fallbacks;
+        private final long failedCommits;
+        private final long largestGroup;
+        private final int waiting;
+
+        private Statistics(long groups, long baskets, long failedBaskets, long fallbacks, long failedCommits,
+                           long largestGroup, int waiting) {
+            this.groups = groups;
+            this.baskets = baskets;
+            this.failedBaskets = failedBaskets;
+            this.fallbacks = fallbacks;
+            this.failedCommits = failedCommits;
+            this.largestGroup = largestGroup;
+            this.waiting = waiting;
+        }
+
+        public long getGroups() { return groups; }
+        public long getBaskets() { return baskets; }
+        public long getFailedBaskets() { return failedBaskets; }    // baskets with too little stock
+        public long getFallbacks() { return fallbacks; }            // groups retried basket by basket
+        public long getFailedCommits() { return failedCommits; }    // groups failed without retry, see class doc
+        public long getLargestGroup() { return largestGroup; }
+        public int getWaiting() { return waiting; }
+
+        // Baskets per commit, the higher the fewer log flushes
+        public double getAverageGroupSize() {
+            return groups == 0 ? 0 : (double) baskets / groups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("GroupCommitPurchaser[groups=%d, baskets=%d (%.1f per commit, largest %d), " +
+                            "insufficient stock=%d, fallbacks=%d, failed commits=%d, waiting=%d]",
+                    groups, baskets, getAverageGroupSize(), largestGroup, failedBaskets, fallbacks, failedCommits,
+                    waiting);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,6 +21,8 @@ import java.nio.file.StandardCopyOption;
  */
 
 public class ImageFileManager {
+    private static final DiagnosticLog log = Diagnostics.getLog(ImageFileManager.class);
+
     /**
      * Deletes an image file from the specified folder.
      *
@@ -31,9 +36,9 @@ public class ImageFileManager {
 
         if (Files.exists(iPath)) { // Check if the file exists
             Files.delete(iPath); // Permanently delete the file
-            System.out.println("Deleted: " + iPath);
+            log.info("Deleted: " + iPath);
         } else {
-            System.out.println("File not found: " + iPath);
+            log.warn("File not found: " + iPath);
         }
     }
 
@@ -47,23 +52,30 @@ public class ImageFileManager {
      * @return The name of the copied image file (with extension).
      */
     public static String copyFileToDestination(String sourceUri, String destinationFolder, String fileNameWithoutExtension) throws IOException {
-        // Get the source file path and file name
         Path sourcePath = Paths.get(sourceUri);  // Source image uri (e.g., "C:/Users/shan/Desktop/mark.jpg")
-        String sourceFileName = sourcePath.getFileName().toString();  // e.g., "mark.jpg"
-
-        // Extract file extension from the source file
-        String fileExtension = sourceFileName.substring(sourceFileName.lastIndexOf('.'));  // e.g., ".jpg"
 
         // Prepare the destination file path
         Path destinationFolderPath = Paths.get(destinationFolder);  // Destination folder path
 
-        String fileNameWithExtension = fileNameWithoutExtension + fileExtension;
+        String fileNameWithExtension = destinationFileName(sourcePath, fileNameWithoutExtension);
         Path destinationPath = destinationFolderPath.resolve(fileNameWithExtension);  // Combine the product ID (fileNameWithoutExtension) with the extension
 
         // Copy the file to the destination folder with the specified name
         Files.copy(sourcePath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
-        System.out.println("File copied successfully to: " + destinationPath);
+        log.info("File copied successfully to: " + destinationPath);
         return fileNameWithExtension;
     }
 
+    /**
+     * The name an image gets in the destination folder: the new name with the source file's extension.
+     *
+     * @param sourcePath The source image file, e.g. "C:/Users/shan/Desktop/mark.jpg".
+     * @param fileNameWithoutExtension The new name, e.g. the product ID "0013".
+     * @return The new name with the extension, e.g. "0013.jpg".
+     */
+    public static String destinationFileName(Path sourcePath, String fileNameWithoutExtension) {
+        String sourceFileName = sourcePath.getFileName().toString();  // e.g., "mark.jpg"
+        return fileNameWithoutExtension + sourceFileName.substring(sourceFileName.lastIndexOf('.'));  // e.g., ".jpg"
+    }
+
 }
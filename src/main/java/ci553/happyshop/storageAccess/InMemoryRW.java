@@ -0,0 +1,259 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InMemoryRW is a DatabaseRW that keeps every product in memory instead of in a database.
+ * It behaves like DerbyRW (same search rules, same all-or-nothing purchase), so it can stand in for it:
+ * - as a fast test double that needs no database files, and
+ * - as the storage behind a load test or benchmark, so the numbers measure the rest of the system.
+ * Nothing is saved: the products are gone when the JVM exits.
+ *
+ * Data structures:
+ * - products: a ConcurrentHashMap from productID to a ProductRecord, so lookups never lock.
+ * - Each ProductRecord keeps its stock in an AtomicInteger, so reading it never locks,
+ *   and the other fields (description, image, price) in one immutable Details object that is swapped as a whole.
+ * - searchIndex: its own ProductSearchIndex, kept up to date on every insert, update and delete.
+ * - stockLocks: ProductLockStripes held by every change of stock (purchase, adjustment, edit).
+ *
+ * Purchases and stock adjustments lock the products they change, in productID order like DerbyRW, then check
+ * every line before changing any: no line may take stock below zero (the same rule as CHECK (inStock >= 0)).
+ * If one fails nothing is changed, so they are all or nothing, and no other thread ever sees stock taken
+ * by a change that is then undone.
+ */
+
+public class InMemoryRW implements DatabaseRW {
+    private final ConcurrentHashMap<String, ProductRecord> products = new ConcurrentHashMap<>();
+    private final ProductSearchIndex searchIndex = new ProductSearchIndex();
+    private final ProductLockStripes stockLocks = new ProductLockStripes(DatabaseRWFactory.lockStripeCount);
+
+    public InMemoryRW() {
+        try {
+            searchIndex.build(Map::of); // starts empty and built, products are indexed as they are added
+        } catch (SQLException e) {
+            throw new IllegalStateException(e); // cannot happen, the loader does not read a database
+        }
+    }
+
+    /**
+     * Adds (or replaces) many products at once, eg to copy the catalogue from ProductTable before a benchmark.
+     */
+    public void loadProducts(Collection<Product> productsToLoad) {
+        for (Product product : productsToLoad) {
+            products.put(product.getProductId(), new ProductRecord(new Details(product.getProductDescription(),
+                    product.getProductImageName(), product.getUnitPricePence()), product.getStockQuantity()));
+            searchIndex.addOrUpdate(product.getProductId(), product.getProductDescription());
+        }
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    @Override
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        ArrayList<Product> productList = new ArrayList<>();
+        Product product = searchByProductId(keyword); // by product ID at first, like DerbyRW
+        if (product != null) {
+            productList.add(product);
+            return productList;
+        }
+
+        if (ProductSearchIndex.tokenize(keyword).isEmpty()) {
+            // no letters or digits to look up, compare the descriptions directly like a LIKE scan
+            String lowerKeyword = keyword.toLowerCase(Locale.ROOT);
+            for (Map.Entry<String, ProductRecord> entry : products.entrySet()) {
+                if (entry.getValue().details.description.toLowerCase(Locale.ROOT).contains(lowerKeyword)) {
+                    productList.add(entry.getValue().toProduct(entry.getKey()));
+                }
+            }
+            Collections.sort(productList);
+            return productList;
+        }
+
+        productList.addAll(searchByProductIds(searchIndex.search(keyword)).values());
+        return productList;
+    }
+
+    @Override
+    public Product searchByProductId(String productId) throws SQLException {
+        ProductRecord record = products.get(productId);
+        return record == null ? null : record.toProduct(productId);
+    }
+
+    @Override
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        Map<String, Product> found = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            ProductRecord record = products.get(productId);
+            if (record != null && !found.containsKey(productId)) {
+                found.put(productId, record.toProduct(productId));
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        // add up the quantity per product (a product may be in the list twice), in productID order
+        TreeMap<String, Integer> quantities = new TreeMap<>();
+        for (Product product : proList) {
+            quantities.merge(product.getProductId(), product.getOrderedQuantity(), Integer::sum);
+        }
+
+        ArrayList<String> insufficientIds = new ArrayList<>();
+        stockLocks.lockAll(quantities.keySet());
+        try {
+            Map<String, ProductRecord> records = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+                ProductRecord record = products.get(line.getKey());
+                if (record == null || record.stock.get() < line.getValue()) {
+                    insufficientIds.add(line.getKey());
+                } else {
+                    records.put(line.getKey(), record);
+                }
+            }
+            if (insufficientIds.isEmpty()) {
+                for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+                    records.get(line.getKey()).stock.addAndGet(-line.getValue());
+                }
+            }
+        } finally {
+            stockLocks.unlockAll(quantities.keySet());
+        }
+
+        ArrayList<Product> insufficientProducts = new ArrayList<>();
+        if (insufficientIds.isEmpty()) {
+            return insufficientProducts;
+        }
+
+        // report the failed lines with the current stock and the requested quantity, like DerbyRW
+        for (Product requested : proList) {
+            if (insufficientIds.contains(requested.getProductId())) {
+                Product current = searchByProductId(requested.getProductId());
+                if (current == null) {
+                    insufficientProducts.add(requested);
+                } else {
+                    current.setOrderedQuantity(requested.getOrderedQuantity());
+                    insufficientProducts.add(current);
+                }
+            }
+        }
+        return insufficientProducts;
+    }
+
+    // Stock adjustments are all or nothing too: every line is checked under the locks before any is applied
+    @Override
+    public Map<String, Integer> adjustStock(Map<String, Integer> deltas) throws SQLException {
+        TreeMap<String, Integer> sorted = new TreeMap<>(deltas);
+        Map<String, Integer> failed = new LinkedHashMap<>();
+        stockLocks.lockAll(sorted.keySet());
+        try {
+            Map<String, ProductRecord> records = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> delta : sorted.entrySet()) {
+                ProductRecord record = products.get(delta.getKey());
+                if (record == null || record.stock.get() + delta.getValue() < 0) {
+                    failed.put(delta.getKey(), delta.getValue());
+                } else {
+                    records.put(delta.getKey(), record);
+                }
+            }
+            if (failed.isEmpty()) {
+                for (Map.Entry<String, Integer> delta : sorted.entrySet()) {
+                    records.get(delta.getKey()).stock.addAndGet(delta.getValue());
+                }
+            }
+        } finally {
+            stockLocks.unlockAll(sorted.keySet());
+        }
+        return failed;
+    }
+
+    @Override
+    public void updateProduct(String id, String des, long pricePence, String imageName, int stock) throws SQLException {
+        checkStock(stock);
+        ProductRecord record = products.get(id);
+        if (record == null) {
+            return; // like DerbyRW, updating a product that does not exist changes nothing
+        }
+        record.details = new Details(des, imageName, pricePence);
+        stockLocks.lock(id);
+        try {
+            record.stock.set(stock);
+        } finally {
+            stockLocks.unlock(id);
+        }
+        searchIndex.addOrUpdate(id, des);
+    }
+
+    @Override
+    public void deleteProduct(String id) throws SQLException {
+        if (products.remove(id) != null) {
+            searchIndex.remove(id);
+        }
+    }
+
+    @Override
+    public void insertNewProduct(String id, String des, long pricePence, String image, int stock) throws SQLException {
+        checkStock(stock);
+        ProductRecord existing = products.putIfAbsent(id, new ProductRecord(new Details(des, image, pricePence), stock));
+        if (existing != null) {
+            // same as the PRIMARY KEY violation Derby throws
+            throw new SQLIntegrityConstraintViolationException("Product ID already exists: " + id);
+        }
+        searchIndex.addOrUpdate(id, des);
+    }
+
+    @Override
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return !products.containsKey(productId);
+    }
+
+    // same as CHECK (inStock >= 0) in ProductTable
+    private static void checkStock(int stock) throws SQLException {
+        if (stock < 0) {
+            throw new SQLIntegrityConstraintViolationException("inStock must not be negative: " + stock);
+        }
+    }
+
+    // The fields of a product that are changed together, never modified once created
+    private static class Details {
+        private final String description;
+        private final String imageName;
+        private final long unitPricePence;
+
+        Details(String description, String imageName, long unitPricePence) {
+            this.description = description;
+            this.imageName = imageName;
+            this.unitPricePence = unitPricePence;
+        }
+    }
+
+    private static class ProductRecord {
+        private volatile Details details;
+        private final AtomicInteger stock;
+
+        ProductRecord(Details details, int stock) {
+            this.details = details;
+            this.stock = new AtomicInteger(stock);
+        }
+
+        // A new Product every time, so callers can never change the stored record
+        Product toProduct(String productId) {
+            Details d = details;
+            return new Product(productId, d.description, d.imageName, d.unitPricePence, stock.get());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * InstrumentedDatabaseRW is a decorator: it implements DatabaseRW by wrapping another DatabaseRW and timing every call,
+ * recording the time, the outcome and the number of products into a StorageMetrics.
+ *
+ * - The time is what the caller waits for, so it includes the ProductCache (hits are fast) and waiting for
+ *   a pooled connection or a product lock.
+ * - A call that throws counts as an error; its time is still recorded.
+ * - rows is the number of products a search returned, or the number a write was given
+ *   (eg the lines of a trolley for purchaseStocks).
+ *
+ * DatabaseRWFactory installs it around every DatabaseRW it creates when metricsEnabled is set.
+ */
+
+public class InstrumentedDatabaseRW implements DatabaseRW {
+    private final DatabaseRW delegate;
+    private final StorageMetrics metrics;
+
+    public InstrumentedDatabaseRW(DatabaseRW delegate, StorageMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ArrayList<Product> searchProduct(String keyword) throws SQLException {
+        return time("searchProduct", () -> delegate.searchProduct(keyword), list -> list == null ? 0 : list.size());
+    }
+
+    @Override
+    public ProductPage searchProductPage(String keyword, String afterProductId, int pageSize) throws SQLException {
+        return time("searchProductPage", () -> delegate.searchProductPage(keyword, afterProductId, pageSize),
+                page -> page.getProducts().size());
+    }
+
+    @Override
+    public int streamSearchProduct(String keyword, Consumer<Product> consumer) throws SQLException {
+        // the time includes the consumer, since it runs while the products are streamed
+        return time("streamSearchProduct", () -> delegate.streamSearchProduct(keyword, consumer), count -> count);
+    }
+
+    @Override
+    public Product searchByProductId(String productId) throws SQLException {
+        return time("searchByProductId", () -> delegate.searchByProductId(productId), product -> product == null ? 0 : 1);
+    }
+
+    @Override
+    public Map<String, Product> searchByProductIds(Collection<String> productIds) throws SQLException {
+        return time("searchByProductIds", () -> delegate.searchByProductIds(productIds), Map::size);
+    }
+
+    @Override
+    public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+        return time("purchaseStocks", () -> delegate.purchaseStocks(proList), insufficient -> proList.size());
+    }
+
+    @Override
+    public void updateProduct(String id, String des, long pricePence, String imageName, int stock) throws SQLException {
+        time("updateProduct", () -> {
+            delegate.updateProduct(id, des, pricePence, imageName, stock);
+            return null;
+        }, none -> 1);
+    }
+
+    @Override
+    public Map<String, Integer> adjustStock(Map<String, Integer> deltas) throws SQLException {
+        return time("adjustStock", () -> delegate.adjustStock(deltas), failed -> deltas.size());
+    }
+
+    @Override
+    public void deleteProduct(String id) throws SQLException {
+        time("deleteProduct", () -> {
+            delegate.deleteProduct(id);
+            return null;
+        }, none -> 1);
+    }
+
+    @Override
+    public void insertNewProduct(String id, String des, long pricePence, String image, int stock) throws SQLException {
+        time("insertNewProduct", () -> {
+            delegate.insertNewProduct(id, des, pricePence, image, stock);
+            return null;
+        }, none -> 1);
+    }
+
+    @Override
+    public void insertNewProducts(List<Product> products) throws SQLException {
+        time("insertNewProducts", () -> {
+            delegate.insertNewProducts(products);
+            return null;
+        }, none -> products.size());
+    }
+
+    @Override
+    public boolean isProIdAvailable(String productId) throws SQLException {
+        return time("isProIdAvailable", () -> delegate.isProIdAvailable(productId), available -> 0);
+    }
+
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    // A DatabaseRW call that may throw SQLException
+    private interface Call<T> {
+        T run() throws SQLException;
+    }
+
+    private <T> T time(String method, Call<T> call, ToIntFunction<T> rows) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        int rowCount = 0;
+        try {
+            T result = call.run();
+            rowCount = rows.applyAsInt(result);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(method, System.nanoTime() - start, rowCount, failed);
+        }
+    }
+}
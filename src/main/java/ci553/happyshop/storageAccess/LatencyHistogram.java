@@ -0,0 +1,148 @@
+package ci553.happyshop.storageAccess;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts how long calls take, in nanoseconds, so percentiles such as p99 can be read later.
+ * Many threads may record at the same time; record() never locks and never allocates.
+ *
+ * Buckets (the same idea as an HdrHistogram): values below 64 ns get a bucket each. Above that every power of two
+ * (64-127, 128-255, ...) is split into 32 equal buckets, so a value is always counted in a bucket no wider than
+ * about 3% of the value. 1,184 buckets cover 64 ns up to MAX_TRACKABLE_NANOS (about 36 minutes);
+ * longer values are counted in the last bucket.
+ *
+ * Percentiles are reported as the highest value of the bucket they fall in, so they are never too low.
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;   // buckets per power of two
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;         // values below this have a bucket each
+    private static final int LINEAR_EXPONENT = 6;                    // log2(LINEAR_LIMIT)
+    private static final int MAX_EXPONENT = 40;
+    public static final long MAX_TRACKABLE_NANOS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_EXPONENT - LINEAR_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Counts one call that took the given time. Negative values are counted as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_TRACKABLE_NANOS));
+        counts.incrementAndGet(bucketOf(value));
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return a copy of the counts so far
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, totalNanos.get(), maxNanos.get());
+    }
+
+    /**
+     * Returns the counts so far and starts again from zero, eg for a summary of the last minute.
+     * A call recorded while this runs is counted either in the returned snapshot or in the next one.
+     */
+    public Snapshot snapshotAndReset() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.getAndSet(i, 0);
+        }
+        return new Snapshot(copy, totalNanos.getAndSet(0), maxNanos.getAndSet(0));
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // the position of the highest bit, >= 6
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1); // the next 5 bits
+        return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    // the highest value counted in the bucket
+    static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_EXPONENT;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * The counts of a LatencyHistogram at one point in time. Immutable.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        private Snapshot(long[] counts, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            long sum = 0;
+            for (long bucketCount : counts) {
+                sum += bucketCount;
+            }
+            this.count = sum;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() { return count; }
+        public long getMaxNanos() { return maxNanos; }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * @param percentile eg 50 for the median, 99.9 for p999
+         * @return the time that percentile of the calls took at most, 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), maxNanos); // the bucket may reach past the slowest call
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%s, p50=%s, p99=%s, p999=%s, max=%s", count,
+                    format(getMeanNanos()), format(getValueAtPercentile(50)), format(getValueAtPercentile(99)),
+                    format(getValueAtPercentile(99.9)), format(maxNanos));
+        }
+
+        // eg 850µs or 12.3ms
+        static String format(long nanos) {
+            if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+                return (nanos / 1000) + "µs";
+            }
+            return String.format("%.1fms", nanos / 1e6);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package ci553.happyshop.storageAccess;
 
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
 import ci553.happyshop.orderManagement.OrderState;
 
 import java.io.BufferedReader;
@@ -15,10 +17,13 @@ import java.time.format.DateTimeFormatter;
 /**
  * This class manages creation, updating, and relocation of order files.
  *
- * This class is used by the OrderHub class to manage file-based representation of orders.
+ * This class is used by FileOrderStore to manage file-based representation of orders.
  * Each order is stored as a text file in a state-specific folder (e.g., ordered, progressing, or collected).
  */
 public class OrderFileManager {
+    private static final DiagnosticLog log = Diagnostics.getLog(OrderFileManager.class);
+    static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
 
     // Creates a new order file in the specified directory with the given content.
     public static void createOrderFile(Path dir, int orderId, String orderDetail) throws IOException {
@@ -33,10 +38,10 @@ public class OrderFileManager {
             try (BufferedWriter writer = Files.newBufferedWriter(path)) {
                 writer.write(orderDetail);
                 writer.newLine();
-                System.out.println(path + " created");
+                log.info(path + " created");
             }
         } else {
-            System.out.println(path + " already exists");
+            log.warn(path + " already exists");
         }
     }
 
@@ -57,7 +62,7 @@ public class OrderFileManager {
             }
             return true;
         } else {
-            System.out.println(sourcePath + " not found in ");
+            log.warn(sourcePath + " not found");
             return false;
         }
     }
@@ -76,16 +81,10 @@ public class OrderFileManager {
         try (BufferedReader reader = Files.newBufferedReader(sourcePath, StandardCharsets.UTF_8);
              BufferedWriter writer = Files.newBufferedWriter(tempFilePath, StandardCharsets.UTF_8)) {
 
+            String dateTime = LocalDateTime.now().format(DATE_TIME_FORMAT);
             String line;
             while ((line = reader.readLine()) != null) {
-                if (line.startsWith("State")) {
-                    line = "State: " + newState;
-                } else if (newState.equals(OrderState.Progressing) && line.startsWith("ProgressingDateTime")) {
-                    line = "ProgressingDateTime: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                } else if (newState.equals(OrderState.Collected) && line.startsWith("CollectedDateTime")) {
-                    line = "CollectedDateTime: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                }
-                writer.write(line);
+                writer.write(updatedLine(line, newState, dateTime));
                 writer.newLine();
             }
         }
@@ -94,11 +93,24 @@ public class OrderFileManager {
         try {
             Files.move(tempFilePath, sourcePath, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            System.err.println("Move failed: " + e.getMessage());
+            log.error("Move failed: " + e.getMessage());
             Files.deleteIfExists(tempFilePath);
         }
     }
 
+    // Sets the state line, and the time line of the new state, of one line of an order's text.
+    // Shared with OrderJournal, so both show an order the same way.
+    static String updatedLine(String line, OrderState newState, String dateTime) {
+        if (line.startsWith("State")) {
+            return "State: " + newState;
+        } else if (newState.equals(OrderState.Progressing) && line.startsWith("ProgressingDateTime")) {
+            return "ProgressingDateTime: " + dateTime;
+        } else if (newState.equals(OrderState.Collected) && line.startsWith("CollectedDateTime")) {
+            return "CollectedDateTime: " + dateTime;
+        }
+        return line;
+    }
+
     // Reads the content of an order file as a single string.
     public static String readOrderFile(Path dir, int orderId) throws IOException {
         String orderFileName = String.valueOf(orderId) + ".txt";
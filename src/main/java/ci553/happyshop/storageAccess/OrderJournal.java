@@ -0,0 +1,405 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * OrderJournal is an append-only OrderStore. Instead of a file per order, every new order and every state change
+ * is one record appended to the current segment file in the journal folder (orders/journal/orders-00000001.journal,
+ * orders-00000002.journal, ...). A new segment is started once the current one reaches segmentMaxBytes.
+ *
+ * Records are framed as [payload length][CRC32 of the payload][payload], with the payload:
+ * - new order:    type 1, orderId, the order text in UTF-8
+ * - state change: type 2, orderId, the new state, the time of the change in UTF-8
+ *
+ * When the journal is opened every segment is read back, in order, to know the state of every order.
+ * A record that was only partly written when the shop stopped (the last record of the last segment, running past
+ * the end of the file) is cut off; the orders before it are kept. Any other bad record (a wrong CRC, or a length
+ * that ends inside the file) is damage rather than an unfinished write: the journal is not opened, and no file
+ * is changed, so the damage can be looked at before anything is cut off.
+ *
+ * The text of an order is read from its new-order record when asked for, with its state and times filled in,
+ * so it reads exactly like the text file FileOrderStore would have. exportTextFiles() writes those text files.
+ *
+ * Only one process may write a journal; a lock file makes a second one fail to open it.
+ */
+
+public class OrderJournal implements OrderStore {
+    private static final DiagnosticLog log = Diagnostics.getLog(OrderJournal.class);
+
+    private static final byte NEW_ORDER = 1;
+    private static final byte STATE_CHANGE = 2;
+    private static final int FRAME_HEADER_SIZE = 8; // payload length + CRC32
+    private static final String SEGMENT_PREFIX = "orders-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path dir;
+    private final long segmentMaxBytes;
+    private final boolean syncEveryWrite;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    // guarded by this
+    private final TreeMap<Integer, JournalOrder> orders = new TreeMap<>();
+    private FileChannel segment;    // the segment records are appended to
+    private int segmentNumber;
+    private long segmentSize;
+
+    /**
+     * Opens the journal in the folder, creating it if needed, and reads back every order in it.
+     * @param segmentMaxBytes a new segment file is started once the current one is this big
+     * @param syncEveryWrite  whether every record is forced to disk before the call that wrote it returns
+     * @throws IOException if the journal cannot be read, or another process has it open
+     */
+    public OrderJournal(Path dir, long segmentMaxBytes, boolean syncEveryWrite) throws IOException {
+        this.dir = dir;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.syncEveryWrite = syncEveryWrite;
+        Files.createDirectories(dir);
+
+        lockChannel = FileChannel.open(dir.resolve("journal.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null; // already open in this JVM
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException("Order journal " + dir + " is already open in another process, "
+                    + "only one process can keep orders in it");
+        }
+        lock = fileLock;
+
+        try {
+            List<Integer> segments = replay(dir, true, this::apply);
+            segmentNumber = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+            openSegment();
+            log.info("Order journal opened: " + orders.size() + " orders in " + Math.max(1, segments.size())
+                    + " segments");
+        } catch (IOException e) {
+            if (segment != null) {
+                segment.close();
+            }
+            lockChannel.close(); // releases the lock too
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void createOrder(int orderId, String orderDetail) throws IOException {
+        if (orders.containsKey(orderId)) {
+            log.warn("Order " + orderId + " already exists");
+            return;
+        }
+        byte[] text = orderDetail.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(5 + text.length).put(NEW_ORDER).putInt(orderId).put(text).flip();
+        long position = append(payload);
+        orders.put(orderId, new JournalOrder(segmentNumber, position));
+    }
+
+    @Override
+    public synchronized boolean changeOrderState(int orderId, OrderState newState) throws IOException {
+        JournalOrder order = orders.get(orderId);
+        if (order == null || newState.ordinal() != order.state.ordinal() + 1) {
+            log.warn("Order " + orderId + " cannot move to " + newState
+                    + (order == null ? ", it is not in the journal" : " from " + order.state));
+            return false;
+        }
+        String dateTime = LocalDateTime.now().format(OrderFileManager.DATE_TIME_FORMAT);
+        byte[] time = dateTime.getBytes(StandardCharsets.UTF_8);
+        append(ByteBuffer.allocate(6 + time.length)
+                .put(STATE_CHANGE).putInt(orderId).put((byte) newState.ordinal()).put(time).flip());
+        order.changeState(newState, dateTime);
+        return true;
+    }
+
+    @Override
+    public synchronized String readOrder(int orderId) throws IOException {
+        JournalOrder order = orders.get(orderId);
+        if (order == null) {
+            throw new IOException("Order " + orderId + " is not in the journal " + dir);
+        }
+        String orderDetail;
+        try (FileChannel channel = FileChannel.open(segmentPath(dir, order.segmentNumber), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+            readFully(channel, header, order.position);
+            ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+            readFully(channel, payload, order.position + FRAME_HEADER_SIZE);
+            payload.flip();
+            if (crcOf(payload) != header.getInt(4)) {
+                throw new IOException("Order " + orderId + " is damaged in the journal " + dir);
+            }
+            orderDetail = textOf(payload);
+        }
+        return String.join("\n", order.textLines(orderDetail));
+    }
+
+    @Override
+    public synchronized TreeMap<Integer, OrderState> loadUncollectedOrders() {
+        TreeMap<Integer, OrderState> uncollected = new TreeMap<>();
+        for (Map.Entry<Integer, JournalOrder> entry : orders.entrySet()) {
+            if (entry.getValue().state != OrderState.Collected) {
+                uncollected.put(entry.getKey(), entry.getValue().state);
+            }
+        }
+        return uncollected;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (segment != null) {
+                segment.force(false);
+                segment.close();
+                segment = null;
+            }
+        } finally {
+            lockChannel.close(); // releases the lock too
+        }
+    }
+
+    /**
+     * Writes every order in the journal as the text file FileOrderStore would have kept for it,
+     * "<orderId>.txt" in targetRoot/ordered, targetRoot/progressing or targetRoot/collected.
+     * It only reads the journal, so it may run while the shop is open; a record being written is left out.
+     * @return the number of orders written
+     */
+    public static int exportTextFiles(Path journalDir, Path targetRoot) throws IOException {
+        TreeMap<Integer, String> texts = new TreeMap<>();
+        TreeMap<Integer, JournalOrder> exported = new TreeMap<>();
+        replay(journalDir, false, (record, segmentNumber, position) -> {
+            if (record.get(0) == NEW_ORDER) {
+                int orderId = record.getInt(1);
+                texts.put(orderId, textOf(record));
+                exported.put(orderId, new JournalOrder(segmentNumber, position));
+            } else {
+                JournalOrder order = exported.get(record.getInt(1));
+                if (order != null) {
+                    order.changeState(OrderState.values()[record.get(5)], timeOf(record));
+                }
+            }
+        });
+
+        for (Map.Entry<Integer, JournalOrder> entry : exported.entrySet()) {
+            JournalOrder order = entry.getValue();
+            Path folder = targetRoot.resolve(order.state.name().toLowerCase());
+            Files.createDirectories(folder);
+            Files.write(folder.resolve(entry.getKey() + ".txt"), order.textLines(texts.get(entry.getKey())));
+        }
+        return exported.size();
+    }
+
+    // Applies a record read back when the journal is opened
+    private void apply(ByteBuffer record, int recordSegment, long position) {
+        int orderId = record.getInt(1);
+        if (record.get(0) == NEW_ORDER) {
+            orders.put(orderId, new JournalOrder(recordSegment, position));
+        } else {
+            JournalOrder order = orders.get(orderId);
+            if (order != null) {
+                order.changeState(OrderState.values()[record.get(5)], timeOf(record));
+            }
+        }
+    }
+
+    // Appends one framed record to the current segment, starting a new segment first if it is full
+    // @return the position of the record in the segment
+    private long append(ByteBuffer payload) throws IOException {
+        if (segmentSize >= segmentMaxBytes) {
+            segment.force(false);
+            segment.close();
+            segmentNumber++;
+            openSegment();
+        }
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.remaining())
+                .putInt(payload.remaining()).putInt(crcOf(payload)).put(payload).flip();
+        long position = segmentSize;
+        try {
+            while (frame.hasRemaining()) {
+                segment.write(frame, position + frame.position());
+            }
+            if (syncEveryWrite) {
+                segment.force(false);
+            }
+        } catch (IOException e) {
+            // a partly written record would hide every record appended after it when the journal is read back
+            segment.truncate(position);
+            throw e;
+        }
+        segmentSize = position + frame.capacity();
+        return position;
+    }
+
+    private void openSegment() throws IOException {
+        segment = FileChannel.open(segmentPath(dir, segmentNumber), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segmentSize = segment.size();
+    }
+
+    // Receives each intact record (its payload) read back from the journal
+    private interface RecordHandler {
+        void accept(ByteBuffer record, int segmentNumber, long position);
+    }
+
+    /**
+     * Reads every record in every segment, in the order they were written.
+     * @param repair whether a partly written record at the end of the last segment is cut off.
+     *               If so, any other bad record fails the replay; if not, the records after it are skipped
+     * @return the segment numbers found, in order
+     * @throws IOException if repair is set and a segment is damaged
+     */
+    private static List<Integer> replay(Path dir, boolean repair, RecordHandler handler) throws IOException {
+        List<Integer> segments = segmentNumbers(dir);
+        for (int i = 0; i < segments.size(); i++) {
+            int number = segments.get(i);
+            Path path = segmentPath(dir, number);
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+            long position = 0;
+            boolean runsPastEnd = false; // the bad record, if any, is cut short by the end of the file
+            while (bytes.remaining() >= FRAME_HEADER_SIZE) {
+                int length = bytes.getInt();
+                int crc = bytes.getInt();
+                if (length > bytes.remaining()) {
+                    runsPastEnd = true;
+                    break;
+                }
+                if (length < 5) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(bytes.array(), bytes.position(), length).slice();
+                if (crcOf(record) != crc) {
+                    break;
+                }
+                handler.accept(record, number, position);
+                bytes.position(bytes.position() + length);
+                position += FRAME_HEADER_SIZE + length;
+            }
+            if (position < bytes.capacity() && bytes.capacity() - position < FRAME_HEADER_SIZE) {
+                runsPastEnd = true; // not even the frame header was written
+            }
+
+            if (position < bytes.capacity()) {
+                boolean lastSegment = i == segments.size() - 1;
+                if (!repair) {
+                    if (!lastSegment || !runsPastEnd) {
+                        log.error("Order journal " + path + " is damaged at " + position + ", the records after it are skipped");
+                    }
+                } else if (lastSegment && runsPastEnd) {
+                    log.warn("Order journal " + path + " ends with a partly written record, cut off at " + position);
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        channel.truncate(position);
+                    }
+                } else {
+                    throw new IOException("Order journal " + path + " is damaged at " + position
+                            + ", it is not opened and nothing was changed");
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static List<Integer> segmentNumbers(Path dir) throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return numbers;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        numbers.add(Integer.parseInt(
+                                name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        log.warn("Invalid journal file name: " + name);
+                    }
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    private static Path segmentPath(Path dir, int number) {
+        return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static String textOf(ByteBuffer newOrder) {
+        return new String(newOrder.array(), newOrder.arrayOffset() + 5, newOrder.capacity() - 5, StandardCharsets.UTF_8);
+    }
+
+    private static String timeOf(ByteBuffer stateChange) {
+        return new String(stateChange.array(), stateChange.arrayOffset() + 6, stateChange.capacity() - 6,
+                StandardCharsets.UTF_8);
+    }
+
+    private static int crcOf(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Order journal record is cut short");
+            }
+        }
+    }
+
+    // Where an order's new-order record is, and the state changes made to it since
+    private static class JournalOrder {
+        private final int segmentNumber;
+        private final long position;
+        private OrderState state = OrderState.Ordered;
+        private String progressingDateTime;
+        private String collectedDateTime;
+
+        private JournalOrder(int segmentNumber, long position) {
+            this.segmentNumber = segmentNumber;
+            this.position = position;
+        }
+
+        private void changeState(OrderState newState, String dateTime) {
+            state = newState;
+            if (newState == OrderState.Progressing) {
+                progressingDateTime = dateTime;
+            } else if (newState == OrderState.Collected) {
+                collectedDateTime = dateTime;
+            }
+        }
+
+        // The lines of the order text with the state changes applied, as FileOrderStore rewrites its file
+        private List<String> textLines(String orderDetail) {
+            List<String> lines = new ArrayList<>();
+            for (String line : (orderDetail + "\n").lines().toList()) {
+                if (progressingDateTime != null) {
+                    line = OrderFileManager.updatedLine(line, OrderState.Progressing, progressingDateTime);
+                }
+                if (collectedDateTime != null) {
+                    line = OrderFileManager.updatedLine(line, OrderState.Collected, collectedDateTime);
+                }
+                lines.add(line);
+            }
+            return lines;
+        }
+    }
+}
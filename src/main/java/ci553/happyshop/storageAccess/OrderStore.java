@@ -0,0 +1,46 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.TreeMap;
+
+/**
+ * OrderStore keeps the orders OrderHub creates and the state changes the pickers make to them.
+ * OrderHub only talks to this interface, so where orders are kept can be changed without changing it.
+ *
+ * Implementations (chosen with OrderStoreType):
+ * - FileOrderStore: one text file per order, moved between the state folders (see OrderFileManager).
+ * - OrderJournal: records appended to a few segment files, the text view exported on demand.
+ */
+
+public interface OrderStore extends Closeable {
+
+    /**
+     * Stores a new order in the Ordered state.
+     * @param orderDetail the text of the order, see Order.orderDetails()
+     */
+    void createOrder(int orderId, String orderDetail) throws IOException;
+
+    /**
+     * Moves an order to its next state (Ordered -> Progressing -> Collected), recording the time it happened.
+     * @return false if the order is not known
+     */
+    boolean changeOrderState(int orderId, OrderState newState) throws IOException;
+
+    /**
+     * @return the text of the order with its current state and times, as shown to the picker
+     * @throws IOException if the order is not known
+     */
+    String readOrder(int orderId) throws IOException;
+
+    /**
+     * @return orderId -> state of every order that is not collected yet, used to start OrderHub
+     */
+    TreeMap<Integer, OrderState> loadUncollectedOrders() throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,21 @@
+package ci553.happyshop.storageAccess;
+
+/**
+ * Where OrderHub keeps orders.
+ *
+ * - FILES: the original approach (FileOrderStore). Each order is a text file that is rewritten through a temp file
+ *   on every state change and moved between orders/ordered, orders/progressing and orders/collected,
+ *   so every order costs several file creates, renames and directory updates.
+ * - JOURNAL: an append-only OrderJournal in orders/journal. A new order or a state change is one record appended
+ *   to the current segment file, so order writes are sequential appends. The text files can be exported from it
+ *   with ExportOrderJournal. Orders kept as files before switching are not moved into the journal.
+ *   Only one process can have the journal open, so the clients must all run in one process (Main); a client
+ *   started on its own while another process has the journal open stops at startup with an IllegalStateException.
+ *
+ * The store type is chosen in OrderHub.orderStoreType.
+ */
+
+public enum OrderStoreType {
+    FILES,
+    JOURNAL
+}
@@ -0,0 +1,200 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ProductCache holds recently read products in memory so hot products are not read from the database every time.
+ * It is used by CachingDatabaseRW and shared by all clients through DatabaseRWFactory.
+ *
+ * Rules:
+ * - Bounded: holds at most maxSize products, the least recently used product is evicted first (LRU).
+ * - Stock TTL: the stock level can be changed by other processes, so a cached product is only trusted for
+ *   stockTtlMillis after it was read. After that it counts as expired and is read from the database again.
+ * - Invalidation: every write to a product (update, delete, insert, purchase) removes it from the cache.
+ * - Copies: products are copied in and out, so callers changing orderedQuantity do not change the cache.
+ *
+ * Loads and invalidations can race: a reader may fetch a row, then a writer changes and invalidates it,
+ * then the reader puts the old row in the cache. To prevent this a reader calls beginLoad() before reading
+ * the database, and put() ignores the product if any invalidation happened since then.
+ */
+
+public class ProductCache {
+    private final int maxSize;
+    private final long stockTtlNanos;
+
+    private final LinkedHashMap<String, CachedProduct> products;
+    private final AtomicLong invalidationCount = new AtomicLong(); // increases on every invalidation
+
+    // Statistics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxSize        the maximum number of products kept in memory
+     * @param stockTtlMillis how long a cached stock level is trusted
+     */
+    public ProductCache(int maxSize, long stockTtlMillis) {
+        this.maxSize = maxSize;
+        this.stockTtlNanos = stockTtlMillis * 1_000_000L;
+
+        // accessOrder = true turns the LinkedHashMap into an LRU list (eldest = least recently used)
+        this.products = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedProduct> eldest) {
+                if (size() > ProductCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the cached product, or null if it is not cached or its stock level has expired
+     */
+    public synchronized Product get(String productId) {
+        CachedProduct cached = products.get(productId);
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.nanoTime() - cached.loadedAtNanos > stockTtlNanos) {
+            products.remove(productId);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return copyOf(cached.product);
+    }
+
+    // Whether the product is cached and fresh, without counting a hit or a miss
+    public synchronized boolean contains(String productId) {
+        CachedProduct cached = products.get(productId);
+        return cached != null && System.nanoTime() - cached.loadedAtNanos <= stockTtlNanos;
+    }
+
+    /**
+     * Must be called before reading products from the database that will be put into the cache.
+     * @return a token to pass to put()
+     */
+    public long beginLoad() {
+        return invalidationCount.get();
+    }
+
+    /**
+     * Caches a copy of the product, unless something was invalidated since beginLoad() returned the token.
+     */
+    public synchronized void put(Product product, long loadToken) {
+        if (product == null || invalidationCount.get() != loadToken) {
+            return;
+        }
+        products.put(product.getProductId(), new CachedProduct(copyOf(product), System.nanoTime()));
+    }
+
+    // Removes a product after it was written to the database
+    public synchronized void invalidate(String productId) {
+        invalidationCount.incrementAndGet();
+        if (products.remove(productId) != null) {
+            invalidations.increment();
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        invalidationCount.incrementAndGet();
+        invalidations.add(products.size());
+        products.clear();
+    }
+
+    public synchronized int size() {
+        return products.size();
+    }
+
+    // Trolley code changes orderedQuantity, so the cache never shares a Product object with a caller
+    private static Product copyOf(Product p) {
+        Product copy = new Product(p.getProductId(), p.getProductDescription(), p.getProductImageName(),
+                p.getUnitPricePence(), p.getStockQuantity());
+        copy.setOrderedQuantity(p.getOrderedQuantity());
+        return copy;
+    }
+
+    /**
+     * @return a snapshot of the cache counters
+     */
+    public Statistics getStatistics() {
+        return new Statistics(size(), maxSize, hits.sum(), misses.sum(), expirations.sum(),
+                evictions.sum(), invalidations.sum());
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        expirations.reset();
+        evictions.reset();
+        invalidations.reset();
+    }
+
+    private static class CachedProduct {
+        private final Product product;
+        private final long loadedAtNanos;
+
+        CachedProduct(Product product, long loadedAtNanos) {
+            this.product = product;
+            this.loadedAtNanos = loadedAtNanos;
+        }
+    }
+
+    /**
+     * A point-in-time snapshot of the cache counters.
+     */
+    public static class Statistics {
+        private final int size;
+        private final int maxSize;
+        private final long hits;
+        private final long misses;
+        private final long expirations;
+        private final long evictions;
+        private final long invalidations;
+
+        private Statistics(int size, int maxSize, long hits, long misses, long expirations,
+                           long evictions, long invalidations) {
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.expirations = expirations;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public int getSize() { return size; }
+        public int getMaxSize() { return maxSize; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getExpirations() { return expirations; }
+        public long getEvictions() { return evictions; }
+        public long getInvalidations() { return invalidations; }
+
+        // Fraction of lookups answered from memory, 0.0 - 1.0
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ProductCache[size=%d/%d, hits=%d, misses=%d (%.1f%% hit rate), " +
+                            "expired=%d, evicted=%d, invalidated=%d]",
+                    size, maxSize, hits, misses, getHitRate() * 100, expirations, evictions, invalidations);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+/**
+ * ProductChangeEvent describes one committed change to a product, published by DerbyRW on the ProductChangeFeed.
+ *
+ * - INSERTED: a new product, oldProduct is null.
+ * - UPDATED: the warehouse edited the product (any column may have changed).
+ * - DELETED: the product was removed, newProduct is null.
+ * - STOCK_CHANGED: only inStock changed, eg by a checkout or a delivery.
+ *
+ * The Product objects are shared by every subscriber, so subscribers must not change them.
+ */
+
+public class ProductChangeEvent {
+
+    public enum Type {
+        INSERTED,
+        UPDATED,
+        DELETED,
+        STOCK_CHANGED
+    }
+
+    private final Type type;
+    private final String productId;
+    private final Product oldProduct;
+    private final Product newProduct;
+
+    public ProductChangeEvent(Type type, String productId, Product oldProduct, Product newProduct) {
+        this.type = type;
+        this.productId = productId;
+        this.oldProduct = oldProduct;
+        this.newProduct = newProduct;
+    }
+
+    public Type getType() { return type; }
+    public String getProductId() { return productId; }
+    public Product getOldProduct() { return oldProduct; }
+    public Product getNewProduct() { return newProduct; }
+
+    /**
+     * Combines this event with a later event of the same product into one event with the same net effect,
+     * keeping this event's old value and the later event's new value.
+     * @return the combined event, or null if the two cancel out (inserted, then deleted)
+     */
+    ProductChangeEvent mergeWith(ProductChangeEvent later) {
+        switch (later.type) {
+            case DELETED:
+                return type == Type.INSERTED ? null : new ProductChangeEvent(Type.DELETED, productId, oldProduct, null);
+            case INSERTED:
+                // deleted and then inserted again: to a subscriber that saw neither it is an update
+                return new ProductChangeEvent(type == Type.DELETED ? Type.UPDATED : Type.INSERTED, productId,
+                        oldProduct, later.newProduct);
+            default:
+                // an update or stock change after an insert is still an insert; any update makes it an update
+                Type merged = type == Type.INSERTED ? Type.INSERTED
+                        : type == Type.UPDATED || later.type == Type.UPDATED ? Type.UPDATED : Type.STOCK_CHANGED;
+                return new ProductChangeEvent(merged, productId, oldProduct, later.newProduct);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + productId;
+    }
+}
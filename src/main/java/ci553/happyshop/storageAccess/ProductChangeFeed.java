@@ -0,0 +1,209 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ProductChangeFeed tells open windows (and anything else that keeps products in memory) which products changed,
+ * so they can refresh just those products instead of searching the database again.
+ * DerbyRW publishes a ProductChangeEvent after every committed write; DatabaseRWFactory shares one feed.
+ *
+ * Subscribing:
+ *     feed.subscribe(listener, Platform::runLater, 256);
+ * The executor decides where the listener runs, eg Platform::runLater for a JavaFX view.
+ *
+ * Coalescing: each subscriber has its own queue of pending changes, holding at most one event per product.
+ * A new event for a product that is still waiting is merged into the waiting one (ProductChangeEvent.mergeWith),
+ * so a product that is bought 50 times while the FX thread is busy is delivered as one STOCK_CHANGED event
+ * with the first old and the last new value. Only one delivery per subscriber is queued on its executor at a time.
+ *
+ * Bounded: if more than maxPending different products are waiting, the queue is dropped and the subscriber's
+ * onOverflow() is called instead, meaning "too much changed, reload what you show".
+ * So a slow subscriber never holds more than maxPending events, and publish() never blocks the writer.
+ */
+
+public class ProductChangeFeed {
+    private static final DiagnosticLog log = Diagnostics.getLog(ProductChangeFeed.class);
+
+    /**
+     * Receives the changes, on the executor given to subscribe().
+     */
+    public interface Listener {
+        // The changes since the last call, at most one per product, in the order the products first changed
+        void onChanges(List<ProductChangeEvent> changes);
+
+        // Too many changes were waiting and were dropped; everything shown should be read again
+        default void onOverflow() {
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // Statistics
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * @param executor   runs the listener, eg Platform::runLater, or Runnable::run to run it on the writer's thread
+     * @param maxPending the most products that may wait for this subscriber before it overflows
+     */
+    public Subscription subscribe(Listener listener, Executor executor, int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("maxPending must be positive: " + maxPending);
+        }
+        Subscription subscription = new Subscription(listener, executor, maxPending);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    // Whether anyone listens, so writers can skip building events nobody reads
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public void publish(ProductChangeEvent event) {
+        published.increment();
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    public void publishAll(List<ProductChangeEvent> events) {
+        for (ProductChangeEvent event : events) {
+            publish(event);
+        }
+    }
+
+    /**
+     * @return a snapshot of the feed counters
+     */
+    public Statistics getStatistics() {
+        return new Statistics(subscriptions.size(), published.sum(), delivered.sum(), coalesced.sum(), overflows.sum());
+    }
+
+    /**
+     * One subscriber's queue of pending changes. Close it to stop receiving changes.
+     */
+    public class Subscription {
+        private final Listener listener;
+        private final Executor executor;
+        private final int maxPending;
+
+        // guarded by this
+        private final LinkedHashMap<String, ProductChangeEvent> pending = new LinkedHashMap<>();
+        private boolean overflowed = false;
+        private boolean deliveryQueued = false;
+        private volatile boolean closed = false;
+
+        private Subscription(Listener listener, Executor executor, int maxPending) {
+            this.listener = listener;
+            this.executor = executor;
+            this.maxPending = maxPending;
+        }
+
+        private void offer(ProductChangeEvent event) {
+            boolean queueDelivery;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                ProductChangeEvent waiting = pending.get(event.getProductId());
+                if (overflowed) {
+                    coalesced.increment(); // everything is read again anyway
+                } else if (waiting != null) {
+                    ProductChangeEvent merged = waiting.mergeWith(event);
+                    if (merged == null) {
+                        pending.remove(event.getProductId());
+                    } else {
+                        pending.put(event.getProductId(), merged); // keeps its place in the queue
+                    }
+                    coalesced.increment();
+                } else if (pending.size() >= maxPending) {
+                    pending.clear();
+                    overflowed = true;
+                    overflows.increment();
+                } else {
+                    pending.put(event.getProductId(), event);
+                }
+                queueDelivery = !deliveryQueued;
+                deliveryQueued = true;
+            }
+            if (queueDelivery) {
+                executor.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            List<ProductChangeEvent> changes;
+            boolean overflow;
+            synchronized (this) {
+                changes = new ArrayList<>(pending.values());
+                pending.clear();
+                overflow = overflowed;
+                overflowed = false;
+                deliveryQueued = false;
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                if (overflow) {
+                    listener.onOverflow();
+                } else if (!changes.isEmpty()) {
+                    delivered.add(changes.size());
+                    listener.onChanges(changes);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Product change listener failed", e); // must not stop later deliveries
+            }
+        }
+
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+            synchronized (this) {
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * A point-in-time snapshot of the feed counters.
+     */
+    public static class Statistics {
+        private final int subscribers;
+        private final long published;
+        private final long delivered;
+        private final long coalesced;
+        private final long overflows;
+
+        private Statistics(int subscribers, long published, long delivered, long coalesced, long overflows) {
+            this.subscribers = subscribers;
+            this.published = published;
+            this.delivered = delivered;
+            this.coalesced = coalesced;
+            this.overflows = overflows;
+        }
+
+        public int getSubscribers() { return subscribers; }
+        public long getPublished() { return published; }
+        public long getDelivered() { return delivered; }
+        public long getCoalesced() { return coalesced; }
+        public long getOverflows() { return overflows; }
+
+        @Override
+        public String toString() {
+            return String.format("ProductChangeFeed[subscribers=%d, published=%d, delivered=%d, coalesced=%d, " +
+                    "overflows=%d]", subscribers, published, delivered, coalesced, overflows);
+        }
+    }
+}
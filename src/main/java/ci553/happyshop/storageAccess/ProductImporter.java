@@ -0,0 +1,489 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+import ci553.happyshop.utility.Money;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductImporter adds a whole catalogue of new products from a CSV file, eg the seasonal range,
+ * instead of the warehouse typing in one product at a time.
+ *
+ * CSV format, one product per line (the header line is optional):
+ *     productID,description,unitPrice,inStock,image
+ *     0013,"Kettle, 1.7 litre",24.99,50,pictures/kettle.jpg
+ * unitPrice is in pounds, as typed in the warehouse; it is stored in pence.
+ * A field may be put in double quotes so it can hold commas ("" inside quotes is one quote).
+ * image is the path of the product's picture, either absolute or relative to the folder of the CSV file.
+ *
+ * The import works through the file one chunk (chunkSize rows) at a time:
+ * 1. Read and validate: the same rules as the warehouse form (4 digit ID, price above 0 with at most two decimals,
+ *    stock not negative, a description of at most 100 characters, an existing image file). An ID that appears
+ *    twice in the file is only imported the first time.
+ * 2. IDs already in the database are found with one searchByProductIds call per chunk.
+ * 3. The images are copied into the image folder on imageCopyThreads threads at once, under temporary names
+ *    (eg 0013.jpg.importing-<random>). While the images of one chunk are being copied, the previous chunk is
+ *    written to the database.
+ * 4. The chunk is inserted with DatabaseRW.insertNewProducts (DerbyRW: one JDBC batch in one transaction).
+ *    If that fails, eg another warehouse added one of the IDs meanwhile, the chunk is inserted one product
+ *    at a time so only the bad rows are rejected.
+ * 5. Only the images of the rows that were inserted are renamed to their real name (the product ID with the
+ *    image's extension, as ImageFileManager names them); the others are deleted. So the image of a product
+ *    that already exists is never overwritten, even when its ID was added after step 2.
+ *
+ * Every row that is not imported is written to the reject file with its line number and the reason,
+ * so it can be corrected and imported again. The ProgressListener is told after every chunk,
+ * and the Progress returned at the end has the throughput figures.
+ */
+
+public class ProductImporter {
+    private static final DiagnosticLog log = Diagnostics.getLog(ProductImporter.class);
+
+    public static final String HEADER = "productID,description,unitPrice,inStock,image";
+    private static final int MAX_DESCRIPTION_LENGTH = 100; // ProductTable: description VARCHAR(100)
+
+    /**
+     * Told about the progress of an import, on the importing thread.
+     */
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    private final DatabaseRW databaseRW;
+    private final String imageFolder;
+    private final int chunkSize;
+    private final int imageCopyThreads;
+
+    /**
+     * @param imageFolder      where the product images are copied to, eg StorageLocation.imageFolder
+     * @param chunkSize        the number of rows inserted in one transaction
+     * @param imageCopyThreads the number of images copied at the same time
+     */
+    public ProductImporter(DatabaseRW databaseRW, String imageFolder, int chunkSize, int imageCopyThreads) {
+        if (chunkSize <= 0 || imageCopyThreads <= 0) {
+            throw new IllegalArgumentException("chunkSize and imageCopyThreads must be positive");
+        }
+        this.databaseRW = databaseRW;
+        this.imageFolder = imageFolder;
+        this.chunkSize = chunkSize;
+        this.imageCopyThreads = imageCopyThreads;
+    }
+
+    /**
+     * Imports every valid row of the CSV file.
+     *
+     * @param rejectFile where rows that are not imported are written, or null to only count them
+     * @param listener   told after every chunk, or null
+     * @return the final progress: how many rows were read, imported and rejected, and how fast
+     * @throws SQLException if the database cannot be read (rows already imported stay imported)
+     */
+    public Progress importCsv(Path csvFile, Path rejectFile, ProgressListener listener)
+            throws IOException, SQLException {
+        ExecutorService imageCopier = Executors.newFixedThreadPool(imageCopyThreads, runnable -> {
+            Thread thread = new Thread(runnable, "ProductImporter-images");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Run run = new Run(csvFile.toAbsolutePath().getParent(), Paths.get(imageFolder));
+        try (BufferedReader reader = Files.newBufferedReader(csvFile);
+             BufferedWriter rejects = rejectFile == null ? null : Files.newBufferedWriter(rejectFile)) {
+            run.rejects = rejects;
+            if (rejects != null) {
+                rejects.write("line,reason,row");
+                rejects.newLine();
+            }
+
+            // While one chunk is inserted, the images of the next one are already being copied
+            Chunk pending = null;
+            do {
+                List<Row> rows = readChunk(reader, run);
+                Chunk next = rows.isEmpty() ? null : prepare(rows, run, imageCopier);
+                if (pending != null) {
+                    insert(pending, run);
+                    if (listener != null) {
+                        listener.onProgress(run.snapshot(false));
+                    }
+                }
+                pending = next;
+            } while (pending != null);
+        } finally {
+            imageCopier.shutdownNow();
+            discardTemporaryImages(run, imageCopier); // of the chunks not inserted when the import failed
+        }
+
+        Progress result = run.snapshot(true);
+        if (listener != null) {
+            listener.onProgress(result);
+        }
+        log.info("Import of " + csvFile.getFileName() + " finished: " + result);
+        return result;
+    }
+
+    // Reads lines until chunkSize valid rows are collected or the file ends; invalid rows are rejected straight away
+    private List<Row> readChunk(BufferedReader reader, Run run) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        String line;
+        while (rows.size() < chunkSize && (line = reader.readLine()) != null) {
+            run.lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields;
+            try {
+                fields = parseCsvLine(line);
+            } catch (IllegalArgumentException e) {
+                run.rowsRead++;
+                reject(run, run.lineNumber, line, e.getMessage());
+                continue;
+            }
+            if (run.lineNumber == 1 && fields.get(0).trim().equalsIgnoreCase("productID")) {
+                continue; // the header
+            }
+            run.rowsRead++;
+
+            Row row = new Row(run.lineNumber, line);
+            String error = validate(fields, row, run);
+            if (error != null) {
+                reject(run, row.lineNumber, line, error);
+            } else {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    // Same rules as the warehouse form; fills in the row and returns null if it is valid, or the reason if not
+    private String validate(List<String> fields, Row row, Run run) {
+        if (fields.size() != 5) {
+            return "Expected 5 fields (" + HEADER + ") but found " + fields.size();
+        }
+        row.id = fields.get(0).trim();
+        row.description = fields.get(1).trim();
+        String textPrice = fields.get(2).trim();
+        String textStock = fields.get(3).trim();
+        String image = fields.get(4).trim();
+
+        if (!row.id.matches("\\d{4}")) {
+            return "Product ID must be exactly 4 digits";
+        }
+        if (row.description.isEmpty() || row.description.length() > MAX_DESCRIPTION_LENGTH) {
+            return "Product description must be 1 to " + MAX_DESCRIPTION_LENGTH + " characters";
+        }
+        if (!textPrice.matches("^[0-9]+(\\.[0-9]{0,2})?$")) {
+            return "Price must be a number with at most two decimal places";
+        }
+        try {
+            row.pricePence = Money.parsePence(textPrice);
+        } catch (NumberFormatException e) {
+            return e.getMessage(); // too large
+        }
+        if (row.pricePence <= 0) {
+            return "Price must be a positive number";
+        }
+        try {
+            row.stock = Integer.parseInt(textStock);
+        } catch (NumberFormatException e) {
+            return "Invalid stock quantity format";
+        }
+        if (row.stock < 0) {
+            return "Stock quantity cannot be negative";
+        }
+        if (image.isEmpty() || image.lastIndexOf('.') < 0) {
+            return "An image file (eg kettle.jpg) must be given";
+        }
+        row.imageSource = run.csvFolder.resolve(image);
+        if (!Files.isRegularFile(row.imageSource)) {
+            return "Image file not found: " + row.imageSource;
+        }
+        if (!run.seenIds.add(row.id)) {
+            return "Product ID " + row.id + " appears more than once in the file";
+        }
+        return null;
+    }
+
+    // Rejects the IDs that are already in the database, then starts copying the images of the rest
+    private Chunk prepare(List<Row> rows, Run run, ExecutorService imageCopier) throws IOException, SQLException {
+        ArrayList<String> ids = new ArrayList<>();
+        for (Row row : rows) {
+            ids.add(row.id);
+        }
+        Map<String, Product> existing = databaseRW.searchByProductIds(ids);
+
+        Chunk chunk = new Chunk();
+        for (Row row : rows) {
+            if (existing.containsKey(row.id)) {
+                reject(run, row.lineNumber, row.line, "Product ID " + row.id + " is not available");
+                continue;
+            }
+            row.imageName = ImageFileManager.destinationFileName(row.imageSource, row.id);
+            row.temporaryImage = run.imageFolder.resolve(row.imageName + run.temporarySuffix);
+            run.temporaryImages.add(row.temporaryImage);
+            row.imageCopy = CompletableFuture.runAsync(() -> {
+                try {
+                    Files.copy(row.imageSource, row.temporaryImage, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, imageCopier);
+            chunk.rows.add(row);
+        }
+        return chunk;
+    }
+
+    // Waits for the chunk's images, inserts the chunk in one batch, then puts the images of the inserted rows in place
+    private void insert(Chunk chunk, Run run) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        List<Product> products = new ArrayList<>();
+        for (Row row : chunk.rows) {
+            try {
+                row.imageCopy.join();
+            } catch (CompletionException e) {
+                reject(run, row.lineNumber, row.line, "Image could not be copied: " + e.getCause().getMessage());
+                discardImage(row, run);
+                continue;
+            }
+            rows.add(row);
+            products.add(new Product(row.id, row.description, row.imageName, row.pricePence, row.stock));
+        }
+
+        long start = System.nanoTime();
+        try {
+            databaseRW.insertNewProducts(products);
+            run.imported += products.size();
+            run.databaseNanos += System.nanoTime() - start;
+            for (Row row : rows) {
+                placeImage(row, run);
+            }
+        } catch (SQLException e) {
+            log.warn("Batch insert of " + products.size() + " products failed, inserting them one by one: "
+                    + e.getMessage());
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.get(i);
+                Row row = rows.get(i);
+                try {
+                    databaseRW.insertNewProduct(product.getProductId(), product.getProductDescription(),
+                            product.getUnitPricePence(), product.getProductImageName(), product.getStockQuantity());
+                    run.imported++;
+                    placeImage(row, run);
+                } catch (SQLException rowError) {
+                    reject(run, row.lineNumber, row.line, "Insert failed: " + rowError.getMessage());
+                    discardImage(row, run); // the ID belongs to another product, whose image stays
+                }
+            }
+            run.databaseNanos += System.nanoTime() - start;
+        }
+        run.chunks++;
+    }
+
+    // Renames the image of an inserted row to its real name. The ID was only just inserted, so a file already
+    // there belongs to no product (eg it was left by a deleted one) and is replaced.
+    private void placeImage(Row row, Run run) {
+        try {
+            Files.move(row.temporaryImage, run.imageFolder.resolve(row.imageName), StandardCopyOption.REPLACE_EXISTING);
+            run.temporaryImages.remove(row.temporaryImage);
+            run.imagesCopied++;
+        } catch (IOException e) {
+            // the product is imported, only its picture is missing; it can be set in the warehouse
+            log.warn("Image of product " + row.id + " could not be put in place: " + e.getMessage());
+            discardImage(row, run);
+        }
+    }
+
+    private void discardImage(Row row, Run run) {
+        try {
+            Files.deleteIfExists(row.temporaryImage);
+            run.temporaryImages.remove(row.temporaryImage);
+        } catch (IOException e) {
+            log.warn("Could not delete " + row.temporaryImage + ": " + e.getMessage());
+        }
+    }
+
+    // Waits for the copies still running, then deletes every temporary image that was not put in place
+    private void discardTemporaryImages(Run run, ExecutorService imageCopier) {
+        if (run.temporaryImages.isEmpty()) {
+            return;
+        }
+        try {
+            imageCopier.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Path temporaryImage : run.temporaryImages) {
+            try {
+                Files.deleteIfExists(temporaryImage);
+            } catch (IOException e) {
+                log.warn("Could not delete " + temporaryImage + ": " + e.getMessage());
+            }
+        }
+        run.temporaryImages.clear();
+    }
+
+    private void reject(Run run, int lineNumber, String line, String reason) throws IOException {
+        run.rejected++;
+        if (run.rejects != null) {
+            run.rejects.write(lineNumber + "," + quote(reason) + "," + line);
+            run.rejects.newLine();
+        }
+    }
+
+    /**
+     * Splits one CSV line into its fields. Fields may be quoted; "" inside quotes stands for one quote.
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    inQuotes = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (inQuotes) {
+            throw new IllegalArgumentException("Quote is not closed");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    // One line of the CSV file that passed validation
+    private static class Row {
+        private final int lineNumber;
+        private final String line;
+        private String id;
+        private String description;
+        private long pricePence;
+        private int stock;
+        private Path imageSource;
+        private String imageName;       // the name in the image folder once imported, eg 0013.jpg
+        private Path temporaryImage;    // where the image is copied to until the row is inserted
+        private CompletableFuture<Void> imageCopy;
+
+        Row(int lineNumber, String line) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+        }
+    }
+
+    private static class Chunk {
+        private final List<Row> rows = new ArrayList<>();
+    }
+
+    // The state of one importCsv call, only used by the importing thread
+    private static class Run {
+        private final Path csvFolder;
+        private final Path imageFolder;
+        private final String temporarySuffix = ".importing-" + UUID.randomUUID();
+        private final long startNanos = System.nanoTime();
+        private final Set<String> seenIds = new HashSet<>();
+        private final Set<Path> temporaryImages = new LinkedHashSet<>(); // copied, not yet put in place or deleted
+        private BufferedWriter rejects;
+        private int lineNumber;
+        private long rowsRead;
+        private long imported;
+        private long rejected;
+        private long imagesCopied;
+        private long chunks;
+        private long databaseNanos;
+
+        Run(Path csvFolder, Path imageFolder) {
+            this.csvFolder = csvFolder;
+            this.imageFolder = imageFolder;
+        }
+
+        Progress snapshot(boolean finished) {
+            return new Progress(finished, rowsRead, imported, rejected, imagesCopied, chunks,
+                    System.nanoTime() - startNanos, databaseNanos);
+        }
+    }
+
+    /**
+     * A point-in-time snapshot of an import.
+     */
+    public static class Progress {
+        private final boolean finished;
+        private final long rowsRead;
+        private final long imported;
+        private final long rejected;
+        private final long imagesCopied;
+        private final long chunks;
+        private final long elapsedNanos;
+        private final long databaseNanos;
+
+        private Progress(boolean finished, long rowsRead, long imported, long rejected, long imagesCopied,
+                         long chunks, long elapsedNanos, long databaseNanos) {
+            this.finished = finished;
+            this.rowsRead = rowsRead;
+            this.imported = imported;
+            this.rejected = rejected;
+            this.imagesCopied = imagesCopied;
+            this.chunks = chunks;
+            this.elapsedNanos = elapsedNanos;
+            this.databaseNanos = databaseNanos;
+        }
+
+        public boolean isFinished() { return finished; }
+        public long getRowsRead() { return rowsRead; }
+        public long getImported() { return imported; }
+        public long getRejected() { return rejected; }
+        public long getImagesCopied() { return imagesCopied; }
+        public long getChunks() { return chunks; }
+        public long getElapsedMillis() { return TimeUnit.NANOSECONDS.toMillis(elapsedNanos); }
+        public long getDatabaseMillis() { return TimeUnit.NANOSECONDS.toMillis(databaseNanos); }
+
+        // Imported products per second since the import started
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : imported * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ProductImport[read=%d, imported=%d, rejected=%d, images=%d, chunks=%d, " +
+                            "%.1fs (%.1fs database), %.0f products/s]",
+                    rowsRead, imported, rejected, imagesCopied, chunks, elapsedNanos / 1e9, databaseNanos / 1e9,
+                    getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ci553.happyshop.storageAccess;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ProductLockStripes gives DerbyRW a lock per product instead of one lock for everything,
+ * so a warehouse update of product 0001 does not block a customer checkout of product 0007.
+ *
+ * Keeping one lock object per product ID would grow without limit, so a fixed array of locks (stripes) is used
+ * and each product ID is mapped to one stripe by its hash. Two products may share a stripe; that only means they
+ * sometimes wait for each other, never that a product is unprotected.
+ *
+ * Deadlock: a checkout locks several products. If two checkouts locked them in different orders, each could wait
+ * for the other forever. lockAll() therefore always takes the stripes in ascending stripe order (and each stripe
+ * only once), so every thread locks in the same global order.
+ *
+ * Each stripe counts how often it was locked and how often the caller had to wait for it (contention),
+ * which shows whether stripeCount is large enough for the number of products being written.
+ *
+ * Usage (same pattern as a normal Lock):
+ *     stripes.lockAll(ids);
+ *     try { ... } finally { stripes.unlockAll(ids); }
+ */
+
+public class ProductLockStripes {
+    private final ReentrantLock[] stripes;
+    private final LongAdder[] acquisitions;
+    private final LongAdder[] contentions;
+
+    public ProductLockStripes(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount must be positive: " + stripeCount);
+        }
+        stripes = new ReentrantLock[stripeCount];
+        acquisitions = new LongAdder[stripeCount];
+        contentions = new LongAdder[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+            acquisitions[i] = new LongAdder();
+            contentions[i] = new LongAdder();
+        }
+    }
+
+    // Maps a product ID to its stripe; the hash is spread so IDs like 0001, 0002 ... use different stripes
+    int stripeFor(String productId) {
+        int h = productId.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h * 0x9E3779B9, stripes.length);
+    }
+
+    public void lock(String productId) {
+        lockStripe(stripeFor(productId));
+    }
+
+    public void unlock(String productId) {
+        stripes[stripeFor(productId)].unlock();
+    }
+
+    /**
+     * Locks the stripes of all the products, in ascending stripe order to avoid deadlock.
+     */
+    public void lockAll(Collection<String> productIds) {
+        for (int stripe : stripesFor(productIds)) {
+            lockStripe(stripe);
+        }
+    }
+
+    // Unlocks in the reverse order of lockAll
+    public void unlockAll(Collection<String> productIds) {
+        for (int stripe : stripesFor(productIds).descendingSet()) {
+            stripes[stripe].unlock();
+        }
+    }
+
+    // Distinct stripes in ascending order
+    private TreeSet<Integer> stripesFor(Collection<String> productIds) {
+        TreeSet<Integer> stripeSet = new TreeSet<>();
+        for (String productId : productIds) {
+            stripeSet.add(stripeFor(productId));
+        }
+        return stripeSet;
+    }
+
+    private void lockStripe(int stripe) {
+        ReentrantLock lock = stripes[stripe];
+        if (!lock.tryLock()) {
+            contentions[stripe].increment(); // someone else holds it, we will have to wait
+            lock.lock();
+        }
+        acquisitions[stripe].increment();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    // How many times each stripe was locked
+    public long[] getAcquisitionCounts() {
+        long[] counts = new long[stripes.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = acquisitions[i].sum();
+        }
+        return counts;
+    }
+
+    // How many times each stripe was already held when someone tried to lock it
+    public long[] getContentionCounts() {
+        long[] counts = new long[stripes.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = contentions[i].sum();
+        }
+        return counts;
+    }
+
+    public void resetStatistics() {
+        for (int i = 0; i < stripes.length; i++) {
+            acquisitions[i].reset();
+            contentions[i].reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        long totalAcquired = 0;
+        long totalContended = 0;
+        int hottestStripe = 0;
+        long[] contended = getContentionCounts();
+        long[] acquired = getAcquisitionCounts();
+        for (int i = 0; i < stripes.length; i++) {
+            totalAcquired += acquired[i];
+            totalContended += contended[i];
+            if (contended[i] > contended[hottestStripe]) {
+                hottestStripe = i;
+            }
+        }
+        return String.format("ProductLockStripes[stripes=%d, acquired=%d, contended=%d, hottest stripe=%d (%d contended)]",
+                stripes.length, totalAcquired, totalContended, hottestStripe, contended[hottestStripe]);
+    }
+}
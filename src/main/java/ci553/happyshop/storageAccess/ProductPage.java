@@ -0,0 +1,61 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of product search results, returned by DatabaseRW.searchProductPage().
+ *
+ * Pages use keyset pagination on productID: results are in ascending productID order, and the next page
+ * is asked for with the last productID this page looked at (the cursor) rather than with a row offset.
+ * That is usually the last product on the page, but it can be a product deleted while the page was read,
+ * so a page can be empty and still have more after it.
+ * This way fetching page 100 costs the same as fetching page 1, and products added or removed between pages
+ * do not make results repeat or go missing.
+ *
+ * Usage:
+ *     ProductPage page = databaseRW.searchProductPage("usb", null, 50);   // first page
+ *     if (page.hasMore()) {
+ *         page = databaseRW.searchProductPage("usb", page.getNextCursor(), 50);
+ *     }
+ */
+
+public class ProductPage {
+    private final List<Product> products;
+    private final String nextCursor;
+    private final boolean hasMore;
+
+    // A page whose cursor is its last product
+    public ProductPage(List<Product> products, boolean hasMore) {
+        this(products, products.isEmpty() ? null : products.get(products.size() - 1).getProductId(), hasMore);
+    }
+
+    /**
+     * @param nextCursor the last productID scanned for this page, null if none was
+     */
+    public ProductPage(List<Product> products, String nextCursor, boolean hasMore) {
+        this.products = Collections.unmodifiableList(products);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    // The productID to pass as the cursor for the next page, null if this page scanned no products
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ProductPage[%d products, next cursor=%s, has more=%b]", products.size(), nextCursor, hasMore);
+    }
+}
@@ -0,0 +1,201 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ProductSearchIndex is an in-memory inverted index over product descriptions, used to search products by name
+ * without scanning the whole ProductTable (LOWER(description) LIKE '%x%' reads every row).
+ *
+ * How it works:
+ * - Each description is split into tokens (words made of letters and digits) and lower-cased,
+ *   eg "40 inch TV" becomes ["40", "inch", "tv"].
+ * - For every token the index keeps a posting list: the sorted set of product IDs whose description has that token.
+ * - A search splits the query the same way. Each query term matches every token that starts with it
+ *   ("usb" matches "usb", "usb2", ...), and a product must match all the terms (eg "usb drive").
+ *
+ * The index is built from ProductTable when DerbyRW is first created, and then kept up to date by DerbyRW
+ * on every insert, update and delete. It is shared by all DerbyRW instances through DatabaseRWFactory.
+ * Reads and writes are guarded by a read/write lock, so many searches can run at the same time.
+ */
+
+public class ProductSearchIndex {
+
+    /**
+     * Supplies every (productID, description) pair when the index is built, eg by querying ProductTable.
+     */
+    public interface Loader {
+        Map<String, String> loadDescriptions() throws SQLException;
+    }
+
+    // token -> sorted product IDs; a TreeMap so all tokens starting with a prefix can be found quickly
+    private final TreeMap<String, TreeSet<String>> postings = new TreeMap<>();
+    // product ID -> its tokens, needed to remove a product's old tokens on update or delete
+    private final HashMap<String, List<String>> tokensByProduct = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean built = false;
+
+    /**
+     * Splits text into lower-case tokens of letters and digits.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean isWordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * (Re)builds the whole index from the loader.
+     * The loader runs while the write lock is held, so index updates made by concurrent writes
+     * wait until the build is finished and are not lost.
+     */
+    public void build(Loader loader) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            Map<String, String> descriptions = loader.loadDescriptions();
+            postings.clear();
+            tokensByProduct.clear();
+            for (Map.Entry<String, String> entry : descriptions.entrySet()) {
+                addTokens(entry.getKey(), entry.getValue());
+            }
+            built = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isBuilt() {
+        return built;
+    }
+
+    // Empties the index; it is built again the next time a DerbyRW needs it
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            tokensByProduct.clear();
+            built = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Adds a new product, or replaces the tokens of an existing one
+    public void addOrUpdate(String productId, String description) {
+        lock.writeLock().lock();
+        try {
+            removeTokens(productId);
+            addTokens(productId, description);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            removeTokens(productId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the products whose description has a token starting with every term of the query.
+     * @return the matching product IDs in ascending order (empty if the query has no terms)
+     */
+    public TreeSet<String> search(String query) {
+        List<String> terms = tokenize(query);
+        TreeSet<String> result = new TreeSet<>();
+        if (terms.isEmpty()) {
+            return result;
+        }
+
+        lock.readLock().lock();
+        try {
+            List<TreeSet<String>> matchesPerTerm = new ArrayList<>();
+            for (String term : terms) {
+                TreeSet<String> matches = matchPrefix(term);
+                if (matches.isEmpty()) {
+                    return result; // one term matches nothing, so nothing matches all terms
+                }
+                matchesPerTerm.add(matches);
+            }
+
+            // intersect, starting from the smallest set so the work stays small
+            matchesPerTerm.sort((a, b) -> Integer.compare(a.size(), b.size()));
+            result.addAll(matchesPerTerm.get(0));
+            for (int i = 1; i < matchesPerTerm.size() && !result.isEmpty(); i++) {
+                result.retainAll(matchesPerTerm.get(i));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tokensByProduct.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Union of the posting lists of every token that starts with the term
+    private TreeSet<String> matchPrefix(String term) {
+        TreeSet<String> matches = new TreeSet<>();
+        NavigableMap<String, TreeSet<String>> range = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+        for (TreeSet<String> productIds : range.values()) {
+            matches.addAll(productIds);
+        }
+        return matches;
+    }
+
+    private void addTokens(String productId, String description) {
+        List<String> tokens = tokenize(description);
+        for (String token : tokens) {
+            postings.computeIfAbsent(token, t -> new TreeSet<>()).add(productId);
+        }
+        tokensByProduct.put(productId, tokens);
+    }
+
+    private void removeTokens(String productId) {
+        List<String> oldTokens = tokensByProduct.remove(productId);
+        if (oldTokens == null) {
+            return;
+        }
+        for (String token : oldTokens) {
+            TreeSet<String> productIds = postings.get(token);
+            if (productIds != null) {
+                productIds.remove(productId);
+                if (productIds.isEmpty()) {
+                    postings.remove(token); // keep the token map small
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+import ci553.happyshop.utility.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * ProductTableMigration brings a ProductTable made by an earlier version of HappyShop up to the current definition,
+ * so an existing happyShopDB keeps working without running SetDatabase again.
+ *
+ * Prices: earlier versions kept "unitPrice DOUBLE" in pounds. Prices are now whole pence in "unitPricePence BIGINT",
+ * so sums are exact. The migration, all in one transaction:
+ *     LOCK TABLE ProductTable IN EXCLUSIVE MODE      (a process migrating at the same time finishes first)
+ *     ALTER TABLE ProductTable ADD COLUMN unitPricePence BIGINT   (unless an earlier attempt added it)
+ *     UPDATE ProductTable SET unitPricePence = ? WHERE productID = ?   for every row, Money.toPence(unitPrice)
+ *     ALTER TABLE ProductTable DROP COLUMN unitPrice
+ * The pence are worked out in Java with Money.toPence, so a stored 2.675 becomes 268 pence as it would in the app.
+ * As long as unitPrice is there it is the price, so a table left with both columns (eg by a tool that stopped
+ * half way) is simply migrated again. The new column ends up last, which is why DerbyRW names the columns in its
+ * INSERTs.
+ *
+ * The first DerbyRW runs it once per ConnectionPool; it does nothing if the table is already up to date.
+ */
+
+public class ProductTableMigration {
+    private static final DiagnosticLog log = Diagnostics.getLog(ProductTableMigration.class);
+
+    private static ConnectionPool migratedPool; // the pool the migration last ran on, guarded by the class
+
+    private ProductTableMigration() {
+    }
+
+    /**
+     * Migrates the database of the pool unless that was already done in this JVM.
+     */
+    public static synchronized void migrateOnce(ConnectionPool connectionPool) throws SQLException {
+        if (migratedPool != connectionPool) {
+            migrate(connectionPool);
+            migratedPool = connectionPool;
+        }
+    }
+
+    /**
+     * Migrates the database of the pool if it still has the old price column.
+     * @return true if the table was migrated, false if it was already up to date (or there is no ProductTable)
+     */
+    public static boolean migrate(ConnectionPool connectionPool) throws SQLException {
+        try (Connection conn = connectionPool.getConnection()) {
+            if (!hasColumn(conn, "UNITPRICE")) {
+                return false;
+            }
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("LOCK TABLE ProductTable IN EXCLUSIVE MODE");
+                if (!hasColumn(conn, "UNITPRICE")) { // another process migrated it while this one waited
+                    conn.commit();
+                    return false;
+                }
+                if (!hasColumn(conn, "UNITPRICEPENCE")) {
+                    stmt.executeUpdate("ALTER TABLE ProductTable ADD COLUMN unitPricePence BIGINT");
+                }
+                int rows = copyPricesInPence(conn);
+                stmt.executeUpdate("ALTER TABLE ProductTable DROP COLUMN unitPrice");
+                conn.commit();
+                log.info("Migrated ProductTable prices to pence (" + rows + " products)");
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    // Sets unitPricePence of every row from its unitPrice, returns the number of rows
+    private static int copyPricesInPence(Connection conn) throws SQLException {
+        int rows = 0;
+        try (Statement selectStmt = conn.createStatement();
+             ResultSet rs = selectStmt.executeQuery("SELECT productID, unitPrice FROM ProductTable");
+             PreparedStatement updateStmt = conn.prepareStatement(
+                     "UPDATE ProductTable SET unitPricePence = ? WHERE productID = ?")) {
+            while (rs.next()) {
+                updateStmt.setLong(1, Money.toPence(rs.getDouble("unitPrice")));
+                updateStmt.setString(2, rs.getString("productID"));
+                updateStmt.addBatch();
+                rows++;
+            }
+            updateStmt.executeBatch();
+        }
+        return rows;
+    }
+
+    private static boolean hasColumn(Connection conn, String column) throws SQLException {
+        try (ResultSet columns = conn.getMetaData().getColumns(null, null, "PRODUCTTABLE", column)) {
+            return columns.next();
+        }
+    }
+}
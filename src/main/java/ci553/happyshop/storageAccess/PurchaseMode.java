@@ -0,0 +1,28 @@
+package ci553.happyshop.storageAccess;
+
+/**
+ * The ways DerbyRW can reduce stock when a trolley is checked out (DerbyRW.purchaseStocks).
+ *
+ * - LOCKED: the original approach, and the default. For each product, SELECT the stock, check it in Java, then UPDATE it.
+ *   Per-product JVM locks (ProductLockStripes) serialize checkouts of the same products, so the check
+ *   and the update cannot be interleaved.
+ * - CONDITIONAL: a single guarded UPDATE per product,
+ *   "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?",
+ *   all inside one transaction. The update count (1 = done, 0 = not enough stock) replaces the SELECT,
+ *   so the check and the decrement are atomic at the database, and no JVM lock is needed:
+ *   checkouts of unrelated products run in parallel.
+ * - GROUP_COMMIT: the same guarded UPDATEs, but handed to the shared GroupCommitPurchaser, which puts the
+ *   baskets of concurrent checkouts into one transaction (a savepoint per basket) and commits them together.
+ *   Fewer commits means fewer log flushes, so many more checkouts per second under burst load,
+ *   at the cost of up to DatabaseRWFactory.groupCommitWindowMillis extra latency per checkout.
+ *
+ * The mode is chosen in DatabaseRWFactory.purchaseMode. In every mode an unknown product is a failed line and a
+ * database error is thrown, never reported as success. Failed lines come back with the current stock in
+ * CONDITIONAL and GROUP_COMMIT; LOCKED returns them as they were passed in (with stock 0 for an unknown product).
+ */
+
+public enum PurchaseMode {
+    LOCKED,
+    CONDITIONAL,
+    GROUP_COMMIT
+}
@@ -0,0 +1,226 @@
+package ci553.happyshop.storageAccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StatementCache keeps the PreparedStatements of one pooled connection, keyed by their SQL text,
+ * so the same SQL (eg "SELECT * FROM ProductTable WHERE productID = ?") is only compiled by Derby once
+ * per connection instead of on every call.
+ *
+ * It is used by ConnectionPool: every pooled connection has its own StatementCache, and the borrowed
+ * connection's prepareStatement(sql) is answered from it.
+ *
+ * How it works:
+ * - prepareStatement(sql) returns a proxy of the cached statement. Calling close() on the proxy does not
+ *   close the real statement, it closes the last ResultSet, clears the parameters and keeps it for next time.
+ * - While a statement is handed out it is marked as in use. If the same SQL is prepared again before the first
+ *   one is closed, a normal (uncached) statement is returned, so two callers never share one statement.
+ * - The cache is bounded (least recently used statements are closed when it is full).
+ * - When the connection goes back to the pool, releaseAll() takes back every statement the borrower did not close,
+ *   so a forgotten close() cannot keep a cached statement in use for the rest of the connection's life.
+ *
+ * A StatementCache is only used by the thread that has borrowed its connection, so it is not thread-safe.
+ */
+
+class StatementCache {
+    private final Connection physical;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final Map<String, CachedStatement> statements;
+    private final List<PreparedStatement> uncachedStatements = new ArrayList<>(); // prepared while the cached one was busy
+
+    /**
+     * @param physical the real connection the statements are prepared on
+     * @param maxSize  the maximum number of statements kept open for this connection
+     * @param hits     pool-wide counter incremented when a statement is reused
+     * @param misses   pool-wide counter incremented when a statement has to be prepared
+     */
+    StatementCache(Connection physical, int maxSize, LongAdder hits, LongAdder misses) {
+        this.physical = physical;
+        this.hits = hits;
+        this.misses = misses;
+
+        // accessOrder = true makes the LinkedHashMap an LRU list: the eldest entry is the least recently used
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > maxSize) {
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a prepared statement for the SQL, reusing the cached one when it is free.
+     * @param sql        the SQL text, used as the cache key
+     * @param connection the borrowed connection proxy, returned by the statement's getConnection()
+     */
+    PreparedStatement prepare(String sql, Connection connection) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+
+        if (cached != null && !cached.inUse) {
+            hits.increment();
+            return cached.lend(connection);
+        }
+
+        misses.increment();
+        PreparedStatement stmt = physical.prepareStatement(sql);
+        if (cached != null) {
+            uncachedStatements.add(stmt); // the cached one is busy, so this one is used once and closed by the caller
+            return stmt;
+        }
+
+        cached = new CachedStatement(stmt);
+        statements.put(sql, cached);
+        return cached.lend(connection);
+    }
+
+    /**
+     * Called when the connection is returned to the pool: statements still handed out are taken back
+     * (their proxies behave as closed from now on), and uncached statements are closed.
+     */
+    void releaseAll() {
+        for (CachedStatement cached : statements.values()) {
+            if (cached.inUse) {
+                cached.borrower.giveBack();
+            }
+        }
+        for (PreparedStatement stmt : uncachedStatements) {
+            try {
+                stmt.close(); // does nothing if the caller already closed it
+            } catch (SQLException e) {
+                // the statement is being thrown away anyway
+            }
+        }
+        uncachedStatements.clear();
+    }
+
+    // Number of statements currently cached for this connection
+    int size() {
+        return statements.size();
+    }
+
+    /**
+     * One real PreparedStatement and whether it is handed out at the moment.
+     */
+    private static class CachedStatement {
+        private final PreparedStatement physicalStmt;
+        private boolean inUse = false;
+        private boolean evicted = false;
+        private BorrowedStatementHandler borrower; // the proxy handed out while inUse
+
+        CachedStatement(PreparedStatement physicalStmt) {
+            this.physicalStmt = physicalStmt;
+        }
+
+        PreparedStatement lend(Connection connection) {
+            inUse = true;
+            borrower = new BorrowedStatementHandler(this, connection);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    borrower);
+        }
+
+        // Called when the borrower closes its proxy
+        void release(ResultSet lastResultSet) {
+            inUse = false;
+            borrower = null;
+            try {
+                if (lastResultSet != null) {
+                    lastResultSet.close();
+                }
+                if (evicted) {
+                    physicalStmt.close(); // dropped from the cache while it was in use
+                } else {
+                    physicalStmt.clearParameters();
+                    physicalStmt.clearBatch();
+                }
+            } catch (SQLException e) {
+                evicted = true; // the statement is no longer reliable, do not reuse it
+            }
+        }
+
+        // Called when the LRU cache drops this statement
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                try {
+                    physicalStmt.close();
+                } catch (SQLException e) {
+                    // the statement is being thrown away anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Forwards every call to the cached statement, except close() and isClosed(),
+     * and remembers the last ResultSet so it can be closed when the statement is given back.
+     */
+    private static class BorrowedStatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection connection;
+        private ResultSet lastResultSet;
+        private boolean returned = false;
+
+        BorrowedStatementHandler(CachedStatement cached, Connection connection) {
+            this.cached = cached;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    giveBack();
+                    return null;
+                case "isClosed":
+                    return returned;
+                case "getConnection":
+                    return connection;
+                case "toString":
+                    return "Cached" + cached.physicalStmt;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+            }
+            if (returned) {
+                throw new SQLException("Statement has already been closed");
+            }
+            try {
+                Object result = method.invoke(cached.physicalStmt, args);
+                if (result instanceof ResultSet) {
+                    lastResultSet = (ResultSet) result;
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        // Gives the statement back to the cache, once
+        void giveBack() {
+            if (!returned) {
+                returned = true;
+                cached.release(lastResultSet);
+            }
+        }
+    }
+}
@@ -0,0 +1,642 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/** ReservationTable definition
+ * "CREATE TABLE ReservationTable(" +
+ *     "reservationID BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY," +
+ *     "productID CHAR(4) NOT NULL," +
+ *     "quantity INT NOT NULL," +
+ *     "expiresAt BIGINT NOT NULL," +
+ *     "CHECK (quantity > 0)" +
+ * ")"
+ */
+
+/**
+ * StockReservations puts a time-limited hold on stock when a customer adds a product to the trolley,
+ * so the units are still there when the customer checks out a few minutes later.
+ *
+ * How a hold works:
+ * - reserve() takes the units off ProductTable.inStock straight away, with the same guarded UPDATE as a purchase
+ *   ("... SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?"), and records the hold in ReservationTable,
+ *   both in one transaction. Other customers therefore only see (and can only buy) the stock that is not held.
+ * - purchase() is called at checkout. In one transaction it deletes the trolley's hold rows (their stock was already
+ *   taken) and takes the units that are not held with the guarded UPDATE. If any line is short, everything is rolled
+ *   back, holds included, so the trolley still holds its stock; there is no moment where the holds are gone but the
+ *   rest of the basket is not bought. confirm() only deletes hold rows, for callers that take the rest themselves.
+ * - release() (trolley cancelled) and the expiry sweeper delete the hold row and put the units back into inStock.
+ * Whoever deletes a hold row first wins: a hold that was just swept cannot also be confirmed, and the other way round.
+ *
+ * Expiry index: the holds of this JVM are also kept in memory, sorted by expiry time, so the sweeper
+ * only looks at the holds that are due instead of scanning ReservationTable. Holds left in the table by an
+ * earlier run are loaded into the index on start, so they are swept too.
+ *
+ * After every change of inStock the product is removed from the ProductCache (if there is one),
+ * so the new stock level is read from the database, and once committed the change is passed to the stockChanged
+ * callback; DatabaseRWFactory points it at DerbyRW, which publishes it on the ProductChangeFeed like a purchase.
+ *
+ * Warehouse stock counts: DerbyRW.updateProduct takes the figure it is given as the units on hand, held units
+ * included, and subtracts the active holds of the product (see reservedQuantity), so a later release or expiry
+ * does not add the held units on top of the count. Every change of ReservationTable here takes the same
+ * per-product locks (ProductLockStripes) as DerbyRW, so no hold comes or goes between that read and the write.
+ *
+ * The class is final because the constructor hands this to the sweeper thread.
+ */
+
+public final class StockReservations {
+    private static final DiagnosticLog log = Diagnostics.getLog(StockReservations.class);
+
+    public static final String CREATE_TABLE_SQL = "CREATE TABLE ReservationTable(" +
+            "reservationID BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY," +
+            "productID CHAR(4) NOT NULL," +
+            "quantity INT NOT NULL," +
+            "expiresAt BIGINT NOT NULL," +
+            "CHECK (quantity > 0)" +
+            ")";
+    private static final String TAKE_STOCK_SQL =
+            "UPDATE ProductTable SET inStock = inStock - ? WHERE productID = ? AND inStock >= ?";
+    private static final String RETURN_STOCK_SQL = "UPDATE ProductTable SET inStock = inStock + ? WHERE productID = ?";
+    private static final String INSERT_SQL = "INSERT INTO ReservationTable(productID, quantity, expiresAt) VALUES(?, ?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM ReservationTable WHERE reservationID = ?";
+    private static final String STOCK_SQL = "SELECT inStock FROM ProductTable WHERE productID = ?";
+    private static final String RESERVED_SQL =
+            "SELECT COALESCE(SUM(quantity), 0) FROM ReservationTable WHERE productID = ?";
+    private static final String DELETE_PRODUCT_SQL = "DELETE FROM ReservationTable WHERE productID = ?";
+
+    private final ConnectionPool connectionPool;
+    private final ProductCache productCache; // may be null
+    private final ProductLockStripes lockStripes; // may be null
+    private final Consumer<Map<String, Integer>> stockChanged; // told productID -> committed inStock change, may be null
+    private final long ttlMillis;
+
+    // The in-memory expiry index: every active hold of this JVM, by ID and by expiry time
+    private final ConcurrentHashMap<Long, Reservation> active = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Reservation> byExpiry = new ConcurrentSkipListSet<>(
+            Comparator.comparingLong(Reservation::getExpiresAtMillis).thenComparingLong(Reservation::getReservationId));
+
+    private final ScheduledExecutorService sweeper; // null if sweepIntervalMillis <= 0
+
+    // Statistics
+    private final LongAdder reservedCount = new LongAdder();
+    private final LongAdder refusedCount = new LongAdder();
+    private final LongAdder confirmedCount = new LongAdder();
+    private final LongAdder releasedCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
+
+    /**
+     * Creates ReservationTable if the database does not have it yet and loads the holds already in it.
+     *
+     * @param productCache       the cache to invalidate when stock changes, or null
+     * @param ttlMillis          how long a hold lasts
+     * @param sweepIntervalMillis how often expired holds are returned, 0 for no sweeper thread (call sweepExpired())
+     */
+    public StockReservations(ConnectionPool connectionPool, ProductCache productCache, long ttlMillis,
+                             long sweepIntervalMillis) throws SQLException {
+        this(connectionPool, productCache, null, null, ttlMillis, sweepIntervalMillis);
+    }
+
+    /**
+     * @param stockChanged called after every committed change of inStock, with productID -> change
+     *                     (eg -3 for a hold of 3 units), or null
+     */
+    public StockReservations(ConnectionPool connectionPool, ProductCache productCache,
+                             Consumer<Map<String, Integer>> stockChanged, long ttlMillis,
+                             long sweepIntervalMillis) throws SQLException {
+        this(connectionPool, productCache, null, stockChanged, ttlMillis, sweepIntervalMillis);
+    }
+
+    /**
+     * @param lockStripes the per-product locks DerbyRW writes under, or null if no DerbyRW shares the database
+     */
+    public StockReservations(ConnectionPool connectionPool, ProductCache productCache, ProductLockStripes lockStripes,
+                             Consumer<Map<String, Integer>> stockChanged, long ttlMillis,
+                             long sweepIntervalMillis) throws SQLException {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be positive: " + ttlMillis);
+        }
+        this.connectionPool = connectionPool;
+        this.productCache = productCache;
+        this.lockStripes = lockStripes;
+        this.stockChanged = stockChanged;
+        this.ttlMillis = ttlMillis;
+
+        createTableIfMissing();
+        loadExistingHolds();
+
+        if (sweepIntervalMillis > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "StockReservations-sweeper");
+                thread.setDaemon(true); // must not keep the JVM alive on exit
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepIntervalMillis, sweepIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    /**
+     * Holds quantity units of a product for ttlMillis.
+     * @return the hold, or null if there is not enough stock (or no such product)
+     */
+    public Reservation reserve(String productId, int quantity) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive: " + quantity);
+        }
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        Reservation reservation;
+
+        lock(List.of(productId));
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement takeStmt = conn.prepareStatement(TAKE_STOCK_SQL);
+                 PreparedStatement insertStmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                takeStmt.setInt(1, quantity);
+                takeStmt.setString(2, productId);
+                takeStmt.setInt(3, quantity);
+                if (takeStmt.executeUpdate() == 0) { // not enough stock left to hold
+                    conn.rollback();
+                    refusedCount.increment();
+                    return null;
+                }
+
+                insertStmt.setString(1, productId);
+                insertStmt.setInt(2, quantity);
+                insertStmt.setLong(3, expiresAt);
+                insertStmt.executeUpdate();
+                try (ResultSet keys = insertStmt.getGeneratedKeys()) {
+                    keys.next();
+                    reservation = new Reservation(keys.getLong(1), productId, quantity, expiresAt);
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            unlock(List.of(productId));
+            invalidate(productId);
+        }
+
+        index(reservation);
+        notifyStockChanged(Map.of(productId, -quantity));
+        reservedCount.increment();
+        log.debug("Reserved " + quantity + " x " + productId + " (hold " + reservation.getReservationId() + ")");
+        return reservation;
+    }
+
+    /**
+     * Turns holds into purchases: the hold rows are deleted and the stock stays taken. Checkouts use purchase(),
+     * which also takes the units that are not held in the same transaction.
+     * @return the holds that were still active; the others had expired (or were released) and their
+     * units went back into stock, so the caller has to buy those units the usual way
+     */
+    public List<Reservation> confirm(Collection<Reservation> reservations) throws SQLException {
+        List<Reservation> confirmed = new ArrayList<>();
+        List<String> productIds = productIdsOf(reservations);
+        lock(productIds);
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement deleteStmt = conn.prepareStatement(DELETE_SQL)) {
+                for (Reservation reservation : reservations) {
+                    deleteStmt.setLong(1, reservation.getReservationId());
+                    if (deleteStmt.executeUpdate() == 1) {
+                        confirmed.add(reservation);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            unlock(productIds);
+        }
+
+        for (Reservation reservation : reservations) {
+            unindex(reservation);
+        }
+        confirmedCount.add(confirmed.size());
+        return confirmed;
+    }
+
+    /**
+     * Checks out a basket whose lines may be partly covered by holds, as one transaction: the hold rows are deleted,
+     * and for each line the units not covered by a hold that was still active are taken from stock.
+     * A hold that expired (or was released) meanwhile covers nothing, so its units are bought the usual way.
+     *
+     * @param holds  the holds of the basket
+     * @param basket one line per product, with the full ordered quantity
+     * @return the lines that had too little stock, with the current stock and the units that could not be taken
+     * (empty if the basket was bought). If any line is short nothing is changed and the holds stay active.
+     */
+    public ArrayList<Product> purchase(Collection<Reservation> holds, List<Product> basket) throws SQLException {
+        Map<String, Integer> held = new HashMap<>();     // productID -> units covered by holds that were deleted here
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        ArrayList<Product> insufficient = new ArrayList<>();
+        List<Reservation> confirmed = new ArrayList<>();
+        List<Reservation> gone = new ArrayList<>();         // expired, released or dropped before this checkout
+        List<String> productIds = productIdsOf(holds);
+        for (Product line : basket) {
+            productIds.add(line.getProductId());
+        }
+        // productID order, so checkouts sharing products lock their rows in the same order
+        ArrayList<Product> sortedBasket = new ArrayList<>(basket);
+        Collections.sort(sortedBasket);
+
+        lock(productIds);
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement deleteStmt = conn.prepareStatement(DELETE_SQL);
+                 PreparedStatement takeStmt = conn.prepareStatement(TAKE_STOCK_SQL);
+                 PreparedStatement stockStmt = conn.prepareStatement(STOCK_SQL)) {
+                for (Reservation reservation : holds) {
+                    deleteStmt.setLong(1, reservation.getReservationId());
+                    if (deleteStmt.executeUpdate() == 1) {
+                        confirmed.add(reservation);
+                        held.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+                    } else {
+                        gone.add(reservation);
+                    }
+                }
+
+                for (Product line : sortedBasket) {
+                    int unheld = line.getOrderedQuantity() - held.getOrDefault(line.getProductId(), 0);
+                    if (unheld <= 0) {
+                        continue;
+                    }
+                    takeStmt.setInt(1, unheld);
+                    takeStmt.setString(2, line.getProductId());
+                    takeStmt.setInt(3, unheld);
+                    if (takeStmt.executeUpdate() == 1) {
+                        deltas.put(line.getProductId(), -unheld);
+                    } else {
+                        insufficient.add(withStock(stockStmt, line, unheld));
+                    }
+                }
+
+                if (insufficient.isEmpty()) {
+                    conn.commit();
+                } else {
+                    conn.rollback(); // all or nothing, the hold rows come back too
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            unlock(productIds);
+            for (String productId : productIds) {
+                invalidate(productId);
+            }
+        }
+
+        for (Reservation reservation : gone) {
+            unindex(reservation); // their rows were already deleted, a rollback does not bring them back
+        }
+        if (!insufficient.isEmpty()) {
+            return insufficient;
+        }
+        for (Reservation reservation : confirmed) {
+            unindex(reservation);
+        }
+        confirmedCount.add(confirmed.size());
+        notifyStockChanged(deltas);
+        return insufficient;
+    }
+
+    // A short basket line as reported to the customer: the current stock, and the units that could not be taken
+    private static Product withStock(PreparedStatement stockStmt, Product line, int unheld) throws SQLException {
+        int stock = 0; // no such product
+        stockStmt.setString(1, line.getProductId());
+        try (ResultSet rs = stockStmt.executeQuery()) {
+            if (rs.next()) {
+                stock = rs.getInt(1);
+            }
+        }
+        Product shortLine = new Product(line.getProductId(), line.getProductDescription(), line.getProductImageName(),
+                line.getUnitPricePence(), stock);
+        shortLine.setOrderedQuantity(unheld);
+        return shortLine;
+    }
+
+    /**
+     * Gives up holds (eg the trolley was cancelled), putting their units back into stock.
+     * Holds that already expired are skipped.
+     */
+    public void release(Collection<Reservation> reservations) throws SQLException {
+        int returned = returnToStock(reservations);
+        releasedCount.add(returned);
+    }
+
+    /**
+     * Returns every hold whose time is up to stock. Called by the sweeper thread, or directly when there is none.
+     * @return the number of holds that were returned
+     */
+    public int sweepExpired() throws SQLException {
+        long now = System.currentTimeMillis();
+        List<Reservation> due = new ArrayList<>();
+        for (Reservation reservation : byExpiry) {
+            if (reservation.getExpiresAtMillis() > now) {
+                break; // sorted by expiry, so the rest are not due yet
+            }
+            due.add(reservation);
+        }
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        int returned = returnToStock(due);
+        expiredCount.add(returned);
+        if (returned > 0) {
+            log.info("Returned " + returned + " expired stock reservation(s) to stock");
+        }
+        return returned;
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweepExpired();
+        } catch (SQLException e) {
+            log.warn("Stock reservation sweep failed, will retry", e); // the holds stay in the index
+        }
+    }
+
+    // Deletes the hold rows and adds their units back to inStock, one transaction for all of them.
+    // Only the holds whose row this call deleted are returned, so a hold is never returned twice.
+    private int returnToStock(Collection<Reservation> reservations) throws SQLException {
+        int returned = 0;
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        List<String> productIds = productIdsOf(reservations);
+        lock(productIds);
+        try (Connection conn = connectionPool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement deleteStmt = conn.prepareStatement(DELETE_SQL);
+                 PreparedStatement returnStmt = conn.prepareStatement(RETURN_STOCK_SQL)) {
+                for (Reservation reservation : reservations) {
+                    deleteStmt.setLong(1, reservation.getReservationId());
+                    if (deleteStmt.executeUpdate() == 1) {
+                        returnStmt.setInt(1, reservation.getQuantity());
+                        returnStmt.setString(2, reservation.getProductId());
+                        if (returnStmt.executeUpdate() == 1) { // 0 rows if the product was deleted meanwhile
+                            deltas.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+                        }
+                        returned++;
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } finally {
+            unlock(productIds);
+            for (Reservation reservation : reservations) {
+                invalidate(reservation.getProductId());
+            }
+        }
+
+        for (Reservation reservation : reservations) {
+            unindex(reservation);
+        }
+        notifyStockChanged(deltas);
+        return returned;
+    }
+
+    /**
+     * @return the units of a product held in trolleys right now, by any process; the warehouse shows them as part
+     * of the stock on hand, see DerbyRW.updateProduct
+     */
+    public int getReservedQuantity(String productId) throws SQLException {
+        try (Connection conn = connectionPool.getConnection()) {
+            return reservedQuantity(conn, productId);
+        }
+    }
+
+    // The units of a product held by the holds in ReservationTable, 0 if the table does not exist.
+    // Used by DerbyRW.updateProduct inside its own transaction, while it holds the product's lock.
+    static int reservedQuantity(Connection conn, String productId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(RESERVED_SQL)) {
+            stmt.setString(1, productId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            if ("42X05".equals(e.getSQLState())) { // 42X05 = no ReservationTable, reservations were never used
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    // Deletes every hold of a product, inside the caller's transaction, 0 if there is no ReservationTable.
+    // The stock they held is not returned: DerbyRW.updateProduct calls this when a stock count is lower than the
+    // units held, so the count is the stock, and DerbyRW.deleteProduct when the product itself goes.
+    // The holds stay in the expiry index until swept; purchase, release and the sweeper then find no row for them.
+    static int dropHolds(Connection conn, String productId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(DELETE_PRODUCT_SQL)) {
+            stmt.setString(1, productId);
+            return stmt.executeUpdate();
+        } catch (SQLException e) {
+            if ("42X05".equals(e.getSQLState())) { // 42X05 = no ReservationTable, reservations were never used
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    private static List<String> productIdsOf(Collection<Reservation> reservations) {
+        List<String> productIds = new ArrayList<>();
+        for (Reservation reservation : reservations) {
+            productIds.add(reservation.getProductId());
+        }
+        return productIds;
+    }
+
+    private void lock(List<String> productIds) {
+        if (lockStripes != null) {
+            lockStripes.lockAll(productIds);
+        }
+    }
+
+    private void unlock(List<String> productIds) {
+        if (lockStripes != null) {
+            lockStripes.unlockAll(productIds);
+        }
+    }
+
+    private void createTableIfMissing() throws SQLException {
+        try (Connection conn = connectionPool.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            try (ResultSet tables = metaData.getTables(null, null, "RESERVATIONTABLE", null)) {
+                if (tables.next()) {
+                    return;
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(CREATE_TABLE_SQL);
+                log.info("Created ReservationTable");
+            } catch (SQLException e) {
+                if (!"X0Y32".equals(e.getSQLState())) { // X0Y32 = another process created it first
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void loadExistingHolds() throws SQLException {
+        String query = "SELECT reservationID, productID, quantity, expiresAt FROM ReservationTable";
+        try (Connection conn = connectionPool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                index(new Reservation(rs.getLong("reservationID"), rs.getString("productID").trim(),
+                        rs.getInt("quantity"), rs.getLong("expiresAt")));
+            }
+        }
+        if (!active.isEmpty()) {
+            log.info("Loaded " + active.size() + " stock reservation(s) from ReservationTable");
+        }
+    }
+
+    private void index(Reservation reservation) {
+        active.put(reservation.getReservationId(), reservation);
+        byExpiry.add(reservation);
+    }
+
+    private void unindex(Reservation reservation) {
+        if (active.remove(reservation.getReservationId()) != null) {
+            byExpiry.remove(reservation);
+        }
+    }
+
+    private void notifyStockChanged(Map<String, Integer> deltas) {
+        if (stockChanged != null && !deltas.isEmpty()) {
+            stockChanged.accept(deltas);
+        }
+    }
+
+    private void invalidate(String productId) {
+        if (productCache != null) {
+            productCache.invalidate(productId);
+        }
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    // Whether a hold of this JVM is not yet confirmed, released or expired
+    public boolean isActive(Reservation reservation) {
+        return active.containsKey(reservation.getReservationId());
+    }
+
+    // The number of holds of this JVM that are not yet confirmed, released or expired
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * Stops the sweeper thread. Active holds stay in ReservationTable and are swept after the next start.
+     */
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * @return a snapshot of the reservation counters
+     */
+    public Statistics getStatistics() {
+        return new Statistics(active.size(), reservedCount.sum(), refusedCount.sum(), confirmedCount.sum(),
+                releasedCount.sum(), expiredCount.sum());
+    }
+
+    /**
+     * One hold on stock. Immutable.
+     */
+    public static class Reservation {
+        private final long reservationId;
+        private final String productId;
+        private final int quantity;
+        private final long expiresAtMillis;
+
+        Reservation(long reservationId, String productId, int quantity, long expiresAtMillis) {
+            this.reservationId = reservationId;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public long getReservationId() { return reservationId; }
+        public String getProductId() { return productId; }
+        public int getQuantity() { return quantity; }
+        public long getExpiresAtMillis() { return expiresAtMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("Reservation[%d: %d x %s]", reservationId, quantity, productId);
+        }
+    }
+
+    /**
+     * A point-in-time snapshot of the reservation counters.
+     */
+    public static class Statistics {
+        private final int active;
+        private final long reserved;
+        private final long refused;
+        private final long confirmed;
+        private final long released;
+        private final long expired;
+
+        private Statistics(int active, long reserved, long refused, long confirmed, long released, long expired) {
+            this.active = active;
+            this.reserved = reserved;
+            this.refused = refused;
+            this.confirmed = confirmed;
+            this.released = released;
+            this.expired = expired;
+        }
+
+        public int getActive() { return active; }
+        public long getReserved() { return reserved; }
+        public long getRefused() { return refused; }
+        public long getConfirmed() { return confirmed; }
+        public long getReleased() { return released; }
+        public long getExpired() { return expired; }
+
+        @Override
+        public String toString() {
+            return String.format("StockReservations[active=%d, reserved=%d, refused=%d, confirmed=%d, " +
+                    "released=%d, expired=%d]", active, reserved, refused, confirmed, released, expired);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.diagnostics.DiagnosticLog;
+import ci553.happyshop.diagnostics.Diagnostics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StorageMetrics collects, for every DatabaseRW method, how often it was called, how often it failed,
+ * how many products it returned or wrote, and a LatencyHistogram of how long it took.
+ * InstrumentedDatabaseRW records into it; DatabaseRWFactory shares one StorageMetrics between all clients,
+ * so the numbers cover the whole shop.
+ *
+ * Reading the numbers:
+ * - getStatistics() returns a snapshot per method since start (or the last reset()),
+ *   eg getStatistics().get("purchaseStocks").getP99Nanos().
+ * - reset() starts every method again from zero.
+ * - startSummaryDump() logs a summary line per method every interval (only the methods called since the
+ *   last summary). Every method keeps a second set of counters for this, which each summary starts from zero,
+ *   so a summary shows the last interval on its own while getStatistics() still covers the whole run.
+ */
+
+public class StorageMetrics {
+    private static final DiagnosticLog log = Diagnostics.getLog(StorageMetrics.class);
+
+    private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private ScheduledExecutorService summaryDumper; // guarded by this, null until startSummaryDump
+
+    /**
+     * Records one call of a DatabaseRW method.
+     * @param rows   the products the call returned or wrote
+     * @param failed true if the call threw
+     */
+    public void record(String method, long nanos, int rows, boolean failed) {
+        MethodMetrics metrics = methods.computeIfAbsent(method, name -> new MethodMetrics());
+        metrics.total.record(nanos, rows, failed);
+        metrics.interval.record(nanos, rows, failed);
+    }
+
+    /**
+     * @return a snapshot per method since start (or the last reset()), sorted by method name
+     */
+    public Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> statistics = new LinkedHashMap<>();
+        methods.keySet().stream().sorted().forEach(method ->
+                statistics.put(method, methods.get(method).total.snapshot(method)));
+        return statistics;
+    }
+
+    /**
+     * Starts every method again from zero, both the totals and the interval of the next summary.
+     */
+    public void reset() {
+        methods.values().forEach(metrics -> {
+            metrics.total.snapshotAndReset(null);
+            metrics.interval.snapshotAndReset(null);
+        });
+    }
+
+    // the snapshot of every method that was called since the last summary, then starts the interval from zero;
+    // the totals behind getStatistics() are left alone
+    Map<String, Statistics> intervalSnapshotAndReset() {
+        Map<String, Statistics> statistics = new LinkedHashMap<>();
+        methods.keySet().stream().sorted().forEach(method -> {
+            Statistics interval = methods.get(method).interval.snapshotAndReset(method);
+            if (interval.getCalls() > 0) {
+                statistics.put(method, interval);
+            }
+        });
+        return statistics;
+    }
+
+    /**
+     * Logs a summary of the last interval every intervalMillis, on a daemon thread. Calling it again has no effect.
+     */
+    public synchronized void startSummaryDump(long intervalMillis) {
+        if (summaryDumper != null || intervalMillis <= 0) {
+            return;
+        }
+        summaryDumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "StorageMetrics-summary");
+            thread.setDaemon(true); // must not keep the JVM alive on exit
+            return thread;
+        });
+        summaryDumper.scheduleAtFixedRate(this::dumpSummary, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void dumpSummary() {
+        Map<String, Statistics> interval = intervalSnapshotAndReset();
+        if (interval.isEmpty()) {
+            return; // nothing was called, nothing to say
+        }
+        StringBuilder summary = new StringBuilder("Storage latency since the last summary:");
+        for (Statistics statistics : interval.values()) {
+            summary.append("\n  ").append(statistics);
+        }
+        log.info(summary.toString());
+    }
+
+    /**
+     * Stops the summary dump.
+     */
+    public synchronized void close() {
+        if (summaryDumper != null) {
+            summaryDumper.shutdownNow();
+            summaryDumper = null;
+        }
+    }
+
+    private static class MethodMetrics {
+        private final Counters total = new Counters();    // since start or the last reset(), for getStatistics()
+        private final Counters interval = new Counters(); // since the last summary, for the summary dump
+    }
+
+    private static class Counters {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        private void record(long nanos, int rowCount, boolean failed) {
+            latency.record(nanos);
+            calls.increment();
+            rows.add(rowCount);
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        private Statistics snapshot(String method) {
+            return new Statistics(method, calls.sum(), errors.sum(), rows.sum(), latency.snapshot());
+        }
+
+        private Statistics snapshotAndReset(String method) {
+            long callCount = calls.sumThenReset();
+            long errorCount = errors.sumThenReset();
+            long rowCount = rows.sumThenReset();
+            return new Statistics(method, callCount, errorCount, rowCount, latency.snapshotAndReset());
+        }
+    }
+
+    /**
+     * A point-in-time snapshot of one DatabaseRW method.
+     */
+    public static class Statistics {
+        private final String method;
+        private final long calls;
+        private final long errors;
+        private final long rows;
+        private final LatencyHistogram.Snapshot latency;
+
+        private Statistics(String method, long calls, long errors, long rows, LatencyHistogram.Snapshot latency) {
+            this.method = method;
+            this.calls = calls;
+            this.errors = errors;
+            this.rows = rows;
+            this.latency = latency;
+        }
+
+        public String getMethod() { return method; }
+        public long getCalls() { return calls; }
+        public long getErrors() { return errors; }
+        public long getRows() { return rows; }
+        public LatencyHistogram.Snapshot getLatency() { return latency; }
+        public long getP50Nanos() { return latency.getValueAtPercentile(50); }
+        public long getP99Nanos() { return latency.getValueAtPercentile(99); }
+        public long getP999Nanos() { return latency.getValueAtPercentile(99.9); }
+
+        @Override
+        public String toString() {
+            return String.format("%s[calls=%d, errors=%d, rows=%d, %s]", method, calls, errors, rows, latency);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ci553.happyshop.storageAccess;
+
+/**
+ * Where DatabaseRWFactory.createDatabaseRW() keeps products.
+ *
+ * - DERBY: the Derby database (DerbyRW), the normal choice, products survive a restart.
+ * - IN_MEMORY: one shared InMemoryRW, nothing is written to disk. Used for load tests and benchmarks
+ *   of the rest of the system without database noise; everything is lost when the JVM exits.
+ *
+ * The storage type is chosen in DatabaseRWFactory.storageType.
+ */
+
+public enum StorageType {
+    DERBY,
+    IN_MEMORY
+}
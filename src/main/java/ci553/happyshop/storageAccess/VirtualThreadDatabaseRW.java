@@ -0,0 +1,224 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * VirtualThreadDatabaseRW implements AsyncDatabaseRW by running each call of a blocking DatabaseRW
+ * on its own virtual thread.
+ *
+ * Virtual threads are cheap enough to create one per call, so there is no thread pool to size: a model can
+ * start many lookups at once and each one simply waits for the database (or for a pooled connection)
+ * without holding up a platform thread or the FX thread.
+ *
+ * Reads are given a timeout (timeoutMillis, changeable per call with withTimeout()). When a read times out,
+ * or its future is cancelled, the virtual thread running it is interrupted.
+ *
+ * Writes (purchaseStocks, updateProduct, adjustStock, deleteProduct, insertNewProduct(s)) get no timeout and are
+ * never interrupted: a write that timed out could still commit after the caller was told it failed, and
+ * interrupting embedded Derby during I/O can make it close the connection. Their future always ends with the
+ * write's real outcome. Cancelling it only stops the caller waiting; the write carries on, and the caller
+ * must treat its outcome as unknown.
+ */
+
+public class VirtualThreadDatabaseRW implements AsyncDatabaseRW {
+    private final DatabaseRW databaseRW;
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+    private final Counters counters;
+
+    public VirtualThreadDatabaseRW(DatabaseRW databaseRW, long timeoutMillis) {
+        this(databaseRW, Executors.newVirtualThreadPerTaskExecutor(), timeoutMillis, new Counters());
+    }
+
+    private VirtualThreadDatabaseRW(DatabaseRW databaseRW, ExecutorService executor, long timeoutMillis,
+                                    Counters counters) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+        }
+        this.databaseRW = databaseRW;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+        this.counters = counters;
+    }
+
+    @Override
+    public CompletableFuture<ArrayList<Product>> searchProduct(String keyword) {
+        return call(() -> databaseRW.searchProduct(keyword));
+    }
+
+    @Override
+    public CompletableFuture<Product> searchByProductId(String productId) {
+        return call(() -> databaseRW.searchByProductId(productId));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Product>> searchByProductIds(Collection<String> productIds) {
+        return call(() -> databaseRW.searchByProductIds(productIds));
+    }
+
+    @Override
+    public CompletableFuture<ProductPage> searchProductPage(String keyword, String afterProductId, int pageSize) {
+        return call(() -> databaseRW.searchProductPage(keyword, afterProductId, pageSize));
+    }
+
+    @Override
+    public CompletableFuture<ArrayList<Product>> purchaseStocks(ArrayList<Product> proList) {
+        return write(() -> databaseRW.purchaseStocks(proList));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateProduct(String id, String des, long pricePence, String imageName, int stock) {
+        return write(() -> {
+            databaseRW.updateProduct(id, des, pricePence, imageName, stock);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> adjustStock(Map<String, Integer> deltas) {
+        return write(() -> databaseRW.adjustStock(deltas));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteProduct(String id) {
+        return write(() -> {
+            databaseRW.deleteProduct(id);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertNewProduct(String id, String des, long pricePence, String image, int stock) {
+        return write(() -> {
+            databaseRW.insertNewProduct(id, des, pricePence, image, stock);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> insertNewProducts(List<Product> products) {
+        return write(() -> {
+            databaseRW.insertNewProducts(products);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isProIdAvailable(String productId) {
+        return call(() -> databaseRW.isProIdAvailable(productId));
+    }
+
+    @Override
+    public AsyncDatabaseRW withTimeout(long newTimeoutMillis) {
+        return new VirtualThreadDatabaseRW(databaseRW, executor, newTimeoutMillis, counters);
+    }
+
+    @Override
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    @Override
+    public DatabaseRW getDatabaseRW() {
+        return databaseRW;
+    }
+
+    // Runs a read on a new virtual thread; a timeout or cancel() interrupts that thread
+    private <T> CompletableFuture<T> call(Callable<T> databaseCall) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = submit(databaseCall, result);
+
+        result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, error) -> {
+            if (error instanceof TimeoutException) {
+                counters.timeouts.increment();
+                task.cancel(true);
+            } else if (error instanceof CancellationException) {
+                counters.cancellations.increment();
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // Runs a write on a new virtual thread, with no timeout and never interrupted, see the class comment
+    private <T> CompletableFuture<T> write(Callable<T> databaseCall) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        submit(databaseCall, result);
+        result.whenComplete((value, error) -> {
+            if (error instanceof CancellationException) {
+                counters.cancellations.increment(); // the caller stopped waiting, the write goes on
+            }
+        });
+        return result;
+    }
+
+    private <T> Future<?> submit(Callable<T> databaseCall, CompletableFuture<T> result) {
+        counters.calls.increment();
+        return executor.submit(() -> {
+            try {
+                result.complete(databaseCall.call());
+            } catch (Throwable e) {
+                counters.failures.increment();
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * @return a snapshot of the call counters, shared by this object and every withTimeout() view of it
+     */
+    public Statistics getStatistics() {
+        return new Statistics(counters.calls.sum(), counters.failures.sum(), counters.timeouts.sum(),
+                counters.cancellations.sum());
+    }
+
+    private static class Counters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder cancellations = new LongAdder();
+    }
+
+    /**
+     * A point-in-time snapshot of the call counters.
+     */
+    public static class Statistics {
+        private final long calls;
+        private final long failures;
+        private final long timeouts;
+        private final long cancellations;
+
+        private Statistics(long calls, long failures, long timeouts, long cancellations) {
+            this.calls = calls;
+            this.failures = failures;
+            this.timeouts = timeouts;
+            this.cancellations = cancellations;
+        }
+
+        public long getCalls() { return calls; }
+        public long getFailures() { return failures; }          // the DatabaseRW call threw
+        public long getTimeouts() { return timeouts; }
+        public long getCancellations() { return cancellations; }
+
+        @Override
+        public String toString() {
+            return String.format("VirtualThreadDatabaseRW[calls=%d, failed=%d, timed out=%d, cancelled=%d]",
+                    calls, failures, timeouts, cancellations);
+        }
+    }
+}
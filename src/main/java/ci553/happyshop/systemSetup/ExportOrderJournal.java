@@ -0,0 +1,25 @@
+package ci553.happyshop.systemSetup;
+
+import ci553.happyshop.storageAccess.OrderJournal;
+import ci553.happyshop.utility.StorageLocation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * This class exports the orders kept in the OrderJournal (orders/journal) as the text files
+ * the shop kept before the journal: one "<orderId>.txt" per order, in an ordered, progressing or collected folder.
+ *
+ * Usage: ExportOrderJournal [target folder], the default target folder is orders/export.
+ * It only reads the journal, so it may be run while the shop is open.
+ */
+
+public class ExportOrderJournal {
+
+    public static void main(String[] args) throws IOException {
+        Path target = args.length > 0 ? Paths.get(args[0]) : StorageLocation.ordersPath.resolve("export");
+        int orders = OrderJournal.exportTextFiles(StorageLocation.orderJournalPath, target);
+        System.out.println("Exported " + orders + " orders to " + target);
+    }
+}
@@ -0,0 +1,122 @@
+package ci553.happyshop.utility;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money holds the helpers for prices, which the system keeps as a whole number of pence in a long
+ * (eg £29.99 is 2999), so adding up a trolley or a receipt is exact.
+ *
+ * - parsePence() reads a price typed by the warehouse or given in a CSV file ("29.99", "30", "7.5").
+ * - toPence() converts a price in pounds, for code that still has a double.
+ * - appendPounds() and appendPoundsRight() write a price as pounds with two decimals ("29.99")
+ *   straight into a StringBuilder, digit by digit, instead of going through String.format.
+ *   They give the same text as String.format("%.2f") and "%7.2f", without creating a Formatter
+ *   and its temporary strings for every line of a receipt.
+ */
+
+public class Money {
+    private Money() {
+    }
+
+    // the largest price in pence parsePence accepts, so a typo of many digits cannot overflow a total
+    public static final long MAX_PENCE = 100_000_000_000L; // £1,000,000,000.00
+
+    /**
+     * Converts a price in pounds to pence, rounding to the nearest penny (halves up).
+     * The decimal the double was written as is rounded, not the binary value: 2.675 is 268 pence,
+     * where Math.round(2.675 * 100) gives 267 because 2.675 is stored as 2.67499999...
+     */
+    public static long toPence(double pounds) {
+        return BigDecimal.valueOf(pounds).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * Converts a price in pence to pounds, only for code that needs a double (eg a chart).
+     */
+    public static double toPounds(long pence) {
+        return pence / 100.0;
+    }
+
+    /**
+     * Reads a price in pounds with at most two decimals, eg "29.99", "30", "30." or "7.5", without going through a double.
+     * @throws NumberFormatException if the text is not such a price, or is above MAX_PENCE
+     */
+    public static long parsePence(String text) {
+        String trimmed = text.trim();
+        int dot = trimmed.indexOf('.');
+        String pounds = dot < 0 ? trimmed : trimmed.substring(0, dot);
+        String decimals = dot < 0 ? "" : trimmed.substring(dot + 1);
+        if (pounds.isEmpty() || decimals.length() > 2 || !isDigits(pounds) || !isDigits(decimals)) {
+            throw new NumberFormatException("Not a price with at most two decimals: \"" + text + "\"");
+        }
+        if (pounds.length() > 10) {
+            throw new NumberFormatException("Price is too large: \"" + text + "\"");
+        }
+
+        long pence = Long.parseLong(pounds) * 100;
+        if (decimals.length() == 2) {
+            pence += Integer.parseInt(decimals);
+        } else if (decimals.length() == 1) {
+            pence += (decimals.charAt(0) - '0') * 10;
+        }
+        if (pence > MAX_PENCE) {
+            throw new NumberFormatException("Price is too large: \"" + text + "\"");
+        }
+        return pence;
+    }
+
+    private static boolean isDigits(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the price as pounds with two decimals, eg 2999 -> "29.99"
+     */
+    public static String format(long pence) {
+        return appendPounds(new StringBuilder(12), pence).toString();
+    }
+
+    /**
+     * Appends the price as pounds with two decimals, eg 2999 -> "29.99", 5 -> "0.05", -150 -> "-1.50".
+     */
+    public static StringBuilder appendPounds(StringBuilder sb, long pence) {
+        if (pence < 0) {
+            sb.append('-');
+        }
+        long abs = Math.abs(pence); // pence is never Long.MIN_VALUE, parsePence and totals stay far below it
+        int penny = (int) (abs % 100);
+        return sb.append(abs / 100)
+                .append('.')
+                .append((char) ('0' + penny / 10))
+                .append((char) ('0' + penny % 10));
+    }
+
+    /**
+     * Appends the price like appendPounds(), right-aligned with spaces to at least width characters
+     * (the same as String.format("%7.2f") for a width of 7).
+     */
+    public static StringBuilder appendPoundsRight(StringBuilder sb, long pence, int width) {
+        long pounds = Math.abs(pence) / 100;
+        int length = digitCount(pounds) + 3 + (pence < 0 ? 1 : 0); // digits, the dot and two decimals
+        for (int i = length; i < width; i++) {
+            sb.append(' ');
+        }
+        return appendPounds(sb, pence);
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
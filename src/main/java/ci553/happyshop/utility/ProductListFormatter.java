@@ -9,9 +9,14 @@ import java.util.ArrayList;
  * It is used by:
  * 1. CustomerModel – to display the trolley and receipt
  * 2. The Order class – to generate a summary for writing to an order's file
+ *
+ * Prices are added up in pence (long), so the total is exact, and each line is appended
+ * field by field into one StringBuilder (see Money) instead of going through String.format.
  */
 
 public class ProductListFormatter {
+    private static final int LINE_LENGTH = 45; // the length of every line, including the newline
+
     /**
      * Builds a formatted string showing each product's ID, description,
      * quantity ordered, and total price. Also includes a total price at the end.
@@ -19,28 +24,44 @@ public class ProductListFormatter {
      * @return A nicely formatted string representation of the product list with totals
      */
     public static String buildString(ArrayList<Product> proList) {
-        StringBuilder sb = new StringBuilder();
-        double totalPrice=0;
+        StringBuilder sb = new StringBuilder((proList.size() + 2) * LINE_LENGTH);
+        long totalPence = 0;
         for (Product pr : proList) {
             int orderedQuantity = pr.getOrderedQuantity();
-            //%-18.18s, format the argument as a String,
+            long linePence = pr.getUnitPricePence() * orderedQuantity;
+
+            // same layout as String.format(" %-7s %-18.18s (%2d) £%7.2f\n", ...)
             // -18 → Left-align the string in 18-character wide space.
             //.18 → Truncate the string to at most 18 characters
-            String aProduct=String.format(" %-7s %-18.18s (%2d) £%7.2f\n",
-                    pr.getProductId(),
-                    pr.getProductDescription(),
-                    pr.getOrderedQuantity(),
-                    pr.getUnitPrice() * orderedQuantity);
-
-            sb.append(aProduct);
-            totalPrice = totalPrice + pr.getUnitPrice() * orderedQuantity;
-        }
+            sb.append(' ');
+            appendLeft(sb, pr.getProductId(), 7, Integer.MAX_VALUE);
+            sb.append(' ');
+            appendLeft(sb, pr.getProductDescription(), 18, 18);
+            sb.append(" (");
+            if (orderedQuantity >= 0 && orderedQuantity < 10) {
+                sb.append(' ');
+            }
+            sb.append(orderedQuantity).append(") £");
+            Money.appendPoundsRight(sb, linePence, 7).append('\n');
 
-        String lineSeparator = "-".repeat(44) + "\n";
-        String total = String.format(" %-35s £%7.2f\n", "Total", totalPrice);
+            totalPence = totalPence + linePence;
+        }
 
-        sb.append(lineSeparator);
-        sb.append(total);
+        sb.append("-".repeat(44)).append('\n');
+        sb.append(' ');
+        appendLeft(sb, "Total", 35, Integer.MAX_VALUE); // " %-35s £%7.2f\n"
+        sb.append(" £");
+        Money.appendPoundsRight(sb, totalPence, 7).append('\n');
         return sb.toString();
     }
+
+    // appends text cut to maxLength characters, padded with spaces on the right to width
+    private static void appendLeft(StringBuilder sb, String text, int width, int maxLength) {
+        String value = String.valueOf(text);
+        int length = Math.min(value.length(), maxLength);
+        sb.append(value, 0, length);
+        for (int i = length; i < width; i++) {
+            sb.append(' ');
+        }
+    }
 }
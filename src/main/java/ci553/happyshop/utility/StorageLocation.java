@@ -25,12 +25,20 @@ import java.nio.file.Paths;
  *         Subfolder to store orders in the "Progressing" state (e.g., being prepared by a picker).
  *    - collectedPath:
  *         Subfolder to store orders in the "Collected" state (e.g., customer collected).
+ *    - orderJournalPath:
+ *         Subfolder for the segment files of the OrderJournal, used instead of the three folders above
+ *         when OrderHub.orderStoreType is JOURNAL.
  *
  * 3. Order ID Tracking:
  *    - orderCounterFile / orderCounterPath:
  *         A text file (orders/orderCounter.txt) used to track and increment the unique order ID
  *         when a new order is created.
  *
+ * 4. Catalogue Snapshot:
+ *    - catalogueSnapshotFile / catalogueSnapshotPath:
+ *         A binary copy of ProductTable (catalogue.snapshot) written on a clean shutdown,
+ *         used for a warm start (see CatalogueSnapshot).
+ *
  * These static paths ensure consistent folder usage throughout the application and simplify
  * file-related operations such as reset, loading, and persistence.
  *
@@ -60,8 +68,13 @@ public class StorageLocation {
     public static final Path orderedPath = ordersPath.resolve("ordered");//orders/ordered to store orders at Ordered state
     public static final Path progressingPath = ordersPath.resolve("progressing");// orders/progressing to store orders at Progressing state
     public static final Path collectedPath = ordersPath.resolve("collected");//orders/collected to store orders at Collected state
+    public static final Path orderJournalPath = ordersPath.resolve("journal");//orders/journal for the OrderJournal segments
 
     //OrderCounter File and its Path, ie orders/orderCounter.txt
     public static final String orderCounterFile = "orderCounter.txt";
     public static final Path orderCounterPath = ordersPath.resolve(orderCounterFile);
+
+    //Catalogue snapshot File and its Path, ie catalogue.snapshot next to happyShopDB
+    public static final String catalogueSnapshotFile = "catalogue.snapshot";
+    public static final Path catalogueSnapshotPath = Paths.get(catalogueSnapshotFile);
 }
@@ -0,0 +1,46 @@
+package ci553.happyshop.utility;
+
+import java.util.Arrays;
+
+/**
+ * Reads the -D settings HappyShop can be started with, eg -Dhappyshop.derby.mode=NETWORK.
+ *
+ * Enum settings are read leniently: case and surrounding spaces are ignored, so "network" works as well as "NETWORK".
+ * A value that names no constant must not stop the class holding the setting from loading (that would surface as an
+ * ExceptionInInitializerError, and then a NoClassDefFoundError on every later use of the class), so enumProperty()
+ * returns null for it, and requireEnum() fails with a message naming the property where the setting is first used.
+ */
+
+public class SystemProperties {
+
+    private SystemProperties() {
+    }
+
+    /**
+     * @return the constant the property names, defaultValue if the property is not set, null if it names no constant
+     */
+    public static <E extends Enum<E>> E enumProperty(String name, Class<E> type, E defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value.strip())) {
+                return constant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the setting, if it is not null
+     * @throws IllegalStateException naming the property and the values it accepts, if the setting is null
+     */
+    public static <E extends Enum<E>> E requireEnum(E setting, String name, Class<E> type) {
+        if (setting == null) {
+            throw new IllegalStateException("-D" + name + "=" + System.getProperty(name) + " is not valid, use one of "
+                    + Arrays.toString(type.getEnumConstants()));
+        }
+        return setting;
+    }
+}
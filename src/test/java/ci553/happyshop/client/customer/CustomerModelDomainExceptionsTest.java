@@ -88,7 +88,7 @@ public class CustomerModelDomainExceptionsTest {
     // Helpers
     private Product makeProduct(String id, String desc, double price, int stockQty) {
         // Image can be anything for unit tests
-        return new Product(id, desc, "imageHolder.jpg", price, stockQty);
+        return Product.ofPounds(id, desc, "imageHolder.jpg", price, stockQty);
     }
 
     /**
@@ -101,7 +101,7 @@ public class CustomerModelDomainExceptionsTest {
         boolean simulateStockChangeOnPurchase = false;
 
         void putStockProduct(String id, String desc, double price, int stockQty) {
-            stock.put(id, new Product(id, desc, "imageHolder.jpg", price, stockQty));
+            stock.put(id, Product.ofPounds(id, desc, "imageHolder.jpg", price, stockQty));
         }
 
         @Override
@@ -115,7 +115,7 @@ public class CustomerModelDomainExceptionsTest {
                     p.getProductId(),
                     p.getProductDescription(),
                     p.getProductImageName(),
-                    p.getUnitPrice(),
+                    p.getUnitPricePence(),
                     p.getStockQuantity()
             );
             copy.setOrderedQuantity(p.getOrderedQuantity());
@@ -134,7 +134,7 @@ public class CustomerModelDomainExceptionsTest {
                             requested.getProductId(),
                             "Unknown product",
                             "imageHolder.jpg",
-                            requested.getUnitPrice(),
+                            requested.getUnitPricePence(),
                             0
                     );
                     missing.setOrderedQuantity(requested.getOrderedQuantity());
@@ -151,7 +151,7 @@ public class CustomerModelDomainExceptionsTest {
                             db.getProductId(),
                             db.getProductDescription(),
                             db.getProductImageName(),
-                            db.getUnitPrice(),
+                            db.getUnitPricePence(),
                             available
                     );
                     failed.setOrderedQuantity(reqQty);
@@ -164,7 +164,7 @@ public class CustomerModelDomainExceptionsTest {
                             db.getProductId(),
                             db.getProductDescription(),
                             db.getProductImageName(),
-                            db.getUnitPrice(),
+                            db.getUnitPricePence(),
                             available
                     );
                     failed.setOrderedQuantity(reqQty);
@@ -173,7 +173,7 @@ public class CustomerModelDomainExceptionsTest {
                     // update stock (commit)
                     stock.put(db.getProductId(),
                             new Product(db.getProductId(), db.getProductDescription(), db.getProductImageName(),
-                                    db.getUnitPrice(), available - reqQty));
+                                    db.getUnitPricePence(), available - reqQty));
                 }
             }
 
@@ -188,7 +188,7 @@ public class CustomerModelDomainExceptionsTest {
         }
 
         @Override
-        public void updateProduct(String proId, String description, double unitPrice, String image, int inStockQty)
+        public void updateProduct(String proId, String description, long unitPricePence, String image, int inStockQty)
                 throws SQLException {
             // Not needed for these tests
         }
@@ -199,7 +199,7 @@ public class CustomerModelDomainExceptionsTest {
         }
 
         @Override
-        public void insertNewProduct(String proId, String description, double unitPrice, String image, int inStockQty)
+        public void insertNewProduct(String proId, String description, long unitPricePence, String image, int inStockQty)
                 throws SQLException {
             // Not needed for these tests
         }
@@ -0,0 +1,151 @@
+package ci553.happyshop.client.customer;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.DatabaseRWFactory;
+import ci553.happyshop.storageAccess.DerbyRW;
+import ci553.happyshop.storageAccess.DerbyTestDatabase;
+import ci553.happyshop.storageAccess.StockReservations;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stock holds as the customer sees them, run against an in-memory Derby database.
+ * These tests avoid OrderHub/file creation by making checkout fail before an order is created.
+ */
+class CustomerModelReservationTest {
+
+    private DerbyTestDatabase db;
+    private StockReservations reservations;
+    private CustomerModel model;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new DerbyTestDatabase("customerHoldsTestDB");
+        db.execute("INSERT INTO ProductTable VALUES ('0001', 'TV', 26900, '0001.jpg', 5)",
+                "INSERT INTO ProductTable VALUES ('0002', 'Radio', 2999, '0002.jpg', 1)");
+        reservations = new StockReservations(DatabaseRWFactory.getConnectionPool(), null, 60000, 0);
+        model = newCustomer(reservations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        reservations.close();
+        db.close();
+    }
+
+    private static CustomerModel newCustomer(StockReservations reservations) {
+        CustomerModel customer = new CustomerModel();
+        customer.databaseRW = new DerbyRW();
+        customer.reservations = reservations;
+        return customer;
+    }
+
+    private static Product line(String id, int quantity) {
+        Product product = Product.ofPence(id, "", id + ".jpg", 100, 0);
+        product.setOrderedQuantity(quantity);
+        return product;
+    }
+
+    private static void addToTrolley(CustomerModel customer, Product product) {
+        customer.showProductForTest(product);
+        customer.addToTrolley();
+    }
+
+    @Test
+    void addingToTrolley_holdsTheStock_andCancelGivesItBack() throws SQLException {
+        addToTrolley(model, line("0001", 3));
+        assertEquals(2, db.stockOf("0001"));
+
+        CustomerModel other = newCustomer(reservations);
+        addToTrolley(other, line("0001", 3)); // only 2 left that are not held
+        assertTrue(other.getTrolley().isEmpty());
+
+        model.cancel();
+        assertEquals(5, db.stockOf("0001"));
+        assertEquals(0, reservations.getActiveCount());
+    }
+
+    @Test
+    void checkoutThatFailsOnAnotherLine_keepsTheHeldUnitsForTheTrolley() throws IOException, SQLException {
+        addToTrolley(model, line("0001", 3));
+        model.addProductToTrolleyForTest(line("0002", 2)); // not held, and only 1 in stock
+
+        model.checkOut();
+
+        // the short line is removed, the held line stays in the trolley and keeps its hold
+        assertEquals(List.of("0001"), model.getTrolley().stream().map(Product::getProductId).toList());
+        assertEquals(2, db.stockOf("0001"));
+        assertEquals(1, db.stockOf("0002"));
+        assertEquals(1, reservations.getActiveCount());
+
+        model.cancel(); // the restored hold belongs to the trolley, so cancelling gives it back
+        assertEquals(5, db.stockOf("0001"));
+    }
+
+    @Test
+    void expiredHold_isNotBought_whenItsStockWasSoldMeanwhile() throws Exception {
+        StockReservations shortHolds = new StockReservations(DatabaseRWFactory.getConnectionPool(), null, 200, 0);
+        try {
+            CustomerModel customer = newCustomer(shortHolds);
+            addToTrolley(customer, line("0002", 1));
+            assertEquals(0, db.stockOf("0002"));
+
+            Thread.sleep(300);
+            assertEquals(1, shortHolds.sweepExpired());
+            assertTrue(new DerbyRW().purchaseStocks(new ArrayList<>(List.of(line("0002", 1)))).isEmpty());
+
+            customer.checkOut();
+
+            assertTrue(customer.getTrolley().isEmpty());
+            assertEquals(0, db.stockOf("0002")); // sold once, to the other customer
+            assertEquals(0, shortHolds.getActiveCount());
+        } finally {
+            shortHolds.close();
+        }
+    }
+
+    @Test
+    void stockCount_whileAHoldIsActive_isNotInflatedWhenTheHoldIsReleased() throws SQLException {
+        addToTrolley(model, line("0001", 2));
+        assertEquals(3, db.stockOf("0001"));
+
+        // the warehouse counts 4 on the shelf, 2 of them in this trolley
+        new DerbyRW().updateProduct("0001", "TV", 26900, "0001.jpg", 4);
+        assertEquals(2, db.stockOf("0001"));
+
+        model.cancel();
+        assertEquals(4, db.stockOf("0001"));
+        assertEquals(0, reservations.getReservedQuantity("0001"));
+    }
+
+    @Test
+    void stockCount_lowerThanTheHeldUnits_dropsTheHolds() throws SQLException {
+        addToTrolley(model, line("0001", 3));
+
+        new DerbyRW().updateProduct("0001", "TV", 26900, "0001.jpg", 1);
+        assertEquals(1, db.stockOf("0001"));
+        assertEquals(0, reservations.getReservedQuantity("0001"));
+
+        model.cancel(); // the dropped hold is not given back on top of the count
+        assertEquals(1, db.stockOf("0001"));
+    }
+
+    @Test
+    void deletedProduct_isNotBoughtThroughItsHold() throws IOException, SQLException {
+        addToTrolley(model, line("0001", 2));
+
+        new DerbyRW().deleteProduct("0001");
+        assertEquals(0, reservations.getReservedQuantity("0001"));
+
+        model.checkOut();
+        assertTrue(model.getTrolley().isEmpty());
+    }
+}
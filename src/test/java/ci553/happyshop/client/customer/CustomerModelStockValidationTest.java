@@ -27,7 +27,7 @@ class CustomerModelStockValidationTest {
         private boolean purchaseStocksCalled = false;
 
         void putStock(String id, String description, int stockQty) {
-            Product p = new Product(id, description, id + ".jpg", 1.00, stockQty);
+            Product p = Product.ofPounds(id, description, id + ".jpg", 1.00, stockQty);
             stockMap.put(id, p);
         }
 
@@ -53,7 +53,7 @@ class CustomerModelStockValidationTest {
                         inDb.getProductId(),
                         inDb.getProductDescription(),
                         inDb.getProductImageName(),
-                        inDb.getUnitPrice(),
+                        inDb.getUnitPricePence(),
                         inDb.getStockQuantity()
                 );
                 copy.setOrderedQuantity(inDb.getOrderedQuantity());
@@ -75,13 +75,13 @@ class CustomerModelStockValidationTest {
                     if (inDb == null || inDb.getStockQuantity() < requested.getOrderedQuantity()) {
                         Product fail;
                         if (inDb == null) {
-                            fail = new Product(requested.getProductId(), "Unknown product", "imageHolder.jpg", 1.00, 0);
+                            fail = Product.ofPounds(requested.getProductId(), "Unknown product", "imageHolder.jpg", 1.00, 0);
                         } else {
                             fail = new Product(
                                     inDb.getProductId(),
                                     inDb.getProductDescription(),
                                     inDb.getProductImageName(),
-                                    inDb.getUnitPrice(),
+                                    inDb.getUnitPricePence(),
                                     inDb.getStockQuantity()
                             );
                         }
@@ -95,7 +95,7 @@ class CustomerModelStockValidationTest {
                                 inDb.getProductId(),
                                 inDb.getProductDescription(),
                                 inDb.getProductImageName(),
-                                inDb.getUnitPrice(),
+                                inDb.getUnitPricePence(),
                                 newStock
                         );
                         stockMap.put(inDb.getProductId(), updated);
@@ -122,6 +122,12 @@ class CustomerModelStockValidationTest {
                 return defaultReturn(method.getReturnType());
             }
 
+            // Default interface methods (eg searchByProductIds) run their own code,
+            // which calls back into this handler for searchByProductId
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+
             // --- Fallback: return safe defaults for anything else ---
             return defaultReturn(method.getReturnType());
         }
@@ -161,7 +167,7 @@ class CustomerModelStockValidationTest {
     private DatabaseRW buildFakeDatabase(FakeDbHandler handler) {
         return (DatabaseRW) Proxy.newProxyInstance(
                 DatabaseRW.class.getClassLoader(),
-                new Class[]{DatabaseRW.class},
+                new Class<?>[]{DatabaseRW.class},
                 handler
         );
     }
@@ -176,10 +182,10 @@ class CustomerModelStockValidationTest {
 
         model.databaseRW = buildFakeDatabase(handler);
 
-        Product p1 = new Product("0001", "Apples", "0001.jpg", 1.00, 1);
+        Product p1 = Product.ofPounds("0001", "Apples", "0001.jpg", 1.00, 1);
         p1.setOrderedQuantity(2); // request 2 but only 1 exists
 
-        Product p2 = new Product("0002", "Radio", "0002.jpg", 10.00, 10);
+        Product p2 = Product.ofPounds("0002", "Radio", "0002.jpg", 10.00, 10);
         p2.setOrderedQuantity(1);
 
         model.addProductToTrolleyForTest(p1);
@@ -201,7 +207,7 @@ class CustomerModelStockValidationTest {
 
         model.databaseRW = buildFakeDatabase(handler);
 
-        Product p = new Product("0007", "USB drive", "0007.jpg", 6.99, 0);
+        Product p = Product.ofPounds("0007", "USB drive", "0007.jpg", 6.99, 0);
         p.setOrderedQuantity(1);
 
         model.addProductToTrolleyForTest(p);
@@ -11,7 +11,7 @@ class CustomerModelTrolleyTest {
     void addingSameProductTwice_mergesIntoOneEntryWithQuantityTwo() {
         CustomerModel model = new CustomerModel();
 
-        Product p = new Product("0001", "Apples", "0001.jpg", 1.00, 50);
+        Product p = Product.ofPounds("0001", "Apples", "0001.jpg", 1.00, 50);
 
         model.addProductToTrolleyForTest(p);
         model.addProductToTrolleyForTest(p);
@@ -25,8 +25,8 @@ class CustomerModelTrolleyTest {
     void addingDifferentProducts_sortsByProductId() {
         CustomerModel model = new CustomerModel();
 
-        Product p2 = new Product("0002", "Radio", "0002.jpg", 10.00, 50);
-        Product p1 = new Product("0001", "Apples", "0001.jpg", 1.00, 50);
+        Product p2 = Product.ofPounds("0002", "Radio", "0002.jpg", 10.00, 50);
+        Product p1 = Product.ofPounds("0001", "Apples", "0001.jpg", 1.00, 50);
 
         model.addProductToTrolleyForTest(p2);
         model.addProductToTrolleyForTest(p1);
@@ -40,7 +40,7 @@ class CustomerModelTrolleyTest {
     void addingSameProductThreeTimes_increasesQuantityToThree() {
         CustomerModel model = new CustomerModel();
 
-        Product p = new Product("0007", "USB drive", "0007.jpg", 6.99, 50);
+        Product p = Product.ofPounds("0007", "USB drive", "0007.jpg", 6.99, 50);
 
         model.addProductToTrolleyForTest(p);
         model.addProductToTrolleyForTest(p);
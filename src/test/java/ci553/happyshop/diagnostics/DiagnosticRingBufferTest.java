@@ -0,0 +1,82 @@
+package ci553.happyshop.diagnostics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagnosticRingBufferTest {
+
+    @Test
+    void fullBuffer_rejectsNewRecords_untilOneIsPolled() {
+        DiagnosticRingBuffer buffer = new DiagnosticRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(record("0", i)));
+        }
+        assertFalse(buffer.offer(record("0", 4)));
+
+        assertEquals("0-0", buffer.poll().getMessage());
+        assertTrue(buffer.offer(record("0", 5)));
+        assertEquals(4, buffer.size());
+    }
+
+    @Test
+    void recordsFromManyThreads_allArrive_inOrderPerThread() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 5_000;
+        DiagnosticRingBuffer buffer = new DiagnosticRingBuffer(256);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            String name = String.valueOf(p);
+            Thread t = new Thread(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(record(name, i))) {
+                        Thread.onSpinWait(); // full, wait for the consumer
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+
+        int[] next = new int[producers];
+        int received = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (received < producers * perProducer && System.nanoTime() < deadline) {
+            DiagnosticRecord r = buffer.poll();
+            if (r == null) {
+                continue;
+            }
+            String[] parts = r.getMessage().split("-");
+            int producer = Integer.parseInt(parts[0]);
+            assertEquals(next[producer], Integer.parseInt(parts[1]), "out of order from producer " + producer);
+            next[producer]++;
+            received++;
+        }
+        for (Thread t : threads) {
+            t.join(1000);
+        }
+        assertEquals(producers * perProducer, received);
+        assertNull(buffer.poll());
+    }
+
+    private static DiagnosticRecord record(String producer, int i) {
+        return new DiagnosticRecord(0, DiagnosticLevel.INFO, "test", producer, producer + "-" + i, null);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
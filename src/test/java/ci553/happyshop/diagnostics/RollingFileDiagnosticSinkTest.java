@@ -0,0 +1,34 @@
+package ci553.happyshop.diagnostics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingFileDiagnosticSinkTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fullFile_rollsOver_andKeepsOnlyMaxBackups() throws IOException {
+        Path logFile = dir.resolve("happyshop.log");
+        RollingFileDiagnosticSink sink = new RollingFileDiagnosticSink(logFile, 200, 2);
+
+        for (int i = 0; i < 20; i++) {
+            sink.write(new DiagnosticRecord(0, DiagnosticLevel.INFO, "test", "main", "message number " + i, null));
+        }
+        sink.close();
+
+        assertTrue(Files.exists(logFile));
+        assertTrue(Files.exists(dir.resolve("happyshop.log.1")));
+        assertTrue(Files.exists(dir.resolve("happyshop.log.2")));
+        assertFalse(Files.exists(dir.resolve("happyshop.log.3")));
+        assertTrue(Files.size(logFile) <= 200);
+        assertTrue(Files.readString(logFile).contains("message number 19"));
+    }
+}
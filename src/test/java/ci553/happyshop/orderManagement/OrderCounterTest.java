@@ -0,0 +1,93 @@
+package ci553.happyshop.orderManagement;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderCounterTest {
+
+    @TempDir
+    Path dir;
+
+    private final Path originalPath = OrderCounter.counterPath;
+    private final int originalBlockSize = OrderCounter.idBlockSize;
+
+    @AfterEach
+    void restore() {
+        OrderCounter.counterPath = originalPath;
+        OrderCounter.idBlockSize = originalBlockSize;
+        OrderCounter.discardBlock();
+    }
+
+    @Test
+    void idsAreUniqueUnderConcurrency_andTheFileHoldsTheEndOfTheBlock() throws Exception {
+        OrderCounter.counterPath = Files.writeString(dir.resolve("orderCounter.txt"), "0");
+        OrderCounter.idBlockSize = 10;
+        OrderCounter.discardBlock();
+
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(pool.submit(() -> {
+                for (int j = 0; j < 25; j++) {
+                    assertTrue(ids.add(OrderCounter.generateOrderId()), "an ID was handed out twice");
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        pool.shutdown();
+
+        assertEquals(200, ids.size());
+        assertTrue(ids.stream().allMatch(id -> id >= 1 && id <= 200));
+        assertEquals("200", Files.readString(OrderCounter.counterPath));
+    }
+
+    @Test
+    void byDefault_everyIdGoesThroughTheFile_soARestartSkipsNothing() throws IOException {
+        assertEquals(1, originalBlockSize, "blocks are opt-in");
+        OrderCounter.counterPath = Files.writeString(dir.resolve("orderCounter.txt"), "41");
+        OrderCounter.discardBlock();
+
+        assertEquals(42, OrderCounter.generateOrderId());
+        assertEquals("42", Files.readString(OrderCounter.counterPath));
+        OrderCounter.discardBlock(); // as if the shop restarted
+        assertEquals(43, OrderCounter.generateOrderId());
+        assertEquals("43", Files.readString(OrderCounter.counterPath));
+    }
+
+    @Test
+    void aRestartSkipsTheRestOfTheBlock() throws IOException {
+        OrderCounter.counterPath = Files.writeString(dir.resolve("orderCounter.txt"), "41");
+        OrderCounter.idBlockSize = 100;
+        OrderCounter.discardBlock();
+
+        assertEquals(42, OrderCounter.generateOrderId());
+        assertEquals(43, OrderCounter.generateOrderId());
+        assertEquals("141", Files.readString(OrderCounter.counterPath));
+
+        OrderCounter.discardBlock(); // as if the shop restarted
+        assertEquals(142, OrderCounter.generateOrderId());
+
+        OrderCounter.idBlockSize = 1; // the original one ID per file round trip
+        OrderCounter.discardBlock();
+        assertEquals(242, OrderCounter.generateOrderId());
+        assertEquals("242", Files.readString(OrderCounter.counterPath));
+    }
+}
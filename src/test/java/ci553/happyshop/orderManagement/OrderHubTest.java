@@ -0,0 +1,242 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.OrderStore;
+import ci553.happyshop.storageAccess.OrderStoreType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderHubTest {
+
+    @TempDir
+    Path dir;
+
+    private TestOrderHub testHub;
+    private OrderHub orderHub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testHub = new TestOrderHub(dir);
+        orderHub = testHub.getOrderHub();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        testHub.close();
+    }
+
+    @Test
+    void tillsAndPickersOnManyThreads_eachOrderIsTakenOnce() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        Set<Integer> orderIds = ConcurrentHashMap.newKeySet();
+        runOnAll(pool, 8, () -> {
+            for (int i = 0; i < 25; i++) {
+                orderIds.add(orderHub.newOrder(new ArrayList<Product>()).getOrderId());
+            }
+        });
+        assertEquals(200, orderIds.size());
+
+        // every picker tries to take every order, only one may get each
+        AtomicInteger taken = new AtomicInteger();
+        runOnAll(pool, 8, () -> {
+            for (int orderId : orderIds) {
+                if (orderHub.changeOrderStateMoveFile(orderId, OrderState.Progressing)) {
+                    taken.incrementAndGet();
+                }
+            }
+        });
+        pool.shutdown();
+
+        assertEquals(200, taken.get());
+        for (int orderId : orderIds) {
+            assertEquals(OrderState.Progressing, orderHub.getOrderState(orderId));
+        }
+        assertEquals(200, testHub.getJournal().loadUncollectedOrders().size());
+    }
+
+    @Test
+    void ordersOnlyMoveForwardOneStateAtATime() throws Exception {
+        int orderId = orderHub.newOrder(new ArrayList<>()).getOrderId();
+
+        assertFalse(orderHub.changeOrderStateMoveFile(orderId, OrderState.Collected), "cannot skip Progressing");
+        assertFalse(orderHub.changeOrderStateMoveFile(orderId, OrderState.Ordered));
+        assertTrue(orderHub.changeOrderStateMoveFile(orderId, OrderState.Progressing));
+        assertFalse(orderHub.changeOrderStateMoveFile(orderId, OrderState.Progressing), "already taken");
+        assertTrue(orderHub.getOrderDetailForPicker(orderId).contains("State: Progressing"));
+        assertTrue(orderHub.changeOrderStateMoveFile(orderId, OrderState.Collected));
+        assertEquals(OrderState.Collected, orderHub.getOrderState(orderId));
+        assertFalse(orderHub.changeOrderStateMoveFile(9999, OrderState.Progressing), "unknown order");
+    }
+
+    @Test
+    void aStateChangeTheStoreRefusesOrFails_isRolledBack() throws Exception {
+        AtomicBoolean storeFails = new AtomicBoolean();
+        OrderStore refusingStore = new OrderStore() {
+            @Override
+            public void createOrder(int orderId, String orderDetail) {
+            }
+
+            @Override
+            public boolean changeOrderState(int orderId, OrderState newState) throws IOException {
+                if (storeFails.get()) {
+                    throw new IOException("disk full");
+                }
+                return false; // eg the store lost the order
+            }
+
+            @Override
+            public String readOrder(int orderId) throws IOException {
+                throw new IOException("Order " + orderId + " is not in the store");
+            }
+
+            @Override
+            public TreeMap<Integer, OrderState> loadUncollectedOrders() {
+                return new TreeMap<>();
+            }
+        };
+        OrderHub hub = new OrderHub(refusingStore);
+        RecordingListener listener = new RecordingListener();
+        hub.subscribe(listener);
+        int orderId = hub.newOrder(new ArrayList<>()).getOrderId();
+
+        assertThrows(IOException.class, () -> hub.changeOrderStateMoveFile(orderId, OrderState.Progressing));
+        assertEquals(OrderState.Ordered, hub.getOrderState(orderId), "refused, so not done");
+        storeFails.set(true);
+        assertThrows(IOException.class, () -> hub.changeOrderStateMoveFile(orderId, OrderState.Progressing));
+        assertEquals(OrderState.Ordered, hub.getOrderState(orderId), "not stored, so not done");
+        assertEquals(List.of("#1 ADDED " + orderId + " Ordered"), listener.changes, "no state change was sent");
+    }
+
+    @Test
+    void listenersReceiveNumberedChanges() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        orderHub.subscribe(listener);
+        assertTrue(listener.orders.isEmpty());
+
+        int orderId = orderHub.newOrder(new ArrayList<>()).getOrderId();
+        orderHub.changeOrderStateMoveFile(orderId, OrderState.Progressing);
+        orderHub.changeOrderStateMoveFile(orderId, OrderState.Progressing); // not a change, not sent
+
+        assertEquals(List.of("#1 ADDED " + orderId + " Ordered", "#2 STATE_CHANGED " + orderId + " Progressing"),
+                listener.changes);
+        assertEquals(OrderState.Progressing, listener.orders.get(orderId));
+    }
+
+    @Test
+    void anOrderStoreThatCannotBeOpened_failsEveryGetOrderHub_withTheSameMessage() {
+        OrderStoreType originalType = OrderHub.orderStoreType;
+        OrderHub.closeOrderHub();
+        OrderHub.orderStoreType = null; // as an unknown -Dhappyshop.orders.store leaves it
+        try {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                IllegalStateException e = assertThrows(IllegalStateException.class, OrderHub::getOrderHub);
+                assertTrue(e.getMessage().contains(OrderHub.ORDER_STORE_PROPERTY), e.getMessage());
+            }
+        } finally {
+            OrderHub.orderStoreType = originalType;
+        }
+    }
+
+    @Test
+    void lateListener_snapshotPlusChangesMatchesTheHub() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        RecordingListener early = new RecordingListener();
+        orderHub.subscribe(early);
+        for (int i = 0; i < 10; i++) {
+            orderHub.newOrder(new ArrayList<>());
+        }
+
+        RecordingListener late = new RecordingListener();
+        orderHub.subscribe(late);
+        assertEquals(10, late.snapshotSequence);
+        assertEquals(10, late.orders.size());
+
+        runOnAll(pool, 4, () -> {
+            for (int i = 0; i < 10; i++) {
+                int orderId = orderHub.newOrder(new ArrayList<>()).getOrderId();
+                orderHub.changeOrderStateMoveFile(orderId, OrderState.Progressing);
+                if (i % 2 == 0) {
+                    orderHub.changeOrderStateMoveFile(orderId, OrderState.Collected);
+                }
+            }
+        });
+        pool.shutdown();
+
+        TreeMap<Integer, OrderState> expected = new TreeMap<>();
+        for (int orderId = 1; orderId <= 50; orderId++) {
+            if (orderHub.getOrderState(orderId) != null) {
+                expected.put(orderId, orderHub.getOrderState(orderId));
+            }
+        }
+        assertEquals(expected, early.orders);
+        assertEquals(expected, late.orders);
+        assertEquals(early.lastSequence, late.lastSequence);
+
+        // a resync gives the same map and carries on from the same sequence
+        orderHub.requestSnapshot(late);
+        assertEquals(expected, late.orders);
+        assertEquals(early.lastSequence, late.snapshotSequence);
+    }
+
+    // Applies what OrderHub sends to its own map, and checks the sequence numbers have no gaps
+    private static class RecordingListener implements OrderListener {
+        private final TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        private final List<String> changes = new ArrayList<>();
+        private long snapshotSequence = -1;
+        private long lastSequence = -1;
+
+        @Override
+        public void onSnapshot(TreeMap<Integer, OrderState> snapshot, long sequence) {
+            orders.clear();
+            orders.putAll(snapshot);
+            snapshotSequence = sequence;
+            lastSequence = sequence;
+        }
+
+        @Override
+        public void onChange(OrderChange change) {
+            assertEquals(lastSequence + 1, change.getSequence());
+            lastSequence = change.getSequence();
+            changes.add(change.toString());
+            if (change.getType() == OrderChange.Type.REMOVED) {
+                orders.remove(change.getOrderId());
+            } else {
+                orders.put(change.getOrderId(), change.getState());
+            }
+        }
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    private static void runOnAll(ExecutorService pool, int threads, Work work) throws Exception {
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                work.run();
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+    }
+}
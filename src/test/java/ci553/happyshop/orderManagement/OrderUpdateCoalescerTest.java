@@ -0,0 +1,165 @@
+package ci553.happyshop.orderManagement;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderUpdateCoalescerTest {
+
+    @TempDir
+    Path dir;
+
+    private final ArrayDeque<Runnable> frames = new ArrayDeque<>(); // stands in for Platform::runLater
+    private final ViewStub view = new ViewStub();
+    private TestOrderHub testHub;
+    private OrderHub orderHub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        testHub = new TestOrderHub(dir);
+        orderHub = testHub.getOrderHub();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        testHub.close();
+    }
+
+    @Test
+    void changesWithinAFrame_areDeliveredAsOneBatch() throws Exception {
+        OrderUpdateCoalescer coalescer = new OrderUpdateCoalescer(orderHub, view, frames::add, 100);
+        orderHub.subscribe(coalescer);
+        runFrames();
+        assertEquals(1, view.snapshots);
+
+        for (int i = 0; i < 5; i++) {
+            orderHub.newOrder(new ArrayList<>());
+        }
+        orderHub.changeOrderStateMoveFile(1, OrderState.Progressing);
+        orderHub.changeOrderStateMoveFile(2, OrderState.Progressing);
+        orderHub.changeOrderStateMoveFile(2, OrderState.Collected);
+        assertEquals(1, frames.size(), "one delivery queued however many changes");
+        runFrames();
+
+        assertEquals(1, view.batches.size());
+        List<OrderChange> batch = view.batches.get(0);
+        assertEquals(5, batch.size(), "one change per order");
+        for (int i = 1; i < batch.size(); i++) {
+            assertTrue(batch.get(i - 1).getSequence() < batch.get(i).getSequence(), "in sequence order");
+        }
+        assertEquals(expectedOrders(), view.orders);
+        assertEquals(OrderChange.Type.ADDED, view.lastChangeOf(2).getType());
+        assertEquals(OrderState.Collected, view.lastChangeOf(2).getState());
+
+        OrderUpdateCoalescer.Statistics statistics = coalescer.getStatistics();
+        assertEquals(8, statistics.getReceived());
+        assertEquals(5, statistics.getDelivered());
+        assertEquals(3, statistics.getMerged());
+        assertEquals(0, statistics.getDropped());
+    }
+
+    @Test
+    void tooManyWaiting_resyncsFromASnapshot() throws Exception {
+        OrderUpdateCoalescer coalescer = new OrderUpdateCoalescer(orderHub, view, frames::add, 3);
+        orderHub.subscribe(coalescer);
+        runFrames();
+
+        for (int i = 0; i < 10; i++) {
+            orderHub.newOrder(new ArrayList<>());
+        }
+        runFrames();
+
+        assertTrue(view.batches.isEmpty());
+        assertEquals(2, view.snapshots);
+        assertEquals(expectedOrders(), view.orders);
+        OrderUpdateCoalescer.Statistics statistics = coalescer.getStatistics();
+        assertEquals(1, statistics.getOverflows());
+        assertEquals(10, statistics.getDropped());
+
+        // and carries on with changes after the snapshot
+        orderHub.changeOrderStateMoveFile(4, OrderState.Progressing);
+        runFrames();
+        assertEquals(expectedOrders(), view.orders);
+    }
+
+    @Test
+    void closed_receivesNoMoreChanges() throws Exception {
+        OrderUpdateCoalescer coalescer = new OrderUpdateCoalescer(orderHub, view, frames::add, 100);
+        orderHub.subscribe(coalescer);
+        runFrames();
+        coalescer.close();
+
+        orderHub.newOrder(new ArrayList<>());
+        runFrames();
+        assertTrue(view.batches.isEmpty());
+        assertEquals(0, coalescer.getStatistics().getReceived());
+    }
+
+    // Runs queued deliveries, including any they queue themselves
+    private void runFrames() {
+        while (!frames.isEmpty()) {
+            frames.poll().run();
+        }
+    }
+
+    private TreeMap<Integer, OrderState> expectedOrders() {
+        TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        for (int orderId = 1; orderId <= 20; orderId++) {
+            if (orderHub.getOrderState(orderId) != null) {
+                orders.put(orderId, orderHub.getOrderState(orderId));
+            }
+        }
+        return orders;
+    }
+
+    private static class ViewStub implements OrderListener {
+        private final TreeMap<Integer, OrderState> orders = new TreeMap<>();
+        private final List<List<OrderChange>> batches = new ArrayList<>();
+        private int snapshots = 0;
+
+        @Override
+        public void onSnapshot(TreeMap<Integer, OrderState> snapshot, long sequence) {
+            orders.clear();
+            orders.putAll(snapshot);
+            snapshots++;
+        }
+
+        @Override
+        public void onChange(OrderChange change) {
+            fail("changes are delivered in batches");
+        }
+
+        @Override
+        public void onChanges(List<OrderChange> changes) {
+            batches.add(changes);
+            for (OrderChange change : changes) {
+                if (change.getType() == OrderChange.Type.REMOVED) {
+                    orders.remove(change.getOrderId());
+                } else {
+                    orders.put(change.getOrderId(), change.getState());
+                }
+            }
+        }
+
+        private OrderChange lastChangeOf(int orderId) {
+            OrderChange last = null;
+            for (List<OrderChange> batch : batches) {
+                for (OrderChange change : batch) {
+                    if (change.getOrderId() == orderId) {
+                        last = change;
+                    }
+                }
+            }
+            return last;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ci553.happyshop.orderManagement;
+
+import ci553.happyshop.storageAccess.OrderJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs an OrderHub on an OrderJournal in a temporary folder, with its own order counter file starting from 0,
+ * so order tests do not touch the shop's orders. close() closes the journal and restores the order counter.
+ *
+ *     testHub = new TestOrderHub(dir);
+ *     OrderHub orderHub = testHub.getOrderHub();
+ *     ...
+ *     testHub.close();
+ */
+
+class TestOrderHub implements AutoCloseable {
+    private final Path originalCounterPath = OrderCounter.counterPath;
+    private final OrderJournal journal;
+    private final OrderHub orderHub;
+
+    TestOrderHub(Path dir) throws IOException {
+        OrderCounter.counterPath = Files.writeString(dir.resolve("orderCounter.txt"), "0");
+        OrderCounter.discardBlock();
+        try {
+            journal = new OrderJournal(dir.resolve("journal"), 1024 * 1024, false);
+        } catch (IOException e) {
+            restoreCounter();
+            throw e;
+        }
+        orderHub = new OrderHub(journal);
+    }
+
+    OrderHub getOrderHub() {
+        return orderHub;
+    }
+
+    OrderJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            journal.close();
+        } finally {
+            restoreCounter();
+        }
+    }
+
+    private void restoreCounter() {
+        OrderCounter.counterPath = originalCounterPath;
+        OrderCounter.discardBlock();
+    }
+}
@@ -0,0 +1,116 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogueSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private static final List<Product> CATALOGUE = List.of(
+            Product.ofPence("0002", "DAB Radio", "0002.jpg", 2999, 100),
+            Product.ofPence("0001", "40 inch TV", "0001.jpg", 26900, 5),
+            Product.ofPence("0003", "Crème brûlée torch", "0003.jpg", 1250, 0));
+
+    @Test
+    void aWrittenSnapshotReadsBackEveryProduct() throws IOException {
+        Path file = dir.resolve("catalogue.snapshot");
+        CatalogueSnapshot.write(file, CATALOGUE);
+
+        CatalogueSnapshot snapshot = CatalogueSnapshot.open(file);
+        assertEquals(3, snapshot.size());
+
+        Product radio = snapshot.searchByProductId("0002");
+        assertEquals("DAB Radio", radio.getProductDescription());
+        assertEquals("0002.jpg", radio.getProductImageName());
+        assertEquals(2999, radio.getUnitPricePence());
+        assertEquals(100, radio.getStockQuantity());
+        assertEquals("Crème brûlée torch", snapshot.searchByProductId("0003").getProductDescription());
+        assertNull(snapshot.searchByProductId("0004"));
+        assertNull(snapshot.searchByProductId("0000"));
+
+        List<String> ids = new ArrayList<>();
+        snapshot.forEachProduct(product -> ids.add(product.getProductId()));
+        assertEquals(List.of("0001", "0002", "0003"), ids);
+        assertEquals("40 inch TV", snapshot.descriptions().get("0001"));
+    }
+
+    @Test
+    void staleOrDamagedSnapshotsAreRejected() throws IOException {
+        Path file = dir.resolve("catalogue.snapshot");
+        CatalogueSnapshot.write(file, CATALOGUE);
+        CatalogueSnapshot.markStale(file);
+        assertThrows(IOException.class, () -> CatalogueSnapshot.open(file));
+
+        CatalogueSnapshot.write(file, CATALOGUE); // clean again
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), channel.size() - 1); // damage one byte of the heap
+        }
+        IOException damaged = assertThrows(IOException.class, () -> CatalogueSnapshot.open(file));
+        assertTrue(damaged.getMessage().contains("checksum"));
+
+        CatalogueSnapshot.write(file, CATALOGUE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(CatalogueSnapshot.FORMAT_VERSION + 1).flip(), 4);
+        }
+        IOException version = assertThrows(IOException.class, () -> CatalogueSnapshot.open(file));
+        assertTrue(version.getMessage().contains("format version"));
+    }
+
+    @Test
+    void anEmptyCatalogueIsStillASnapshot() throws IOException {
+        Path file = dir.resolve("catalogue.snapshot");
+        CatalogueSnapshot.write(file, List.of());
+        CatalogueSnapshot snapshot = CatalogueSnapshot.open(file);
+        assertEquals(0, snapshot.size());
+        assertNull(snapshot.searchByProductId("0001"));
+    }
+
+    @Test
+    void everyProductTableWrite_marksAWrittenSnapshotStale_evenWithoutFeedSubscribers() throws Exception {
+        Path originalPath = DatabaseRWFactory.catalogueSnapshotPath;
+        DatabaseRWFactory.catalogueSnapshotPath = dir.resolve("catalogue.snapshot");
+        try (DerbyTestDatabase db = new DerbyTestDatabase("snapshotStaleTestDB")) {
+            db.execute("INSERT INTO ProductTable VALUES ('0001', '40 inch TV', 26900, '0001.jpg', 5)");
+            DerbyRW derbyRW = new DerbyRW();
+            assertFalse(DatabaseRWFactory.getChangeFeed().hasSubscribers());
+
+            assertEquals(1, DatabaseRWFactory.writeCatalogueSnapshot());
+            assertEquals(5, CatalogueSnapshot.open(DatabaseRWFactory.catalogueSnapshotPath)
+                    .searchByProductId("0001").getStockQuantity());
+            derbyRW.adjustStock(Map.of("0001", 3));
+            assertStale();
+
+            DatabaseRWFactory.writeCatalogueSnapshot();
+            derbyRW.updateProduct("0001", "40 inch TV", 24900, "0001.jpg", 8);
+            assertStale();
+
+            DatabaseRWFactory.writeCatalogueSnapshot();
+            derbyRW.insertNewProduct("0002", "DAB Radio", 2999, "0002.jpg", 10);
+            assertStale();
+
+            DatabaseRWFactory.writeCatalogueSnapshot();
+            derbyRW.deleteProduct("0002");
+            assertStale();
+        } finally {
+            DatabaseRWFactory.catalogueSnapshotPath = originalPath;
+        }
+    }
+
+    private static void assertStale() {
+        assertThrows(IOException.class, () -> CatalogueSnapshot.open(DatabaseRWFactory.catalogueSnapshotPath));
+    }
+}
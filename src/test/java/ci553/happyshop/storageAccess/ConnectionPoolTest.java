@@ -0,0 +1,143 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConnectionPool tests, run against an in-memory Derby database so no files are touched.
+ */
+class ConnectionPoolTest {
+    private static final String MEMORY_DB_URL = "jdbc:derby:memory:poolTestDB;create=true";
+
+    private ConnectionPool pool;
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void closedConnectionIsReusedInsteadOfOpeningANewOne() throws SQLException {
+        pool = new ConnectionPool(MEMORY_DB_URL, 2, 0, 1000, 60000);
+
+        try (Connection conn = pool.getConnection()) {
+            assertFalse(conn.isClosed());
+        }
+        try (Connection conn = pool.getConnection()) {
+            assertFalse(conn.isClosed());
+        }
+
+        ConnectionPool.Statistics stats = pool.getStatistics();
+        assertEquals(2, stats.getBorrowCount());
+        assertEquals(1, stats.getCreatedCount());
+        assertEquals(0, stats.getActiveConnections());
+        assertEquals(1, stats.getIdleConnections());
+    }
+
+    @Test
+    void borrowFailsAfterMaxWait_whenAllConnectionsAreInUse() throws SQLException {
+        pool = new ConnectionPool(MEMORY_DB_URL, 1, 0, 50, 60000);
+
+        try (Connection held = pool.getConnection()) {
+            assertFalse(held.isClosed());
+            assertThrows(SQLException.class, () -> pool.getConnection());
+            assertEquals(1, pool.getStatistics().getTimeoutCount());
+        }
+
+        // once the connection is returned it can be borrowed again
+        try (Connection conn = pool.getConnection()) {
+            assertFalse(conn.isClosed());
+        }
+    }
+
+    @Test
+    void minIdleConnectionsAreOpenedAheadOfDemand() throws Exception {
+        pool = new ConnectionPool(MEMORY_DB_URL, 3, 2, 1000, 60000);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getStatistics().getIdleConnections() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, pool.getStatistics().getIdleConnections());
+        assertEquals(2, pool.getStatistics().getCreatedCount());
+
+        try (Connection conn = pool.getConnection()) {
+            assertFalse(conn.isClosed());
+        }
+        assertEquals(2, pool.getStatistics().getCreatedCount(), "served from the idle connections");
+    }
+
+    @Test
+    void returnedConnection_rollsBackAndRestoresAutoCommit() throws SQLException {
+        pool = new ConnectionPool(MEMORY_DB_URL, 1, 0, 1000, 60000);
+
+        Connection conn = pool.getConnection();
+        conn.setAutoCommit(false);
+        conn.close();
+        conn.close(); // closing twice must not return the connection twice
+
+        assertThrows(SQLException.class, () -> conn.createStatement());
+        try (Connection again = pool.getConnection()) {
+            assertTrue(again.getAutoCommit());
+        }
+        assertEquals(1, pool.getStatistics().getCreatedCount());
+    }
+
+    @Test
+    void samePreparedStatementIsReused_onTheNextBorrow() throws SQLException {
+        pool = new ConnectionPool(MEMORY_DB_URL, 1, 0, 1000, 60000, 5);
+        String sql = "VALUES 1";
+
+        for (int i = 0; i < 3; i++) {
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+            }
+        }
+
+        ConnectionPool.Statistics stats = pool.getStatistics();
+        assertEquals(1, stats.getStatementCacheMisses());
+        assertEquals(2, stats.getStatementCacheHits());
+    }
+
+    @Test
+    void sameSqlPreparedTwiceAtOnce_getsTwoDifferentStatements() throws SQLException {
+        pool = new ConnectionPool(MEMORY_DB_URL, 1, 0, 1000, 60000, 5);
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement first = conn.prepareStatement("VALUES 1");
+             PreparedStatement second = conn.prepareStatement("VALUES 1")) {
+            assertNotSame(first, second);
+            assertEquals(2, pool.getStatistics().getStatementCacheMisses());
+        }
+    }
+
+    @Test
+    void statementNotClosedByItsBorrower_isReleasedWithTheConnection() throws SQLException {
+        pool = new ConnectionPool(MEMORY_DB_URL, 1, 0, 1000, 60000, 5);
+
+        PreparedStatement forgotten;
+        try (Connection conn = pool.getConnection()) {
+            forgotten = conn.prepareStatement("VALUES 1");
+            forgotten.executeQuery();
+        }
+        assertTrue(forgotten.isClosed());
+
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("VALUES 1")) {
+            assertNotSame(forgotten, stmt);
+            assertEquals(1, pool.getStatistics().getStatementCacheHits(), "the cached statement is free again");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * adjustStock of DerbyRW, run against an in-memory Derby database.
+ */
+class DerbyRWAdjustStockTest {
+
+    private DerbyTestDatabase db;
+    private DerbyRW derbyRW;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new DerbyTestDatabase("adjustStockTestDB");
+        db.execute("INSERT INTO ProductTable VALUES ('0001', '40 inch TV', 26900, '0001.jpg', 5)",
+                "INSERT INTO ProductTable VALUES ('0002', 'DAB Radio', 2999, '0002.jpg', 1)",
+                "INSERT INTO ProductTable VALUES ('0003', 'Toaster', 1999, '0003.jpg', 0)");
+        derbyRW = new DerbyRW();
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    @Test
+    void lineThatWouldGoNegative_rollsBackEveryLine() throws SQLException {
+        // 0001 and 0003 sort around the refused line, so both a line before and one after it are undone
+        Map<String, Integer> refused = derbyRW.adjustStock(Map.of("0001", 24, "0002", -2, "0003", 3));
+
+        assertEquals(Map.of("0002", -2), refused);
+        assertEquals(5, db.stockOf("0001"));
+        assertEquals(1, db.stockOf("0002"));
+        assertEquals(0, db.stockOf("0003"));
+    }
+
+    @Test
+    void unknownProduct_isRefused_andNothingChanges() throws SQLException {
+        assertEquals(Map.of("9999", 1), derbyRW.adjustStock(Map.of("0001", -1, "9999", 1)));
+        assertEquals(5, db.stockOf("0001"));
+    }
+
+    @Test
+    void deliveryThatFits_changesEveryLine() throws SQLException {
+        assertTrue(derbyRW.adjustStock(Map.of("0001", 24, "0002", -1, "0003", 3)).isEmpty());
+
+        assertEquals(29, db.stockOf("0001"));
+        assertEquals(0, db.stockOf("0002"));
+        assertEquals(3, db.stockOf("0003"));
+        assertEquals("40 inch TV", derbyRW.searchByProductId("0001").getProductDescription());
+    }
+}
@@ -0,0 +1,59 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * purchaseStocks of DerbyRW in PurchaseMode.LOCKED (the default), run against an in-memory Derby database.
+ */
+class DerbyRWPurchaseTest {
+
+    private DerbyTestDatabase db;
+    private DerbyRW derbyRW;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new DerbyTestDatabase("lockedPurchaseTestDB");
+        db.execute("INSERT INTO ProductTable VALUES ('0001', '40 inch TV', 26900, '0001.jpg', 5)");
+        derbyRW = new DerbyRW();
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    private static ArrayList<Product> basket(Product... lines) {
+        return new ArrayList<>(List.of(lines));
+    }
+
+    private static Product line(String id, int quantity) {
+        Product product = Product.ofPence(id, "", id + ".jpg", 100, 0);
+        product.setOrderedQuantity(quantity);
+        return product;
+    }
+
+    @Test
+    void unknownProduct_isAFailedLine_andNothingIsBought() throws SQLException {
+        ArrayList<Product> failed = derbyRW.purchaseStocks(basket(line("0001", 2), line("9999", 1)));
+
+        assertEquals(List.of("9999"), failed.stream().map(Product::getProductId).toList());
+        assertEquals(0, failed.get(0).getStockQuantity());
+        assertEquals(5, db.stockOf("0001"));
+    }
+
+    @Test
+    void databaseError_isThrown_notReportedAsBought() throws SQLException {
+        db.execute("DROP TABLE ProductTable");
+
+        assertThrows(SQLException.class, () -> derbyRW.purchaseStocks(basket(line("0001", 2))));
+    }
+}
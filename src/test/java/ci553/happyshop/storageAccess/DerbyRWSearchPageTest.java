@@ -0,0 +1,103 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * searchProductPage and streamSearchProduct of DerbyRW, run against an in-memory Derby database.
+ */
+class DerbyRWSearchPageTest {
+
+    private DerbyTestDatabase db;
+    private DerbyRW derbyRW;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = new DerbyTestDatabase("searchPageTestDB");
+        for (int i = 1; i <= 7; i++) {
+            db.execute(String.format("INSERT INTO ProductTable VALUES ('%04d', 'USB cable %d', 299, '%04d.jpg', 10)",
+                    i, i, i));
+        }
+        db.execute("INSERT INTO ProductTable VALUES ('0100', 'Kettle', 2499, '0100.jpg', 3)");
+        derbyRW = new DerbyRW(); // builds the search index from the rows above
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    @Test
+    void pagesFollowOneAnother_untilTheLastPage() throws SQLException {
+        List<String> seen = new ArrayList<>();
+        ProductPage page = derbyRW.searchProductPage("usb", null, 3);
+        seen.addAll(ids(page));
+        assertTrue(page.hasMore());
+        assertEquals("0003", page.getNextCursor());
+
+        page = derbyRW.searchProductPage("usb", page.getNextCursor(), 3);
+        seen.addAll(ids(page));
+        assertTrue(page.hasMore());
+
+        page = derbyRW.searchProductPage("usb", page.getNextCursor(), 3);
+        seen.addAll(ids(page));
+        assertFalse(page.hasMore(), "the last page");
+
+        assertEquals(List.of("0001", "0002", "0003", "0004", "0005", "0006", "0007"), seen);
+    }
+
+    @Test
+    void pageOfExactlyTheRemainingProducts_hasNoMore() throws SQLException {
+        ProductPage page = derbyRW.searchProductPage("usb", "0004", 3);
+        assertEquals(List.of("0005", "0006", "0007"), ids(page));
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    void pageWhoseProductsWereDeleted_isEmptyButStillLeadsToTheNextPage() throws SQLException {
+        // deleted behind the index's back, as by another writer between reading the IDs and the rows
+        db.execute("DELETE FROM ProductTable WHERE productID IN ('0004', '0005')");
+
+        ProductPage page = derbyRW.searchProductPage("usb", "0003", 2);
+        assertTrue(page.getProducts().isEmpty());
+        assertTrue(page.hasMore());
+        assertEquals("0005", page.getNextCursor());
+
+        page = derbyRW.searchProductPage("usb", page.getNextCursor(), 2);
+        assertEquals(List.of("0006", "0007"), ids(page));
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    void exactIdMatch_isAOneProductPage() throws SQLException {
+        ProductPage page = derbyRW.searchProductPage("0100", null, 3);
+        assertEquals(List.of("0100"), ids(page));
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    void streamSearch_handsOverEveryMatchInIdOrder() throws SQLException {
+        List<String> streamed = new ArrayList<>();
+        int count = derbyRW.streamSearchProduct("cable", product -> streamed.add(product.getProductId()));
+
+        assertEquals(7, count);
+        assertEquals(List.of("0001", "0002", "0003", "0004", "0005", "0006", "0007"), streamed);
+        assertEquals(1, derbyRW.streamSearchProduct("0100", product -> { }));
+    }
+
+    private static List<String> ids(ProductPage page) {
+        List<String> ids = new ArrayList<>();
+        for (Product product : page.getProducts()) {
+            ids.add(product.getProductId());
+        }
+        return ids;
+    }
+}
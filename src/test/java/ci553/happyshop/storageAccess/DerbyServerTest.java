@@ -0,0 +1,40 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts a real Derby network server on a free port and connects to an in-memory database through it.
+ */
+class DerbyServerTest {
+
+    @Test
+    void clientDriverConnectsThroughTheServer_untilItIsStopped() throws SQLException, IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        DerbyServer server = new DerbyServer("localhost", port);
+        server.start();
+        try {
+            assertTrue(DerbyServer.isRunning("localhost", port));
+            ConnectionPool pool = new ConnectionPool("jdbc:derby://localhost:" + port + "/memory:serverTestDB;create=true",
+                    2, 0, 1000, 60000);
+            try (Connection conn = pool.getConnection()) {
+                assertTrue(conn.getMetaData().getDriverName().toLowerCase().contains("client"));
+                assertTrue(conn.createStatement().executeQuery("VALUES 1").next());
+            } finally {
+                pool.close();
+            }
+        } finally {
+            server.stop();
+        }
+        assertFalse(DerbyServer.isRunning("localhost", port));
+    }
+}
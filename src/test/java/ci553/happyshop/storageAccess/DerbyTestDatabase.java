@@ -0,0 +1,71 @@
+package ci553.happyshop.storageAccess;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Points DatabaseRWFactory at a fresh in-memory Derby database, so DerbyRW (and the clients using it) can be tested
+ * without touching happyShopDB.
+ * The database starts with an empty ProductTable (see createProductTable); close() drops it and restores the factory.
+ *
+ *     try (DerbyTestDatabase db = new DerbyTestDatabase("pagingTestDB")) {
+ *         DerbyRW derbyRW = new DerbyRW();
+ *         ...
+ *     }
+ */
+
+public class DerbyTestDatabase implements AutoCloseable {
+    private final String name;
+    private final String originalURL = DatabaseRWFactory.dbURL;
+
+    public DerbyTestDatabase(String name) throws SQLException {
+        this(name, true);
+    }
+
+    /**
+     * @param createProductTable false to start with no tables at all, eg to create an old ProductTable
+     */
+    public DerbyTestDatabase(String name, boolean createProductTable) throws SQLException {
+        this.name = name;
+        DatabaseRWFactory.closeConnectionPool();
+        DatabaseRWFactory.dbURL = "jdbc:derby:memory:" + name + ";create=true";
+        DatabaseRWFactory.getSearchIndex().clear(); // built again from this database by the first DerbyRW
+        if (createProductTable) {
+            execute("CREATE TABLE ProductTable(productID CHAR(4) PRIMARY KEY, description VARCHAR(100), " +
+                    "unitPricePence BIGINT, image VARCHAR(100), inStock INT, CHECK (inStock >= 0))");
+        }
+    }
+
+    public void execute(String... sql) throws SQLException {
+        try (Connection conn = DatabaseRWFactory.getConnectionPool().getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String statement : sql) {
+                stmt.executeUpdate(statement);
+            }
+        }
+    }
+
+    public int stockOf(String productId) throws SQLException {
+        try (Connection conn = DatabaseRWFactory.getConnectionPool().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT inStock FROM ProductTable WHERE productID = '" + productId + "'")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Override
+    public void close() {
+        DatabaseRWFactory.closeConnectionPool();
+        DatabaseRWFactory.getSearchIndex().clear();
+        try {
+            DriverManager.getConnection("jdbc:derby:memory:" + name + ";drop=true");
+        } catch (SQLException e) {
+            // Derby reports a successful drop with SQLState 08006
+        }
+        DatabaseRWFactory.dbURL = originalURL;
+    }
+}
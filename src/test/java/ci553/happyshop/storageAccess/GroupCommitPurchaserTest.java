@@ -0,0 +1,178 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GroupCommitPurchaser tests, run against an in-memory Derby database.
+ */
+class GroupCommitPurchaserTest {
+    private static final String MEMORY_DB_URL = "jdbc:derby:memory:groupCommitTestDB;create=true";
+
+    private ConnectionPool pool;
+    private GroupCommitPurchaser purchaser;
+
+    @BeforeEach
+    void createTable() throws SQLException {
+        pool = new ConnectionPool(MEMORY_DB_URL, 4, 0, 1000, 60000);
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            try {
+                stmt.executeUpdate("DROP TABLE ProductTable");
+            } catch (SQLException e) {
+                // first test, no table yet
+            }
+            stmt.executeUpdate("CREATE TABLE ProductTable(productID CHAR(4) PRIMARY KEY, description VARCHAR(100), " +
+                    "unitPricePence BIGINT, image VARCHAR(100), inStock INT, CHECK (inStock >= 0))");
+            stmt.executeUpdate("INSERT INTO ProductTable VALUES ('0001', 'TV', 26900, '0001.jpg', 100)");
+            stmt.executeUpdate("INSERT INTO ProductTable VALUES ('0002', 'Radio', 2999, '0002.jpg', 1)");
+        }
+        // a long window so baskets submitted together end up in the same group
+        purchaser = new GroupCommitPurchaser(pool, 200, 64);
+    }
+
+    @AfterEach
+    void close() {
+        purchaser.close();
+        pool.close();
+    }
+
+    private static Product line(String id, int quantity) {
+        Product product = new Product(id, "", "", 0, 0);
+        product.setOrderedQuantity(quantity);
+        return product;
+    }
+
+    private int stockOf(String id) throws SQLException {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT inStock FROM ProductTable WHERE productID = '" + id + "'")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void failedBasket_isRolledBackAlone_whileTheRestOfTheGroupCommits() throws Exception {
+        CompletableFuture<ArrayList<Product>> good = purchaser.submit(List.of(line("0001", 3)));
+        CompletableFuture<ArrayList<Product>> bad = purchaser.submit(List.of(line("0001", 5), line("0002", 2)));
+        CompletableFuture<ArrayList<Product>> alsoGood = purchaser.submit(List.of(line("0002", 1)));
+
+        assertTrue(good.get().isEmpty());
+        assertEquals(List.of("0002"), bad.get().stream().map(Product::getProductId).toList());
+        assertTrue(alsoGood.get().isEmpty());
+
+        assertEquals(97, stockOf("0001")); // the 5 from the failed basket were put back
+        assertEquals(0, stockOf("0002"));
+        GroupCommitPurchaser.Statistics stats = purchaser.getStatistics();
+        assertEquals(1, stats.getGroups());
+        assertEquals(3, stats.getBaskets());
+        assertEquals(1, stats.getFailedBaskets());
+    }
+
+    @Test
+    void manyConcurrentBaskets_neverSellMoreThanTheStock() throws Exception {
+        List<CompletableFuture<ArrayList<Product>>> futures = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            futures.add(purchaser.submit(List.of(line("0001", 1))));
+        }
+        int bought = 0;
+        for (CompletableFuture<ArrayList<Product>> future : futures) {
+            if (future.get().isEmpty()) {
+                bought++;
+            }
+        }
+        assertEquals(100, bought);
+        assertEquals(0, stockOf("0001"));
+        assertTrue(purchaser.getStatistics().getGroups() < 150); // baskets shared commits
+    }
+
+    @Test
+    void commitThatFailsAfterCommitting_failsTheBaskets_withoutApplyingThemTwice() throws Exception {
+        purchaser.close();
+        // a pool whose connections commit, then report the commit failed (eg the reply was lost)
+        ConnectionPool lostReplyPool = new ConnectionPool(MEMORY_DB_URL, 4, 0, 1000, 60000) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                Connection conn = super.getConnection();
+                return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                        new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                            try {
+                                Object result = method.invoke(conn, args);
+                                if (method.getName().equals("commit")) {
+                                    throw new SQLException("connection reset");
+                                }
+                                return result;
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+            }
+        };
+        purchaser = new GroupCommitPurchaser(lostReplyPool, 200, 64);
+        try {
+            CompletableFuture<ArrayList<Product>> first = purchaser.submit(List.of(line("0001", 3)));
+            CompletableFuture<ArrayList<Product>> second = purchaser.submit(List.of(line("0001", 2)));
+
+            assertThrows(ExecutionException.class, first::get);
+            assertThrows(ExecutionException.class, second::get);
+            assertEquals(95, stockOf("0001")); // taken once by the group, not again by a retry
+            assertEquals(1, purchaser.getStatistics().getFailedCommits());
+            assertEquals(0, purchaser.getStatistics().getFallbacks());
+        } finally {
+            purchaser.close();
+            lostReplyPool.close();
+        }
+    }
+
+    @Test
+    void unexpectedErrorInAGroup_failsThatGroup_andTheWriterKeepsGoing() throws Exception {
+        purchaser.close();
+        // a pool that throws a RuntimeException the first time, as a broken proxy or a bug would
+        AtomicBoolean broken = new AtomicBoolean(true);
+        ConnectionPool flakyPool = new ConnectionPool(MEMORY_DB_URL, 4, 0, 1000, 60000) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (broken.getAndSet(false)) {
+                    throw new IllegalStateException("pool bug");
+                }
+                return super.getConnection();
+            }
+        };
+        purchaser = new GroupCommitPurchaser(flakyPool, 0, 64);
+        try {
+            CompletableFuture<ArrayList<Product>> first = purchaser.submit(List.of(line("0001", 3)));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SQLException.class, e.getCause());
+
+            CompletableFuture<ArrayList<Product>> second = purchaser.submit(List.of(line("0001", 2)));
+            assertTrue(second.get(5, TimeUnit.SECONDS).isEmpty()); // the writer is still running
+            assertEquals(98, stockOf("0001"));
+        } finally {
+            purchaser.close();
+            flakyPool.close();
+        }
+    }
+
+    @Test
+    void submitAfterClose_failsAtOnce() {
+        purchaser.close();
+        CompletableFuture<ArrayList<Product>> late = purchaser.submit(List.of(line("0001", 1)));
+        assertTrue(late.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,136 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryRWTest {
+
+    private static InMemoryRW storeWith(Product... products) {
+        InMemoryRW store = new InMemoryRW();
+        store.loadProducts(List.of(products));
+        return store;
+    }
+
+    private static Product line(String id, int quantity) {
+        Product product = new Product(id, "", "", 0, 0);
+        product.setOrderedQuantity(quantity);
+        return product;
+    }
+
+    @Test
+    void purchaseIsAllOrNothing() throws SQLException {
+        InMemoryRW store = storeWith(
+                Product.ofPounds("0001", "40 inch TV", "0001.jpg", 269.00, 5),
+                Product.ofPounds("0002", "DAB Radio", "0002.jpg", 29.99, 1));
+
+        ArrayList<Product> failed = store.purchaseStocks(new ArrayList<>(List.of(line("0001", 2), line("0002", 3))));
+
+        assertEquals(1, failed.size());
+        assertEquals("0002", failed.get(0).getProductId());
+        assertEquals(1, failed.get(0).getStockQuantity());
+        assertEquals(3, failed.get(0).getOrderedQuantity());
+        assertEquals(5, store.searchByProductId("0001").getStockQuantity()); // the 0001 line was put back
+
+        assertTrue(store.purchaseStocks(new ArrayList<>(List.of(line("0001", 2), line("0002", 1)))).isEmpty());
+        assertEquals(3, store.searchByProductId("0001").getStockQuantity());
+        assertEquals(0, store.searchByProductId("0002").getStockQuantity());
+    }
+
+    @Test
+    void concurrentPurchases_neverSellMoreThanTheStock() throws Exception {
+        InMemoryRW store = storeWith(Product.ofPounds("0004", "Watch", "0004.jpg", 29.99, 100));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger succeeded = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            futures.add(executor.submit(() -> {
+                if (store.purchaseStocks(new ArrayList<>(List.of(line("0004", 1)))).isEmpty()) {
+                    succeeded.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(100, succeeded.get());
+        assertEquals(0, store.searchByProductId("0004").getStockQuantity());
+    }
+
+    @Test
+    void searchByName_followsUpdatesAndDeletes() throws SQLException {
+        InMemoryRW store = storeWith(
+                Product.ofPounds("0007", "USB drive", "0007.jpg", 6.99, 10),
+                Product.ofPounds("0008", "USB2 drive", "0008.jpg", 7.99, 10));
+
+        assertEquals(2, store.searchProduct("usb").size());
+
+        store.updateProduct("0008", "Memory stick", 799, "0008.jpg", 10);
+        store.deleteProduct("0007");
+        assertTrue(store.searchProduct("usb").isEmpty());
+        assertEquals("0008", store.searchProduct("memory").get(0).getProductId());
+    }
+
+    @Test
+    void insertingAnExistingId_fails() throws SQLException {
+        InMemoryRW store = storeWith(Product.ofPounds("0001", "40 inch TV", "0001.jpg", 269.00, 5));
+
+        assertFalse(store.isProIdAvailable("0001"));
+        assertThrows(SQLException.class, () -> store.insertNewProduct("0001", "Other", 100, "x.jpg", 1));
+        assertThrows(SQLException.class, () -> store.insertNewProduct("0003", "Negative", 100, "x.jpg", -1));
+        assertTrue(store.isProIdAvailable("0003"));
+    }
+
+    @Test
+    void stockAdjustmentIsAllOrNothing_andOnlyChangesStock() throws SQLException {
+        InMemoryRW store = storeWith(
+                Product.ofPounds("0001", "40 inch TV", "0001.jpg", 269.00, 5),
+                Product.ofPounds("0002", "DAB Radio", "0002.jpg", 29.99, 1));
+
+        Map<String, Integer> refused = store.adjustStock(Map.of("0001", 24, "0002", -2));
+        assertEquals(Map.of("0002", -2), refused);
+        assertEquals(5, store.searchByProductId("0001").getStockQuantity());
+        assertEquals(1, store.searchByProductId("0002").getStockQuantity());
+
+        assertEquals(Map.of("9999", 1), store.adjustStock(Map.of("0001", 1, "9999", 1)));
+
+        assertTrue(store.adjustStock(Map.of("0001", 24, "0002", -1)).isEmpty());
+        assertEquals(29, store.searchByProductId("0001").getStockQuantity());
+        assertEquals(0, store.searchByProductId("0002").getStockQuantity());
+        assertEquals("40 inch TV", store.searchByProductId("0001").getProductDescription());
+    }
+
+    @Test
+    void refusedAdjustment_neverShowsItsStockToOtherThreads() throws Exception {
+        InMemoryRW store = storeWith(
+                Product.ofPence("0001", "40 inch TV", "0001.jpg", 26900, 5),
+                Product.ofPence("0002", "DAB Radio", "0002.jpg", 2999, 1));
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> adjuster = pool.submit(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                // 0001 could be taken, 0002 cannot, so the whole adjustment is refused every time
+                assertEquals(Map.of("0002", -2), store.adjustStock(Map.of("0001", -5, "0002", -2)));
+            }
+            return null;
+        });
+        while (!adjuster.isDone()) {
+            assertEquals(5, store.searchByProductId("0001").getStockQuantity());
+        }
+        adjuster.get();
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,140 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.orderManagement.OrderState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private static String detail(int orderId) {
+        return "Order ID: " + orderId + " \n" +
+                "State: Ordered \n" +
+                "OrderedDateTime: 2026-10-16 09:00:00 \n" +
+                "ProgressingDateTime: null \n" +
+                "CollectedDateTime: null\n" +
+                "Items:\n 0001    40 inch TV         ( 1) £ 269.00\n";
+    }
+
+    @Test
+    void ordersAndStateChangesAreReadBackAfterReopening() throws IOException {
+        Path journalDir = dir.resolve("journal");
+        try (OrderJournal journal = new OrderJournal(journalDir, 1024 * 1024, true)) {
+            journal.createOrder(1, detail(1));
+            journal.createOrder(2, detail(2));
+            journal.createOrder(3, detail(3));
+            assertTrue(journal.changeOrderState(1, OrderState.Progressing));
+            assertTrue(journal.changeOrderState(2, OrderState.Progressing));
+            assertTrue(journal.changeOrderState(2, OrderState.Collected));
+            assertFalse(journal.changeOrderState(3, OrderState.Collected), "an order cannot skip a state");
+            assertFalse(journal.changeOrderState(9, OrderState.Progressing));
+        }
+
+        try (OrderJournal journal = new OrderJournal(journalDir, 1024 * 1024, true)) {
+            assertEquals(Map.of(1, OrderState.Progressing, 3, OrderState.Ordered), journal.loadUncollectedOrders());
+
+            List<String> lines = journal.readOrder(1).lines().toList();
+            assertEquals("State: Progressing", lines.get(1));
+            assertTrue(lines.get(3).startsWith("ProgressingDateTime: 20"), lines.get(3));
+            assertEquals("CollectedDateTime: null", lines.get(4));
+            assertEquals(" 0001    40 inch TV         ( 1) £ 269.00", lines.get(6));
+            assertEquals(detail(3), journal.readOrder(3)); // as OrderFileManager.readOrderFile reads it back
+        }
+
+        Path export = dir.resolve("export");
+        assertEquals(3, OrderJournal.exportTextFiles(journalDir, export));
+        assertTrue(Files.exists(export.resolve("progressing").resolve("1.txt")));
+        assertTrue(Files.exists(export.resolve("ordered").resolve("3.txt")));
+        List<String> collected = Files.readAllLines(export.resolve("collected").resolve("2.txt"));
+        assertEquals("State: Collected", collected.get(1));
+        assertTrue(collected.get(4).startsWith("CollectedDateTime: 20"), collected.get(4));
+    }
+
+    @Test
+    void aPartlyWrittenRecordIsCutOff_andLaterAppendsAreKept() throws IOException {
+        Path journalDir = dir.resolve("journal");
+        try (OrderJournal journal = new OrderJournal(journalDir, 1024 * 1024, false)) {
+            journal.createOrder(1, detail(1));
+        }
+        Path segment = onlySegment(journalDir);
+        long intactSize = Files.size(segment);
+        Files.write(segment, new byte[]{0, 0, 0, 50, 1, 2, 3}, StandardOpenOption.APPEND); // a torn header
+
+        new OrderJournal(journalDir, 1024 * 1024, false).close();
+        assertEquals(intactSize, Files.size(segment));
+        Files.write(segment, new byte[]{0, 0, 0, 50, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND); // a torn payload
+
+        try (OrderJournal journal = new OrderJournal(journalDir, 1024 * 1024, false)) {
+            assertEquals(intactSize, Files.size(segment));
+            journal.createOrder(2, detail(2));
+        }
+        try (OrderJournal journal = new OrderJournal(journalDir, 1024 * 1024, false)) {
+            assertEquals(Map.of(1, OrderState.Ordered, 2, OrderState.Ordered), journal.loadUncollectedOrders());
+        }
+    }
+
+    @Test
+    void aDamagedRecordInsideTheFile_failsTheOpen_andChangesNothing() throws IOException {
+        Path journalDir = dir.resolve("journal");
+        try (OrderJournal journal = new OrderJournal(journalDir, 1024 * 1024, false)) {
+            journal.createOrder(1, detail(1));
+            journal.createOrder(2, detail(2));
+        }
+        Path segment = onlySegment(journalDir);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[20] ^= 1; // inside the payload of order 1, so its CRC no longer matches
+        Files.write(segment, bytes);
+
+        IOException damaged = assertThrows(IOException.class, () -> new OrderJournal(journalDir, 1024 * 1024, false));
+        assertTrue(damaged.getMessage().contains("damaged at 0"), damaged.getMessage());
+        assertArrayEquals(bytes, Files.readAllBytes(segment), "nothing was cut off");
+        // the lock was released, so the same damage is reported again rather than the journal being in use
+        assertTrue(assertThrows(IOException.class, () -> new OrderJournal(journalDir, 1024 * 1024, false))
+                .getMessage().contains("damaged"));
+    }
+
+    @Test
+    void fullSegmentsRollOverToNewOnes() throws IOException {
+        Path journalDir = dir.resolve("journal");
+        try (OrderJournal journal = new OrderJournal(journalDir, 300, false)) {
+            for (int orderId = 1; orderId <= 10; orderId++) {
+                journal.createOrder(orderId, detail(orderId));
+                journal.changeOrderState(orderId, OrderState.Progressing);
+            }
+        }
+        try (Stream<Path> files = Files.list(journalDir)) {
+            assertTrue(files.filter(file -> file.toString().endsWith(".journal")).count() > 1);
+        }
+        try (OrderJournal journal = new OrderJournal(journalDir, 300, false)) {
+            assertEquals(10, journal.loadUncollectedOrders().size());
+            assertTrue(journal.readOrder(7).contains("State: Progressing"));
+        }
+    }
+
+    @Test
+    void aJournalCanOnlyBeOpenedOnce() throws IOException {
+        Path journalDir = dir.resolve("journal");
+        try (OrderJournal journal = new OrderJournal(journalDir, 1024, false)) {
+            assertThrows(IOException.class, () -> new OrderJournal(journalDir, 1024, false));
+            assertTrue(journal.loadUncollectedOrders().isEmpty(), "the first one still works");
+        }
+    }
+
+    private static Path onlySegment(Path journalDir) throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.filter(file -> file.toString().endsWith(".journal")).findFirst().orElseThrow();
+        }
+    }
+}
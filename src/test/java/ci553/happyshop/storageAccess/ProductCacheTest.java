@@ -0,0 +1,59 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductCacheTest {
+
+    private Product makeProduct(String id, int stock) {
+        return Product.ofPounds(id, "Product " + id, id + ".jpg", 1.00, stock);
+    }
+
+    @Test
+    void cachedProductIsACopy_soCallersCannotChangeTheCache() {
+        ProductCache cache = new ProductCache(10, 60000);
+        cache.put(makeProduct("0001", 5), cache.beginLoad());
+
+        Product first = cache.get("0001");
+        first.setOrderedQuantity(99);
+
+        assertEquals(1, cache.get("0001").getOrderedQuantity());
+        assertEquals(2, cache.getStatistics().getHits());
+    }
+
+    @Test
+    void leastRecentlyUsedProductIsEvicted_whenFull() {
+        ProductCache cache = new ProductCache(2, 60000);
+        cache.put(makeProduct("0001", 5), cache.beginLoad());
+        cache.put(makeProduct("0002", 5), cache.beginLoad());
+        cache.get("0001"); // 0002 is now the least recently used
+        cache.put(makeProduct("0003", 5), cache.beginLoad());
+
+        assertNotNull(cache.get("0001"));
+        assertNull(cache.get("0002"));
+        assertNotNull(cache.get("0003"));
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    void expiredStockIsNotReturned() throws InterruptedException {
+        ProductCache cache = new ProductCache(10, 1);
+        cache.put(makeProduct("0001", 5), cache.beginLoad());
+        Thread.sleep(5);
+
+        assertNull(cache.get("0001"));
+        assertEquals(1, cache.getStatistics().getExpirations());
+    }
+
+    @Test
+    void loadStartedBeforeAnInvalidation_isNotCached() {
+        ProductCache cache = new ProductCache(10, 60000);
+        long token = cache.beginLoad();   // a reader starts reading the old row
+        cache.invalidate("0001");         // meanwhile a writer changes the product
+        cache.put(makeProduct("0001", 5), token);
+
+        assertNull(cache.get("0001"));
+    }
+}
@@ -0,0 +1,179 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductChangeFeedTest {
+
+    // Runs deliveries only when the test says so, like a busy FX thread
+    private static class QueuedExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private static class Recorder implements ProductChangeFeed.Listener {
+        private final List<List<ProductChangeEvent>> deliveries = new ArrayList<>();
+        private int overflows;
+
+        @Override
+        public void onChanges(List<ProductChangeEvent> changes) {
+            deliveries.add(changes);
+        }
+
+        @Override
+        public void onOverflow() {
+            overflows++;
+        }
+    }
+
+    private static ProductChangeEvent stock(String id, int before, int after) {
+        return new ProductChangeEvent(ProductChangeEvent.Type.STOCK_CHANGED, id,
+                Product.ofPounds(id, "TV", "0001.jpg", 100, before), Product.ofPounds(id, "TV", "0001.jpg", 100, after));
+    }
+
+    @Test
+    void changesOfOneProduct_areCoalescedUntilDelivered() {
+        ProductChangeFeed feed = new ProductChangeFeed();
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        feed.subscribe(recorder, executor, 10);
+
+        feed.publish(stock("0001", 10, 9));
+        feed.publish(stock("0002", 5, 4));
+        feed.publish(stock("0001", 9, 7));
+        feed.publish(new ProductChangeEvent(ProductChangeEvent.Type.UPDATED, "0001",
+                Product.ofPounds("0001", "TV", "0001.jpg", 100, 7), Product.ofPounds("0001", "Big TV", "0001.jpg", 120, 7)));
+        assertEquals(1, executor.tasks.size(), "only one delivery is queued at a time");
+        executor.runAll();
+
+        assertEquals(1, recorder.deliveries.size());
+        List<ProductChangeEvent> changes = recorder.deliveries.get(0);
+        assertEquals(2, changes.size());
+        ProductChangeEvent first = changes.get(0);
+        assertEquals("0001", first.getProductId());
+        assertEquals(ProductChangeEvent.Type.UPDATED, first.getType());
+        assertEquals(10, first.getOldProduct().getStockQuantity());
+        assertEquals("Big TV", first.getNewProduct().getProductDescription());
+        assertEquals(ProductChangeEvent.Type.STOCK_CHANGED, changes.get(1).getType());
+
+        ProductChangeFeed.Statistics stats = feed.getStatistics();
+        assertEquals(4, stats.getPublished());
+        assertEquals(2, stats.getDelivered());
+        assertEquals(2, stats.getCoalesced());
+    }
+
+    @Test
+    void insertThenDelete_cancelsOut_andDeleteThenInsert_isAnUpdate() {
+        ProductChangeFeed feed = new ProductChangeFeed();
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder recorder = new Recorder();
+        feed.subscribe(recorder, executor, 10);
+
+        Product kettle = Product.ofPounds("0013", "Kettle", "0013.jpg", 25, 50);
+        feed.publish(new ProductChangeEvent(ProductChangeEvent.Type.INSERTED, "0013", null, kettle));
+        feed.publish(new ProductChangeEvent(ProductChangeEvent.Type.DELETED, "0013", kettle, null));
+        Product radio = Product.ofPounds("0002", "DAB Radio", "0002.jpg", 30, 5);
+        feed.publish(new ProductChangeEvent(ProductChangeEvent.Type.DELETED, "0002", radio, null));
+        feed.publish(new ProductChangeEvent(ProductChangeEvent.Type.INSERTED, "0002", null, radio));
+        executor.runAll();
+
+        List<ProductChangeEvent> changes = recorder.deliveries.get(0);
+        assertEquals(1, changes.size());
+        assertEquals(ProductChangeEvent.Type.UPDATED, changes.get(0).getType());
+        assertEquals("0002", changes.get(0).getProductId());
+    }
+
+    @Test
+    void slowSubscriber_overflows_andClosedSubscriptionGetsNothing() {
+        ProductChangeFeed feed = new ProductChangeFeed();
+        QueuedExecutor executor = new QueuedExecutor();
+        Recorder slow = new Recorder();
+        Recorder direct = new Recorder();
+        ProductChangeFeed.Subscription slowSubscription = feed.subscribe(slow, executor, 3);
+        feed.subscribe(direct, Runnable::run, 3); // runs on the publishing thread, never falls behind
+
+        for (int i = 1; i <= 5; i++) {
+            feed.publish(stock(String.format("%04d", i), 10, 9));
+        }
+        executor.runAll();
+
+        assertTrue(slow.deliveries.isEmpty());
+        assertEquals(1, slow.overflows);
+        assertEquals(5, direct.deliveries.size());
+        assertEquals(0, direct.overflows);
+        assertEquals(1, feed.getStatistics().getOverflows());
+
+        // after the overflow the subscriber gets single changes again
+        feed.publish(stock("0001", 9, 8));
+        executor.runAll();
+        assertEquals(1, slow.deliveries.size());
+
+        slowSubscription.close();
+        feed.publish(stock("0001", 8, 7));
+        executor.runAll();
+        assertEquals(1, slow.deliveries.size());
+        assertEquals(1, feed.getStatistics().getSubscribers());
+    }
+
+    @Test
+    void concurrentCheckouts_leaveTheLastEventOnTheCommittedStock() throws Exception {
+        PurchaseMode originalMode = DatabaseRWFactory.purchaseMode;
+        DatabaseRWFactory.purchaseMode = PurchaseMode.CONDITIONAL; // no lock around the commit
+        try (DerbyTestDatabase db = new DerbyTestDatabase("changeFeedOrderTestDB")) {
+            db.execute("INSERT INTO ProductTable VALUES ('0001', 'TV', 26900, '0001.jpg', 200)");
+            DerbyRW derbyRW = new DerbyRW();
+            QueuedExecutor executor = new QueuedExecutor(); // the events pile up, merged, until the tills are done
+            Recorder recorder = new Recorder();
+            ProductChangeFeed.Subscription subscription =
+                    DatabaseRWFactory.getChangeFeed().subscribe(recorder, executor, 10);
+            try {
+                List<Thread> tills = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    Thread till = new Thread(() -> {
+                        for (int i = 0; i < 20; i++) {
+                            Product line = Product.ofPence("0001", "TV", "0001.jpg", 26900, 0);
+                            line.setOrderedQuantity(1);
+                            try {
+                                derbyRW.purchaseStocks(new ArrayList<>(List.of(line)));
+                            } catch (SQLException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    });
+                    tills.add(till);
+                    till.start();
+                }
+                for (Thread till : tills) {
+                    till.join();
+                }
+                executor.runAll();
+
+                assertEquals(40, db.stockOf("0001"));
+                assertEquals(1, recorder.deliveries.size());
+                assertEquals(40, recorder.deliveries.get(0).get(0).getNewProduct().getStockQuantity());
+            } finally {
+                subscription.close();
+            }
+        } finally {
+            DatabaseRWFactory.purchaseMode = originalMode;
+        }
+    }
+}
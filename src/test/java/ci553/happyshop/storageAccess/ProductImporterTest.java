@@ -0,0 +1,102 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductImporterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void validRowsAreImported_andInvalidRowsGoToTheRejectFile() throws IOException, SQLException {
+        InMemoryRW store = new InMemoryRW();
+        store.loadProducts(List.of(Product.ofPounds("0001", "40 inch TV", "0001.jpg", 269.00, 5)));
+        Path imageFolder = Files.createDirectory(dir.resolve("images"));
+        Files.writeString(dir.resolve("kettle.jpg"), "not really a picture");
+        Path csv = dir.resolve("autumn.csv");
+        Files.write(csv, List.of(
+                ProductImporter.HEADER,
+                "0013,\"Kettle, 1.7 litre\",24.99,50,kettle.jpg",
+                "0014,Toaster,19.999,10,kettle.jpg",  // three decimals
+                "0001,Another TV,99.00,1,kettle.jpg", // already in the database
+                "0015,Lamp,12.50,0,missing.jpg",      // no such image
+                "0013,Kettle again,24.99,5,kettle.jpg", // repeated in the file
+                "",
+                "0016,Mug,3.00,200,kettle.jpg"));
+        Path rejects = dir.resolve("autumn.rejects.csv");
+
+        List<ProductImporter.Progress> updates = new ArrayList<>();
+        ProductImporter importer = new ProductImporter(store, imageFolder + "/", 2, 2);
+        ProductImporter.Progress result = importer.importCsv(csv, rejects, updates::add);
+
+        assertEquals(6, result.getRowsRead());
+        assertEquals(2, result.getImported());
+        assertEquals(4, result.getRejected());
+        assertTrue(result.isFinished());
+        assertTrue(updates.size() > 1); // at least one chunk update before the final one
+
+        assertEquals("Kettle, 1.7 litre", store.searchByProductId("0013").getProductDescription());
+        assertEquals("0016.jpg", store.searchByProductId("0016").getProductImageName());
+        assertTrue(Files.exists(imageFolder.resolve("0013.jpg")));
+        assertEquals("40 inch TV", store.searchByProductId("0001").getProductDescription());
+
+        List<String> rejectLines = Files.readAllLines(rejects);
+        assertEquals(5, rejectLines.size()); // header + 4 rows
+        assertTrue(rejectLines.get(1).startsWith("3,"));
+        assertTrue(rejectLines.stream().anyMatch(line -> line.startsWith("4,\"Product ID 0001 is not available\"")));
+    }
+
+    @Test
+    void imageOfAnExistingProduct_isNeverOverwritten_evenWhenItsIdIsAddedDuringTheImport() throws Exception {
+        // a store whose ID check misses 0001, as if another warehouse added it just after the check
+        InMemoryRW store = new InMemoryRW() {
+            @Override
+            public Map<String, Product> searchByProductIds(Collection<String> productIds) {
+                return Map.of();
+            }
+        };
+        store.loadProducts(List.of(Product.ofPence("0001", "40 inch TV", "0001.jpg", 26900, 5)));
+        Path imageFolder = Files.createDirectory(dir.resolve("images"));
+        Files.writeString(imageFolder.resolve("0001.jpg"), "the TV");
+        Files.writeString(dir.resolve("kettle.jpg"), "the kettle");
+        Path csv = dir.resolve("autumn.csv");
+        Files.write(csv, List.of(
+                "0001,Another TV,99.00,1,kettle.jpg",
+                "0013,Kettle,24.99,50,kettle.jpg"));
+
+        ProductImporter.Progress result = new ProductImporter(store, imageFolder + "/", 10, 2)
+                .importCsv(csv, null, null);
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(1, result.getImagesCopied());
+        assertEquals("the TV", Files.readString(imageFolder.resolve("0001.jpg")));
+        assertEquals("the kettle", Files.readString(imageFolder.resolve("0013.jpg")));
+        try (Stream<Path> files = Files.list(imageFolder)) { // no temporary copies left behind
+            assertEquals(List.of("0001.jpg", "0013.jpg"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+    }
+
+    @Test
+    void csvLine_isSplitOnCommasOutsideQuotes() {
+        assertEquals(List.of("0013", "Kettle, \"1.7\" litre", "24.99"),
+                ProductImporter.parseCsvLine("0013,\"Kettle, \"\"1.7\"\" litre\",24.99"));
+        assertEquals(List.of("a", "", ""), ProductImporter.parseCsvLine("a,,"));
+        assertThrows(IllegalArgumentException.class, () -> ProductImporter.parseCsvLine("0013,\"Kettle"));
+    }
+}
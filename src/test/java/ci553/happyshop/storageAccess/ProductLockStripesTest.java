@@ -0,0 +1,59 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductLockStripesTest {
+
+    @Test
+    void lockingTheSameProductsInOppositeOrder_doesNotDeadlock() throws InterruptedException {
+        ProductLockStripes stripes = new ProductLockStripes(16);
+        List<String> forward = List.of("0001", "0002", "0003", "0004");
+        List<String> backward = List.of("0004", "0003", "0002", "0001");
+        CountDownLatch done = new CountDownLatch(2);
+
+        Runnable lockForward = () -> repeatLockAll(stripes, forward, done);
+        Runnable lockBackward = () -> repeatLockAll(stripes, backward, done);
+        new Thread(lockForward).start();
+        new Thread(lockBackward).start();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "threads deadlocked");
+        long acquired = 0;
+        for (long count : stripes.getAcquisitionCounts()) {
+            acquired += count;
+        }
+        assertTrue(acquired >= 2 * 1000);
+    }
+
+    @Test
+    void waitingForAHeldStripe_isCountedAsContention() throws InterruptedException {
+        ProductLockStripes stripes = new ProductLockStripes(4);
+        stripes.lock("0001");
+
+        Thread other = new Thread(() -> {
+            stripes.lock("0001");
+            stripes.unlock("0001");
+        });
+        other.start();
+        Thread.sleep(50); // let the other thread find the stripe held
+        stripes.unlock("0001");
+        other.join();
+
+        int stripe = stripes.stripeFor("0001");
+        assertEquals(1, stripes.getContentionCounts()[stripe]);
+        assertEquals(2, stripes.getAcquisitionCounts()[stripe]);
+    }
+
+    private void repeatLockAll(ProductLockStripes stripes, List<String> ids, CountDownLatch done) {
+        for (int i = 0; i < 1000; i++) {
+            stripes.lockAll(ids);
+            stripes.unlockAll(ids);
+        }
+        done.countDown();
+    }
+}
@@ -0,0 +1,54 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexTest {
+
+    private ProductSearchIndex buildIndex() throws SQLException {
+        Map<String, String> descriptions = new HashMap<>();
+        descriptions.put("0001", "40 inch TV");
+        descriptions.put("0007", "USB drive");
+        descriptions.put("0008", "USB2 drive");
+        descriptions.put("0002", "DAB Radio");
+
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.build(() -> descriptions);
+        return index;
+    }
+
+    @Test
+    void tokenize_splitsOnNonWordCharacters_andLowerCases() {
+        assertEquals(List.of("40", "inch", "tv"), ProductSearchIndex.tokenize("40 inch TV"));
+        assertEquals(List.of("usb", "c", "cable"), ProductSearchIndex.tokenize("USB-C, cable!"));
+    }
+
+    @Test
+    void termsMatchTokenPrefixes_andAllTermsMustMatch() throws SQLException {
+        ProductSearchIndex index = buildIndex();
+
+        assertEquals(List.of("0007", "0008"), List.copyOf(index.search("usb")));
+        assertEquals(List.of("0007", "0008"), List.copyOf(index.search("Drive USB")));
+        assertEquals(List.of("0001"), List.copyOf(index.search("inch tv")));
+        assertTrue(index.search("usb radio").isEmpty());
+    }
+
+    @Test
+    void updateAndRemove_keepPostingListsInStep() throws SQLException {
+        ProductSearchIndex index = buildIndex();
+
+        index.addOrUpdate("0002", "Digital Radio");
+        assertTrue(index.search("dab").isEmpty());
+        assertEquals(List.of("0002"), List.copyOf(index.search("digital")));
+
+        index.remove("0007");
+        assertEquals(List.of("0008"), List.copyOf(index.search("usb")));
+        assertEquals(3, index.size());
+    }
+}
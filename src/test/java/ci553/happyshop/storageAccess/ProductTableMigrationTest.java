@@ -0,0 +1,73 @@
+package ci553.happyshop.storageAccess;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProductTableMigration, run against an in-memory Derby database with a ProductTable of an earlier version.
+ */
+class ProductTableMigrationTest {
+
+    private DerbyTestDatabase db;
+
+    @BeforeEach
+    void createOldTable() throws SQLException {
+        db = new DerbyTestDatabase("migrationTestDB", false);
+        db.execute("CREATE TABLE ProductTable(productID CHAR(4) PRIMARY KEY, description VARCHAR(100), " +
+                        "unitPrice DOUBLE, image VARCHAR(100), inStock INT, CHECK (inStock >= 0))",
+                "INSERT INTO ProductTable VALUES ('0001', 'Sticker', 0.1, '0001.jpg', 100)",
+                "INSERT INTO ProductTable VALUES ('0002', 'Pen', 2.675, '0002.jpg', 50)",
+                "INSERT INTO ProductTable VALUES ('0003', '40 inch TV', 269.99, '0003.jpg', 5)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    private boolean hasColumn(String column) throws SQLException {
+        try (Connection conn = DatabaseRWFactory.getConnectionPool().getConnection();
+             ResultSet columns = conn.getMetaData().getColumns(null, null, "PRODUCTTABLE", column)) {
+            return columns.next();
+        }
+    }
+
+    private static void assertPricesInPence(DerbyRW derbyRW) throws SQLException {
+        assertEquals(10, derbyRW.searchByProductId("0001").getUnitPricePence());
+        assertEquals(268, derbyRW.searchByProductId("0002").getUnitPricePence());
+        assertEquals(26999, derbyRW.searchByProductId("0003").getUnitPricePence());
+    }
+
+    @Test
+    void firstDerbyRW_migratesPricesToPence_once() throws SQLException {
+        DerbyRW derbyRW = new DerbyRW(); // runs ProductTableMigration.migrateOnce
+
+        assertPricesInPence(derbyRW);
+        assertFalse(hasColumn("UNITPRICE"));
+        assertEquals(100, db.stockOf("0001"));
+        assertFalse(ProductTableMigration.migrate(DatabaseRWFactory.getConnectionPool())); // already up to date
+
+        // unitPricePence is now the last column, the INSERT names its columns so that does not matter
+        derbyRW.insertNewProduct("0004", "Kettle", 2499, "0004.jpg", 3);
+        assertEquals(2499, derbyRW.searchByProductId("0004").getUnitPricePence());
+    }
+
+    @Test
+    void halfFinishedMigration_isRunAgain() throws SQLException {
+        // as if an earlier attempt added the new column and filled one row, then stopped
+        db.execute("ALTER TABLE ProductTable ADD COLUMN unitPricePence BIGINT",
+                "UPDATE ProductTable SET unitPricePence = 999 WHERE productID = '0001'");
+
+        assertTrue(ProductTableMigration.migrate(DatabaseRWFactory.getConnectionPool()));
+
+        assertPricesInPence(new DerbyRW());
+        assertFalse(hasColumn("UNITPRICE"));
+    }
+}
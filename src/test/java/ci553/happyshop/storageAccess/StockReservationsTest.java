@@ -0,0 +1,154 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import ci553.happyshop.storageAccess.StockReservations.Reservation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StockReservations tests, run against an in-memory Derby database.
+ */
+class StockReservationsTest {
+    private static final String MEMORY_DB_URL = "jdbc:derby:memory:reservationTestDB;create=true";
+
+    private ConnectionPool pool;
+    private StockReservations reservations;
+
+    @BeforeEach
+    void createTables() throws SQLException {
+        pool = new ConnectionPool(MEMORY_DB_URL, 4, 0, 1000, 60000);
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            for (String table : new String[]{"ProductTable", "ReservationTable"}) {
+                try {
+                    stmt.executeUpdate("DROP TABLE " + table);
+                } catch (SQLException e) {
+                    // first test, no table yet
+                }
+            }
+            stmt.executeUpdate("CREATE TABLE ProductTable(productID CHAR(4) PRIMARY KEY, description VARCHAR(100), " +
+                    "unitPricePence BIGINT, image VARCHAR(100), inStock INT, CHECK (inStock >= 0))");
+            stmt.executeUpdate("INSERT INTO ProductTable VALUES ('0001', 'TV', 26900, '0001.jpg', 5)");
+        }
+    }
+
+    @AfterEach
+    void close() {
+        if (reservations != null) {
+            reservations.close();
+        }
+        pool.close();
+    }
+
+    private int stockOf(String id) throws SQLException {
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT inStock FROM ProductTable WHERE productID = '" + id + "'")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    void holdTakesStock_andIsRefusedWhenTooLittleIsLeft() throws SQLException {
+        reservations = new StockReservations(pool, null, 60000, 0);
+
+        Reservation hold = reservations.reserve("0001", 3);
+        assertNotNull(hold);
+        assertEquals(2, stockOf("0001"));
+        assertNull(reservations.reserve("0001", 3));
+        assertNull(reservations.reserve("9999", 1));
+
+        // confirming keeps the stock taken, releasing gives it back
+        assertEquals(List.of(hold), reservations.confirm(List.of(hold)));
+        assertEquals(2, stockOf("0001"));
+        Reservation other = reservations.reserve("0001", 2);
+        reservations.release(List.of(other));
+        assertEquals(2, stockOf("0001"));
+
+        StockReservations.Statistics stats = reservations.getStatistics();
+        assertEquals(0, stats.getActive());
+        assertEquals(2, stats.getRefused());
+        assertEquals(1, stats.getConfirmed());
+        assertEquals(1, stats.getReleased());
+    }
+
+    @Test
+    void expiredHold_isSweptBackIntoStock_andCanNoLongerBeConfirmed() throws Exception {
+        reservations = new StockReservations(pool, null, 1000, 0);
+
+        Reservation hold = reservations.reserve("0001", 4);
+        assertEquals(0, reservations.sweepExpired()); // not due yet
+        Thread.sleep(1100);
+        assertEquals(1, reservations.sweepExpired());
+        assertEquals(5, stockOf("0001"));
+
+        assertTrue(reservations.confirm(List.of(hold)).isEmpty());
+        assertEquals(1, reservations.getStatistics().getExpired());
+        assertEquals(0, reservations.getActiveCount());
+    }
+
+    @Test
+    void holdsLeftByAnEarlierRun_areLoadedAndSwept() throws Exception {
+        StockReservations earlierRun = new StockReservations(pool, null, 1000, 0);
+        earlierRun.reserve("0001", 5);
+        earlierRun.close();
+
+        reservations = new StockReservations(pool, null, 1000, 0);
+        assertEquals(1, reservations.getActiveCount());
+        Thread.sleep(1100);
+        assertEquals(1, reservations.sweepExpired());
+        assertEquals(5, stockOf("0001"));
+    }
+
+    @Test
+    void committedStockChanges_arePassedOn_soTheyCanBePublished() throws SQLException {
+        List<Map<String, Integer>> changes = new ArrayList<>();
+        reservations = new StockReservations(pool, null, changes::add, 60000, 0);
+
+        Reservation hold = reservations.reserve("0001", 3);
+        assertNull(reservations.reserve("0001", 3)); // refused, nothing changed
+        reservations.confirm(List.of(hold));         // the stock stays taken, nothing changed
+        Reservation other = reservations.reserve("0001", 2);
+        reservations.release(List.of(other));
+
+        assertEquals(List.of(Map.of("0001", -3), Map.of("0001", -2), Map.of("0001", 2)), changes);
+    }
+
+    @Test
+    void purchase_takesHeldAndUnheldUnitsTogether_andAShortLineKeepsTheHolds() throws SQLException {
+        reservations = new StockReservations(pool, null, 60000, 0);
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO ProductTable VALUES ('0002', 'Radio', 2999, '0002.jpg', 1)");
+        }
+        Reservation hold = reservations.reserve("0001", 2);
+
+        ArrayList<Product> failed = reservations.purchase(List.of(hold), List.of(line("0001", 3), line("0002", 2)));
+        assertEquals(List.of("0002"), failed.stream().map(Product::getProductId).toList());
+        assertEquals(1, failed.get(0).getStockQuantity());
+        assertEquals(3, stockOf("0001")); // the unheld unit was put back
+        assertTrue(reservations.isActive(hold));
+        assertEquals(2, reservations.getReservedQuantity("0001"));
+
+        assertTrue(reservations.purchase(List.of(hold), List.of(line("0001", 3))).isEmpty());
+        assertEquals(2, stockOf("0001"));
+        assertEquals(0, reservations.getReservedQuantity("0001"));
+        assertEquals(1, reservations.getStatistics().getConfirmed());
+        assertEquals(0, reservations.getActiveCount());
+    }
+
+    private static Product line(String id, int quantity) {
+        Product product = Product.ofPence(id, "", id + ".jpg", 100, 0);
+        product.setOrderedQuantity(quantity);
+        return product;
+    }
+}
@@ -0,0 +1,114 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageMetricsTest {
+
+    @Test
+    void percentilesAreWithinABucketOfTheTruth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros * 1000); // 1µs to 10ms, evenly spread
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(10_000_000, snapshot.getMaxNanos());
+        assertWithin(5_000_000, snapshot.getValueAtPercentile(50));
+        assertWithin(9_900_000, snapshot.getValueAtPercentile(99));
+        assertWithin(9_990_000, snapshot.getValueAtPercentile(99.9));
+        assertTrue(snapshot.getValueAtPercentile(50) >= 5_000_000, "percentiles are never reported too low");
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.04, "expected about " + expected + " but was " + actual);
+    }
+
+    @Test
+    void everyValueFallsInABucketThatHoldsIt() {
+        for (long value : new long[]{0, 1, 63, 64, 65, 127, 128, 1_000, 123_456_789, LatencyHistogram.MAX_TRACKABLE_NANOS}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.highestValueOf(bucket), "value " + value);
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestValueOf(bucket - 1), "value " + value);
+        }
+    }
+
+    @Test
+    void snapshotAndResetStartsAgainFromZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(500);
+        histogram.record(700);
+
+        LatencyHistogram.Snapshot first = histogram.snapshotAndReset();
+        assertEquals(2, first.getCount());
+        assertEquals(600, first.getMeanNanos());
+
+        LatencyHistogram.Snapshot second = histogram.snapshot();
+        assertEquals(0, second.getCount());
+        assertEquals(0, second.getValueAtPercentile(99));
+    }
+
+    @Test
+    void instrumentedDatabaseRW_countsCallsErrorsAndRows() throws SQLException {
+        InMemoryRW store = new InMemoryRW();
+        store.loadProducts(List.of(
+                Product.ofPence("0001", "40 inch TV", "0001.jpg", 26900, 5),
+                Product.ofPence("0002", "DAB Radio", "0002.jpg", 2999, 10)));
+        StorageMetrics metrics = new StorageMetrics();
+        DatabaseRW databaseRW = new InstrumentedDatabaseRW(store, metrics);
+
+        databaseRW.searchByProductId("0001");
+        databaseRW.searchByProductId("9999");
+        databaseRW.searchProduct("");
+        assertThrows(SQLException.class, () -> databaseRW.insertNewProduct("0001", "Duplicate", 100, "", 1));
+
+        StorageMetrics.Statistics byId = metrics.getStatistics().get("searchByProductId");
+        assertEquals(2, byId.getCalls());
+        assertEquals(0, byId.getErrors());
+        assertEquals(1, byId.getRows());
+        assertEquals(2, byId.getLatency().getCount());
+        assertTrue(byId.getP999Nanos() >= byId.getP50Nanos());
+
+        assertEquals(2, metrics.getStatistics().get("searchProduct").getRows());
+
+        StorageMetrics.Statistics insert = metrics.getStatistics().get("insertNewProduct");
+        assertEquals(1, insert.getCalls());
+        assertEquals(1, insert.getErrors());
+        assertEquals(0, insert.getRows());
+
+        metrics.reset();
+        assertEquals(0, metrics.getStatistics().get("searchByProductId").getCalls());
+    }
+
+    @Test
+    void summaryInterval_startsAgainFromZero_butTheTotalsKeepCounting() {
+        StorageMetrics metrics = new StorageMetrics();
+        metrics.record("searchByProductId", 1_000, 1, false);
+        metrics.record("searchByProductId", 2_000, 0, true);
+
+        Map<String, StorageMetrics.Statistics> first = metrics.intervalSnapshotAndReset();
+        assertEquals(2, first.get("searchByProductId").getCalls());
+
+        metrics.record("searchByProductId", 3_000, 1, false);
+        Map<String, StorageMetrics.Statistics> second = metrics.intervalSnapshotAndReset();
+        assertEquals(1, second.get("searchByProductId").getCalls());
+        assertTrue(metrics.intervalSnapshotAndReset().isEmpty(), "nothing was called since the last summary");
+
+        StorageMetrics.Statistics total = metrics.getStatistics().get("searchByProductId");
+        assertEquals(3, total.getCalls());
+        assertEquals(1, total.getErrors());
+        assertEquals(2, total.getRows());
+        assertEquals(3, total.getLatency().getCount());
+
+        metrics.reset();
+        assertEquals(0, metrics.getStatistics().get("searchByProductId").getCalls());
+        assertTrue(metrics.intervalSnapshotAndReset().isEmpty());
+    }
+}
@@ -0,0 +1,126 @@
+package ci553.happyshop.storageAccess;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadDatabaseRWTest {
+
+    // An InMemoryRW whose lookups take a while, and which records when a lookup was interrupted
+    private static class SlowStore extends InMemoryRW {
+        private final long delayMillis;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch interrupted = new CountDownLatch(1);
+
+        SlowStore(long delayMillis) {
+            this.delayMillis = delayMillis;
+            loadProducts(List.of(Product.ofPounds("0001", "40 inch TV", "0001.jpg", 269.00, 5)));
+        }
+
+        @Override
+        public Product searchByProductId(String productId) throws SQLException {
+            started.countDown();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new SQLException("interrupted", e);
+            }
+            if (productId.equals("FAIL")) {
+                throw new SQLException("lookup failed");
+            }
+            return super.searchByProductId(productId);
+        }
+
+        @Override
+        public ArrayList<Product> purchaseStocks(ArrayList<Product> proList) throws SQLException {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new SQLException("interrupted", e);
+            }
+            return super.purchaseStocks(proList);
+        }
+    }
+
+    @Test
+    void manySlowLookups_runAtTheSameTime() throws Exception {
+        VirtualThreadDatabaseRW async = new VirtualThreadDatabaseRW(new SlowStore(200), 5000);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Product>> lookups = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lookups.add(async.searchByProductId("0001"));
+        }
+        for (CompletableFuture<Product> lookup : lookups) {
+            assertEquals("0001", lookup.get().getProductId());
+        }
+        // 100 x 200ms one after the other would take 20 seconds
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+    }
+
+    @Test
+    void slowCall_timesOut_andIsInterrupted() throws Exception {
+        SlowStore store = new SlowStore(10_000);
+        AsyncDatabaseRW async = new VirtualThreadDatabaseRW(store, 5000).withTimeout(50);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> async.searchByProductId("0001").get());
+        assertInstanceOf(TimeoutException.class, e.getCause());
+        assertTrue(store.interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancel_interruptsTheCall_andDatabaseErrorsArePassedOn() throws Exception {
+        SlowStore store = new SlowStore(10_000);
+        VirtualThreadDatabaseRW async = new VirtualThreadDatabaseRW(store, 5000);
+
+        CompletableFuture<Product> lookup = async.searchByProductId("0001");
+        assertTrue(store.started.await(5, TimeUnit.SECONDS)); // cancel while the lookup is running
+        lookup.cancel(true);
+        assertTrue(store.interrupted.await(5, TimeUnit.SECONDS));
+
+        VirtualThreadDatabaseRW quick = new VirtualThreadDatabaseRW(new SlowStore(0), 5000);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> quick.searchByProductId("FAIL").get());
+        assertInstanceOf(SQLException.class, e.getCause());
+        assertEquals(1, async.getStatistics().getCancellations());
+        assertEquals(1, quick.getStatistics().getFailures());
+    }
+
+    @Test
+    void bulkWrites_runOnTheDatabaseThreads() throws Exception {
+        SlowStore store = new SlowStore(0);
+        VirtualThreadDatabaseRW async = new VirtualThreadDatabaseRW(store, 5000);
+
+        async.insertNewProducts(List.of(Product.ofPence("0002", "Radio", "0002.jpg", 2999, 3))).get();
+        assertEquals(Map.of("0001", -9), async.adjustStock(Map.of("0001", -9, "0002", 4)).get());
+        assertEquals(3, store.searchByProductId("0002").getStockQuantity()); // refused delivery changed nothing
+        assertTrue(async.adjustStock(Map.of("0001", -5, "0002", 4)).get().isEmpty());
+        assertEquals(0, store.searchByProductId("0001").getStockQuantity());
+        assertEquals(7, store.searchByProductId("0002").getStockQuantity());
+        assertEquals(3, async.getStatistics().getCalls());
+    }
+
+    @Test
+    void slowWrite_isNotTimedOut_andReportsItsRealOutcome() throws Exception {
+        SlowStore store = new SlowStore(300);
+        AsyncDatabaseRW async = new VirtualThreadDatabaseRW(store, 5000).withTimeout(50);
+
+        Product line = Product.ofPence("0001", "40 inch TV", "0001.jpg", 26900, 0);
+        line.setOrderedQuantity(2);
+        assertTrue(async.purchaseStocks(new ArrayList<>(List.of(line))).get().isEmpty());
+        assertEquals(3, store.searchByProductId("0001").getStockQuantity());
+        assertEquals(1, store.interrupted.getCount()); // never interrupted
+    }
+}
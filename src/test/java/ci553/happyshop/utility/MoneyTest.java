@@ -0,0 +1,64 @@
+package ci553.happyshop.utility;
+
+import ci553.happyshop.catalogue.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void parsePence_readsPricesExactly_andRejectsOthers() {
+        assertEquals(2999, Money.parsePence("29.99"));
+        assertEquals(3000, Money.parsePence(" 30 "));
+        assertEquals(750, Money.parsePence("7.5"));
+        assertEquals(700, Money.parsePence("7."));
+        assertEquals(1, Money.parsePence("0.01"));
+
+        assertThrows(NumberFormatException.class, () -> Money.parsePence("7.999"));
+        assertThrows(NumberFormatException.class, () -> Money.parsePence("-1.00"));
+        assertThrows(NumberFormatException.class, () -> Money.parsePence("1e3"));
+        assertThrows(NumberFormatException.class, () -> Money.parsePence(".50"));
+        assertThrows(NumberFormatException.class, () -> Money.parsePence("99999999999"));
+    }
+
+    @Test
+    void toPence_roundsTheDecimalThatWasWritten_andOfPoundsUsesIt() {
+        assertEquals(10, Money.toPence(0.1));
+        assertEquals(268, Money.toPence(2.675)); // stored as 2.67499999..., Math.round(x * 100) gives 267
+        assertEquals(101, Money.toPence(1.005));
+        assertEquals(26999, Money.toPence(269.99));
+
+        assertEquals(10000, Product.ofPounds("0001", "TV", "0001.jpg", 100, 1).getUnitPricePence());
+        assertEquals(100, Product.ofPence("0001", "TV", "0001.jpg", 100, 1).getUnitPricePence());
+    }
+
+    @Test
+    void appendPounds_givesTheSameTextAsStringFormat() {
+        long[] prices = {0, 5, 99, 100, 2999, 26900, 1234567, -150};
+        for (long pence : prices) {
+            assertEquals(String.format("%.2f", pence / 100.0), Money.format(pence));
+            assertEquals(String.format("%7.2f", pence / 100.0),
+                    Money.appendPoundsRight(new StringBuilder(), pence, 7).toString());
+        }
+    }
+
+    @Test
+    void productListFormatter_keepsTheReceiptLayout_andAddsUpExactly() {
+        ArrayList<Product> trolley = new ArrayList<>();
+        Product radio = Product.ofPounds("0002", "DAB Radio", "0002.jpg", 29.99, 100);
+        radio.setOrderedQuantity(3);
+        trolley.add(radio);
+        Product drive = Product.ofPence("0007", "USB drive with a very long description", "0007.jpg", 10, 100);
+        drive.setOrderedQuantity(10); // ten times 10p: a double total would be 0.9999999999999999
+        trolley.add(drive);
+
+        String expected = String.format(" %-7s %-18.18s (%2d) £%7.2f\n", "0002", "DAB Radio", 3, 89.97)
+                + String.format(" %-7s %-18.18s (%2d) £%7.2f\n", "0007", "USB drive with a very long description", 10, 1.00)
+                + "-".repeat(44) + "\n"
+                + String.format(" %-35s £%7.2f\n", "Total", 90.97);
+        assertEquals(expected, ProductListFormatter.buildString(trolley));
+    }
+}
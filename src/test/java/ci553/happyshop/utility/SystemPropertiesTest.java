@@ -0,0 +1,39 @@
+package ci553.happyshop.utility;
+
+import ci553.happyshop.storageAccess.DerbyMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SystemPropertiesTest {
+    private static final String PROPERTY = "happyshop.test.mode";
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(PROPERTY);
+    }
+
+    @Test
+    void unsetProperty_givesTheDefault() {
+        assertEquals(DerbyMode.EMBEDDED, SystemProperties.enumProperty(PROPERTY, DerbyMode.class, DerbyMode.EMBEDDED));
+    }
+
+    @Test
+    void valueIsMatchedIgnoringCaseAndSpaces() {
+        System.setProperty(PROPERTY, " network ");
+        assertEquals(DerbyMode.NETWORK, SystemProperties.enumProperty(PROPERTY, DerbyMode.class, DerbyMode.EMBEDDED));
+    }
+
+    @Test
+    void unknownValue_failsOnlyWhenRequired_namingThePropertyAndValidValues() {
+        System.setProperty(PROPERTY, "remote");
+        DerbyMode mode = SystemProperties.enumProperty(PROPERTY, DerbyMode.class, DerbyMode.EMBEDDED);
+        assertNull(mode);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> SystemProperties.requireEnum(mode, PROPERTY, DerbyMode.class));
+        assertTrue(e.getMessage().contains("-D" + PROPERTY + "=remote"), e.getMessage());
+        assertTrue(e.getMessage().contains("[EMBEDDED, NETWORK]"), e.getMessage());
+    }
+}